@@ -20,6 +20,14 @@ android {
         vectorDrawables {
             useSupportLibrary = true
         }
+        // Адрес сервера каталога для инкрементальной синхронизации (пустой - синхронизация выключена)
+        buildConfigField("String", "CATALOG_SYNC_URL", "\"${project.findProperty("eshop.catalogSyncUrl") ?: ""}\"")
+        // Адрес сервера для отправки очереди заказов (пустой - заказы копятся в очереди)
+        buildConfigField("String", "ORDERS_UPLOAD_URL", "\"${project.findProperty("eshop.ordersUploadUrl") ?: ""}\"")
+        // Адрес сервера синхронизации корзины между устройствами (пустой - корзина только локальная)
+        buildConfigField("String", "CART_SYNC_URL", "\"${project.findProperty("eshop.cartSyncUrl") ?: ""}\"")
+        // Возраст заказа в днях, после которого завершенный заказ переносится в архив (OrderArchiveWorker)
+        buildConfigField("int", "ORDER_ARCHIVE_AGE_DAYS", "${project.findProperty("eshop.orderArchiveAgeDays") ?: 365}")
     }
 
     buildTypes {
@@ -40,10 +48,24 @@ android {
     }
     buildFeatures {
         compose = true
+        buildConfig = true
     }
     composeOptions {
         kotlinCompilerExtensionVersion = "1.4.3"
     }
+    testOptions {
+        unitTests {
+            isIncludeAndroidResources = true // Robolectric-тестам нужны assets с e_shop.db
+            all {
+                // Бенчмарки обработчиков БД включаются через -Peshop.benchmark=true
+                it.systemProperty("eshop.benchmark", project.findProperty("eshop.benchmark") ?: "false")
+                it.systemProperty("eshop.benchmark.full", project.findProperty("eshop.benchmark.full") ?: "false")
+                project.findProperty("eshop.load.users")?.let { users -> it.systemProperty("eshop.load.users", users) }
+                project.findProperty("eshop.load.sessions")?.let { sessions -> it.systemProperty("eshop.load.sessions", sessions) }
+                it.maxHeapSize = "1g"
+            }
+        }
+    }
     packaging {
         resources {
             excludes += "/META-INF/{AL2.0,LGPL2.1}"
@@ -56,7 +78,10 @@ dependencies {
     implementation("org.jetbrains.kotlin:kotlin-parcelize-runtime:1.5.0")
     implementation("androidx.core:core-ktx:1.9.0")
     implementation("androidx.lifecycle:lifecycle-runtime-ktx:2.6.1")
+    implementation("androidx.lifecycle:lifecycle-viewmodel-ktx:2.6.1")
+    implementation("androidx.lifecycle:lifecycle-viewmodel-compose:2.6.1")
     implementation("androidx.activity:activity-compose:1.7.0")
+    implementation("androidx.work:work-runtime-ktx:2.8.1")
     implementation(platform("androidx.compose:compose-bom:2023.03.00"))
     implementation("androidx.compose.ui:ui")
     implementation("androidx.compose.ui:ui-graphics")
@@ -67,6 +92,8 @@ dependencies {
     implementation("androidx.cardview:cardview:1.0.0")
     implementation("com.google.android.material:material:1.10.0")
     testImplementation("junit:junit:4.13.2")
+    testImplementation("org.robolectric:robolectric:4.10.3")
+    testImplementation("androidx.test:core:1.5.0")
     androidTestImplementation("androidx.test.ext:junit:1.1.5")
     androidTestImplementation("androidx.test.espresso:espresso-core:3.5.1")
     androidTestImplementation(platform("androidx.compose:compose-bom:2023.03.00"))
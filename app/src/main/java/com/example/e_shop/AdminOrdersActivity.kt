@@ -0,0 +1,187 @@
+package com.example.e_shop
+
+import android.os.Build
+import android.os.Bundle
+import android.widget.Toast
+import androidx.activity.ComponentActivity
+import androidx.activity.compose.setContent
+import androidx.activity.viewModels
+import androidx.annotation.RequiresApi
+import androidx.compose.foundation.horizontalScroll
+import androidx.compose.foundation.layout.*
+import androidx.compose.foundation.lazy.LazyColumn
+import androidx.compose.foundation.lazy.items
+import androidx.compose.foundation.rememberScrollState
+import androidx.compose.material.icons.Icons
+import androidx.compose.material.icons.filled.ArrowBack
+import androidx.compose.material3.*
+import androidx.compose.runtime.*
+import androidx.compose.ui.Alignment
+import androidx.compose.ui.Modifier
+import androidx.compose.ui.platform.LocalContext
+import androidx.compose.ui.unit.dp
+import com.example.e_shop.DataClasses.Order
+import com.example.e_shop.DataClasses.User
+import com.example.e_shop.ViewModels.AdminOrdersViewModel
+import com.example.e_shop.ui.theme.E_ShopTheme
+import java.text.DateFormat
+import java.util.Date
+
+// Очередь заказов администратора: фильтр по статусу и периоду и массовый перевод заказов в следующий статус
+class AdminOrdersActivity : ComponentActivity() {
+
+    private val adminOrdersViewModel: AdminOrdersViewModel by viewModels() // Фильтр, заказы и выбор, переживающие поворот экрана
+
+    @RequiresApi(Build.VERSION_CODES.O)
+    override fun onCreate(savedInstanceState: Bundle?) {
+        super.onCreate(savedInstanceState)
+        val currentUser: User? = intent.getParcelableExtra("CURRENT_USER") // Пользователь, открывший экран
+        if (currentUser?.role != "admin") { // Экран доступен только администратору
+            Toast.makeText(this, "Недостаточно прав", Toast.LENGTH_SHORT).show()
+            finish()
+            return
+        }
+        setContent {
+            E_ShopTheme {
+                AdminOrdersScreen()
+            }
+        }
+    }
+
+    @OptIn(ExperimentalMaterial3Api::class)
+    @Composable
+    fun AdminOrdersScreen() {
+        val context = LocalContext.current
+        val message = adminOrdersViewModel.message
+        LaunchedEffect(message) { // Показываем результат перевода статусов
+            if (message != null) Toast.makeText(context, message, Toast.LENGTH_SHORT).show()
+        }
+
+        Scaffold(
+            topBar = {
+                TopAppBar(
+                    title = { Text("Заказы") },
+                    navigationIcon = {
+                        IconButton(onClick = { finish() }) {
+                            Icon(Icons.Filled.ArrowBack, contentDescription = "Назад")
+                        }
+                    }
+                )
+            }
+        ) { paddingValues ->
+            Column(
+                modifier = Modifier
+                    .fillMaxSize()
+                    .padding(paddingValues)
+            ) {
+                QueueFilter()
+                TransitionBar()
+                Divider(thickness = 1.dp, color = MaterialTheme.colorScheme.onSurface.copy(alpha = 0.2f))
+                val orders = adminOrdersViewModel.orders
+                if (orders.isEmpty()) {
+                    Text(
+                        text = "Заказов нет",
+                        style = MaterialTheme.typography.bodyMedium,
+                        modifier = Modifier.padding(16.dp),
+                        color = MaterialTheme.colorScheme.onSurfaceVariant
+                    )
+                } else {
+                    LazyColumn(state = adminOrdersViewModel.listState) {
+                        items(orders, key = { it.id }) { order ->
+                            QueueItem(order, selected = order.id in adminOrdersViewModel.selectedIds)
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Выбор статуса и периода очереди
+    @OptIn(ExperimentalMaterial3Api::class)
+    @Composable
+    fun QueueFilter() {
+        Column(modifier = Modifier.padding(horizontal = 8.dp)) {
+            Row(
+                modifier = Modifier
+                    .fillMaxWidth()
+                    .horizontalScroll(rememberScrollState()),
+                horizontalArrangement = Arrangement.spacedBy(4.dp)
+            ) {
+                adminOrdersViewModel.statuses.forEach { (code, name) ->
+                    FilterChip(
+                        selected = adminOrdersViewModel.status == code,
+                        onClick = { adminOrdersViewModel.onStatusSelected(code) },
+                        label = { Text(name) }
+                    )
+                }
+            }
+            Row(horizontalArrangement = Arrangement.spacedBy(4.dp)) {
+                AdminOrdersViewModel.Period.values().forEach { period ->
+                    FilterChip(
+                        selected = adminOrdersViewModel.period == period,
+                        onClick = { adminOrdersViewModel.onPeriodSelected(period) },
+                        label = { Text(period.title) }
+                    )
+                }
+            }
+        }
+    }
+
+    // Выбор всех заказов и кнопки перевода в разрешенные статусы
+    @Composable
+    fun TransitionBar() {
+        val orders = adminOrdersViewModel.orders
+        val selected = adminOrdersViewModel.selectedIds
+        val targets = adminOrdersViewModel.targetStatuses
+        Column(modifier = Modifier.padding(horizontal = 8.dp)) {
+            Row(verticalAlignment = Alignment.CenterVertically) {
+                Checkbox(
+                    checked = orders.isNotEmpty() && selected.size == orders.size,
+                    onCheckedChange = { adminOrdersViewModel.onSelectAllToggled() },
+                    enabled = orders.isNotEmpty()
+                )
+                Text("Выбрано: ${selected.size} из ${orders.size}", style = MaterialTheme.typography.bodySmall)
+            }
+            targets.forEach { target -> // Для конечных статусов список пуст
+                val name = adminOrdersViewModel.statuses[target] ?: target.toString()
+                Row(horizontalArrangement = Arrangement.spacedBy(8.dp)) {
+                    Button(
+                        onClick = { adminOrdersViewModel.transitionSelected(target) },
+                        enabled = selected.isNotEmpty() && !adminOrdersViewModel.isUpdating
+                    ) {
+                        Text("Выбранные → $name")
+                    }
+                    OutlinedButton( // Все заказы фильтра, в том числе не поместившиеся в список, одним UPDATE
+                        onClick = { adminOrdersViewModel.transitionAll(target) },
+                        enabled = orders.isNotEmpty() && !adminOrdersViewModel.isUpdating
+                    ) {
+                        Text("Все за период → $name")
+                    }
+                }
+            }
+        }
+    }
+
+    // Строка заказа с отметкой выбора
+    @Composable
+    fun QueueItem(order: Order, selected: Boolean) {
+        val dateFormat = remember { DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT) } // Дата в локали устройства
+        Card(
+            modifier = Modifier
+                .fillMaxWidth()
+                .padding(horizontal = 8.dp, vertical = 4.dp),
+            elevation = CardDefaults.cardElevation(2.dp)
+        ) {
+            Row(verticalAlignment = Alignment.CenterVertically, modifier = Modifier.padding(8.dp)) {
+                Checkbox(checked = selected, onCheckedChange = { adminOrdersViewModel.onOrderToggled(order.id) })
+                Column {
+                    Text("Заказ ${order.id} · ${dateFormat.format(Date(order.orderDate))}")
+                    Text(
+                        text = "Пользователь ${order.userId} · ${order.totalPrice ?: 0.0} · ${order.deliveryAddress}",
+                        style = MaterialTheme.typography.bodySmall
+                    )
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.e_shop.DB;
+
+import android.app.ActivityManager;  // Импортируем ActivityManager для получения лимита памяти процесса
+import android.content.ComponentCallbacks2;  // Импортируем интерфейс для получения сигналов о нехватке памяти
+import android.content.Context;  // Импортируем Context для доступа к системным сервисам
+import android.content.res.Configuration;  // Импортируем Configuration (требуется интерфейсом ComponentCallbacks)
+import android.util.Log;  // Импортируем Log для записи отчетов о размерах кэшей
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Единый реестр кэшей приложения
+ * Выдает каждому кэшу бюджет в байтах от лимита памяти процесса и при сигналах
+ * onTrimMemory/onLowMemory сжимает кэши в порядке приоритета (сначала наименее важные).
+ */
+public class CacheRegistry implements ComponentCallbacks2 {
+
+    private static final String TAG = "CacheRegistry";  // Тег для логирования
+
+    // Приоритеты кэшей: кэш с меньшим приоритетом сжимается первым
+    public static final int PRIORITY_LOW = 0;  // Легко восстанавливаемые данные (например, результаты поиска)
+    public static final int PRIORITY_NORMAL = 50;  // Данные, пересчет которых заметен пользователю
+    public static final int PRIORITY_HIGH = 100;  // Данные, нужные текущему экрану
+
+    // Доля лимита памяти процесса, которую могут занимать все кэши вместе
+    private static final int TOTAL_BUDGET_DIVISOR = 8;
+    // На устройствах с малым объемом памяти общий бюджет уменьшается вдвое
+    private static final int LOW_RAM_BUDGET_DIVISOR = 16;
+
+    /**
+     * Кэш, которым управляет реестр
+     */
+    public interface ManagedCache {
+        /**
+         * @return Имя кэша для отчетов
+         */
+        String getName();
+
+        /**
+         * @return Текущий оценочный размер кэша в байтах
+         */
+        long getSizeBytes();
+
+        /**
+         * Устанавливает постоянный лимит размера кэша
+         * @param maxBytes Лимит в байтах
+         */
+        void setMaxBytes(long maxBytes);
+
+        /**
+         * Однократно сжимает кэш до указанного размера, вытесняя наименее используемые записи
+         * @param targetBytes Целевой размер в байтах
+         */
+        void trimToBytes(long targetBytes);
+    }
+
+    /**
+     * Снимок состояния одного кэша для отчета
+     */
+    public static final class CacheInfo {
+        public final String name;  // Имя кэша
+        public final int priority;  // Приоритет кэша
+        public final long sizeBytes;  // Текущий размер в байтах
+        public final long budgetBytes;  // Выделенный бюджет в байтах
+
+        CacheInfo(String name, int priority, long sizeBytes, long budgetBytes) {
+            this.name = name;
+            this.priority = priority;
+            this.sizeBytes = sizeBytes;
+            this.budgetBytes = budgetBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s[priority=%d]: %d KiB / %d KiB",
+                    name, priority, sizeBytes / 1024, budgetBytes / 1024);
+        }
+    }
+
+    // Зарегистрированный кэш вместе с его приоритетом и бюджетом
+    private static final class Registration {
+        final ManagedCache cache;  // Кэш
+        final int priority;  // Приоритет
+        final long budgetBytes;  // Бюджет в байтах
+
+        Registration(ManagedCache cache, int priority, long budgetBytes) {
+            this.cache = cache;
+            this.priority = priority;
+            this.budgetBytes = budgetBytes;
+        }
+    }
+
+    private static CacheRegistry instance;  // Единственный экземпляр реестра на процесс
+
+    private final long totalBudgetBytes;  // Общий бюджет всех кэшей
+    private final List<Registration> registrations = new ArrayList<>();  // Кэши, отсортированные по возрастанию приоритета
+
+    /**
+     * Возвращает реестр кэшей процесса, при первом вызове подписывая его на сигналы о памяти
+     * @param context Любой контекст приложения
+     * @return Экземпляр CacheRegistry
+     */
+    public static synchronized CacheRegistry getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();  // Используем контекст приложения, чтобы не удерживать активность
+            instance = new CacheRegistry(computeTotalBudget(appContext));  // Создаем реестр с бюджетом от лимита памяти
+            appContext.registerComponentCallbacks(instance);  // Подписываемся на onTrimMemory/onLowMemory
+        }
+        return instance;
+    }
+
+    /**
+     * Конструктор реестра
+     * @param totalBudgetBytes Общий бюджет всех кэшей в байтах
+     */
+    CacheRegistry(long totalBudgetBytes) {
+        this.totalBudgetBytes = totalBudgetBytes;  // Сохраняем общий бюджет
+    }
+
+    /**
+     * Регистрирует кэш и назначает ему бюджет как долю общего бюджета
+     * Повторная регистрация того же кэша игнорируется
+     * @param cache Управляемый кэш
+     * @param priority Приоритет кэша (PRIORITY_LOW, PRIORITY_NORMAL, PRIORITY_HIGH)
+     * @param budgetShare Доля общего бюджета от 0 до 1
+     */
+    public synchronized void register(ManagedCache cache, int priority, double budgetShare) {
+        for (Registration registration : registrations) {
+            if (registration.cache == cache) return;  // Кэш уже зарегистрирован
+        }
+        long budget = (long) (totalBudgetBytes * budgetShare);  // Бюджет кэша в байтах
+        cache.setMaxBytes(budget);  // Кэш сам следит за бюджетом при добавлении записей
+        int index = 0;  // Позиция для вставки, чтобы список оставался отсортированным по приоритету
+        while (index < registrations.size() && registrations.get(index).priority <= priority) index++;
+        registrations.add(index, new Registration(cache, priority, budget));
+    }
+
+    /**
+     * Снимает кэш с учета (например, при закрытии обработчика базы, которому он принадлежит)
+     * @param cache Управляемый кэш
+     */
+    public synchronized void unregister(ManagedCache cache) {
+        for (int i = 0; i < registrations.size(); i++) {
+            if (registrations.get(i).cache == cache) {
+                registrations.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return Общий бюджет всех кэшей в байтах
+     */
+    public long getTotalBudgetBytes() {
+        return totalBudgetBytes;
+    }
+
+    /**
+     * @return Текущие размеры и бюджеты всех зарегистрированных кэшей
+     */
+    public synchronized List<CacheInfo> getReport() {
+        List<CacheInfo> report = new ArrayList<>();  // Список строк отчета
+        for (Registration registration : registrations) {
+            report.add(new CacheInfo(registration.cache.getName(), registration.priority,
+                    registration.cache.getSizeBytes(), registration.budgetBytes));
+        }
+        return Collections.unmodifiableList(report);
+    }
+
+    /**
+     * @return Суммарный текущий размер всех кэшей в байтах
+     */
+    public synchronized long getTotalSizeBytes() {
+        long total = 0;  // Суммарный размер
+        for (Registration registration : registrations) {
+            total += registration.cache.getSizeBytes();
+        }
+        return total;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_COMPLETE) {
+            trim(0.0, 0.0);  // Процесс будет убит первым: очищаем все кэши
+        } else if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            trim(0.0, 0.5);  // Очищаем второстепенные кэши, важные сжимаем вдвое
+        } else if (level >= TRIM_MEMORY_UI_HIDDEN || level == TRIM_MEMORY_RUNNING_LOW) {
+            trim(0.5, 1.0);  // Интерфейс скрыт или памяти мало: сжимаем только второстепенные кэши
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        trim(0.0, 0.0);  // Система на грани нехватки памяти: очищаем все кэши
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        // Изменение конфигурации не влияет на кэши
+    }
+
+    /**
+     * Сжимает кэши в порядке возрастания приоритета
+     * @param lowFraction Доля бюджета, оставляемая кэшам с приоритетом ниже PRIORITY_HIGH
+     * @param highFraction Доля бюджета, оставляемая кэшам с приоритетом PRIORITY_HIGH
+     */
+    synchronized void trim(double lowFraction, double highFraction) {
+        for (Registration registration : registrations) {  // Идем от наименее важных кэшей к самым важным
+            double fraction = registration.priority >= PRIORITY_HIGH ? highFraction : lowFraction;
+            registration.cache.trimToBytes((long) (registration.budgetBytes * fraction));  // Сжимаем кэш
+        }
+        Log.i(TAG, "Caches trimmed: " + getReport());  // Записываем размеры кэшей после сжатия
+    }
+
+    // Вычисляет общий бюджет кэшей от лимита памяти процесса
+    private static long computeTotalBudget(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        long memoryClassBytes = activityManager.getMemoryClass() * 1024L * 1024L;  // Лимит кучи процесса в байтах
+        int divisor = activityManager.isLowRamDevice() ? LOW_RAM_BUDGET_DIVISOR : TOTAL_BUDGET_DIVISOR;
+        return memoryClassBytes / divisor;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.e_shop.DB;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Ретранслятор изменений корзины между устройствами пользователя
+ * Принимает изменения устройства и возвращает изменения после курсора; сам ретранслятор хранит для каждого
+ * продукта запись-победителя по тем же правилам, что и CartSyncEngine, поэтому порядок доставки не важен
+ */
+public interface CartRelay {
+
+    /**
+     * Ответ ретранслятора
+     */
+    final class Exchange {
+        public final List<CartSyncEngine.Entry> changes;  // Изменения после курсора
+        public final long cursor;  // Новый курсор
+
+        public Exchange(List<CartSyncEngine.Entry> changes, long cursor) {
+            this.changes = changes;
+            this.cursor = cursor;
+        }
+    }
+
+    /**
+     * Отправляет изменения устройства и получает изменения других устройств
+     * @param userId Идентификатор пользователя
+     * @param delta Изменения, еще не отправленные с этого устройства
+     * @param cursor Курсор предыдущего обмена (0 - первый обмен)
+     * @return Изменения после курсора и новый курсор
+     * @throws IOException при ошибке связи
+     */
+    Exchange exchange(int userId, List<CartSyncEngine.Entry> delta, long cursor) throws IOException;
+}
@@ -0,0 +1,285 @@
+package com.example.e_shop.DB;
+
+import android.database.Cursor;  // Импортируем Cursor для чтения состояния корзины
+import android.database.sqlite.SQLiteDatabase;  // Импортируем SQLiteDatabase для транзакций
+import android.database.sqlite.SQLiteStatement;  // Импортируем скомпилированные выражения
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Синхронизация корзины между устройствами пользователя без конфликтов
+ * Корзина моделируется как LWW-словарь (last-writer-wins) по продуктам: для каждого продукта хранится количество
+ * (0 - надгробие удаленного товара), метка гибридных логических часов (HLC) и id устройства. Из двух записей
+ * побеждает запись с большей меткой, при равных метках - с большим id устройства, поэтому все устройства,
+ * получившие одинаковый набор изменений, приходят к одинаковой корзине независимо от порядка доставки.
+ *
+ * Локальные изменения фиксируются обработчиком корзины в той же транзакции, что и запись в UserCart
+ * (recordLocalChange, recordCartCleared), а удаление продукта синхронизацией каталога - recordProductRemoved. Синхронизация отправляет через CartRelay только записи,
+ * измененные после предыдущей отправки, и применяет полученные записи, обновляя UserCart.
+ *
+ * Метка HLC: (миллисекунды << 16) | счетчик. Она не убывает, даже если часы устройства отстали,
+ * и всегда больше меток уже полученных изменений.
+ */
+public class CartSyncEngine {
+
+    // Ключи состояния в таблице SyncState
+    private static final String STATE_DEVICE = "cart_device";  // Id устройства (случайный, создается один раз)
+    private static final String STATE_CLOCK = "cart_hlc";  // Последняя выданная или полученная метка HLC
+    private static final String STATE_SEQ = "cart_seq";  // Номер последнего локального изменения
+    private static final String STATE_PUSHED = "cart_pushed:";  // + userId: последний отправленный seq
+    private static final String STATE_CURSOR = "cart_cursor:";  // + userId: курсор ретранслятора
+
+    private static final String TABLE_CART_ENTRIES = "CartEntries";
+
+    // Изменения пользователя, еще не отправленные с этого устройства
+    static final String SQL_UNSENT = "SELECT product_id, quantity, hlc, device_id, seq FROM " + TABLE_CART_ENTRIES
+            + " WHERE user_id = ? AND seq > ? ORDER BY seq";
+    // Товары корзины, для которых еще нет записи CRDT (например, добавленные до миграции)
+    private static final String SQL_UNTRACKED = "SELECT DISTINCT uc.product_id FROM " + UserCartTableHandler.TABLE_USERCART
+            + " uc WHERE uc.user_id = ? AND NOT EXISTS (SELECT 1 FROM " + TABLE_CART_ENTRIES
+            + " ce WHERE ce.user_id = uc.user_id AND ce.product_id = uc.product_id)";
+
+    /**
+     * Запись LWW-словаря корзины
+     */
+    public static final class Entry {
+        public final int productId;  // Продукт
+        public final int quantity;  // Количество (0 - товар удален)
+        public final long hlc;  // Метка гибридных часов
+        public final long deviceId;  // Устройство, записавшее значение
+        final long seq;  // Номер локального изменения (0 - значение получено от других устройств)
+
+        public Entry(int productId, int quantity, long hlc, long deviceId) {
+            this(productId, quantity, hlc, deviceId, 0);
+        }
+
+        Entry(int productId, int quantity, long hlc, long deviceId, long seq) {
+            this.productId = productId;
+            this.quantity = quantity;
+            this.hlc = hlc;
+            this.deviceId = deviceId;
+            this.seq = seq;
+        }
+
+        /**
+         * @return true, если эта запись побеждает другую (детерминированно на всех устройствах)
+         */
+        public boolean wins(Entry other) {
+            if (hlc != other.hlc) return hlc > other.hlc;
+            return deviceId > other.deviceId;
+        }
+    }
+
+    /**
+     * Итог синхронизации
+     */
+    public static final class Result {
+        public int sent;  // Отправлено записей
+        public int received;  // Получено записей
+        public int applied;  // Полученных записей, изменивших корзину
+
+        @Override
+        public String toString() {
+            return "CartSyncEngine.Result{sent=" + sent + ", received=" + received + ", applied=" + applied + "}";
+        }
+    }
+
+    // Синхронизации в процессе не должны пересекаться: они сдвигают одни и те же водяные знаки
+    private static final Object syncLock = new Object();
+
+    private final DataBaseHandler dbHandler;  // Обработчик базы данных
+    private final CartRelay relay;  // Ретранслятор изменений
+
+    /**
+     * Конструктор синхронизации корзины
+     * @param dbHandler Обработчик базы данных
+     * @param relay Ретранслятор изменений
+     */
+    public CartSyncEngine(DataBaseHandler dbHandler, CartRelay relay) {
+        this.dbHandler = dbHandler;  // Сохраняем обработчик базы данных
+        this.relay = relay;  // Сохраняем ретранслятор
+    }
+
+    /**
+     * Обменивается изменениями корзины пользователя с другими устройствами
+     * Выполняется синхронно, вызывать нужно не из главного потока
+     * @param userId Идентификатор пользователя
+     * @return Итог синхронизации
+     * @throws IOException при ошибке связи (локальное состояние не меняется, изменения уйдут при следующей синхронизации)
+     */
+    public Result sync(int userId) throws IOException {
+        synchronized (syncLock) {
+            SQLiteDatabase db = dbHandler.getWritableDatabase();
+            trackUntracked(db, userId);
+
+            long pushed = getState(db, STATE_PUSHED + userId);
+            long cursor = getState(db, STATE_CURSOR + userId);
+            List<Entry> delta = dbHandler.queryList(SQL_UNSENT, new String[]{String.valueOf(userId), String.valueOf(pushed)},
+                    row -> new Entry(row.getInt(0), row.getInt(1), row.getLong(2), row.getLong(3), row.getLong(4)));
+            long lastSeq = delta.isEmpty() ? pushed : delta.get(delta.size() - 1).seq;
+
+            CartRelay.Exchange exchange = relay.exchange(userId, delta, cursor);  // Сеть - вне транзакции
+
+            Result result = new Result();
+            result.sent = delta.size();
+            result.received = exchange.changes.size();
+            db.beginTransaction();
+            try {
+                for (Entry remote : exchange.changes) {
+                    if (merge(db, userId, remote)) result.applied++;
+                }
+                putState(db, STATE_PUSHED + userId, lastSeq);
+                putState(db, STATE_CURSOR + userId, exchange.cursor);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            if (result.applied > 0) dbHandler.getQueryCache().invalidate(UserCartTableHandler.TABLE_USERCART);
+            return result;
+        }
+    }
+
+    /**
+     * Фиксирует текущее количество продукта в корзине как локальное изменение
+     * Вызывается обработчиком корзины внутри транзакции после записи в UserCart
+     * @param db База данных с открытой транзакцией
+     * @param userId Идентификатор пользователя
+     * @param productId Идентификатор продукта
+     */
+    static void recordLocalChange(SQLiteDatabase db, int userId, int productId) {
+        int quantity;
+        try (Cursor cursor = db.rawQuery("SELECT IFNULL(SUM(quantity), 0) FROM " + UserCartTableHandler.TABLE_USERCART
+                + " WHERE user_id = ? AND product_id = ?", new String[]{String.valueOf(userId), String.valueOf(productId)})) {
+            cursor.moveToFirst();
+            quantity = cursor.getInt(0);
+        }
+        stamp(db, userId, productId, quantity);
+    }
+
+    /**
+     * Фиксирует удаление всех товаров корзины пользователя как локальное изменение
+     * Вызывается внутри транзакции до удаления строк UserCart
+     * @param db База данных с открытой транзакцией
+     * @param userId Идентификатор пользователя
+     */
+    static void recordCartCleared(SQLiteDatabase db, int userId) {
+        List<Integer> productIds = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("SELECT DISTINCT product_id FROM " + UserCartTableHandler.TABLE_USERCART
+                + " WHERE user_id = ?", new String[]{String.valueOf(userId)})) {
+            while (cursor.moveToNext()) productIds.add(cursor.getInt(0));
+        }
+        for (int productId : productIds) stamp(db, userId, productId, 0);
+    }
+
+    /**
+     * Фиксирует удаление продукта из корзин всех пользователей (продукт удален из каталога)
+     * Вызывается внутри транзакции до удаления строк UserCart: надгробие с новой меткой часов побеждает
+     * более старые записи других устройств, поэтому слияние с ними не возвращает товар в корзину
+     * @param db База данных с открытой транзакцией
+     * @param productId Идентификатор продукта
+     */
+    static void recordProductRemoved(SQLiteDatabase db, long productId) {
+        List<Integer> userIds = new ArrayList<>();
+        String id = String.valueOf(productId);
+        try (Cursor cursor = db.rawQuery("SELECT user_id FROM " + UserCartTableHandler.TABLE_USERCART + " WHERE product_id = ?"
+                + " UNION SELECT user_id FROM " + TABLE_CART_ENTRIES + " WHERE product_id = ? AND quantity > 0", new String[]{id, id})) {
+            while (cursor.moveToNext()) userIds.add(cursor.getInt(0));
+        }
+        for (int userId : userIds) stamp(db, userId, (int) productId, 0);
+    }
+
+    // Создает записи для товаров корзины, которые появились без recordLocalChange
+    private static void trackUntracked(SQLiteDatabase db, int userId) {
+        db.beginTransaction();
+        try {
+            List<Integer> productIds = new ArrayList<>();
+            try (Cursor cursor = db.rawQuery(SQL_UNTRACKED, new String[]{String.valueOf(userId)})) {
+                while (cursor.moveToNext()) productIds.add(cursor.getInt(0));
+            }
+            for (int productId : productIds) recordLocalChange(db, userId, productId);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Записывает локальное значение с новой меткой часов и номером изменения
+    private static void stamp(SQLiteDatabase db, int userId, int productId, int quantity) {
+        long hlc = tick(db);
+        long seq = getState(db, STATE_SEQ) + 1;
+        putState(db, STATE_SEQ, seq);
+        writeEntry(db, userId, new Entry(productId, quantity, hlc, deviceId(db), seq));
+    }
+
+    // Применяет полученную запись, если она побеждает локальную; возвращает true, если корзина изменилась
+    private static boolean merge(SQLiteDatabase db, int userId, Entry remote) {
+        observe(db, remote.hlc);
+        Entry local = null;
+        try (Cursor cursor = db.rawQuery("SELECT product_id, quantity, hlc, device_id, seq FROM " + TABLE_CART_ENTRIES
+                + " WHERE user_id = ? AND product_id = ?", new String[]{String.valueOf(userId), String.valueOf(remote.productId)})) {
+            if (cursor.moveToFirst()) {
+                local = new Entry(cursor.getInt(0), cursor.getInt(1), cursor.getLong(2), cursor.getLong(3), cursor.getLong(4));
+            }
+        }
+        if (local != null && !remote.wins(local)) return false;  // Локальное значение новее (или то же самое)
+
+        writeEntry(db, userId, remote);  // seq = 0: полученное значение не отправляется обратно
+        // Материализуем значение в таблице корзины, которую читают экраны
+        String[] args = {String.valueOf(userId), String.valueOf(remote.productId)};
+        db.execSQL("DELETE FROM " + UserCartTableHandler.TABLE_USERCART + " WHERE user_id = ? AND product_id = ?", args);
+        if (remote.quantity > 0) {
+            db.execSQL("INSERT INTO " + UserCartTableHandler.TABLE_USERCART + " (user_id, product_id, quantity) VALUES (?, ?, ?)",
+                    new Object[]{userId, remote.productId, remote.quantity});
+        }
+        return local == null || local.quantity != remote.quantity;
+    }
+
+    // Вставляет или заменяет запись словаря
+    private static void writeEntry(SQLiteDatabase db, int userId, Entry entry) {
+        db.execSQL("INSERT OR REPLACE INTO " + TABLE_CART_ENTRIES + " (user_id, product_id, quantity, hlc, device_id, seq) VALUES (?, ?, ?, ?, ?, ?)",
+                new Object[]{userId, entry.productId, entry.quantity, entry.hlc, entry.deviceId, entry.seq});
+    }
+
+    // Выдает новую метку HLC: больше всех выданных и полученных, не меньше текущего времени
+    private static long tick(SQLiteDatabase db) {
+        long next = Math.max(getState(db, STATE_CLOCK) + 1, System.currentTimeMillis() << 16);
+        putState(db, STATE_CLOCK, next);
+        return next;
+    }
+
+    // Учитывает полученную метку, чтобы следующие локальные изменения были новее нее
+    private static void observe(SQLiteDatabase db, long remoteHlc) {
+        if (remoteHlc > getState(db, STATE_CLOCK)) putState(db, STATE_CLOCK, remoteHlc);
+    }
+
+    // Id устройства (создается при первом обращении)
+    private static long deviceId(SQLiteDatabase db) {
+        long id = getState(db, STATE_DEVICE);
+        if (id == 0) {
+            id = new SecureRandom().nextLong() & Long.MAX_VALUE;  // Положительный, чтобы 0 означал "еще не создан"
+            if (id == 0) id = 1;
+            putState(db, STATE_DEVICE, id);
+        }
+        return id;
+    }
+
+    private static long getState(SQLiteDatabase db, String name) {
+        try (Cursor cursor = db.rawQuery("SELECT version FROM SyncState WHERE name = ?", new String[]{name})) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    private static void putState(SQLiteDatabase db, String name, long value) {
+        SQLiteStatement statement = db.compileStatement("INSERT OR REPLACE INTO SyncState (name, version) VALUES (?, ?)");
+        try {
+            statement.bindString(1, name);
+            statement.bindLong(2, value);
+            statement.executeInsert();
+        } finally {
+            statement.close();
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package com.example.e_shop.DB;
+
+import android.database.Cursor;  // Импортируем Cursor для чтения существующих категорий
+import android.database.sqlite.SQLiteDatabase;  // Импортируем SQLiteDatabase для транзакций
+import android.database.sqlite.SQLiteStatement;  // Импортируем скомпилированные выражения для пакетной записи
+import android.os.SystemClock;  // Импортируем SystemClock для замера времени импорта
+import android.util.JsonReader;  // Импортируем потоковый парсер JSON
+import android.util.JsonToken;  // Импортируем типы токенов JSON
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Потоковый импорт каталога продуктов из CSV или JSON
+ * Файл читается построчно (CSV) или по объектам (JSON), поэтому память не зависит от его размера.
+ * Названия категорий сопоставляются с id (недостающие категории создаются), продукты сопоставляются
+ * по названию: существующие обновляются, новые вставляются. Пустые и отсутствующие в файле поля
+ * существующего продукта не меняют, поэтому файл из части колонок (например, name и price) обновляет
+ * только их; новый продукт без остатка получает нулевой остаток. Запись идет скомпилированными
+ * выражениями пачками по BATCH_SIZE строк в одной транзакции; после каждой пачки вызывается ProgressListener.
+ *
+ * Формат CSV: первая строка - заголовок с колонками name, description, price, quantity, image_url, category
+ * в любом порядке (name и price обязательны), значения в кавычках по RFC 4180.
+ * Формат JSON: массив объектов с теми же полями.
+ *
+ * Файл изменений остатков (importStockDeltaCsv): CSV с колонками product_id и delta; каждая строка - одно
+ * выражение UPDATE по первичному ключу, строки пишутся теми же пачками, кэш сбрасывается один раз в конце.
+ */
+public class CatalogImporter {
+
+    // Количество строк в одной транзакции
+    private static final int BATCH_SIZE = 500;
+    // Количество сохраняемых сообщений об ошибках строк
+    private static final int MAX_ERRORS = 20;
+
+    // Колонки файла импорта
+    static final String FIELD_NAME = "name";
+    static final String FIELD_DESCRIPTION = "description";
+    static final String FIELD_PRICE = "price";
+    static final String FIELD_QUANTITY = "quantity";
+    static final String FIELD_IMAGE_URL = "image_url";
+    static final String FIELD_CATEGORY = "category";
+    // Колонки файла изменений остатков
+    static final String FIELD_PRODUCT_ID = "product_id";
+    static final String FIELD_DELTA = "delta";
+
+    // Обновление существующего продукта по названию (использует индекс idx_products_name);
+    // непривязанный (NULL) параметр оставляет значение колонки без изменений
+    static final String SQL_UPDATE_BY_NAME = "UPDATE " + ProductsTableHandler.TABLE_PRODUCTS
+            + " SET description = COALESCE(?, description), price = ?, quantity = COALESCE(?, quantity),"
+            + " image_url = COALESCE(?, image_url), category_id = COALESCE(?, category_id) WHERE name = ?";
+    // Изменение остатка продукта на delta (остаток не опускается ниже нуля)
+    static final String SQL_ADJUST_STOCK = "UPDATE " + ProductsTableHandler.TABLE_PRODUCTS
+            + " SET quantity = MAX(0, quantity + ?) WHERE id = ?";
+    // Вставка нового продукта
+    static final String SQL_INSERT = "INSERT INTO " + ProductsTableHandler.TABLE_PRODUCTS
+            + " (description, price, quantity, image_url, category_id, name) VALUES (?, ?, ?, ?, ?, ?)";
+
+    /**
+     * Получатель сведений о ходе импорта (вызывается в потоке импорта после каждой пачки)
+     */
+    public interface ProgressListener {
+        void onProgress(Result progress);
+    }
+
+    /**
+     * Итог или промежуточное состояние импорта
+     */
+    public static final class Result {
+        public int rowsRead;  // Прочитано строк данных
+        public int inserted;  // Вставлено новых продуктов
+        public int updated;  // Обновлено существующих продуктов
+        public int skipped;  // Пропущено некорректных строк
+        public int categoriesCreated;  // Создано новых категорий
+        public long elapsedMillis;  // Время импорта
+        public final List<String> errors = new ArrayList<>();  // Первые MAX_ERRORS сообщений об ошибках
+
+        @Override
+        public String toString() {
+            return "CatalogImporter.Result{read=" + rowsRead + ", inserted=" + inserted + ", updated=" + updated
+                    + ", skipped=" + skipped + ", categoriesCreated=" + categoriesCreated + ", elapsedMillis=" + elapsedMillis + "}";
+        }
+    }
+
+    private final DataBaseHandler dbHandler;  // Обработчик базы данных
+
+    // Состояние текущего импорта
+    private SQLiteDatabase db;  // База на время импорта
+    private SQLiteStatement updateStatement;  // Обновление по названию
+    private SQLiteStatement insertStatement;  // Вставка продукта
+    private SQLiteStatement insertCategoryStatement;  // Вставка категории
+    private SQLiteStatement adjustStockStatement;  // Изменение остатка по id
+    private Map<String, Long> categoryIds;  // Категории по нормализованному названию
+    private Result result;  // Накопленный результат
+    private ProgressListener listener;  // Получатель прогресса
+    private int rowsInBatch;  // Строк в текущей транзакции
+
+    /**
+     * Конструктор импортера
+     * @param dbHandler Обработчик базы данных
+     */
+    public CatalogImporter(DataBaseHandler dbHandler) {
+        this.dbHandler = dbHandler;  // Сохраняем обработчик базы данных
+    }
+
+    /**
+     * Импортирует каталог из CSV (UTF-8)
+     * Выполняется синхронно, вызывать нужно не из главного потока
+     * @param input Поток с содержимым файла (закрывает вызывающий код)
+     * @param listener Получатель прогресса (может быть null)
+     * @return Итог импорта
+     * @throws IOException при ошибке чтения или отсутствии обязательных колонок
+     */
+    public Result importCsv(InputStream input, ProgressListener listener) throws IOException {
+        CsvReader reader = new CsvReader(new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8)));
+        List<String> header = reader.readRecord();  // Заголовок с названиями колонок
+        if (header == null) return new Result();  // Пустой файл: импортировать нечего
+        Map<String, Integer> columns = new HashMap<>();  // Индекс колонки по названию
+        for (int i = 0; i < header.size(); i++) columns.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+        if (!columns.containsKey(FIELD_NAME) || !columns.containsKey(FIELD_PRICE)) {
+            throw new IOException("CSV header must contain '" + FIELD_NAME + "' and '" + FIELD_PRICE + "' columns");
+        }
+
+        begin(listener);
+        boolean success = false;
+        try {
+            List<String> record;
+            Map<String, String> row = new HashMap<>();  // Переиспользуемая строка
+            while ((record = reader.readRecord()) != null) {
+                if (record.size() == 1 && record.get(0).isEmpty()) continue;  // Пустая строка
+                row.clear();
+                for (Map.Entry<String, Integer> column : columns.entrySet()) {
+                    int index = column.getValue();
+                    if (index < record.size()) row.put(column.getKey(), record.get(index));
+                }
+                processRow(row, "line " + reader.getLineNumber());
+            }
+            success = true;
+        } finally {
+            end(success);
+        }
+        return result;
+    }
+
+    /**
+     * Импортирует каталог из JSON-массива объектов (UTF-8)
+     * Выполняется синхронно, вызывать нужно не из главного потока
+     * @param input Поток с содержимым файла (закрывает вызывающий код)
+     * @param listener Получатель прогресса (может быть null)
+     * @return Итог импорта
+     * @throws IOException при ошибке чтения или синтаксиса JSON
+     */
+    public Result importJson(InputStream input, ProgressListener listener) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        begin(listener);
+        boolean success = false;
+        try {
+            Map<String, String> row = new HashMap<>();  // Переиспользуемая строка
+            int index = 0;  // Номер объекта в массиве
+            reader.beginArray();
+            while (reader.hasNext()) {
+                row.clear();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String field = reader.nextName().toLowerCase(Locale.ROOT);
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();  // Пустое значение поля
+                    } else if (reader.peek() == JsonToken.BEGIN_ARRAY || reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        reader.skipValue();  // Вложенные структуры не поддерживаются
+                    } else {
+                        row.put(field, reader.nextString());  // Числа тоже читаются строкой и разбираются в processRow
+                    }
+                }
+                reader.endObject();
+                processRow(row, "item " + index++);
+            }
+            reader.endArray();
+            success = true;
+        } finally {
+            end(success);
+        }
+        return result;
+    }
+
+    /**
+     * Применяет изменения остатков из CSV (UTF-8) с колонками product_id и delta
+     * Строки с неизвестным продуктом или неверными значениями пропускаются и попадают в errors.
+     * Выполняется синхронно, вызывать нужно не из главного потока
+     * @param input Поток с содержимым файла (закрывает вызывающий код)
+     * @param listener Получатель прогресса (может быть null)
+     * @return Итог: updated - измененные продукты, skipped - пропущенные строки
+     * @throws IOException при ошибке чтения или отсутствии обязательных колонок
+     */
+    public Result importStockDeltaCsv(InputStream input, ProgressListener listener) throws IOException {
+        CsvReader reader = new CsvReader(new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8)));
+        List<String> header = reader.readRecord();  // Заголовок с названиями колонок
+        if (header == null) return new Result();  // Пустой файл: применять нечего
+        int idColumn = -1, deltaColumn = -1;
+        for (int i = 0; i < header.size(); i++) {
+            String column = header.get(i).trim().toLowerCase(Locale.ROOT);
+            if (column.equals(FIELD_PRODUCT_ID)) idColumn = i;
+            if (column.equals(FIELD_DELTA)) deltaColumn = i;
+        }
+        if (idColumn < 0 || deltaColumn < 0) {
+            throw new IOException("CSV header must contain '" + FIELD_PRODUCT_ID + "' and '" + FIELD_DELTA + "' columns");
+        }
+
+        begin(listener);
+        boolean success = false;
+        try {
+            List<String> record;
+            while ((record = reader.readRecord()) != null) {
+                if (record.size() == 1 && record.get(0).isEmpty()) continue;  // Пустая строка
+                result.rowsRead++;
+                Integer productId = idColumn < record.size() ? parseInt(record.get(idColumn).trim()) : null;
+                Integer delta = deltaColumn < record.size() ? parseInt(record.get(deltaColumn).trim()) : null;
+                if (productId != null && delta != null) {
+                    adjustStockStatement.bindLong(1, delta);
+                    adjustStockStatement.bindLong(2, productId);
+                    if (adjustStockStatement.executeUpdateDelete() > 0) {
+                        result.updated++;
+                        rowWritten();
+                        continue;
+                    }
+                }
+                result.skipped++;
+                if (result.errors.size() < MAX_ERRORS) {
+                    result.errors.add("line " + reader.getLineNumber() + ": invalid or unknown product_id or delta");
+                }
+            }
+            success = true;
+        } finally {
+            end(success);
+        }
+        return result;
+    }
+
+    // Подготавливает состояние импорта и открывает первую транзакцию
+    private void begin(ProgressListener listener) {
+        this.listener = listener;
+        result = new Result();
+        result.elapsedMillis = SystemClock.elapsedRealtime();  // Время начала (заменяется длительностью в end)
+        db = dbHandler.getWritableDatabase();
+        updateStatement = db.compileStatement(SQL_UPDATE_BY_NAME);
+        insertStatement = db.compileStatement(SQL_INSERT);
+        insertCategoryStatement = db.compileStatement("INSERT INTO " + DataBaseHandler.TABLE_CATEGORIES + " (name) VALUES (?)");
+        adjustStockStatement = db.compileStatement(SQL_ADJUST_STOCK);
+        categoryIds = loadCategories();
+        rowsInBatch = 0;
+        db.beginTransaction();
+    }
+
+    // Фиксирует последнюю пачку (если импорт не прерван ошибкой) и освобождает ресурсы
+    private void end(boolean success) {
+        try {
+            if (success) db.setTransactionSuccessful();
+            db.endTransaction();
+        } finally {
+            updateStatement.close();
+            insertStatement.close();
+            insertCategoryStatement.close();
+            adjustStockStatement.close();
+            db = null;
+            categoryIds = null;
+            // Уже зафиксированные пачки видны всем читателям: сбрасываем кэшированные списки
+            // (корзины с продуктами кэшируются в зависимости от таблицы продуктов и сбрасываются тем же вызовом)
+            dbHandler.getQueryCache().invalidate(ProductsTableHandler.TABLE_PRODUCTS, DataBaseHandler.TABLE_CATEGORIES);
+        }
+        result.elapsedMillis = SystemClock.elapsedRealtime() - result.elapsedMillis;  // Время начала заменяется длительностью
+        if (listener != null) listener.onProgress(result);
+    }
+
+    // Проверяет строку файла и обновляет либо вставляет продукт
+    private void processRow(Map<String, String> row, String position) {
+        result.rowsRead++;
+        String name = trimToNull(row.get(FIELD_NAME));
+        Double price = parseDouble(row.get(FIELD_PRICE));
+        String quantityText = trimToNull(row.get(FIELD_QUANTITY));
+        Integer quantity = quantityText == null ? null : parseInt(quantityText);  // null - остаток не указан
+        if (name == null || price == null || price < 0 || (quantityText != null && (quantity == null || quantity < 0))) {
+            result.skipped++;
+            if (result.errors.size() < MAX_ERRORS) result.errors.add(position + ": invalid name, price or quantity");
+            return;
+        }
+        String description = trimToNull(row.get(FIELD_DESCRIPTION));
+        String imageUrl = trimToNull(row.get(FIELD_IMAGE_URL));
+        Long categoryId = resolveCategory(trimToNull(row.get(FIELD_CATEGORY)));
+
+        // Сначала пробуем обновить продукт с таким названием, при отсутствии - вставляем
+        bind(updateStatement, description, price, quantity, imageUrl, categoryId, name);
+        if (updateStatement.executeUpdateDelete() > 0) {
+            result.updated++;
+        } else {
+            bind(insertStatement, description, price, quantity == null ? Integer.valueOf(0) : quantity, imageUrl, categoryId, name);
+            insertStatement.executeInsert();
+            result.inserted++;
+        }
+        rowWritten();
+    }
+
+    // Учитывает записанную строку и фиксирует пачку, когда она заполнена
+    private void rowWritten() {
+        if (++rowsInBatch >= BATCH_SIZE) {  // Пачка заполнена: фиксируем и начинаем следующую
+            db.setTransactionSuccessful();
+            db.endTransaction();
+            db.beginTransaction();
+            rowsInBatch = 0;
+            if (listener != null) listener.onProgress(result);
+        }
+    }
+
+    // Привязывает значения к выражению обновления или вставки (одинаковый порядок параметров, null остается NULL)
+    private static void bind(SQLiteStatement statement, String description, double price, Integer quantity,
+                             String imageUrl, Long categoryId, String name) {
+        statement.clearBindings();
+        if (description != null) statement.bindString(1, description);
+        statement.bindDouble(2, price);
+        if (quantity != null) statement.bindLong(3, quantity);
+        if (imageUrl != null) statement.bindString(4, imageUrl);
+        if (categoryId != null) statement.bindLong(5, categoryId);
+        statement.bindString(6, name);
+    }
+
+    // Возвращает id категории по названию, создавая категорию при необходимости
+    private Long resolveCategory(String name) {
+        if (name == null) return null;  // Продукт без категории
+        String key = name.toLowerCase(Locale.ROOT);
+        Long id = categoryIds.get(key);
+        if (id == null) {
+            insertCategoryStatement.bindString(1, name);
+            id = insertCategoryStatement.executeInsert();
+            categoryIds.put(key, id);
+            result.categoriesCreated++;
+        }
+        return id;
+    }
+
+    // Загружает существующие категории
+    private Map<String, Long> loadCategories() {
+        Map<String, Long> ids = new HashMap<>();
+        Cursor cursor = db.rawQuery("SELECT id, name FROM " + DataBaseHandler.TABLE_CATEGORIES, null);
+        try {
+            while (cursor.moveToNext()) ids.put(cursor.getString(1).trim().toLowerCase(Locale.ROOT), cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    private static String trimToNull(String value) {
+        if (value == null) return null;
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    private static Double parseDouble(String value) {
+        try {
+            return value == null ? null : Double.valueOf(value.trim().replace(',', '.'));  // Допускаем десятичную запятую
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Integer parseInt(String value) {
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            Double number = parseDouble(value);  // JSON может содержать количество как 5.0
+            return number == null || number != Math.floor(number) ? null : number.intValue();
+        }
+    }
+
+    /**
+     * Потоковое чтение записей CSV по RFC 4180 (кавычки, удвоенные кавычки, переводы строк внутри кавычек)
+     */
+    static final class CsvReader {
+        private final Reader reader;  // Источник символов
+        private int lineNumber;  // Номер строки файла, на которой закончилась последняя запись
+        private int pending = -2;  // Прочитанный наперед символ (-2 - нет)
+
+        CsvReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        int getLineNumber() {
+            return lineNumber;
+        }
+
+        /**
+         * @return Поля следующей записи или null в конце файла
+         */
+        List<String> readRecord() throws IOException {
+            int c = read();
+            if (c == -1) return null;
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;  // Внутри кавычек
+            while (true) {
+                if (quoted) {
+                    if (c == -1) throw new IOException("Unterminated quoted field at line " + (lineNumber + 1));
+                    if (c == '"') {
+                        int next = read();
+                        if (next == '"') {
+                            field.append('"');  // Удвоенная кавычка внутри поля
+                        } else {
+                            quoted = false;
+                            c = next;
+                            continue;
+                        }
+                    } else {
+                        if (c == '\n') lineNumber++;
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\r' || c == '\n' || c == -1) {
+                    if (c == '\r') {
+                        int next = read();
+                        if (next != '\n') pending = next;  // Одиночный \r тоже завершает строку
+                    }
+                    if (c != -1) lineNumber++;
+                    fields.add(field.toString());
+                    return fields;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        private int read() throws IOException {
+            if (pending != -2) {
+                int c = pending;
+                pending = -2;
+                return c;
+            }
+            return reader.read();
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package com.example.e_shop.DB;
+
+import android.database.Cursor;  // Импортируем Cursor для чтения состояния синхронизации
+import android.database.sqlite.SQLiteDatabase;  // Импортируем SQLiteDatabase для транзакций
+import android.database.sqlite.SQLiteStatement;  // Импортируем скомпилированные выражения для применения изменений
+import android.os.SystemClock;  // Импортируем SystemClock для замера времени синхронизации
+import android.util.JsonReader;  // Импортируем потоковый парсер JSON
+import android.util.JsonToken;  // Импортируем типы токенов JSON
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Инкрементальная синхронизация каталога (категории и продукты) с сервером
+ * Клиент запрашивает только изменения после последней полученной версии:
+ * GET {baseUrl}/catalog/changes?since={версия}&limit={размер страницы}
+ * Ответ:
+ * {"version": 42, "has_more": false,
+ *  "categories": [{"id": 1, "name": "...", "version": 40, "deleted": false}],
+ *  "products": [{"id": 7, "name": "...", "description": "...", "price": 9.5, "quantity": 3, "image_url": "...",
+ *                "category_id": 1, "attributes": {"Бренд": "Apple", "Память": "128 ГБ"}, "version": 41, "deleted": false}]}
+ * Поле attributes необязательно: если его нет, характеристики продукта не меняются.
+ * Каждая страница разбирается потоково и применяется одной транзакцией вместе с новой версией в SyncState,
+ * поэтому прерванная синхронизация не оставляет частично примененных изменений. Строка меняется, только если
+ * ее версия новее локальной, так что повторная доставка страницы ничего не портит.
+ * Удаленный продукт убирается из корзин с надгробием CartSyncEngine, чтобы синхронизация корзины с другими
+ * устройствами не вернула его. Вместе с удаленной категорией удаляются ее продукты; если сервер перенес
+ * продукт в другую категорию, изменение продукта с новой версией вставит его заново.
+ */
+public class CatalogSyncEngine {
+
+    // Имя набора данных каталога в таблице SyncState
+    static final String SYNC_NAME = "catalog";
+    // Количество изменений на странице ответа
+    private static final int PAGE_SIZE = 1000;
+    // Таймауты соединения и чтения
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+    private static final int READ_TIMEOUT_MILLIS = 30_000;
+    // Ограничение числа страниц за одну синхронизацию (защита от сервера, который всегда отвечает has_more)
+    private static final int MAX_PAGES = 1000;
+
+    private static final String TABLE_SYNC_STATE = "SyncState";
+
+    // Обновление и вставка продукта с проверкой версии
+    static final String SQL_UPDATE_PRODUCT = "UPDATE " + ProductsTableHandler.TABLE_PRODUCTS
+            + " SET name = ?, description = ?, price = ?, quantity = ?, image_url = ?, category_id = ?, version = ? WHERE id = ? AND version < ?";
+    private static final String SQL_INSERT_PRODUCT = "INSERT OR IGNORE INTO " + ProductsTableHandler.TABLE_PRODUCTS
+            + " (name, description, price, quantity, image_url, category_id, version, id) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    static final String SQL_DELETE_PRODUCT = "DELETE FROM " + ProductsTableHandler.TABLE_PRODUCTS + " WHERE id = ? AND version < ?";
+    // Удаленный продукт убирается из корзин пользователей (после надгробий CartSyncEngine.recordProductRemoved)
+    private static final String SQL_DELETE_PRODUCT_FROM_CARTS = "DELETE FROM " + UserCartTableHandler.TABLE_USERCART + " WHERE product_id = ?";
+    // Обновление и вставка категории с проверкой версии
+    static final String SQL_UPDATE_CATEGORY = "UPDATE " + DataBaseHandler.TABLE_CATEGORIES + " SET name = ?, version = ? WHERE id = ? AND version < ?";
+    private static final String SQL_INSERT_CATEGORY = "INSERT OR IGNORE INTO " + DataBaseHandler.TABLE_CATEGORIES + " (name, version, id) VALUES (?, ?, ?)";
+    private static final String SQL_DELETE_CATEGORY = "DELETE FROM " + DataBaseHandler.TABLE_CATEGORIES + " WHERE id = ? AND version < ?";
+    // Продукты удаленной категории (индекс idx_products_category)
+    static final String SQL_CATEGORY_PRODUCTS = "SELECT id FROM " + ProductsTableHandler.TABLE_PRODUCTS + " WHERE category_id = ?";
+    private static final String SQL_DELETE_PRODUCT_BY_ID = "DELETE FROM " + ProductsTableHandler.TABLE_PRODUCTS + " WHERE id = ?";
+
+    /**
+     * Итог синхронизации
+     */
+    public static final class Result {
+        public long fromVersion;  // Версия до синхронизации
+        public long version;  // Версия после синхронизации
+        public int pages;  // Получено страниц
+        public int categoriesChanged;  // Вставлено или обновлено категорий
+        public int productsChanged;  // Вставлено или обновлено продуктов
+        public int deleted;  // Удалено строк каталога
+        public long elapsedMillis;  // Время синхронизации
+
+        @Override
+        public String toString() {
+            return "CatalogSyncEngine.Result{version=" + fromVersion + "->" + version + ", pages=" + pages
+                    + ", categories=" + categoriesChanged + ", products=" + productsChanged + ", deleted=" + deleted
+                    + ", elapsedMillis=" + elapsedMillis + "}";
+        }
+    }
+
+    // Синхронизации разных экземпляров не должны пересекаться: они пишут одну и ту же версию
+    private static final Object syncLock = new Object();
+
+    private final DataBaseHandler dbHandler;  // Обработчик базы данных
+    private final String baseUrl;  // Адрес сервера без завершающего '/'
+
+    /**
+     * Конструктор синхронизации
+     * @param dbHandler Обработчик базы данных
+     * @param baseUrl Адрес сервера каталога (например, https://shop.example.com/api)
+     */
+    public CatalogSyncEngine(DataBaseHandler dbHandler, String baseUrl) {
+        this.dbHandler = dbHandler;  // Сохраняем обработчик базы данных
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    /**
+     * Загружает и применяет все изменения каталога после последней синхронизации
+     * Выполняется синхронно, вызывать нужно не из главного потока
+     * @return Итог синхронизации
+     * @throws IOException при ошибке сети, ответе не 200 или некорректном JSON (уже примененные страницы сохраняются)
+     */
+    public Result sync() throws IOException {
+        synchronized (syncLock) {
+            Result result = new Result();
+            long start = SystemClock.elapsedRealtime();
+            result.fromVersion = result.version = getSyncedVersion();
+            Set<String> changedTables = new HashSet<>();  // Таблицы, кэш которых нужно сбросить
+            try {
+                boolean hasMore = true;
+                while (hasMore && result.pages < MAX_PAGES) {
+                    hasMore = fetchAndApplyPage(result, changedTables);
+                    result.pages++;
+                }
+            } finally {
+                // Сбрасываем кэш и при ошибке: предыдущие страницы уже зафиксированы
+                if (!changedTables.isEmpty()) dbHandler.getQueryCache().invalidate(changedTables.toArray(new String[0]));
+                result.elapsedMillis = SystemClock.elapsedRealtime() - start;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @return Последняя примененная версия каталога (0 - синхронизации еще не было)
+     */
+    public long getSyncedVersion() {
+        SQLiteDatabase db = dbHandler.getReadableDatabase();
+        try (Cursor cursor = db.rawQuery("SELECT version FROM " + TABLE_SYNC_STATE + " WHERE name = ?", new String[]{SYNC_NAME})) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    // Запрашивает одну страницу изменений и применяет ее; возвращает has_more
+    private boolean fetchAndApplyPage(Result result, Set<String> changedTables) throws IOException {
+        URL url = new URL(baseUrl + "/catalog/changes?since=" + result.version + "&limit=" + PAGE_SIZE);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setRequestProperty("Accept", "application/json");
+        try {
+            int code = connection.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK) throw new IOException("Catalog sync failed: HTTP " + code);
+            try (InputStream input = connection.getInputStream()) {
+                return applyPage(input, result, changedTables);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    // Разбирает страницу и применяет ее одной транзакцией; при любой ошибке транзакция откатывается
+    private boolean applyPage(InputStream input, Result result, Set<String> changedTables) throws IOException {
+        SQLiteDatabase db = dbHandler.getWritableDatabase();
+        PageApplier page = new PageApplier(db);
+        JsonReader reader = new JsonReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        long version = -1;
+        boolean hasMore = false;
+        db.beginTransaction();
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if (field.equals("version")) {
+                    version = reader.nextLong();
+                } else if (field.equals("has_more")) {
+                    hasMore = reader.nextBoolean();
+                } else if (field.equals("categories")) {
+                    reader.beginArray();
+                    while (reader.hasNext()) page.applyCategory(reader);
+                    reader.endArray();
+                } else if (field.equals("products")) {
+                    reader.beginArray();
+                    while (reader.hasNext()) page.applyProduct(reader);
+                    reader.endArray();
+                } else {
+                    reader.skipValue();  // Неизвестные поля оставлены для совместимости с новыми версиями сервера
+                }
+            }
+            reader.endObject();
+            if (version < result.version) throw new IOException("Catalog sync response has no valid version");
+            // Версия фиксируется в той же транзакции, что и изменения
+            SQLiteStatement state = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_SYNC_STATE + " (name, version) VALUES (?, ?)");
+            state.bindString(1, SYNC_NAME);
+            state.bindLong(2, version);
+            state.executeInsert();
+            state.close();
+            db.setTransactionSuccessful();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Malformed catalog sync response", e);  // JsonReader сообщает о неверной структуре так
+        } finally {
+            db.endTransaction();
+            page.close();
+        }
+
+        long previousVersion = result.version;
+        result.version = version;
+        result.categoriesChanged += page.categoriesChanged;
+        result.productsChanged += page.productsChanged;
+        result.deleted += page.deleted;
+        if (page.categoriesChanged > 0 || page.categoriesDeleted) changedTables.add(DataBaseHandler.TABLE_CATEGORIES);
+        if (page.productsChanged > 0 || page.productsDeleted) {
+            changedTables.add(ProductsTableHandler.TABLE_PRODUCTS);
+            changedTables.add(UserCartTableHandler.TABLE_USERCART);  // Корзина показывает название и цену продукта
+        }
+        if (page.attributesChanged || page.productsDeleted) {
+            for (String table : ProductAttributesTableHandler.ATTRIBUTE_TABLES) changedTables.add(table);
+        }
+        // Страница с has_more, но без продвижения версии, зациклила бы синхронизацию: считаем ее последней
+        return hasMore && version > previousVersion;
+    }
+
+    // Применение строк одной страницы скомпилированными выражениями
+    private static final class PageApplier {
+        final SQLiteDatabase db;
+        final SQLiteStatement updateProduct;
+        final SQLiteStatement insertProduct;
+        final SQLiteStatement deleteProduct;
+        final SQLiteStatement deleteProductById;
+        final SQLiteStatement deleteFromCarts;
+        final SQLiteStatement updateCategory;
+        final SQLiteStatement insertCategory;
+        final SQLiteStatement deleteCategory;
+        final ProductAttributesTableHandler.Writer attributeWriter;
+        int categoriesChanged;  // Вставлено или обновлено категорий
+        int productsChanged;  // Вставлено или обновлено продуктов
+        int deleted;  // Удалено строк
+        boolean categoriesDeleted;  // Были ли удалены категории
+        boolean productsDeleted;  // Были ли удалены продукты
+        boolean attributesChanged;  // Были ли изменены характеристики продуктов
+
+        PageApplier(SQLiteDatabase db) {
+            this.db = db;
+            updateProduct = db.compileStatement(SQL_UPDATE_PRODUCT);
+            insertProduct = db.compileStatement(SQL_INSERT_PRODUCT);
+            deleteProduct = db.compileStatement(SQL_DELETE_PRODUCT);
+            deleteProductById = db.compileStatement(SQL_DELETE_PRODUCT_BY_ID);
+            deleteFromCarts = db.compileStatement(SQL_DELETE_PRODUCT_FROM_CARTS);
+            updateCategory = db.compileStatement(SQL_UPDATE_CATEGORY);
+            insertCategory = db.compileStatement(SQL_INSERT_CATEGORY);
+            deleteCategory = db.compileStatement(SQL_DELETE_CATEGORY);
+            attributeWriter = new ProductAttributesTableHandler.Writer(db);
+        }
+
+        // Читает объект категории и применяет его
+        void applyCategory(JsonReader reader) throws IOException {
+            long id = -1, version = -1;
+            String name = null;
+            boolean isDeleted = false;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                } else if (field.equals("id")) {
+                    id = reader.nextLong();
+                } else if (field.equals("version")) {
+                    version = reader.nextLong();
+                } else if (field.equals("name")) {
+                    name = reader.nextString();
+                } else if (field.equals("deleted")) {
+                    isDeleted = reader.nextBoolean();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (id < 0 || version < 0 || (!isDeleted && name == null)) throw new IOException("Invalid category in sync response");
+
+            if (isDeleted) {
+                deleteCategory.bindLong(1, id);
+                deleteCategory.bindLong(2, version);
+                if (deleteCategory.executeUpdateDelete() > 0) {
+                    deleted++;
+                    categoriesDeleted = true;
+                    removeCategoryProducts(id);
+                }
+                return;
+            }
+            updateCategory.bindString(1, name);
+            updateCategory.bindLong(2, version);
+            updateCategory.bindLong(3, id);
+            updateCategory.bindLong(4, version);
+            if (updateCategory.executeUpdateDelete() > 0) {
+                categoriesChanged++;
+                return;
+            }
+            insertCategory.bindString(1, name);
+            insertCategory.bindLong(2, version);
+            insertCategory.bindLong(3, id);
+            if (insertCategory.executeInsert() != -1) categoriesChanged++;  // -1: строка есть и не старше полученной
+        }
+
+        // Читает объект продукта и применяет его
+        void applyProduct(JsonReader reader) throws IOException {
+            long id = -1, version = -1;
+            String name = null, description = null, imageUrl = null;
+            double price = -1;
+            long quantity = 0;
+            Long categoryId = null;
+            Map<String, String> attributes = null;  // null - поле отсутствует, характеристики не меняются
+            boolean isDeleted = false;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                switch (field) {
+                    case "id": id = reader.nextLong(); break;
+                    case "version": version = reader.nextLong(); break;
+                    case "name": name = reader.nextString(); break;
+                    case "description": description = reader.nextString(); break;
+                    case "price": price = reader.nextDouble(); break;
+                    case "quantity": quantity = reader.nextLong(); break;
+                    case "image_url": imageUrl = reader.nextString(); break;
+                    case "category_id": categoryId = reader.nextLong(); break;
+                    case "deleted": isDeleted = reader.nextBoolean(); break;
+                    case "attributes": attributes = readAttributes(reader); break;
+                    default: reader.skipValue(); break;
+                }
+            }
+            reader.endObject();
+            if (id < 0 || version < 0 || (!isDeleted && (name == null || price < 0))) throw new IOException("Invalid product in sync response");
+
+            if (isDeleted) {
+                deleteProduct.bindLong(1, id);
+                deleteProduct.bindLong(2, version);
+                if (deleteProduct.executeUpdateDelete() > 0) removeProductLinks(id);
+                return;
+            }
+            bindProduct(updateProduct, name, description, price, quantity, imageUrl, categoryId, version, id);
+            updateProduct.bindLong(9, version);
+            boolean applied = updateProduct.executeUpdateDelete() > 0;
+            if (!applied) {
+                bindProduct(insertProduct, name, description, price, quantity, imageUrl, categoryId, version, id);
+                applied = insertProduct.executeInsert() != -1;  // -1: строка есть и не старше полученной
+            }
+            if (!applied) return;
+            productsChanged++;
+            if (attributes != null) {
+                attributeWriter.replace(id, attributes);
+                attributesChanged = true;
+            }
+        }
+
+        // Удаляет продукты удаленной категории, чтобы они не остались в каталоге без категории
+        private void removeCategoryProducts(long categoryId) {
+            List<Long> productIds = new ArrayList<>();
+            try (Cursor cursor = db.rawQuery(SQL_CATEGORY_PRODUCTS, new String[]{String.valueOf(categoryId)})) {
+                while (cursor.moveToNext()) productIds.add(cursor.getLong(0));
+            }
+            for (long productId : productIds) {
+                deleteProductById.bindLong(1, productId);
+                if (deleteProductById.executeUpdateDelete() > 0) removeProductLinks(productId);
+            }
+        }
+
+        // Убирает удаленный продукт из корзин (с надгробиями для синхронизации корзины) и удаляет его характеристики
+        private void removeProductLinks(long productId) {
+            CartSyncEngine.recordProductRemoved(db, productId);
+            deleteFromCarts.bindLong(1, productId);
+            deleteFromCarts.executeUpdateDelete();
+            attributeWriter.remove(productId);
+            deleted++;
+            productsDeleted = true;
+        }
+
+        // Читает объект характеристик {"название": "значение"}; нестроковые значения пропускаются
+        private static Map<String, String> readAttributes(JsonReader reader) throws IOException {
+            Map<String, String> attributes = new LinkedHashMap<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                JsonToken token = reader.peek();
+                if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+                    attributes.put(name, reader.nextString());
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return attributes;
+        }
+
+        // Привязывает поля продукта (одинаковый порядок в UPDATE и INSERT)
+        private static void bindProduct(SQLiteStatement statement, String name, String description, double price, long quantity,
+                                        String imageUrl, Long categoryId, long version, long id) {
+            statement.clearBindings();
+            statement.bindString(1, name);
+            if (description != null) statement.bindString(2, description);
+            statement.bindDouble(3, price);
+            statement.bindLong(4, quantity);
+            if (imageUrl != null) statement.bindString(5, imageUrl);
+            if (categoryId != null) statement.bindLong(6, categoryId);
+            statement.bindLong(7, version);
+            statement.bindLong(8, id);
+        }
+
+        void close() {
+            updateProduct.close();
+            insertProduct.close();
+            deleteProduct.close();
+            deleteProductById.close();
+            deleteFromCarts.close();
+            updateCategory.close();
+            insertCategory.close();
+            deleteCategory.close();
+            attributeWriter.close();
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package com.example.e_shop.DB;
+
+import java.util.Arrays;
+
+/**
+ * Сжатое множество неотрицательных int (упрощенная схема Roaring)
+ * Пространство значений делится на блоки по 65536: старшие 16 бит выбирают блок, младшие хранятся в контейнере блока.
+ * Разреженный блок (до ARRAY_MAX значений) - отсортированный массив char (2 байта на значение),
+ * плотный - битовая карта из 1024 long (8 КБ на блок). Пересечение двух плотных блоков - это AND
+ * по словам, массива с картой - проверка битов, двух массивов - слияние отсортированных списков.
+ * Результаты and/or не разделяют контейнеры с аргументами: добавление в результат не меняет исходные множества.
+ */
+final class CompressedBitmap {
+
+    // Наибольший размер массива; больше - карта выгоднее по памяти (4096 * 2 байта = 8 КБ)
+    private static final int ARRAY_MAX = 4096;
+    // Оценка накладных расходов на объект вместе с заголовком его массива
+    private static final int OBJECT_BYTES = 32;
+
+    private char[] keys = new char[4];  // Старшие 16 бит блоков по возрастанию
+    private Container[] containers = new Container[4];  // Контейнеры блоков
+    private int size;  // Количество блоков
+
+    /**
+     * Добавляет значение (быстрее всего - по возрастанию, как при чтении из индекса)
+     * @param value Значение (не отрицательное)
+     */
+    void add(int value) {
+        char key = (char) (value >>> 16);
+        int i = size > 0 && keys[size - 1] == key ? size - 1 : indexOf(key);
+        if (i >= 0) {
+            containers[i] = containers[i].add((char) value);
+        } else {
+            insert(-i - 1, key, new ArrayContainer().add((char) value));
+        }
+    }
+
+    /**
+     * @param value Значение
+     * @return true, если значение есть в множестве
+     */
+    boolean contains(int value) {
+        int i = indexOf((char) (value >>> 16));
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+    /**
+     * @return Количество значений
+     */
+    int cardinality() {
+        int total = 0;
+        for (int i = 0; i < size; i++) total += containers[i].cardinality();
+        return total;
+    }
+
+    /**
+     * @return true, если множество пусто
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return Оценка занимаемой памяти в байтах (массивы блоков и контейнеры)
+     */
+    long sizeBytes() {
+        long bytes = OBJECT_BYTES + 2L * keys.length + 8L * containers.length;
+        for (int i = 0; i < size; i++) bytes += containers[i].sizeBytes();
+        return bytes;
+    }
+
+    /**
+     * @return Значения по возрастанию
+     */
+    int[] toArray() {
+        int[] result = new int[cardinality()];
+        int offset = 0;
+        for (int i = 0; i < size; i++) offset = containers[i].fill(result, offset, keys[i] << 16);
+        return result;
+    }
+
+    /**
+     * Пересечение множеств
+     * @return Новое множество
+     */
+    static CompressedBitmap and(CompressedBitmap a, CompressedBitmap b) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0, j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                Container c = a.containers[i].and(b.containers[j]);
+                if (c.cardinality() > 0) result.append(a.keys[i], c);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Объединение множеств
+     * @return Новое множество (блоки, которые есть только в одном аргументе, копируются)
+     */
+    static CompressedBitmap or(CompressedBitmap a, CompressedBitmap b) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0, j = 0;
+        while (i < a.size || j < b.size) {
+            if (j == b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+                result.append(a.keys[i], a.containers[i].copy());
+                i++;
+            } else if (i == a.size || a.keys[i] > b.keys[j]) {
+                result.append(b.keys[j], b.containers[j].copy());
+                j++;
+            } else {
+                result.append(a.keys[i], a.containers[i].or(b.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Размер пересечения без построения самого пересечения (для счетчиков фасетов)
+     */
+    static int andCardinality(CompressedBitmap a, CompressedBitmap b) {
+        int total = 0;
+        int i = 0, j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                total += a.containers[i].andCardinality(b.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return total;
+    }
+
+    // Бинарный поиск блока: индекс или -(точка вставки) - 1
+    private int indexOf(char key) {
+        int low = 0, high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) low = mid + 1;
+            else if (keys[mid] > key) high = mid - 1;
+            else return mid;
+        }
+        return -(low + 1);
+    }
+
+    private void insert(int index, char key, Container container) {
+        if (size == keys.length) grow();
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    // Добавляет блок в конец (ключи идут по возрастанию)
+    private void append(char key, Container container) {
+        if (size == keys.length) grow();
+        keys[size] = key;
+        containers[size] = container;
+        size++;
+    }
+
+    private void grow() {
+        keys = Arrays.copyOf(keys, size * 2);
+        containers = Arrays.copyOf(containers, size * 2);
+    }
+
+    /**
+     * Контейнер младших 16 бит значений одного блока
+     */
+    private abstract static class Container {
+        // Добавляет значение; возвращает контейнер, в котором оно теперь хранится (массив может стать картой)
+        abstract Container add(char value);
+
+        abstract boolean contains(char value);
+
+        abstract int cardinality();
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract int andCardinality(Container other);
+
+        // Записывает значения (с добавленными старшими битами high) в out начиная с offset; возвращает новый offset
+        abstract int fill(int[] out, int offset, int high);
+
+        // Оценка занимаемой памяти в байтах
+        abstract long sizeBytes();
+
+        // Независимая копия контейнера
+        abstract Container copy();
+    }
+
+    /**
+     * Разреженный блок: отсортированный массив значений
+     */
+    private static final class ArrayContainer extends Container {
+        char[] values;
+        int cardinality;
+
+        ArrayContainer() {
+            values = new char[4];
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            int i = cardinality > 0 && values[cardinality - 1] < value ? -cardinality - 1 : Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) return this;
+            if (cardinality == ARRAY_MAX) return toBitmap().add(value);
+            i = -i - 1;
+            if (cardinality == values.length) values = Arrays.copyOf(values, Math.min(ARRAY_MAX, Math.max(4, cardinality * 2)));
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[cardinality];
+            int n = 0;
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                int i = 0, j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (values[i] < array.values[j]) i++;
+                    else if (values[i] > array.values[j]) j++;
+                    else {
+                        result[n++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) result[n++] = values[i];
+                }
+            }
+            return new ArrayContainer(result, n);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (!(other instanceof ArrayContainer)) return other.or(this);
+            ArrayContainer array = (ArrayContainer) other;
+            char[] result = new char[cardinality + array.cardinality];
+            int n = 0, i = 0, j = 0;
+            while (i < cardinality || j < array.cardinality) {
+                if (j == array.cardinality || (i < cardinality && values[i] < array.values[j])) {
+                    result[n++] = values[i++];
+                } else if (i == cardinality || values[i] > array.values[j]) {
+                    result[n++] = array.values[j++];
+                } else {
+                    result[n++] = values[i++];
+                    j++;
+                }
+            }
+            ArrayContainer union = new ArrayContainer(result, n);
+            return n > ARRAY_MAX ? union.toBitmap() : union;
+        }
+
+        @Override
+        int andCardinality(Container other) {
+            int count = 0;
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                int i = 0, j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (values[i] < array.values[j]) i++;
+                    else if (values[i] > array.values[j]) j++;
+                    else {
+                        count++;
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        int fill(int[] out, int offset, int high) {
+            for (int i = 0; i < cardinality; i++) out[offset++] = high | values[i];
+            return offset;
+        }
+
+        @Override
+        long sizeBytes() {
+            return OBJECT_BYTES + 2L * values.length;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, cardinality), cardinality);
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) bitmap.set(values[i]);
+            return bitmap;
+        }
+    }
+
+    /**
+     * Плотный блок: битовая карта на все 65536 значений
+     */
+    private static final class BitmapContainer extends Container {
+        final long[] words;
+        int cardinality;
+
+        BitmapContainer() {
+            words = new long[1024];
+        }
+
+        BitmapContainer(long[] words) {
+            this.words = words;
+            for (long word : words) cardinality += Long.bitCount(word);
+        }
+
+        void set(char value) {
+            long bit = 1L << value;  // Сдвиг long берет только младшие 6 бит
+            int i = value >>> 6;
+            if ((words[i] & bit) == 0) {
+                words[i] |= bit;
+                cardinality++;
+            }
+        }
+
+        @Override
+        Container add(char value) {
+            set(value);
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (!(other instanceof BitmapContainer)) return other.and(this);
+            long[] otherWords = ((BitmapContainer) other).words;
+            long[] result = new long[1024];
+            for (int i = 0; i < result.length; i++) result[i] = words[i] & otherWords[i];
+            BitmapContainer intersection = new BitmapContainer(result);
+            return intersection.cardinality <= ARRAY_MAX ? intersection.toArrayContainer() : intersection;
+        }
+
+        @Override
+        Container or(Container other) {
+            long[] result = words.clone();
+            if (other instanceof BitmapContainer) {
+                long[] otherWords = ((BitmapContainer) other).words;
+                for (int i = 0; i < result.length; i++) result[i] |= otherWords[i];
+                return new BitmapContainer(result);
+            }
+            BitmapContainer union = new BitmapContainer(result);
+            ArrayContainer array = (ArrayContainer) other;
+            for (int i = 0; i < array.cardinality; i++) union.set(array.values[i]);
+            return union;
+        }
+
+        @Override
+        int andCardinality(Container other) {
+            if (!(other instanceof BitmapContainer)) return other.andCardinality(this);
+            long[] otherWords = ((BitmapContainer) other).words;
+            int count = 0;
+            for (int i = 0; i < words.length; i++) count += Long.bitCount(words[i] & otherWords[i]);
+            return count;
+        }
+
+        @Override
+        int fill(int[] out, int offset, int high) {
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    out[offset++] = high | (i << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;  // Сбрасываем младший установленный бит
+                }
+            }
+            return offset;
+        }
+
+        @Override
+        long sizeBytes() {
+            return OBJECT_BYTES + 8L * words.length;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone());
+        }
+
+        ArrayContainer toArrayContainer() {
+            char[] values = new char[cardinality];
+            int n = 0;
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[n++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values, n);
+        }
+    }
+}
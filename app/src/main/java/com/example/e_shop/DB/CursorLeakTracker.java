@@ -0,0 +1,124 @@
+package com.example.e_shop.DB;
+
+import android.database.Cursor;  // Импортируем Cursor для отслеживаемых курсоров
+import android.database.CursorWrapper;  // Импортируем CursorWrapper для перехвата close()
+import android.util.Log;  // Импортируем Log для отчетов об утечках
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Отслеживание незакрытых курсоров (только в отладочных сборках)
+ * Каждый курсор, который обработчики возвращают вызывающему коду, оборачивается и запоминает место создания.
+ * Если курсор собран сборщиком мусора без вызова close(), в лог пишется стек места создания,
+ * а утечка попадает в счетчик и список последних утечек для dumpsys.
+ */
+public final class CursorLeakTracker {
+
+    private static final String TAG = "CursorLeakTracker";  // Тег для логирования
+    private static final int RECENT_LEAKS_SIZE = 20;  // Количество хранимых последних утечек
+
+    private static volatile boolean enabled;  // Включено ли отслеживание (выключено в release)
+    private static final AtomicInteger openCursors = new AtomicInteger();  // Количество открытых отслеживаемых курсоров
+    private static final AtomicInteger leakedCursors = new AtomicInteger();  // Количество обнаруженных утечек
+    private static final ArrayDeque<Throwable> recentLeaks = new ArrayDeque<>();  // Места создания последних утекших курсоров
+
+    private CursorLeakTracker() {
+    }
+
+    /**
+     * Включает или выключает отслеживание; уже выданные курсоры не затрагиваются
+     * @param enabled true для отладочной сборки
+     */
+    public static void setEnabled(boolean enabled) {
+        CursorLeakTracker.enabled = enabled;
+    }
+
+    /**
+     * Оборачивает курсор для отслеживания, если отслеживание включено
+     * @param cursor Курсор, который будет возвращен вызывающему коду
+     * @param sql Текст запроса (попадает в отчет об утечке)
+     * @return Отслеживаемый курсор или исходный курсор
+     */
+    public static Cursor track(Cursor cursor, String sql) {
+        if (!enabled || cursor == null) return cursor;
+        openCursors.incrementAndGet();
+        return new TrackedCursor(cursor, new Throwable("Cursor allocated here for: " + sql));
+    }
+
+    /**
+     * @return Количество обнаруженных утечек с момента запуска процесса
+     */
+    public static int getLeakedCount() {
+        return leakedCursors.get();
+    }
+
+    /**
+     * @return Количество отслеживаемых курсоров, которые еще не закрыты и не собраны
+     */
+    public static int getOpenCount() {
+        return openCursors.get();
+    }
+
+    /**
+     * Выводит счетчики и места создания последних утекших курсоров
+     * @param prefix Отступ строк
+     * @param writer Поток вывода
+     */
+    public static void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Cursors: open=" + getOpenCount() + ", leaked=" + getLeakedCount()
+                + (enabled ? "" : " (tracking disabled)"));
+        synchronized (recentLeaks) {
+            for (Throwable site : recentLeaks) {
+                writer.println(prefix + "  " + site.getMessage());
+                for (StackTraceElement element : site.getStackTrace()) {
+                    writer.println(prefix + "    at " + element);
+                }
+            }
+        }
+    }
+
+    // Фиксирует утечку курсора
+    private static void reportLeak(Throwable allocationSite) {
+        leakedCursors.incrementAndGet();
+        Log.e(TAG, "Cursor was not closed", allocationSite);
+        synchronized (recentLeaks) {
+            if (recentLeaks.size() == RECENT_LEAKS_SIZE) recentLeaks.removeFirst();
+            recentLeaks.addLast(allocationSite);
+        }
+    }
+
+    // Курсор, который помнит место создания и сообщает об утечке при сборке без close()
+    private static final class TrackedCursor extends CursorWrapper {
+        private final Throwable allocationSite;  // Место создания курсора
+        private volatile boolean closed;  // Был ли вызван close()
+
+        TrackedCursor(Cursor cursor, Throwable allocationSite) {
+            super(cursor);
+            this.allocationSite = allocationSite;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                openCursors.decrementAndGet();
+            }
+            super.close();
+        }
+
+        @Override
+        protected void finalize() throws Throwable {
+            try {
+                if (!closed) {
+                    openCursors.decrementAndGet();
+                    reportLeak(allocationSite);
+                    super.close();  // Освобождаем окно курсора сразу, не дожидаясь финализации самого курсора
+                }
+            } finally {
+                super.finalize();
+            }
+        }
+    }
+}
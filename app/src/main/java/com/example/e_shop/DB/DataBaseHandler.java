@@ -1,6 +1,7 @@
 package com.example.e_shop.DB;
 
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
@@ -24,7 +25,51 @@ public class DataBaseHandler extends SQLiteOpenHelper {
     // Имя базы данных
     private static final String DATABASE_NAME = "e_shop.db";
     // Версия базы данных
-    private static final int DATABASE_VERSION = 1;
+    // 2 - индексы по внешним ключам и логину пользователя
+    // 3 - индекс по названию продукта для импорта каталога
+    // 4 - версии строк каталога и состояние синхронизации с сервером
+    // 5 - очередь заказов на отправку на сервер
+    // 6 - состояние корзины для синхронизации между устройствами
+    // 7 - индексы сортировок и фильтра по цене в каталоге
+    // 8 - характеристики продуктов для фасетного фильтра
+    // 9 - коды статусов заказов и даты заказов в миллисекундах
+    // 10 - журнал обслуживания базы
+    private static final int DATABASE_VERSION = 10;
+    // Имя таблицы категорий
+    public static final String TABLE_CATEGORIES = "Categories";
+
+    // Общий для всего процесса трассировщик обращений к базе (статистика по всем экранам вместе)
+    private static final QueryTracer queryTracer = new QueryTracer();
+    // Доля общего бюджета кэшей, выделяемая кэшу запросов
+    private static final double QUERY_CACHE_BUDGET_SHARE = 0.25;
+    // Доля общего бюджета кэшей, выделяемая матрице рекомендаций
+    private static final double RECOMMENDATION_BUDGET_SHARE = 0.15;
+    // Доля общего бюджета кэшей, выделяемая битовым картам фасетного фильтра
+    private static final double FACET_BUDGET_SHARE = 0.25;
+
+    // Единственный обработчик основной базы на процесс: он владеет соединением, обработчики таблиц его не закрывают
+    private static DataBaseHandler instance;
+
+    private final QueryCache queryCache = new QueryCache(64, queryTracer);  // Кэш запросов этого обработчика
+    private final String archivePath;  // Файл архива старых заказов, подключаемый к соединению (OrderArchive)
+    private final CacheRegistry cacheRegistry;  // Реестр, которому передаются кэши этого обработчика
+    private RecommendationEngine recommendationEngine;  // Рекомендации по заказам (создаются при первом запросе)
+    private FacetEngine facetEngine;  // Фасетный фильтр каталога (создается при первом запросе)
+
+    /**
+     * Возвращает общий для процесса обработчик основной базы
+     * ViewModel и фоновые задачи обращаются к базе из параллельных корутин через одно соединение,
+     * которое остается открытым до завершения процесса
+     * @param context Любой контекст приложения
+     * @return Экземпляр DataBaseHandler
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    public static synchronized DataBaseHandler getInstance(Context context) {
+        if (instance == null) {
+            instance = new DataBaseHandler(context.getApplicationContext());  // Контекст приложения, чтобы не удерживать активность
+        }
+        return instance;
+    }
 
     /**
      * Конструктор, инициализирующий базу данных
@@ -32,18 +77,37 @@ public class DataBaseHandler extends SQLiteOpenHelper {
      */
     @RequiresApi(api = Build.VERSION_CODES.O)
     public DataBaseHandler(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION); // Инициализация SQLiteOpenHelper
-        copyDatabaseFromAssets(context); // Копирование базы данных из assets, если она не существует
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * Конструктор для базы с другим именем файла (например, вторая база в тестах синхронизации между устройствами)
+     * Файл создается копией e_shop.db из assets; у каждого обработчика свой кэш запросов,
+     * поэтому писать в файл и читать из него нужно через один обработчик (как getInstance в приложении)
+     * @param context Контекст приложения
+     * @param name Имя файла базы данных
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    public DataBaseHandler(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION); // Инициализация SQLiteOpenHelper
+        copyDatabaseFromAssets(context, name); // Копирование базы данных из assets, если она не существует
+        archivePath = context.getDatabasePath(OrderArchive.fileName(name)).getPath();
+        // Незакрытые курсоры отслеживаются только в отладочной сборке
+        CursorLeakTracker.setEnabled((context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0);
+        cacheRegistry = CacheRegistry.getInstance(context);
+        // Передаем кэш запросов под управление общего реестра кэшей до закрытия обработчика
+        cacheRegistry.register(queryCache, CacheRegistry.PRIORITY_NORMAL, QUERY_CACHE_BUDGET_SHARE);
     }
 
     /**
      * Копирует базу данных из папки assets в системное хранилище
      * @param context Контекст приложения
+     * @param name Имя файла базы данных на устройстве
      */
     @RequiresApi(api = Build.VERSION_CODES.O)
-    private void copyDatabaseFromAssets(Context context) {
+    private void copyDatabaseFromAssets(Context context, String name) {
         // Получаем путь к базе данных на устройстве
-        String outFileName = context.getDatabasePath(DATABASE_NAME).getPath();
+        String outFileName = context.getDatabasePath(name).getPath();
         File databaseFile = new File(outFileName);
 
         // Если база данных не существует, выполняем копирование
@@ -85,24 +149,323 @@ public class DataBaseHandler extends SQLiteOpenHelper {
         // Ничего не делаем, так как база предзаполненная
     }
 
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        // Архив подключается к каждому новому соединению,
+        // поэтому запросы к archive.* работают без дополнительных действий вызывающего кода
+        OrderArchive.attach(db, archivePath);
+    }
+
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // При обновлении версии базы вызываем onCreate
-        onCreate(db);
+        // Миграции применяются по порядку, начиная с версии базы на устройстве
+        // (база из assets имеет версию 1, поэтому при первом открытии выполняются все миграции)
+        if (oldVersion < 2) migrateToVersion2(db);
+        if (oldVersion < 3) migrateToVersion3(db);
+        if (oldVersion < 4) migrateToVersion4(db);
+        if (oldVersion < 5) migrateToVersion5(db);
+        if (oldVersion < 6) migrateToVersion6(db);
+        if (oldVersion < 7) migrateToVersion7(db);
+        if (oldVersion < 8) migrateToVersion8(db);
+        if (oldVersion < 9) migrateToVersion9(db);
+        if (oldVersion < 10) migrateToVersion10(db);
+    }
+
+    /**
+     * Миграция на версию 2: индексы для запросов обработчиков таблиц
+     * Без них выборки корзины, заказов, деталей заказа, продуктов категории и вход пользователя
+     * выполняются полным просмотром таблиц
+     * @param db База данных (вызывается внутри транзакции SQLiteOpenHelper)
+     */
+    private static void migrateToVersion2(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_products_category ON Products (category_id)");  // Продукты категории
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_usercart_user_product ON UserCart (user_id, product_id)");  // Корзина пользователя и ее позиции
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_orders_user ON Orders (user_id)");  // Заказы пользователя
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_order_details_order ON OrderDetails (order_id)");  // Строки заказа
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_users_username ON Users (username)");  // Вход по логину
+    }
+
+    /**
+     * Миграция на версию 3: индекс по названию продукта
+     * Импорт каталога сопоставляет строки файла с существующими продуктами по названию
+     * @param db База данных (вызывается внутри транзакции SQLiteOpenHelper)
+     */
+    private static void migrateToVersion3(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_products_name ON Products (name)");  // Поиск продукта по названию
+    }
+
+    /**
+     * Миграция на версию 4: синхронизация каталога с сервером
+     * Каждая строка каталога хранит серверную версию, с которой она последний раз менялась,
+     * а SyncState - последнюю полученную версию для каждого синхронизируемого набора данных
+     * @param db База данных (вызывается внутри транзакции SQLiteOpenHelper)
+     */
+    private static void migrateToVersion4(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE Products ADD COLUMN version INTEGER NOT NULL DEFAULT 0");  // 0 - строка из assets или импорта
+        db.execSQL("ALTER TABLE Categories ADD COLUMN version INTEGER NOT NULL DEFAULT 0");
+        db.execSQL("CREATE TABLE IF NOT EXISTS SyncState (name TEXT PRIMARY KEY, version INTEGER NOT NULL)");
+    }
+
+    /**
+     * Миграция на версию 5: очередь заказов на отправку (outbox)
+     * Заказ попадает в очередь в той же транзакции, в которой создается, и удаляется из нее после подтверждения сервером
+     * @param db База данных (вызывается внутри транзакции SQLiteOpenHelper)
+     */
+    private static void migrateToVersion5(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS OrderOutbox ("
+                + "id INTEGER PRIMARY KEY, "
+                + "order_id INTEGER NOT NULL UNIQUE, "
+                + "idempotency_key TEXT NOT NULL UNIQUE, "  // Ключ, по которому сервер отбрасывает повторную доставку
+                + "payload TEXT NOT NULL, "  // Заказ с позициями в JSON
+                + "status INTEGER NOT NULL DEFAULT 0, "  // 0 - ожидает отправки, 1 - отклонен сервером
+                + "attempts INTEGER NOT NULL DEFAULT 0, "
+                + "next_attempt_at INTEGER NOT NULL DEFAULT 0, "  // Время следующей попытки (мс), задает backoff
+                + "created_at INTEGER NOT NULL)");
+        // Ожидающие записи по статусу; индекс содержит rowid, поэтому они идут в порядке id без сортировки
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_order_outbox_status ON OrderOutbox (status)");
+    }
+
+    /**
+     * Миграция на версию 6: корзина как CRDT (LWW-словарь по продуктам с надгробиями)
+     * Для каждого продукта корзины хранится последнее известное количество (0 - удален) с меткой гибридных часов
+     * и устройством, которое его записало; seq - номер локального изменения для отбора еще не отправленных
+     * @param db База данных (вызывается внутри транзакции SQLiteOpenHelper)
+     */
+    private static void migrateToVersion6(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS CartEntries ("
+                + "user_id INTEGER NOT NULL, "
+                + "product_id INTEGER NOT NULL, "
+                + "quantity INTEGER NOT NULL, "
+                + "hlc INTEGER NOT NULL, "
+                + "device_id INTEGER NOT NULL, "
+                + "seq INTEGER NOT NULL DEFAULT 0, "
+                + "PRIMARY KEY (user_id, product_id))");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_cart_entries_seq ON CartEntries (user_id, seq)");  // Неотправленные изменения
+    }
+
+    /**
+     * Миграция на версию 7: индексы сортировок каталога и фильтра по цене
+     * Страница каталога в любом порядке (цена, название, новизна) с категорией и без читается из индекса
+     * уже упорядоченной, а условие по цене и ключ следующей страницы задают диапазон в этом индексе
+     * @param db База данных (вызывается внутри транзакции SQLiteOpenHelper)
+     */
+    private static void migrateToVersion7(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_products_price ON Products (price)");  // Весь каталог по цене
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_products_category_price ON Products (category_id, price)");  // Категория по цене, гистограмма цен
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_products_category_name ON Products (category_id, name)");  // Категория по названию
+    }
+
+    /**
+     * Миграция на версию 8: характеристики продуктов (бренд, память, цвет и т.д.)
+     * Названия характеристик и их значения хранятся справочниками, продукт связан со значениями.
+     * Связи хранятся без rowid: первичный ключ (product_id, value_id) отвечает на "есть ли у продукта значение",
+     * а индекс по value_id отдает продукты каждого значения по порядку id для построения битовых карт
+     * @param db База данных (вызывается внутри транзакции SQLiteOpenHelper)
+     */
+    private static void migrateToVersion8(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS Attributes (id INTEGER PRIMARY KEY, name TEXT NOT NULL UNIQUE)");
+        db.execSQL("CREATE TABLE IF NOT EXISTS AttributeValues ("
+                + "id INTEGER PRIMARY KEY, "
+                + "attribute_id INTEGER NOT NULL, "
+                + "value TEXT NOT NULL, "
+                + "UNIQUE (attribute_id, value))");
+        db.execSQL("CREATE TABLE IF NOT EXISTS ProductAttributes ("
+                + "product_id INTEGER NOT NULL, "
+                + "value_id INTEGER NOT NULL, "
+                + "PRIMARY KEY (product_id, value_id)) WITHOUT ROWID");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_product_attributes_value ON ProductAttributes (value_id)");  // Продукты значения (индекс содержит product_id)
+    }
+
+    /**
+     * Миграция на версию 9: статус заказа - код из справочника OrderStatuses, дата - миллисекунды с начала эпохи
+     * Текстовые статус и дата занимали в каждой строке и в индексах десятки байт и сравнивались как строки;
+     * целые числа короче и сравниваются напрямую. SQLite не меняет тип колонки, поэтому таблица пересоздается.
+     * Старые даты YYYY-MM-DD (CURRENT_DATE - дата в UTC) переводятся в полночь UTC этого дня, неизвестные
+     * тексты статусов получают новые коды в справочнике. Индекс idx_orders_user заменяется составными:
+     * (user_id, order_date) - история пользователя по дате, (status, order_date) - заказы в статусе за период
+     * @param db База данных (вызывается внутри транзакции SQLiteOpenHelper)
+     */
+    private static void migrateToVersion9(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS OrderStatuses (id INTEGER PRIMARY KEY, name TEXT NOT NULL UNIQUE)");
+        db.execSQL("INSERT OR IGNORE INTO OrderStatuses (id, name) VALUES "
+                + "(0, 'В ожидании'), (1, 'Отправлен'), (2, 'Доставлен'), (3, 'Отменён')");
+        db.execSQL("INSERT OR IGNORE INTO OrderStatuses (name) SELECT DISTINCT status FROM Orders");  // Статусы вне списка
+        db.execSQL("CREATE TABLE Orders_new ("
+                + "id INTEGER PRIMARY KEY, "
+                + "user_id INTEGER NOT NULL, "
+                + "order_date INTEGER NOT NULL, "  // Миллисекунды с начала эпохи (UTC)
+                + "status INTEGER NOT NULL DEFAULT 0, "  // Код из OrderStatuses
+                + "total_price REAL, "
+                + "delivery_address TEXT NOT NULL, "
+                + "FOREIGN KEY (user_id) REFERENCES Users (id))");
+        db.execSQL("INSERT INTO Orders_new (id, user_id, order_date, status, total_price, delivery_address) "
+                + "SELECT o.id, o.user_id, COALESCE(CAST(strftime('%s', o.order_date) AS INTEGER) * 1000, 0), s.id, "
+                + "o.total_price, o.delivery_address FROM Orders o JOIN OrderStatuses s ON s.name = o.status");
+        db.execSQL("DROP TABLE Orders");  // Удаляет и idx_orders_user
+        db.execSQL("ALTER TABLE Orders_new RENAME TO Orders");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_orders_user_date ON Orders (user_id, order_date)");  // Заказы пользователя по дате
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_orders_status_date ON Orders (status, order_date)");  // Заказы в статусе за период
+    }
+
+    /**
+     * Миграция на версию 10: журнал обслуживания базы (DatabaseMaintenance)
+     * Каждый шаг запуска - строка с длительностью и освобожденными байтами
+     * @param db База данных (вызывается внутри транзакции SQLiteOpenHelper)
+     */
+    private static void migrateToVersion10(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS MaintenanceLog ("
+                + "id INTEGER PRIMARY KEY, "
+                + "started_at INTEGER NOT NULL, "  // Начало запуска (мс), общее для шагов одного запуска
+                + "step TEXT NOT NULL, "
+                + "status TEXT NOT NULL, "
+                + "duration_ms INTEGER NOT NULL, "
+                + "bytes_reclaimed INTEGER NOT NULL DEFAULT 0)");
+    }
+
+    /**
+     * Возвращает обслуживание файла базы этого обработчика (ANALYZE, PRAGMA optimize, контрольная точка WAL,
+     * возврат свободных страниц); запускается DatabaseMaintenanceWorker, когда устройство не используется
+     * @return Экземпляр DatabaseMaintenance
+     */
+    public DatabaseMaintenance getMaintenance() {
+        return new DatabaseMaintenance(this);
+    }
+
+    /**
+     * Возвращает движок рекомендаций "С этим товаром покупают" этого обработчика
+     * Движок читает историю заказов через этот обработчик и учитывает заказы, оформленные через него;
+     * матрица передается под управление реестра кэшей
+     * @return Экземпляр RecommendationEngine (матрица строится при первом запросе рекомендаций)
+     */
+    public synchronized RecommendationEngine getRecommendationEngine() {
+        if (recommendationEngine == null) {
+            recommendationEngine = new RecommendationEngine(this);
+            // Перестроение читает всю историю заказов, поэтому матрица сжимается после легко восстанавливаемых кэшей
+            cacheRegistry.register(recommendationEngine, CacheRegistry.PRIORITY_NORMAL, RECOMMENDATION_BUDGET_SHARE);
+        }
+        return recommendationEngine;
+    }
+
+    // Движок рекомендаций, если он уже создан (оформление заказа не должно создавать движок)
+    synchronized RecommendationEngine peekRecommendationEngine() {
+        return recommendationEngine;
+    }
+
+    /**
+     * Возвращает фасетный фильтр каталога этого обработчика
+     * Битовые карты строятся при первом запросе и передаются под управление реестра кэшей
+     * @return Экземпляр FacetEngine
+     */
+    public synchronized FacetEngine getFacetEngine() {
+        if (facetEngine == null) {
+            facetEngine = new FacetEngine(this);
+            cacheRegistry.register(facetEngine, CacheRegistry.PRIORITY_LOW, FACET_BUDGET_SHARE);  // Карты строятся заново по базе
+        }
+        return facetEngine;
+    }
+
+    @Override
+    public synchronized void close() {
+        // Кэши закрытого обработчика больше не нужны: реестр не должен удерживать их и их память
+        cacheRegistry.unregister(queryCache);
+        if (facetEngine != null) cacheRegistry.unregister(facetEngine);
+        if (recommendationEngine != null) cacheRegistry.unregister(recommendationEngine);
+        queryCache.clear();
+        super.close();
+    }
+
+    /**
+     * Возвращает кэш результатов запросов этого обработчика
+     * Обработчики таблиц читают через него и инвалидируют его после записи
+     * @return Экземпляр QueryCache
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Возвращает общий трассировщик обращений к базе
+     * Обработчики таблиц выполняют через него все запросы и операции записи
+     * @return Экземпляр QueryTracer
+     */
+    public QueryTracer getQueryTracer() {
+        return queryTracer;
+    }
+
+    /**
+     * Обработчик строк потокового чтения
+     */
+    public interface RowCallback {
+        /**
+         * @param cursor Курсор, установленный на текущую строку (не закрывать и не перемещать)
+         * @return true, чтобы продолжить чтение, false - чтобы остановиться
+         */
+        boolean onRow(Cursor cursor);
+    }
+
+    /**
+     * Выполняет запрос и возвращает все строки в виде списка объектов; курсор закрывается в любом случае
+     * @param sql Текст запроса
+     * @param args Аргументы запроса
+     * @param mapper Преобразователь строки в объект
+     * @return Список объектов
+     */
+    public <T> List<T> queryList(String sql, String[] args, QueryCache.RowMapper<T> mapper) {
+        List<T> rows = new ArrayList<>();  // Список результатов
+        Cursor cursor = queryTracer.rawQuery(getReadableDatabase(), sql, args);  // Выполняем запрос
+        try {
+            while (cursor.moveToNext()) rows.add(mapper.map(cursor));  // Преобразуем каждую строку
+        } finally {
+            cursor.close();  // Закрываем курсор в любом случае
+        }
+        return rows;
+    }
+
+    /**
+     * Выполняет запрос и возвращает первую строку в виде объекта; курсор закрывается в любом случае
+     * @param sql Текст запроса
+     * @param args Аргументы запроса
+     * @param mapper Преобразователь строки в объект
+     * @return Объект или null, если строк нет
+     */
+    public <T> T queryFirst(String sql, String[] args, QueryCache.RowMapper<T> mapper) {
+        Cursor cursor = queryTracer.rawQuery(getReadableDatabase(), sql, args);  // Выполняем запрос
+        try {
+            return cursor.moveToFirst() ? mapper.map(cursor) : null;  // Первая строка или null
+        } finally {
+            cursor.close();  // Закрываем курсор в любом случае
+        }
+    }
+
+    /**
+     * Потоково читает результат запроса без накопления строк в памяти; курсор закрывается в любом случае
+     * @param sql Текст запроса
+     * @param args Аргументы запроса
+     * @param callback Обработчик строк
+     * @return Количество обработанных строк
+     */
+    public int forEachRow(String sql, String[] args, RowCallback callback) {
+        int count = 0;  // Количество обработанных строк
+        Cursor cursor = queryTracer.rawQuery(getReadableDatabase(), sql, args);  // Выполняем запрос
+        try {
+            while (cursor.moveToNext()) {
+                count++;
+                if (!callback.onRow(cursor)) break;  // Обработчик попросил остановиться
+            }
+        } finally {
+            cursor.close();  // Закрываем курсор в любом случае
+        }
+        return count;
     }
 
     /**
      * Возвращает список всех категорий
-     * @return Список названий категорий
+     * @return Неизменяемый список названий категорий
      */
     public List<String> getAllCategories() {
-        List<String> categories = new ArrayList<>(); // Список для хранения категорий
         SQLiteDatabase db = this.getReadableDatabase(); // Получаем экземпляр базы для чтения
-        Cursor cursor = db.rawQuery("SELECT name FROM Categories", null); // Выполняем запрос к базе
-        while (cursor.moveToNext()) { // Итерируем по всем записям курсора
-            categories.add(cursor.getString(0)); // Добавляем название категории в список
-        }
-        cursor.close(); // Закрываем курсор
-        return categories; // Возвращаем список категорий
+        // Читаем названия категорий через кэш, так как список запрашивается при каждой отрисовке фильтра
+        return queryCache.query(db, "SELECT name FROM " + TABLE_CATEGORIES, null,
+                new String[]{TABLE_CATEGORIES}, cursor -> cursor.getString(0));
     }
 }
\ No newline at end of file
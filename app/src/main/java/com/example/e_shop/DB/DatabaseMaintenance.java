@@ -0,0 +1,255 @@
+package com.example.e_shop.DB;
+
+import android.content.ContentValues;  // Импортируем ContentValues для записи журнала обслуживания
+import android.database.Cursor;  // Импортируем Cursor для чтения результатов PRAGMA
+import android.database.sqlite.SQLiteDatabase;  // Импортируем SQLiteDatabase для выполнения обслуживания
+import android.os.SystemClock;  // Импортируем SystemClock для замера длительности шагов
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Обслуживание файла базы: статистика планировщика, контрольная точка WAL и возврат свободных страниц
+ * Шаги выполняются по порядку в общем бюджете времени; шаг, до которого очередь дошла после исчерпания
+ * бюджета, пропускается, а длинные шаги (ANALYZE по таблицам, возврат страниц порциями) проверяют бюджет
+ * между частями. Длительность и освобожденные байты каждого шага записываются в MaintenanceLog.
+ * Запускается в фоне, когда устройство не используется и заряжается (DatabaseMaintenanceWorker):
+ * на время шага соединение занято и остальные запросы ждут.
+ */
+public class DatabaseMaintenance {
+
+    public static final String TABLE_MAINTENANCE_LOG = "MaintenanceLog";  // Журнал шагов обслуживания
+
+    // Шаги обслуживания
+    public static final String STEP_ANALYZE = "analyze";  // Статистика индексов для планировщика запросов
+    public static final String STEP_OPTIMIZE = "optimize";  // PRAGMA optimize
+    public static final String STEP_CHECKPOINT = "wal_checkpoint";  // Перенос WAL в основной файл и его усечение
+    public static final String STEP_VACUUM = "incremental_vacuum";  // Возврат свободных страниц файловой системе
+
+    // Итоги шага
+    public static final String STATUS_DONE = "done";  // Шаг выполнен полностью
+    public static final String STATUS_PARTIAL = "partial";  // Бюджет закончился во время шага
+    public static final String STATUS_SKIPPED = "skipped";  // Шаг не нужен (нет WAL, нет свободных страниц)
+    public static final String STATUS_NO_BUDGET = "no_budget";  // Бюджета или места на диске не хватает для шага
+
+    // Строк индекса, просматриваемых ANALYZE на индекс (PRAGMA analysis_limit, SQLite 3.32+; старые версии игнорируют)
+    private static final int ANALYSIS_LIMIT = 1000;
+    // Страниц, возвращаемых за одно выполнение PRAGMA incremental_vacuum (между порциями проверяется бюджет)
+    private static final int VACUUM_PAGES_PER_STEP = 256;
+    // Свободного места, при котором база без auto_vacuum один раз перестраивается полным VACUUM
+    private static final long FULL_VACUUM_MIN_FREE_BYTES = 1024 * 1024;
+    // Оценка скорости полного VACUUM (байт файла в миллисекунду) для проверки бюджета перед его запуском
+    private static final long FULL_VACUUM_BYTES_PER_MILLI = 10 * 1024;
+    // Значение PRAGMA auto_vacuum для режима INCREMENTAL
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+    // Строк журнала, которые хранятся (старые удаляются после каждого запуска)
+    private static final int LOG_ROWS_KEPT = 200;
+
+    /**
+     * Итог одного шага обслуживания
+     */
+    public static final class Step {
+        public final String name;  // Шаг (STEP_*)
+        public final String status;  // Итог (STATUS_*)
+        public final long durationMillis;  // Длительность шага
+        public final long bytesReclaimed;  // Освобождено байт на диске
+
+        Step(String name, String status, long durationMillis, long bytesReclaimed) {
+            this.name = name;
+            this.status = status;
+            this.durationMillis = durationMillis;
+            this.bytesReclaimed = bytesReclaimed;
+        }
+
+        @Override
+        public String toString() {
+            return name + "=" + status + " (" + durationMillis + " ms, " + bytesReclaimed + " bytes)";
+        }
+    }
+
+    /**
+     * Итог запуска обслуживания
+     */
+    public static final class Report {
+        public final List<Step> steps;  // Шаги в порядке выполнения
+        public final long elapsedMillis;  // Длительность запуска
+
+        Report(List<Step> steps, long elapsedMillis) {
+            this.steps = Collections.unmodifiableList(steps);
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /**
+         * Освобождено байт всеми шагами
+         */
+        public long getBytesReclaimed() {
+            long bytes = 0;
+            for (Step step : steps) bytes += step.bytesReclaimed;
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return "DatabaseMaintenance.Report{" + steps + ", elapsedMillis=" + elapsedMillis + "}";
+        }
+    }
+
+    private final DataBaseHandler dbHandler;  // Обработчик обслуживаемой базы
+
+    /**
+     * Конструктор; экземпляр выдает DataBaseHandler.getMaintenance()
+     * @param dbHandler Обработчик базы данных
+     */
+    DatabaseMaintenance(DataBaseHandler dbHandler) {
+        this.dbHandler = dbHandler;  // Сохраняем обработчик базы данных
+    }
+
+    /**
+     * Выполняет все шаги обслуживания и записывает их итоги в журнал
+     * Выполняется синхронно, вызывать нужно не из главного потока
+     * @param budgetMillis Бюджет времени на все шаги
+     * @return Итоги шагов
+     */
+    public Report run(long budgetMillis) {
+        long start = SystemClock.elapsedRealtime();
+        long deadline = start + budgetMillis;
+        long startedAt = System.currentTimeMillis();
+        SQLiteDatabase db = dbHandler.getWritableDatabase();
+        List<Step> steps = new ArrayList<>();
+        steps.add(analyze(db, deadline));
+        steps.add(optimize(db, deadline));
+        steps.add(checkpoint(db, deadline));
+        steps.add(vacuum(db, deadline));
+        writeLog(db, startedAt, steps);
+        return new Report(steps, SystemClock.elapsedRealtime() - start);
+    }
+
+    // ANALYZE по одной таблице, чтобы проверять бюджет между таблицами
+    private static Step analyze(SQLiteDatabase db, long deadline) {
+        long start = SystemClock.elapsedRealtime();
+        if (start >= deadline) return new Step(STEP_ANALYZE, STATUS_NO_BUDGET, 0, 0);
+        pragma(db, "PRAGMA analysis_limit = " + ANALYSIS_LIMIT);
+        List<String> tables = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT name FROM main.sqlite_master WHERE type = 'table' AND name NOT LIKE 'sqlite_%'", null);
+        try {
+            while (cursor.moveToNext()) tables.add(cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+        tables.add(null);  // Последним - весь архив заказов (OrderArchive)
+        for (String table : tables) {
+            if (SystemClock.elapsedRealtime() >= deadline) {
+                return new Step(STEP_ANALYZE, STATUS_PARTIAL, SystemClock.elapsedRealtime() - start, 0);
+            }
+            db.execSQL(table != null ? "ANALYZE main.\"" + table.replace("\"", "\"\"") + "\"" : "ANALYZE " + OrderArchive.SCHEMA);
+        }
+        return new Step(STEP_ANALYZE, STATUS_DONE, SystemClock.elapsedRealtime() - start, 0);
+    }
+
+    // PRAGMA optimize: дособирает статистику, которую планировщик счел устаревшей за время работы соединения
+    private static Step optimize(SQLiteDatabase db, long deadline) {
+        long start = SystemClock.elapsedRealtime();
+        if (start >= deadline) return new Step(STEP_OPTIMIZE, STATUS_NO_BUDGET, 0, 0);
+        pragma(db, "PRAGMA optimize");
+        return new Step(STEP_OPTIMIZE, STATUS_DONE, SystemClock.elapsedRealtime() - start, 0);
+    }
+
+    // Контрольная точка с усечением WAL; без режима WAL шаг пропускается
+    // (подключенный архив заказов выключает WAL в Android, поэтому сейчас это штатный случай)
+    private static Step checkpoint(SQLiteDatabase db, long deadline) {
+        long start = SystemClock.elapsedRealtime();
+        if (start >= deadline) return new Step(STEP_CHECKPOINT, STATUS_NO_BUDGET, 0, 0);
+        if (!"wal".equalsIgnoreCase(pragmaText(db, "PRAGMA main.journal_mode"))) {
+            return new Step(STEP_CHECKPOINT, STATUS_SKIPPED, SystemClock.elapsedRealtime() - start, 0);
+        }
+        File wal = new File(db.getPath() + "-wal");
+        long before = wal.length();
+        pragma(db, "PRAGMA main.wal_checkpoint(TRUNCATE)");
+        return new Step(STEP_CHECKPOINT, STATUS_DONE, SystemClock.elapsedRealtime() - start, Math.max(0, before - wal.length()));
+    }
+
+    // Возврат свободных страниц порциями в режиме auto_vacuum = INCREMENTAL
+    // База из assets создана без auto_vacuum: режим включается только полным VACUUM, который один раз
+    // выполняется, когда свободного места накопилось достаточно, чтобы перестройка файла окупилась,
+    // а ее оценка по размеру файла укладывается в остаток бюджета и свободное место на диске
+    private static Step vacuum(SQLiteDatabase db, long deadline) {
+        long start = SystemClock.elapsedRealtime();
+        if (start >= deadline) return new Step(STEP_VACUUM, STATUS_NO_BUDGET, 0, 0);
+        long pageSize = pragma(db, "PRAGMA main.page_size");
+        long pagesBefore = pragma(db, "PRAGMA main.page_count");
+        long free = pragma(db, "PRAGMA main.freelist_count");
+        if (free == 0) return new Step(STEP_VACUUM, STATUS_SKIPPED, SystemClock.elapsedRealtime() - start, 0);
+
+        String status = STATUS_DONE;
+        if (pragma(db, "PRAGMA main.auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+            if (free * pageSize < FULL_VACUUM_MIN_FREE_BYTES) {
+                return new Step(STEP_VACUUM, STATUS_SKIPPED, SystemClock.elapsedRealtime() - start, 0);
+            }
+            // VACUUM не прерывается: запускаем его, только если оценка по размеру файла укладывается в остаток
+            // бюджета, а на диске хватает места на временную копию базы и журнал отката (по размеру файла каждый)
+            long fileBytes = pagesBefore * pageSize;
+            long remainingMillis = deadline - SystemClock.elapsedRealtime();
+            if (fileBytes / FULL_VACUUM_BYTES_PER_MILLI > remainingMillis
+                    || 2 * fileBytes > new File(db.getPath()).getUsableSpace()) {
+                return new Step(STEP_VACUUM, STATUS_NO_BUDGET, SystemClock.elapsedRealtime() - start, 0);
+            }
+            db.execSQL("PRAGMA main.auto_vacuum = " + AUTO_VACUUM_INCREMENTAL);
+            db.execSQL("VACUUM main");  // Переписывает файл целиком и возвращает все свободные страницы
+        } else {
+            while (pragma(db, "PRAGMA main.freelist_count") > 0) {
+                if (SystemClock.elapsedRealtime() >= deadline) {
+                    status = STATUS_PARTIAL;
+                    break;
+                }
+                pragma(db, "PRAGMA main.incremental_vacuum(" + VACUUM_PAGES_PER_STEP + ")");
+            }
+        }
+        long reclaimed = (pagesBefore - pragma(db, "PRAGMA main.page_count")) * pageSize;
+        return new Step(STEP_VACUUM, status, SystemClock.elapsedRealtime() - start, Math.max(0, reclaimed));
+    }
+
+    // Записывает итоги шагов и удаляет старые строки журнала
+    private void writeLog(SQLiteDatabase db, long startedAt, List<Step> steps) {
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (Step step : steps) {
+                values.put("started_at", startedAt);
+                values.put("step", step.name);
+                values.put("status", step.status);
+                values.put("duration_ms", step.durationMillis);
+                values.put("bytes_reclaimed", step.bytesReclaimed);
+                dbHandler.getQueryTracer().insert(db, TABLE_MAINTENANCE_LOG, values);
+            }
+            dbHandler.getQueryTracer().delete(db, TABLE_MAINTENANCE_LOG,
+                    "id <= (SELECT MAX(id) FROM " + TABLE_MAINTENANCE_LOG + ") - " + LOG_ROWS_KEPT, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Выполняет PRAGMA и возвращает первое значение первой строки (-1, если строк нет)
+    // Первое перемещение курсора выполняет запрос до конца (заполняет окно курсора), а PRAGMA incremental_vacuum
+    // освобождает по одной странице на шаг выполнения - так возвращается вся порция, а не одна страница
+    private static long pragma(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            return cursor.moveToFirst() && cursor.getColumnCount() > 0 && !cursor.isNull(0) ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Выполняет PRAGMA и возвращает первое значение как текст (null, если строк нет)
+    private static String pragmaText(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+}
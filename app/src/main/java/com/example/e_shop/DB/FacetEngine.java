@@ -0,0 +1,324 @@
+package com.example.e_shop.DB;
+
+import android.database.Cursor;  // Импортируем Cursor для потокового чтения связей
+
+import com.example.e_shop.DataClasses.Facet;  // Импортируем модель фасета для фильтра каталога
+import com.example.e_shop.DataClasses.FacetValue;  // Импортируем значение фасета со счетчиком
+import com.example.e_shop.DataClasses.ProductFilter;  // Импортируем фильтры каталога
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Фасетный фильтр каталога по характеристикам продуктов
+ * Для каждого значения характеристики в памяти хранится сжатая битовая карта id продуктов (CompressedBitmap),
+ * так же - для каждой категории. Выбранные значения одной характеристики объединяются (ИЛИ), разные
+ * характеристики пересекаются (И) с базовым множеством (категория, поиск, диапазон цен).
+ * Счетчик значения - размер пересечения его карты с результатом всех остальных условий, кроме выбора
+ * в этой же характеристике, поэтому все счетчики экрана считаются без запросов к базе.
+ * Карты строятся одним проходом по индексам и перестраиваются при первом запросе после изменения
+ * продуктов или характеристик (изменения видны по счетчикам таблиц в QueryCache).
+ * Сами страницы каталога читает ProductsTableHandler с теми же условиями в SQL, в порядке индекса сортировки.
+ * Движок принадлежит обработчику базы (DataBaseHandler.getFacetEngine); карты - кэш под управлением
+ * CacheRegistry: при нехватке памяти они освобождаются и строятся заново при следующем запросе.
+ */
+public class FacetEngine implements CacheRegistry.ManagedCache {
+
+    // Значения всех характеристик (порядок показа задается при построении)
+    static final String SQL_ATTRIBUTE_VALUES = "SELECT v.id, v.attribute_id, a.name, v.value FROM "
+            + ProductAttributesTableHandler.TABLE_ATTRIBUTE_VALUES + " v JOIN " + ProductAttributesTableHandler.TABLE_ATTRIBUTES
+            + " a ON a.id = v.attribute_id";
+    // Продукты каждого значения по возрастанию id (порядок дает индекс idx_product_attributes_value)
+    static final String SQL_VALUE_PRODUCTS = "SELECT value_id, product_id FROM " + ProductAttributesTableHandler.TABLE_PRODUCT_ATTRIBUTES
+            + " ORDER BY value_id, product_id";
+    // Продукты каждой категории по возрастанию id (порядок дает индекс idx_products_category)
+    static final String SQL_CATEGORY_PRODUCTS = "SELECT " + ProductsTableHandler.COLUMN_CATEGORY_ID + ", " + ProductsTableHandler.COLUMN_ID
+            + " FROM " + ProductsTableHandler.TABLE_PRODUCTS + " ORDER BY " + ProductsTableHandler.COLUMN_CATEGORY_ID + ", "
+            + ProductsTableHandler.COLUMN_ID;
+
+    // Таблицы, по которым построены карты
+    private static final String[] SOURCE_TABLES = {ProductsTableHandler.TABLE_PRODUCTS, ProductAttributesTableHandler.TABLE_ATTRIBUTES,
+            ProductAttributesTableHandler.TABLE_ATTRIBUTE_VALUES, ProductAttributesTableHandler.TABLE_PRODUCT_ATTRIBUTES};
+
+    /**
+     * Результат фасетного фильтра
+     */
+    public static final class Result {
+        public final int matchCount;  // Количество продуктов, подходящих под все условия
+        public final List<Facet> facets;  // Характеристики со значениями и счетчиками
+
+        Result(int matchCount, List<Facet> facets) {
+            this.matchCount = matchCount;
+            this.facets = facets;
+        }
+    }
+
+    private final DataBaseHandler dbHandler;  // Обработчик базы данных
+    private final Object buildLock = new Object();  // Не допускает двух одновременных построений
+    private volatile Index index;  // Текущие карты (null, пока не построены или после освобождения)
+    private volatile long maxBytes = Long.MAX_VALUE;  // Бюджет карт в байтах (назначается CacheRegistry)
+
+    // Последнее базовое множество из SQL (поиск или диапазон цен): при переключении значений оно не меняется
+    private Index lastBaseIndex;
+    private String lastBaseKey;
+    private CompressedBitmap lastBase;
+
+    /**
+     * Конструктор; экземпляр выдает DataBaseHandler.getFacetEngine()
+     * @param dbHandler Обработчик базы данных
+     */
+    FacetEngine(DataBaseHandler dbHandler) {
+        this.dbHandler = dbHandler;
+    }
+
+    /**
+     * Считает количество подходящих продуктов и счетчики значений всех характеристик
+     * Вызывать не в главном потоке: первый запрос (и первый после изменения каталога) строит карты
+     * @param filter Фильтры каталога (порядок сортировки не учитывается)
+     * @return Количество продуктов и фасеты; значения без продуктов показываются, только если выбраны
+     */
+    public Result query(ProductFilter filter) {
+        Index index = currentIndex();
+        CompressedBitmap base = base(index, filter);
+        Map<Integer, Set<Integer>> selection = filter.getAttributes();
+
+        // Объединение выбранных значений каждой характеристики
+        Map<Integer, CompressedBitmap> unions = new LinkedHashMap<>();
+        for (Attribute attribute : index.attributes) {
+            Set<Integer> selected = selection.get(attribute.id);
+            if (selected == null || selected.isEmpty()) continue;
+            CompressedBitmap union = new CompressedBitmap();
+            for (Value value : attribute.values) {
+                if (selected.contains(value.id)) union = CompressedBitmap.or(union, value.products);
+            }
+            unions.put(attribute.id, union);
+        }
+        for (Map.Entry<Integer, Set<Integer>> selected : selection.entrySet()) { // Выбрана неизвестная характеристика: ничего не подходит
+            if (!selected.getValue().isEmpty() && !unions.containsKey(selected.getKey())) unions.put(selected.getKey(), new CompressedBitmap());
+        }
+        CompressedBitmap matches = base;
+        for (CompressedBitmap union : unions.values()) matches = CompressedBitmap.and(matches, union);
+
+        List<Facet> facets = new ArrayList<>();
+        for (Attribute attribute : index.attributes) {
+            // Для выбранной характеристики счетчики считаются без ее собственного условия
+            CompressedBitmap context = matches;
+            if (unions.containsKey(attribute.id)) {
+                context = base;
+                for (Map.Entry<Integer, CompressedBitmap> union : unions.entrySet()) {
+                    if (union.getKey() != attribute.id) context = CompressedBitmap.and(context, union.getValue());
+                }
+            }
+            Set<Integer> selected = selection.get(attribute.id);
+            List<FacetValue> values = new ArrayList<>();
+            for (Value value : attribute.values) {
+                int count = CompressedBitmap.andCardinality(value.products, context);
+                boolean isSelected = selected != null && selected.contains(value.id);
+                if (count > 0 || isSelected) values.add(new FacetValue(value.id, value.value, count, isSelected));
+            }
+            if (!values.isEmpty()) facets.add(new Facet(attribute.id, attribute.name, values));
+        }
+        return new Result(matches.cardinality(), facets);
+    }
+
+    // Возвращает актуальные карты, перестраивая их после изменения таблиц
+    private Index currentIndex() {
+        QueryCache cache = dbHandler.getQueryCache();
+        Index current = index;
+        if (current != null && current.isCurrent(cache)) return current;
+        synchronized (buildLock) { // Запросы с нескольких экранов ждут одно построение
+            current = index;
+            if (current == null || !current.isCurrent(cache)) {
+                current = build(cache);
+                // Карты больше бюджета отвечают на этот запрос, но не хранятся (как записи QueryCache)
+                index = current.sizeBytes <= maxBytes ? current : null;
+            }
+            return current;
+        }
+    }
+
+    // Базовое множество: категория (или весь каталог) из памяти, либо результат SQL при поиске и диапазоне цен
+    private CompressedBitmap base(Index index, ProductFilter filter) {
+        if (filter.getQuery().isEmpty() && filter.getMinPrice() == null && filter.getMaxPrice() == null) {
+            if (filter.getCategoryId() <= 0) return index.all;
+            CompressedBitmap category = index.categories.get(filter.getCategoryId());
+            return category != null ? category : new CompressedBitmap();
+        }
+        List<String> args = new ArrayList<>();
+        String sql = ProductsTableHandler.idQuery(filter, args);
+        String key = sql + args;
+        synchronized (this) {
+            if (lastBaseIndex == index && key.equals(lastBaseKey)) return lastBase;
+        }
+        CompressedBitmap ids = new CompressedBitmap();
+        dbHandler.forEachRow(sql, args.toArray(new String[0]), cursor -> {
+            ids.add(cursor.getInt(0));
+            return true;
+        });
+        synchronized (this) {
+            lastBaseIndex = index;
+            lastBaseKey = key;
+            lastBase = ids;
+        }
+        return ids;
+    }
+
+    @Override
+    public String getName() {
+        return "FacetEngine";
+    }
+
+    @Override
+    public long getSizeBytes() {
+        Index current = index;
+        return current != null ? current.sizeBytes : 0;
+    }
+
+    @Override
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trimToBytes(maxBytes);
+    }
+
+    @Override
+    public void trimToBytes(long targetBytes) {
+        Index current = index;
+        if (current == null || current.sizeBytes <= targetBytes) return;
+        index = null;  // Карты делятся только целиком: частично построенный индекс давал бы неверные счетчики
+        synchronized (this) {
+            lastBaseIndex = null;
+            lastBaseKey = null;
+            lastBase = null;
+        }
+    }
+
+    // Строит карты по текущему содержимому таблиц
+    private Index build(QueryCache cache) {
+        long[] versions = new long[SOURCE_TABLES.length];  // Снимок до чтения: изменения во время чтения вызовут перестроение
+        for (int i = 0; i < SOURCE_TABLES.length; i++) versions[i] = cache.getTableVersion(SOURCE_TABLES[i]);
+
+        Map<Integer, Attribute> attributesById = new HashMap<>();
+        Map<Integer, Value> valuesById = new HashMap<>();
+        dbHandler.forEachRow(SQL_ATTRIBUTE_VALUES, null, cursor -> {
+            Attribute attribute = attributesById.get(cursor.getInt(1));
+            if (attribute == null) {
+                attribute = new Attribute(cursor.getInt(1), cursor.getString(2));
+                attributesById.put(attribute.id, attribute);
+            }
+            Value value = new Value(cursor.getInt(0), cursor.getString(3));
+            attribute.values.add(value);
+            valuesById.put(value.id, value);
+            return true;
+        });
+        dbHandler.forEachRow(SQL_VALUE_PRODUCTS, null, new DataBaseHandler.RowCallback() {
+            private Value current;  // Строки одного значения идут подряд
+
+            @Override
+            public boolean onRow(Cursor cursor) {
+                int valueId = cursor.getInt(0);
+                if (current == null || current.id != valueId) current = valuesById.get(valueId);
+                if (current != null) current.products.add(cursor.getInt(1));
+                return true;
+            }
+        });
+
+        Map<Integer, CompressedBitmap> categories = new HashMap<>();
+        CompressedBitmap[] all = {new CompressedBitmap()};
+        dbHandler.forEachRow(SQL_CATEGORY_PRODUCTS, null, cursor -> {
+            int productId = cursor.getInt(1);
+            if (!cursor.isNull(0)) {
+                CompressedBitmap category = categories.get(cursor.getInt(0));
+                if (category == null) {
+                    category = new CompressedBitmap();
+                    categories.put(cursor.getInt(0), category);
+                }
+                category.add(productId);
+            }
+            all[0].add(productId);
+            return true;
+        });
+
+        // Характеристики по названию, значения - по числу в начале (64 ГБ < 128 ГБ), затем по алфавиту
+        List<Attribute> attributes = new ArrayList<>(attributesById.values());
+        attributes.sort((a, b) -> a.name.compareToIgnoreCase(b.name));
+        for (Attribute attribute : attributes) attribute.values.sort(FacetEngine::compareValues);
+        return new Index(versions, attributes, categories, all[0]);
+    }
+
+    // Сравнивает значения: сначала числовое начало строки (если оно есть у обоих), затем текст
+    private static int compareValues(Value a, Value b) {
+        double x = leadingNumber(a.value), y = leadingNumber(b.value);
+        if (!Double.isNaN(x) && !Double.isNaN(y) && x != y) return Double.compare(x, y);
+        return a.value.compareToIgnoreCase(b.value);
+    }
+
+    // Число в начале строки или NaN
+    private static double leadingNumber(String value) {
+        int end = 0;
+        while (end < value.length() && (Character.isDigit(value.charAt(end)) || (end > 0 && value.charAt(end) == '.'))) end++;
+        if (end == 0) return Double.NaN;
+        try {
+            return Double.parseDouble(value.substring(0, end));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Построенные карты и версии таблиц, по которым они построены
+     */
+    private static final class Index {
+        final long[] versions;
+        final List<Attribute> attributes;  // Характеристики в порядке показа
+        final Map<Integer, CompressedBitmap> categories;  // Продукты каждой категории
+        final CompressedBitmap all;  // Все продукты
+        final long sizeBytes;  // Оценка памяти всех карт
+
+        Index(long[] versions, List<Attribute> attributes, Map<Integer, CompressedBitmap> categories, CompressedBitmap all) {
+            this.versions = versions;
+            this.attributes = attributes;
+            this.categories = categories;
+            this.all = all;
+            long bytes = all.sizeBytes();
+            for (CompressedBitmap category : categories.values()) bytes += category.sizeBytes();
+            for (Attribute attribute : attributes) {
+                for (Value value : attribute.values) bytes += value.products.sizeBytes();
+            }
+            this.sizeBytes = bytes;
+        }
+
+        // Таблицы не менялись с момента построения
+        boolean isCurrent(QueryCache cache) {
+            for (int i = 0; i < SOURCE_TABLES.length; i++) {
+                if (cache.getTableVersion(SOURCE_TABLES[i]) != versions[i]) return false;
+            }
+            return true;
+        }
+    }
+
+    private static final class Attribute {
+        final int id;
+        final String name;
+        final List<Value> values = new ArrayList<>();
+
+        Attribute(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    private static final class Value {
+        final int id;
+        final String value;
+        final CompressedBitmap products = new CompressedBitmap();  // Продукты со значением
+
+        Value(int id, String value) {
+            this.id = id;
+            this.value = value;
+        }
+    }
+}
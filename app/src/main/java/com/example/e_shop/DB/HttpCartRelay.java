@@ -0,0 +1,88 @@
+package com.example.e_shop.DB;
+
+import android.util.JsonReader;  // Импортируем потоковый парсер JSON
+import android.util.JsonWriter;  // Импортируем потоковую запись JSON
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ретранслятор изменений корзины через HTTP
+ * POST {baseUrl}/cart/{userId}/sync
+ * Запрос: {"cursor": 17, "entries": [[productId, quantity, hlc, deviceId], ...]}
+ * Ответ: {"cursor": 21, "entries": [[productId, quantity, hlc, deviceId], ...]}
+ * Записи передаются массивами без имен полей, чтобы дельта оставалась компактной.
+ */
+public class HttpCartRelay implements CartRelay {
+
+    // Таймауты соединения и чтения
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+    private static final int READ_TIMEOUT_MILLIS = 30_000;
+
+    private final String baseUrl;  // Адрес сервера без завершающего '/'
+
+    /**
+     * @param baseUrl Адрес сервера корзин (например, https://shop.example.com/api)
+     */
+    public HttpCartRelay(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    @Override
+    public Exchange exchange(int userId, List<CartSyncEngine.Entry> delta, long cursor) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/cart/" + userId + "/sync").openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+        try {
+            try (JsonWriter json = new JsonWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8))) {
+                json.beginObject();
+                json.name("cursor").value(cursor);
+                json.name("entries").beginArray();
+                for (CartSyncEngine.Entry entry : delta) {
+                    json.beginArray().value(entry.productId).value(entry.quantity).value(entry.hlc).value(entry.deviceId).endArray();
+                }
+                json.endArray();
+                json.endObject();
+            }
+            int code = connection.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK) throw new IOException("Cart sync failed: HTTP " + code);
+
+            long newCursor = cursor;
+            List<CartSyncEngine.Entry> changes = new ArrayList<>();
+            try (JsonReader json = new JsonReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+                json.beginObject();
+                while (json.hasNext()) {
+                    String field = json.nextName();
+                    if (field.equals("cursor")) {
+                        newCursor = json.nextLong();
+                    } else if (field.equals("entries")) {
+                        json.beginArray();
+                        while (json.hasNext()) {
+                            json.beginArray();
+                            changes.add(new CartSyncEngine.Entry(json.nextInt(), json.nextInt(), json.nextLong(), json.nextLong()));
+                            json.endArray();
+                        }
+                        json.endArray();
+                    } else {
+                        json.skipValue();
+                    }
+                }
+                json.endObject();
+            } catch (IllegalStateException | NumberFormatException e) {
+                throw new IOException("Malformed cart sync response", e);
+            }
+            return new Exchange(changes, newCursor);
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.e_shop.DB;
+
+/**
+ * Хэш-таблица int -> int с открытой адресацией (линейное пробирование) без упаковки в Integer
+ * Ключ 0 зарезервирован как признак пустой ячейки, поэтому ключами служат идентификаторы строк (>= 1).
+ * Удаление не поддерживается: таблица только растет (для счетчиков этого достаточно).
+ * Для обхода без выделения памяти используются capacity(), keyAt() и valueAt().
+ */
+final class IntIntHashMap {
+
+    private static final float LOAD_FACTOR = 0.6f;  // Предельная заполненность перед расширением
+
+    private int[] keys;  // Ключи (0 - пустая ячейка)
+    private int[] values;  // Значения
+    private int size;  // Количество занятых ячеек
+    private int threshold;  // Размер, при котором таблица расширяется
+
+    /**
+     * @param expectedSize Ожидаемое количество ключей
+     */
+    IntIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * @param key Ключ (не 0)
+     * @return Значение или 0, если ключа нет
+     */
+    int get(int key) {
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) return values[i];
+            if (k == 0) return 0;
+        }
+    }
+
+    /**
+     * Прибавляет delta к значению ключа (отсутствующий ключ считается равным 0)
+     * @param key Ключ (не 0)
+     * @param delta Прибавляемое значение
+     * @return Новое значение
+     */
+    int addTo(int key, int delta) {
+        if (key == 0) throw new IllegalArgumentException("Key 0 is reserved");
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            int k = keys[i];
+            if (k == key) return values[i] += delta;
+            if (k == 0) {
+                keys[i] = key;
+                values[i] = delta;
+                if (++size > threshold) grow();
+                return delta;
+            }
+        }
+    }
+
+    /**
+     * @return Количество ключей
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return Количество ячеек (граница индекса для keyAt/valueAt)
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * @param index Индекс ячейки
+     * @return Ключ ячейки или 0, если ячейка пуста
+     */
+    int keyAt(int index) {
+        return keys[index];
+    }
+
+    /**
+     * @param index Индекс ячейки
+     * @return Значение ячейки
+     */
+    int valueAt(int index) {
+        return values[index];
+    }
+
+    // Удваивает таблицу и перераспределяет ключи
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        threshold = (int) (keys.length * LOAD_FACTOR);
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            int key = oldKeys[j];
+            if (key == 0) continue;
+            int i = mix(key) & mask;
+            while (keys[i] != 0) i = (i + 1) & mask;
+            keys[i] = key;
+            values[i] = oldValues[j];
+        }
+    }
+
+    // Перемешивает биты ключа, чтобы последовательные id не образовывали длинных цепочек
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.e_shop.DB;
+
+import android.database.Cursor;  // Импортируем Cursor для выбора пачки заказов
+import android.database.sqlite.SQLiteDatabase;  // Импортируем SQLiteDatabase для транзакций и ATTACH
+import android.database.sqlite.SQLiteStatement;  // Импортируем скомпилированные выражения переноса пачки
+import android.os.SystemClock;  // Импортируем SystemClock для замера времени архивации
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Архив старых заказов в отдельном файле базы, подключенном к соединению как схема archive
+ * Заказы старше заданного возраста вместе с позициями переносятся из main.Orders/main.OrderDetails
+ * в archive.Orders/archive.OrderDetails пачками по BATCH_SIZE заказов, каждая пачка - одна транзакция.
+ * В режиме WAL SQLite не фиксирует транзакцию атомарно в двух файлах: после сбоя между фиксациями
+ * заказ может оказаться и в архиве, и в основной базе. Поэтому перенос идемпотентен - уже скопированные
+ * заказы и их позиции повторно не вставляются, а следующий запуск просто удаляет их из основной базы.
+ * Основная база перестает расти за счет истории: полные просмотры, резервные копии и VACUUM работают
+ * только с актуальными заказами. История пользователя читает архив, только когда недавние заказы пролистаны
+ * (OrdersTableHandler.getOrderPage); строки заказа, выгрузка для отчетности и рекомендации читают обе базы.
+ *
+ * Архивируются только заказы в конечных статусах, не ожидающие отправки на сервер (OrderOutbox),
+ * и никогда - заказ с наибольшим id: SQLite выдает новому заказу id на единицу больше наибольшего,
+ * и если бы этот заказ ушел в архив, его id мог бы достаться новому заказу.
+ */
+public class OrderArchive {
+
+    public static final String SCHEMA = "archive";  // Имя схемы подключенного архива
+    public static final String TABLE_ARCHIVED_ORDERS = SCHEMA + "." + OrdersTableHandler.TABLE_ORDERS;  // Архивные заказы
+    public static final String TABLE_ARCHIVED_ORDER_DETAILS = SCHEMA + "." + OrderDetailsTableHandler.TABLE_ORDER_DETAILS;  // Их позиции
+
+    // Количество заказов в одной транзакции (и параметров IN в выражениях переноса: каждое выражение привязывает
+    // список один раз, поэтому он не должен превышать SQLITE_MAX_VARIABLE_NUMBER - 999 в SQLite до 3.32, API 24-29)
+    static final int BATCH_SIZE = 500;
+    // Версия схемы архива (PRAGMA archive.user_version)
+    private static final int SCHEMA_VERSION = 1;
+
+    // Пачка заказов для переноса (диапазоны индекса (status, order_date) по конечным статусам)
+    static final String SQL_BATCH = "SELECT id FROM main." + OrdersTableHandler.TABLE_ORDERS
+            + " WHERE status IN (" + OrdersTableHandler.STATUS_DELIVERED + ", " + OrdersTableHandler.STATUS_CANCELLED + ")"
+            + " AND order_date < ?"
+            + " AND id < (SELECT MAX(id) FROM main." + OrdersTableHandler.TABLE_ORDERS + ")"
+            + " AND id NOT IN (SELECT order_id FROM main." + OrderOutboxTableHandler.TABLE_ORDER_OUTBOX + ")"
+            + " LIMIT " + BATCH_SIZE;
+
+    /**
+     * Итог архивации
+     */
+    public static final class Result {
+        public int orders;  // Перенесено заказов
+        public int lines;  // Перенесено позиций
+        public int batches;  // Зафиксировано транзакций
+        public long elapsedMillis;  // Время архивации
+
+        @Override
+        public String toString() {
+            return "OrderArchive.Result{orders=" + orders + ", lines=" + lines + ", batches=" + batches
+                    + ", elapsedMillis=" + elapsedMillis + "}";
+        }
+    }
+
+    private final DataBaseHandler dbHandler;  // Обработчик базы данных
+
+    /**
+     * Конструктор архива
+     * @param dbHandler Обработчик базы данных (архив подключается к его соединению в onOpen)
+     */
+    public OrderArchive(DataBaseHandler dbHandler) {
+        this.dbHandler = dbHandler;  // Сохраняем обработчик базы данных
+    }
+
+    /**
+     * Имя файла архива для файла основной базы (e_shop.db -> e_shop-archive.db)
+     * @param databaseName Имя файла основной базы
+     */
+    static String fileName(String databaseName) {
+        int dot = databaseName.lastIndexOf('.');
+        return dot > 0 ? databaseName.substring(0, dot) + "-archive" + databaseName.substring(dot) : databaseName + "-archive";
+    }
+
+    /**
+     * Подключает файл архива к соединению и создает в нем таблицы (файл создается при первом подключении)
+     * Вызывается из DataBaseHandler.onOpen вне транзакции: ATTACH внутри транзакции запрещен
+     * @param db Открытая база
+     * @param path Путь к файлу архива
+     */
+    static void attach(SQLiteDatabase db, String path) {
+        db.execSQL("ATTACH DATABASE ? AS " + SCHEMA, new Object[]{path});
+        Cursor cursor = db.rawQuery("PRAGMA " + SCHEMA + ".user_version", null);
+        int version;
+        try {
+            version = cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+        if (version >= SCHEMA_VERSION || db.isReadOnly()) return;
+        db.beginTransaction();
+        try {
+            // Те же колонки, что и в основной базе; справочник статусов берется из main
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_ARCHIVED_ORDERS + " ("
+                    + "id INTEGER PRIMARY KEY, "
+                    + "user_id INTEGER NOT NULL, "
+                    + "order_date INTEGER NOT NULL, "
+                    + "status INTEGER NOT NULL, "
+                    + "total_price REAL, "
+                    + "delivery_address TEXT NOT NULL)");
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_ARCHIVED_ORDER_DETAILS + " ("
+                    + "id INTEGER PRIMARY KEY, "  // Свой id: позиции основной базы могут получить те же id позже
+                    + "order_id INTEGER NOT NULL, "
+                    + "product_id INTEGER NOT NULL, "
+                    + "quantity INTEGER NOT NULL, "
+                    + "price_per_item REAL NOT NULL)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS " + SCHEMA + ".idx_orders_user_date ON Orders (user_id, order_date)");  // История пользователя
+            db.execSQL("CREATE INDEX IF NOT EXISTS " + SCHEMA + ".idx_order_details_order ON OrderDetails (order_id)");  // Позиции заказа
+            db.execSQL("PRAGMA " + SCHEMA + ".user_version = " + SCHEMA_VERSION);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Переносит в архив заказы, оформленные раньше заданного момента
+     * Выполняется синхронно, вызывать нужно не из главного потока. Между пачками другие потоки могут писать в базу.
+     * @param olderThanMillis Граница: переносятся заказы с order_date меньше нее (миллисекунды с начала эпохи)
+     * @return Итог архивации
+     */
+    public Result archiveOlderThan(long olderThanMillis) {
+        Result result = new Result();
+        long start = SystemClock.elapsedRealtime();
+        SQLiteDatabase db = dbHandler.getWritableDatabase();
+        while (true) {
+            db.beginTransaction();
+            int orders;
+            try {
+                List<String> ids = selectBatch(db, olderThanMillis);
+                orders = ids.size();
+                if (orders > 0) {
+                    result.lines += moveBatch(db, ids);
+                    result.orders += orders;
+                    result.batches++;
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            if (orders == 0) break;
+            // Пачка зафиксирована: списки заказов в кэше устарели и в основной базе, и в архиве
+            dbHandler.getQueryCache().invalidate(OrdersTableHandler.TABLE_ORDERS, OrderDetailsTableHandler.TABLE_ORDER_DETAILS,
+                    TABLE_ARCHIVED_ORDERS, TABLE_ARCHIVED_ORDER_DETAILS);
+            if (orders < BATCH_SIZE) break;  // Последняя неполная пачка
+        }
+        result.elapsedMillis = SystemClock.elapsedRealtime() - start;
+        return result;
+    }
+
+    // Идентификаторы следующей пачки заказов для переноса
+    private List<String> selectBatch(SQLiteDatabase db, long olderThanMillis) {
+        List<String> ids = new ArrayList<>();
+        Cursor cursor = dbHandler.getQueryTracer().rawQuery(db, SQL_BATCH, new String[]{String.valueOf(olderThanMillis)});
+        try {
+            while (cursor.moveToNext()) ids.add(cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    // Копирует заказы пачки и их позиции в архив и удаляет их из основной базы; возвращает количество позиций
+    private static int moveBatch(SQLiteDatabase db, List<String> ids) {
+        String[] args = ids.toArray(new String[0]);
+        String[] statements = moveStatements(args.length);
+        execute(db, statements[0], args);
+        execute(db, statements[1], args);
+        int lines = execute(db, statements[2], args);
+        execute(db, statements[3], args);
+        return lines;
+    }
+
+    /**
+     * Выражения переноса пачки по порядку: копирование позиций, копирование заказов, удаление позиций и заказов
+     * Каждое выражение привязывает список идентификаторов пачки ровно один раз
+     * @param count Количество заказов в пачке
+     * @return Тексты выражений
+     */
+    static String[] moveStatements(int count) {
+        StringBuilder in = new StringBuilder(" IN (");
+        for (int i = 0; i < count; i++) in.append(i == 0 ? "?" : ", ?");
+        in.append(')');
+        return new String[]{
+                // Позиции копируются только для заказов, которых еще нет в архиве: архив зафиксирован в своем файле
+                // атомарно, поэтому заказ в архиве означает, что и все его позиции уже там (проверка - поиск по PK архива)
+                "INSERT INTO " + TABLE_ARCHIVED_ORDER_DETAILS + " (order_id, product_id, quantity, price_per_item)"
+                        + " SELECT d.order_id, d.product_id, d.quantity, d.price_per_item FROM main."
+                        + OrderDetailsTableHandler.TABLE_ORDER_DETAILS + " d WHERE d.order_id" + in
+                        + " AND NOT EXISTS (SELECT 1 FROM " + TABLE_ARCHIVED_ORDERS + " a WHERE a.id = d.order_id)"
+                        + " ORDER BY d.order_id, d.id",  // Порядок позиций внутри заказа сохраняется
+                "INSERT OR IGNORE INTO " + TABLE_ARCHIVED_ORDERS + " (id, user_id, order_date, status, total_price, delivery_address)"
+                        + " SELECT id, user_id, order_date, status, total_price, delivery_address FROM main."
+                        + OrdersTableHandler.TABLE_ORDERS + " WHERE id" + in,
+                "DELETE FROM main." + OrderDetailsTableHandler.TABLE_ORDER_DETAILS + " WHERE order_id" + in,
+                "DELETE FROM main." + OrdersTableHandler.TABLE_ORDERS + " WHERE id" + in
+        };
+    }
+
+    // Выполняет выражение изменения и возвращает количество измененных строк
+    private static int execute(SQLiteDatabase db, String sql, String[] args) {
+        SQLiteStatement statement = db.compileStatement(sql);
+        try {
+            statement.bindAllArgsAsStrings(args);
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+    }
+}
@@ -4,6 +4,10 @@ import android.content.ContentValues;  // Импорт класса для со
 import android.database.Cursor;  // Импорт класса для работы с результатами запроса (курсором)
 import android.database.sqlite.SQLiteDatabase;  // Импорт класса для работы с базой данных SQLite
 
+import com.example.e_shop.DataClasses.OrderDetail;  // Импорт модели строки заказа
+
+import java.util.List;
+
 /**
  * Класс-обработчик таблицы деталей заказа
  */
@@ -18,6 +22,15 @@ public class OrderDetailsTableHandler {
     public static final String COLUMN_QUANTITY = "quantity"; // Имя колонки с количеством товара
     public static final String COLUMN_PRICE_PER_ITEM = "price_per_item"; // Имя колонки с ценой за единицу товара
 
+    // Колонки строки заказа: части UNION ALL сопоставляются по позиции, а порядок колонок в файлах может отличаться
+    private static final String DETAIL_COLUMNS = COLUMN_ID + ", " + COLUMN_ORDER_ID + ", " + COLUMN_PRODUCT_ID + ", "
+            + COLUMN_QUANTITY + ", " + COLUMN_PRICE_PER_ITEM;
+    // Запрос строк заказа: заказ из архива (OrderArchive) хранит строки в архиве; если после сбоя переноса
+    // заказ есть в обеих базах, строки берутся из основной
+    static final String SQL_DETAILS_BY_ORDER = "SELECT " + DETAIL_COLUMNS + " FROM main." + TABLE_ORDER_DETAILS + " WHERE " + COLUMN_ORDER_ID + " = ?1"
+            + " UNION ALL SELECT " + DETAIL_COLUMNS + " FROM " + OrderArchive.TABLE_ARCHIVED_ORDER_DETAILS + " WHERE " + COLUMN_ORDER_ID + " = ?1"
+            + " AND NOT EXISTS (SELECT 1 FROM main." + OrdersTableHandler.TABLE_ORDERS + " WHERE id = ?1)";
+
     /**
      * Конструктор класса OrderDetailsTableHandler
      * @param dbHandler Объект базы данных для доступа к данным
@@ -42,8 +55,8 @@ public class OrderDetailsTableHandler {
         values.put(COLUMN_QUANTITY, quantity); // Устанавливаем количество товара
         values.put(COLUMN_PRICE_PER_ITEM, pricePerItem); // Устанавливаем цену за единицу товара
 
-        long id = db.insert(TABLE_ORDER_DETAILS, null, values); // Вставляем данные в таблицу и получаем id новой записи
-        db.close(); // Закрываем базу для освобождения ресурсов
+        long id = dbHandler.getQueryTracer().insert(db, TABLE_ORDER_DETAILS, values); // Вставляем данные в таблицу и получаем id новой записи
+        dbHandler.getQueryCache().invalidate(TABLE_ORDER_DETAILS); // Сбрасываем кэшированные результаты по деталям заказов
         return id; // Возвращаем id вставленной записи
     }
 
@@ -55,7 +68,16 @@ public class OrderDetailsTableHandler {
     public Cursor getOrderDetailsByOrderId(int orderId) {
         SQLiteDatabase db = dbHandler.getReadableDatabase(); // Получаем базу для чтения
         // Выполняем запрос для выбора всех записей с указанным order_id
-        return db.rawQuery("SELECT * FROM " + TABLE_ORDER_DETAILS + " WHERE " + COLUMN_ORDER_ID + " = ?", new String[]{String.valueOf(orderId)});
+        return dbHandler.getQueryTracer().rawQuery(db, SQL_DETAILS_BY_ORDER, new String[]{String.valueOf(orderId)});
+    }
+
+    /**
+     * Метод для получения строк заказа в виде списка (курсор закрывается внутри)
+     * @param orderId Идентификатор заказа
+     * @return Список строк заказа
+     */
+    public List<OrderDetail> getOrderDetailList(int orderId) {
+        return dbHandler.queryList(SQL_DETAILS_BY_ORDER, new String[]{String.valueOf(orderId)}, OrderDetail::createFromCursor);
     }
 
     /**
@@ -71,8 +93,10 @@ public class OrderDetailsTableHandler {
         values.put(COLUMN_QUANTITY, quantity); // Обновляем значение количества товара
         values.put(COLUMN_PRICE_PER_ITEM, pricePerItem); // Обновляем цену за единицу товара
 
-        // Выполняем обновление записи с заданным id и возвращаем число измененных строк
-        return db.update(TABLE_ORDER_DETAILS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(orderDetailId)});
+        // Выполняем обновление записи с заданным id
+        int rows = dbHandler.getQueryTracer().update(db, TABLE_ORDER_DETAILS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(orderDetailId)});
+        dbHandler.getQueryCache().invalidate(TABLE_ORDER_DETAILS); // Сбрасываем кэшированные результаты по деталям заказов
+        return rows; // Возвращаем число измененных строк
     }
 
     /**
@@ -82,7 +106,7 @@ public class OrderDetailsTableHandler {
     public void deleteOrderDetail(int orderDetailId) {
         SQLiteDatabase db = dbHandler.getWritableDatabase(); // Получаем базу для записи
         // Удаляем запись, где id соответствует orderDetailId
-        db.delete(TABLE_ORDER_DETAILS, COLUMN_ID + " = ?", new String[]{String.valueOf(orderDetailId)});
-        db.close(); // Закрываем базу для освобождения ресурсов
+        dbHandler.getQueryTracer().delete(db, TABLE_ORDER_DETAILS, COLUMN_ID + " = ?", new String[]{String.valueOf(orderDetailId)});
+        dbHandler.getQueryCache().invalidate(TABLE_ORDER_DETAILS); // Сбрасываем кэшированные результаты по деталям заказов
     }
 }
@@ -0,0 +1,317 @@
+package com.example.e_shop.DB;
+
+import android.database.Cursor;  // Импортируем Cursor для чтения страниц заказов и позиций
+import android.database.sqlite.SQLiteDatabase;  // Импортируем SQLiteDatabase для выполнения запросов
+import android.os.SystemClock;  // Импортируем SystemClock для замера времени выгрузки
+import android.util.JsonWriter;  // Импортируем JsonWriter для строк JSON Lines
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Потоковая выгрузка заказов вместе с позициями для отчетности
+ * Заказы читаются страницами по возрастанию id (keyset-пагинация: id > последнего выгруженного), позиции
+ * страницы - одним запросом по диапазону order_id через индекс idx_order_details_order. Старые заказы
+ * читаются из архива (OrderArchive) тем же запросом, поэтому выгрузка за любой период полная. Оба курсора проходятся
+ * синхронно и сразу пишутся в Writer, поэтому расход памяти не зависит от числа заказов.
+ * После каждой страницы вызывается ProgressListener с id последнего полностью выгруженного заказа:
+ * этот id - точка возобновления, выгрузку можно продолжить с него (afterOrderId) после прерывания.
+ * При выгрузке в файл (exportToFile) вместе с id сохраняется длина файла: строки, записанные после последней
+ * точки возобновления, перед продолжением отрезаются, иначе прерванная страница попала бы в файл дважды.
+ *
+ * CSV: строка на позицию заказа (поля заказа повторяются), заказ без позиций - одна строка с пустыми полями позиции.
+ * JSON Lines: объект на заказ с массивом items.
+ * Дата заказа выгружается в ISO 8601 (UTC), статус - названием из справочника; дни диапазона дат тоже считаются в UTC.
+ */
+public class OrderExporter {
+
+    // Количество заказов на странице
+    private static final int PAGE_SIZE = 500;
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    // Страница заказов после заданного id в диапазоне времени [from, to) с названием статуса из основной базы и архива
+    // Обе части идут по первичному ключу и сливаются без сортировки; заказ, который после сбоя переноса
+    // есть в обеих базах (OrderArchive), берется из основной
+    static final String SQL_ORDERS_PAGE = "SELECT o.id, o.user_id, o.order_date, s.name, o.total_price, o.delivery_address FROM main."
+            + OrdersTableHandler.TABLE_ORDERS + " o JOIN " + OrdersTableHandler.TABLE_ORDER_STATUSES + " s ON s.id = o.status"
+            + " WHERE o.id > ?1 AND o.order_date >= ?2 AND o.order_date < ?3"
+            + " UNION ALL SELECT o.id, o.user_id, o.order_date, s.name, o.total_price, o.delivery_address FROM "
+            + OrderArchive.TABLE_ARCHIVED_ORDERS + " o JOIN " + OrdersTableHandler.TABLE_ORDER_STATUSES + " s ON s.id = o.status"
+            + " WHERE o.id > ?1 AND o.order_date >= ?2 AND o.order_date < ?3"
+            + " AND NOT EXISTS (SELECT 1 FROM main." + OrdersTableHandler.TABLE_ORDERS + " m WHERE m.id = o.id)"
+            + " ORDER BY 1 LIMIT ?4";
+    // Позиции заказов страницы (диапазон id заказов) из основной базы и архива, в том же порядке, что и заказы
+    static final String SQL_DETAILS_RANGE = "SELECT order_id, product_id, quantity, price_per_item, id FROM main."
+            + OrderDetailsTableHandler.TABLE_ORDER_DETAILS + " WHERE order_id > ?1 AND order_id <= ?2"
+            + " UNION ALL SELECT d.order_id, d.product_id, d.quantity, d.price_per_item, d.id FROM "
+            + OrderArchive.TABLE_ARCHIVED_ORDER_DETAILS + " d WHERE d.order_id > ?1 AND d.order_id <= ?2"
+            + " AND NOT EXISTS (SELECT 1 FROM main." + OrdersTableHandler.TABLE_ORDERS + " m WHERE m.id = d.order_id)"
+            + " ORDER BY 1, 5";
+
+    // Заголовок CSV
+    private static final String CSV_HEADER = "order_id,user_id,order_date,status,total_price,delivery_address,product_id,quantity,price_per_item";
+
+    /**
+     * Формат выгрузки
+     */
+    public enum Format {
+        CSV("csv"),
+        JSON_LINES("jsonl");
+
+        public final String extension;  // Расширение файла
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    /**
+     * Получатель сведений о ходе выгрузки (вызывается в потоке выгрузки после каждой страницы)
+     */
+    public interface ProgressListener {
+        void onProgress(Result progress);
+    }
+
+    /**
+     * Итог или промежуточное состояние выгрузки
+     */
+    public static final class Result {
+        public long lastOrderId;  // Последний полностью выгруженный заказ (точка возобновления)
+        public long fileLength;  // Длина файла после заказа lastOrderId (только exportToFile)
+        public int orders;  // Выгружено заказов
+        public int lines;  // Выгружено позиций
+        public long elapsedMillis;  // Время выгрузки
+
+        @Override
+        public String toString() {
+            return "OrderExporter.Result{lastOrderId=" + lastOrderId + ", fileLength=" + fileLength + ", orders=" + orders + ", lines=" + lines
+                    + ", elapsedMillis=" + elapsedMillis + "}";
+        }
+    }
+
+    private final DataBaseHandler dbHandler;  // Обработчик базы данных
+
+    /**
+     * Конструктор выгрузки
+     * @param dbHandler Обработчик базы данных
+     */
+    public OrderExporter(DataBaseHandler dbHandler) {
+        this.dbHandler = dbHandler;  // Сохраняем обработчик базы данных
+    }
+
+    /**
+     * Выгружает заказы в файл, начиная новый или продолжая прерванный с точки возобновления
+     * Точка возобновления - пара (lastOrderId, fileLength) из последнего вызова listener; при продолжении
+     * файл сначала обрезается до fileLength, чтобы строки прерванной страницы не повторились.
+     * @param file Файл выгрузки
+     * @param format Формат выгрузки
+     * @param fromDate Начальная дата YYYY-MM-DD (UTC) включительно или null
+     * @param toDate Конечная дата YYYY-MM-DD (UTC) включительно или null
+     * @param afterOrderId Точка возобновления (0 - новый файл)
+     * @param resumeLength Длина файла в точке возобновления (не используется при afterOrderId == 0)
+     * @param listener Получатель прогресса (может быть null); сохранять нужно и lastOrderId, и fileLength
+     * @return Итог выгрузки
+     * @throws IOException при ошибке записи
+     */
+    public Result exportToFile(File file, Format format, String fromDate, String toDate, long afterOrderId, long resumeLength,
+                               ProgressListener listener) throws IOException {
+        boolean resume = afterOrderId > 0;
+        try (FileOutputStream out = new FileOutputStream(file, resume)) {
+            if (resume) out.getChannel().truncate(resumeLength);  // Отрезаем строки после точки возобновления
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            // Прогресс сообщается после writer.flush(): размер файла совпадает с концом последнего заказа
+            Result result = export(writer, format, fromDate, toDate, afterOrderId, progress -> {
+                progress.fileLength = file.length();
+                if (listener != null) listener.onProgress(progress);
+            });
+            result.fileLength = file.length();
+            return result;
+        }
+    }
+
+    /**
+     * Выгружает заказы с id больше afterOrderId в заданном диапазоне дат
+     * Выполняется синхронно, вызывать нужно не из главного потока. Заголовок CSV пишется только при afterOrderId == 0,
+     * чтобы возобновленная выгрузка дописывала тот же файл.
+     * @param writer Приемник данных (закрывает вызывающий код)
+     * @param format Формат выгрузки
+     * @param fromDate Начальная дата YYYY-MM-DD (UTC) включительно или null
+     * @param toDate Конечная дата YYYY-MM-DD (UTC) включительно или null
+     * @param afterOrderId Точка возобновления (0 - с начала)
+     * @param listener Получатель прогресса (может быть null)
+     * @return Итог выгрузки
+     * @throws IOException при ошибке записи
+     * @throws IllegalArgumentException если дата не в формате YYYY-MM-DD (проверка - parseDay)
+     */
+    public Result export(Writer writer, Format format, String fromDate, String toDate, long afterOrderId,
+                         ProgressListener listener) throws IOException {
+        Result result = new Result();
+        result.lastOrderId = afterOrderId;
+        long start = SystemClock.elapsedRealtime();
+        String from = String.valueOf(fromDate == null || fromDate.isEmpty() ? Long.MIN_VALUE : requireDay(fromDate));
+        String to = String.valueOf(toDate == null || toDate.isEmpty() ? Long.MAX_VALUE : requireDay(toDate) + DAY_MILLIS);
+        DateFormat dateFormat = isoFormat();  // SimpleDateFormat не потокобезопасен: свой экземпляр на выгрузку
+        if (format == Format.CSV && afterOrderId == 0) writer.write(CSV_HEADER + "\n");
+
+        SQLiteDatabase db = dbHandler.getReadableDatabase();
+        while (true) {
+            int ordersInPage = exportPage(db, writer, format, from, to, dateFormat, result);
+            writer.flush();  // Страница записана целиком: точка возобновления согласована с файлом
+            result.elapsedMillis = SystemClock.elapsedRealtime() - start;
+            if (ordersInPage == 0) break;  // Заказов больше нет
+            if (listener != null) listener.onProgress(result);
+            if (ordersInPage < PAGE_SIZE) break;  // Последняя неполная страница
+        }
+        return result;
+    }
+
+    // Выгружает одну страницу заказов и возвращает количество заказов в ней
+    private int exportPage(SQLiteDatabase db, Writer writer, Format format, String from, String to, DateFormat dateFormat,
+                           Result result) throws IOException {
+        Cursor orders = dbHandler.getQueryTracer().rawQuery(db, SQL_ORDERS_PAGE,
+                new String[]{String.valueOf(result.lastOrderId), from, to, String.valueOf(PAGE_SIZE)});
+        try {
+            if (!orders.moveToLast()) return 0;
+            long lastId = orders.getLong(0);  // Верхняя граница диапазона позиций
+            orders.moveToPosition(-1);
+            Cursor details = dbHandler.getQueryTracer().rawQuery(db, SQL_DETAILS_RANGE,
+                    new String[]{String.valueOf(result.lastOrderId), String.valueOf(lastId)});
+            try {
+                boolean hasDetail = details.moveToNext();
+                while (orders.moveToNext()) {
+                    long orderId = orders.getLong(0);
+                    // Позиции заказов, отфильтрованных по дате, пропускаются
+                    while (hasDetail && details.getLong(0) < orderId) hasDetail = details.moveToNext();
+                    JsonWriter json = format == Format.JSON_LINES ? beginJsonOrder(writer, orders, dateFormat) : null;
+                    int linesOfOrder = 0;
+                    while (hasDetail && details.getLong(0) == orderId) {
+                        if (json != null) {
+                            json.beginObject();
+                            json.name("product_id").value(details.getLong(1));
+                            json.name("quantity").value(details.getLong(2));
+                            json.name("price_per_item").value(details.getDouble(3));
+                            json.endObject();
+                        } else {
+                            writeCsvLine(writer, orders, details, dateFormat);
+                        }
+                        linesOfOrder++;
+                        hasDetail = details.moveToNext();
+                    }
+                    if (json != null) {
+                        json.endArray();
+                        json.endObject();
+                        json.flush();  // Не закрываем: close() закрыл бы общий Writer
+                        writer.write('\n');
+                    } else if (linesOfOrder == 0) {
+                        writeCsvLine(writer, orders, null, dateFormat);  // Заказ без позиций
+                    }
+                    result.orders++;
+                    result.lines += linesOfOrder;
+                    result.lastOrderId = orderId;
+                }
+            } finally {
+                details.close();
+            }
+            return orders.getCount();
+        } finally {
+            orders.close();
+        }
+    }
+
+    // Начинает объект заказа JSON Lines и открывает массив items
+    private static JsonWriter beginJsonOrder(Writer writer, Cursor order, DateFormat dateFormat) throws IOException {
+        JsonWriter json = new JsonWriter(writer);  // Новый JsonWriter на строку: JSON Lines - много значений верхнего уровня
+        json.beginObject();
+        json.name("order_id").value(order.getLong(0));
+        json.name("user_id").value(order.getLong(1));
+        json.name("order_date").value(dateFormat.format(new Date(order.getLong(2))));
+        json.name("status").value(order.getString(3));
+        if (order.isNull(4)) json.name("total_price").nullValue(); else json.name("total_price").value(order.getDouble(4));
+        json.name("delivery_address").value(order.getString(5));
+        json.name("items").beginArray();
+        return json;
+    }
+
+    // Пишет строку CSV: поля заказа и поля позиции (пустые, если позиции нет)
+    private static void writeCsvLine(Writer writer, Cursor order, Cursor detail, DateFormat dateFormat) throws IOException {
+        writer.write(String.valueOf(order.getLong(0)));
+        writer.write(',');
+        writer.write(String.valueOf(order.getLong(1)));
+        writer.write(',');
+        writer.write(dateFormat.format(new Date(order.getLong(2))));
+        writer.write(',');
+        writeCsvField(writer, order.getString(3));
+        writer.write(',');
+        if (!order.isNull(4)) writer.write(formatPrice(order.getDouble(4)));
+        writer.write(',');
+        writeCsvField(writer, order.getString(5));
+        writer.write(',');
+        if (detail != null) {
+            writer.write(String.valueOf(detail.getLong(1)));
+            writer.write(',');
+            writer.write(String.valueOf(detail.getLong(2)));
+            writer.write(',');
+            writer.write(formatPrice(detail.getDouble(3)));
+        } else {
+            writer.write(",,");
+        }
+        writer.write('\n');
+    }
+
+    // Пишет текстовое поле CSV, заключая его в кавычки при необходимости (RFC 4180)
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) return;
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+        } else {
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+
+    // Цена с точкой в качестве разделителя независимо от локали
+    private static String formatPrice(double price) {
+        return String.format(Locale.US, "%.2f", price);
+    }
+
+    /**
+     * Начало дня в миллисекундах (UTC) для даты диапазона выгрузки
+     * @param date Дата YYYY-MM-DD
+     * @return Миллисекунды с начала эпохи или null, если дата записана неверно (например 2024-02-30)
+     */
+    public static Long parseDay(String date) {
+        if (date == null || date.length() != 10) return null;  // SimpleDateFormat принимает и 2024-2-3
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        format.setLenient(false);
+        ParsePosition position = new ParsePosition(0);
+        Date day = format.parse(date, position);
+        return day == null || position.getIndex() != date.length() ? null : day.getTime();
+    }
+
+    private static long requireDay(String date) {
+        Long day = parseDay(date);
+        if (day == null) throw new IllegalArgumentException("Invalid date: " + date);
+        return day;
+    }
+
+    // Дата и время заказа в ISO 8601 (UTC)
+    private static DateFormat isoFormat() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.e_shop.DB;
+
+import android.database.sqlite.SQLiteDatabase;  // Импортируем SQLiteDatabase для работы с базой данных
+import android.database.sqlite.SQLiteStatement;  // Импортируем скомпилированные выражения для пакетных изменений
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Класс-обработчик очереди заказов на отправку (outbox)
+ * Заказ ставится в очередь в транзакции оформления (OrdersTableHandler.placeOrder), поэтому заказ без записи
+ * в очереди или запись без заказа невозможны. OrderUploader забирает готовые записи пачками и удаляет их
+ * после подтверждения сервером; при ошибке следующая попытка откладывается с экспоненциальной задержкой.
+ */
+public class OrderOutboxTableHandler {
+
+    public static final String TABLE_ORDER_OUTBOX = "OrderOutbox";  // Имя таблицы очереди
+
+    // Статусы записи очереди
+    public static final int STATUS_PENDING = 0;  // Ожидает отправки
+    public static final int STATUS_REJECTED = 1;  // Отклонен сервером, повторно не отправляется
+
+    // Задержка после первой неудачной попытки и ее верхняя граница
+    private static final long BASE_BACKOFF_MILLIS = 30_000;
+    private static final long MAX_BACKOFF_MILLIS = 60 * 60_000;
+
+    // Записи, готовые к отправке, в порядке создания
+    static final String SQL_DUE = "SELECT id, order_id, idempotency_key, payload, attempts FROM " + TABLE_ORDER_OUTBOX
+            + " WHERE status = " + STATUS_PENDING + " AND next_attempt_at <= ? ORDER BY id LIMIT ?";
+
+    /**
+     * Запись очереди
+     */
+    public static final class Entry {
+        public final long id;  // Идентификатор записи
+        public final long orderId;  // Идентификатор заказа
+        public final String idempotencyKey;  // Ключ идемпотентности
+        public final String payload;  // Заказ в JSON
+        public final int attempts;  // Количество неудачных попыток
+
+        Entry(long id, long orderId, String idempotencyKey, String payload, int attempts) {
+            this.id = id;
+            this.orderId = orderId;
+            this.idempotencyKey = idempotencyKey;
+            this.payload = payload;
+            this.attempts = attempts;
+        }
+    }
+
+    private final DataBaseHandler dbHandler;  // Обработчик базы данных
+    private final Random jitter = new Random();  // Разброс задержек, чтобы устройства не повторяли запросы одновременно
+
+    /**
+     * Конструктор класса OrderOutboxTableHandler
+     * @param dbHandler Обработчик базы данных
+     */
+    public OrderOutboxTableHandler(DataBaseHandler dbHandler) {
+        this.dbHandler = dbHandler;  // Сохраняем обработчик базы данных
+    }
+
+    /**
+     * Ставит заказ в очередь; вызывается внутри транзакции, создающей заказ
+     * @param db База данных с открытой транзакцией
+     * @param orderId Идентификатор заказа
+     * @param payload Заказ с позициями в JSON
+     * @param now Текущее время в миллисекундах
+     * @return Ключ идемпотентности записи
+     */
+    static String enqueue(SQLiteDatabase db, long orderId, String payload, long now) {
+        String key = UUID.randomUUID().toString();  // Ключ создается один раз и не меняется при повторных отправках
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_ORDER_OUTBOX
+                + " (order_id, idempotency_key, payload, created_at) VALUES (?, ?, ?, ?)");
+        try {
+            insert.bindLong(1, orderId);
+            insert.bindString(2, key);
+            insert.bindString(3, payload);
+            insert.bindLong(4, now);
+            insert.executeInsert();
+        } finally {
+            insert.close();
+        }
+        return key;
+    }
+
+    /**
+     * Возвращает записи, готовые к отправке
+     * @param now Текущее время в миллисекундах
+     * @param limit Максимальное количество записей
+     * @return Записи в порядке создания
+     */
+    public List<Entry> getDueEntries(long now, int limit) {
+        return dbHandler.queryList(SQL_DUE, new String[]{String.valueOf(now), String.valueOf(limit)},
+                cursor -> new Entry(cursor.getLong(0), cursor.getLong(1), cursor.getString(2), cursor.getString(3), cursor.getInt(4)));
+    }
+
+    /**
+     * Удаляет записи, доставку которых подтвердил сервер
+     * @param entries Отправленные записи
+     */
+    public void markSent(List<Entry> entries) {
+        update(entries, "DELETE FROM " + TABLE_ORDER_OUTBOX + " WHERE id = ?");
+    }
+
+    /**
+     * Откладывает следующую попытку отправки с экспоненциальной задержкой
+     * @param entries Записи, которые не удалось отправить
+     * @param now Текущее время в миллисекундах
+     * @param minDelayMillis Минимальная задержка (например, из Retry-After), 0 - без ограничения
+     */
+    public void markFailed(List<Entry> entries, long now, long minDelayMillis) {
+        SQLiteDatabase db = dbHandler.getWritableDatabase();
+        SQLiteStatement statement = db.compileStatement("UPDATE " + TABLE_ORDER_OUTBOX
+                + " SET attempts = attempts + 1, next_attempt_at = ? WHERE id = ?");
+        db.beginTransaction();
+        try {
+            for (Entry entry : entries) {
+                statement.bindLong(1, now + Math.max(backoffMillis(entry.attempts), minDelayMillis));
+                statement.bindLong(2, entry.id);
+                statement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+    }
+
+    /**
+     * Помечает записи как отклоненные сервером (ошибка в данных заказа, повтор не поможет)
+     * OrderUploader передает сюда только заказы, которые сервер отклонил поименно или по одному
+     * @param entries Отклоненные записи
+     */
+    public void markRejected(List<Entry> entries) {
+        update(entries, "UPDATE " + TABLE_ORDER_OUTBOX + " SET status = " + STATUS_REJECTED + " WHERE id = ?");
+    }
+
+    /**
+     * @return Количество заказов, ожидающих отправки (включая отложенные)
+     */
+    public int getPendingCount() {
+        Integer count = dbHandler.queryFirst("SELECT COUNT(*) FROM " + TABLE_ORDER_OUTBOX + " WHERE status = " + STATUS_PENDING,
+                null, cursor -> cursor.getInt(0));
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * @return Время ближайшей отложенной попытки в миллисекундах или 0, если ожидающих записей нет
+     */
+    public long getNextAttemptAt() {
+        Long next = dbHandler.queryFirst("SELECT MIN(next_attempt_at) FROM " + TABLE_ORDER_OUTBOX + " WHERE status = " + STATUS_PENDING,
+                null, cursor -> cursor.isNull(0) ? null : cursor.getLong(0));
+        return next == null ? 0 : next;
+    }
+
+    // Задержка после attempts предыдущих неудач: BASE * 2^attempts с разбросом +-20%, не больше MAX
+    private long backoffMillis(int attempts) {
+        long delay = BASE_BACKOFF_MILLIS << Math.min(attempts, 20);
+        delay = Math.min(delay, MAX_BACKOFF_MILLIS);
+        return (long) (delay * (0.8 + 0.4 * jitter.nextDouble()));
+    }
+
+    // Выполняет выражение с id записи в одной транзакции для всех записей
+    private void update(List<Entry> entries, String sql) {
+        if (entries.isEmpty()) return;
+        SQLiteDatabase db = dbHandler.getWritableDatabase();
+        SQLiteStatement statement = db.compileStatement(sql);
+        db.beginTransaction();
+        try {
+            for (Entry entry : entries) {
+                statement.bindLong(1, entry.id);
+                statement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.e_shop.DB;
+
+import android.util.JsonReader;  // Импортируем потоковый парсер JSON для ответа с отклоненными заказами
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Отправка заказов из очереди (OrderOutbox) на сервер
+ * Готовые записи уходят пачками по BATCH_SIZE в одном сжатом gzip запросе:
+ * POST {baseUrl}/orders/batch
+ * {"orders": [{"idempotency_key": "...", "order": {...}}]}
+ * Сервер по ключу идемпотентности отбрасывает повторную доставку, поэтому запрос, ответ на который потерялся,
+ * можно безопасно повторить. Остальные ответы и сетевые ошибки откладывают пачку с экспоненциальной задержкой
+ * (не меньше Retry-After). Ответ может перечислить заказы с ошибкой в данных: {"rejected": ["<idempotency_key>", ...]}
+ * - 2xx: перечисленные заказы отклонены насовсем, остальные приняты;
+ * - 4xx (кроме 408 и 429): перечисленные заказы отклонены насовсем, остальные отправляются повторно.
+ *   Если сервер не перечислил заказы, пачка делится пополам и половины отправляются отдельно, пока отказ
+ *   не сузится до одного заказа - только он и отклоняется, остальные заказы пачки не теряются.
+ */
+public class OrderUploader {
+
+    // Количество заказов в одном запросе
+    private static final int BATCH_SIZE = 50;
+    // Таймауты соединения и чтения
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+    private static final int READ_TIMEOUT_MILLIS = 30_000;
+
+    /**
+     * Итог отправки
+     */
+    public static final class Result {
+        public int sent;  // Подтверждено сервером
+        public int rejected;  // Отклонено сервером
+        public int failed;  // Отложено до следующей попытки
+        public int pending;  // Осталось в очереди (включая отложенные)
+        public long nextAttemptAt;  // Время ближайшей попытки для оставшихся записей (0 - очередь пуста)
+
+        @Override
+        public String toString() {
+            return "OrderUploader.Result{sent=" + sent + ", rejected=" + rejected + ", failed=" + failed
+                    + ", pending=" + pending + ", nextAttemptAt=" + nextAttemptAt + "}";
+        }
+    }
+
+    private final OrderOutboxTableHandler outbox;  // Очередь заказов
+    private final String baseUrl;  // Адрес сервера без завершающего '/'
+
+    /**
+     * Конструктор отправки
+     * @param dbHandler Обработчик базы данных
+     * @param baseUrl Адрес сервера заказов (например, https://shop.example.com/api)
+     */
+    public OrderUploader(DataBaseHandler dbHandler, String baseUrl) {
+        this.outbox = new OrderOutboxTableHandler(dbHandler);
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    /**
+     * Отправляет все записи очереди, время попытки которых наступило
+     * Останавливается на первой неудачной пачке: остальные, скорее всего, тоже не дойдут
+     * Выполняется синхронно, вызывать нужно не из главного потока
+     * @return Итог отправки
+     */
+    public Result uploadPending() {
+        Result result = new Result();
+        while (true) {
+            long now = System.currentTimeMillis();
+            List<OrderOutboxTableHandler.Entry> batch = outbox.getDueEntries(now, BATCH_SIZE);
+            if (batch.isEmpty()) break;
+            if (!upload(batch, now, result)) break;
+        }
+        result.pending = outbox.getPendingCount();
+        result.nextAttemptAt = outbox.getNextAttemptAt();
+        return result;
+    }
+
+    // Отправляет пачку и сохраняет итог по каждому заказу; false - сервер недоступен, отправку нужно прекратить
+    private boolean upload(List<OrderOutboxTableHandler.Entry> batch, long now, Result result) {
+        Response response;
+        try {
+            response = send(batch);
+        } catch (IOException e) {
+            response = new Response(-1, 0, null);  // Нет сети или сервер недоступен
+        }
+
+        List<OrderOutboxTableHandler.Entry> rejected = new ArrayList<>();  // Заказы, отклоненные сервером поименно
+        List<OrderOutboxTableHandler.Entry> rest = new ArrayList<>();  // Остальные заказы пачки
+        for (OrderOutboxTableHandler.Entry entry : batch) {
+            if (response.rejectedKeys != null && response.rejectedKeys.contains(entry.idempotencyKey)) {
+                rejected.add(entry);
+            } else {
+                rest.add(entry);
+            }
+        }
+
+        int code = response.code;
+        if (code >= 200 && code < 300) {
+            outbox.markSent(rest);
+            outbox.markRejected(rejected);
+            result.sent += rest.size();
+            result.rejected += rejected.size();
+            return true;
+        }
+        if (code >= 400 && code < 500 && code != 408 && code != 429) {
+            if (!rejected.isEmpty()) {
+                outbox.markRejected(rejected);  // Повтор с теми же данными не поможет
+                result.rejected += rejected.size();
+                return rest.isEmpty() || upload(rest, now, result);  // Остальные заказы сервер не обработал
+            }
+            if (batch.size() == 1) {
+                outbox.markRejected(batch);  // Отказ сузился до одного заказа
+                result.rejected++;
+                return true;
+            }
+            int middle = batch.size() / 2;  // Сервер не указал заказ с ошибкой: ищем его делением пачки
+            return upload(batch.subList(0, middle), now, result) && upload(batch.subList(middle, batch.size()), now, result);
+        }
+        outbox.markFailed(batch, now, response.retryAfterMillis);
+        result.failed += batch.size();
+        return false;
+    }
+
+    // Ответ сервера на пачку
+    private static final class Response {
+        final int code;  // Код ответа HTTP (-1 - ответа нет)
+        final long retryAfterMillis;  // Задержка из Retry-After
+        final Set<String> rejectedKeys;  // Ключи отклоненных заказов или null, если сервер их не перечислил
+
+        Response(int code, long retryAfterMillis, Set<String> rejectedKeys) {
+            this.code = code;
+            this.retryAfterMillis = retryAfterMillis;
+            this.rejectedKeys = rejectedKeys;
+        }
+    }
+
+    // Отправляет пачку и читает ответ
+    private Response send(List<OrderOutboxTableHandler.Entry> batch) throws IOException {
+        HttpURLConnection connection = post(batch);
+        try {
+            int code = connection.getResponseCode();
+            long retryAfterMillis = parseRetryAfter(connection.getHeaderField("Retry-After"));
+            // Тело дочитывается до конца в любом случае, чтобы соединение вернулось в пул keep-alive
+            return new Response(code, retryAfterMillis, readRejectedKeys(connection));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    // Отправляет пачку сжатым запросом и возвращает соединение с ответом
+    private HttpURLConnection post(List<OrderOutboxTableHandler.Entry> batch) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/orders/batch").openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setChunkedStreamingMode(0);  // Тело пишется потоком, без буферизации всей пачки
+        connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+        connection.setRequestProperty("Content-Encoding", "gzip");
+        try (Writer out = new OutputStreamWriter(new GZIPOutputStream(connection.getOutputStream()), StandardCharsets.UTF_8)) {
+            out.write("{\"orders\":[");
+            for (int i = 0; i < batch.size(); i++) {
+                OrderOutboxTableHandler.Entry entry = batch.get(i);
+                if (i > 0) out.write(',');
+                // Ключ - UUID, экранирование не требуется; payload уже является JSON-объектом
+                out.write("{\"idempotency_key\":\"" + entry.idempotencyKey + "\",\"order\":");
+                out.write(entry.payload);
+                out.write('}');
+            }
+            out.write("]}");
+        }
+        return connection;
+    }
+
+    // Читает из тела ответа ключи отклоненных заказов; null, если тела нет или в нем нет списка "rejected"
+    private static Set<String> readRejectedKeys(HttpURLConnection connection) {
+        try (InputStream input = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            if (input == null) return null;
+            Set<String> keys = null;
+            // JsonReader не закрывается: он закрыл бы поток до того, как остаток ответа будет дочитан
+            JsonReader json = new JsonReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+            try {
+                json.beginObject();
+                while (json.hasNext()) {
+                    if (json.nextName().equals("rejected")) {
+                        keys = new HashSet<>();
+                        json.beginArray();
+                        while (json.hasNext()) keys.add(json.nextString());
+                        json.endArray();
+                    } else {
+                        json.skipValue();
+                    }
+                }
+                json.endObject();
+            } catch (IllegalStateException | IOException e) {
+                // Тело пустое или не JSON (например, страница ошибки прокси): заказы не перечислены
+                keys = null;
+            }
+            byte[] buffer = new byte[1024];
+            while (input.read(buffer) != -1) {
+                // Остаток ответа не используется
+            }
+            return keys;
+        } catch (IOException e) {
+            return null;  // Ответ уже получен, ошибка чтения тела не влияет на код ответа
+        }
+    }
+
+    // Задержка из заголовка Retry-After в секундах (формат с датой не поддерживается)
+    private static long parseRetryAfter(String value) {
+        if (value == null) return 0;
+        try {
+            return Math.max(0, Long.parseLong(value.trim())) * 1000;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
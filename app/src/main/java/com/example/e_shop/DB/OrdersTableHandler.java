@@ -4,6 +4,19 @@ import android.content.ContentValues; // Импортируем класс дл
 import android.database.Cursor; // Импортируем класс для работы с курсором
 import android.database.sqlite.SQLiteDatabase; // Импортируем класс для работы с базой данных SQLite
 
+import android.util.JsonWriter; // Импортируем JsonWriter для заказа в очереди отправки
+
+import com.example.e_shop.DataClasses.CartProduct; // Импортируем модель товара в корзине
+import com.example.e_shop.DataClasses.Order; // Импортируем модель заказа
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Класс-обработчик таблицы заказов
  * @param dbHandler Объект базы данных для доступа к таблице заказов
@@ -13,12 +26,66 @@ public class OrdersTableHandler {
     private DataBaseHandler dbHandler; // Обработчик базы данных
 
     public static final String TABLE_ORDERS = "Orders"; // Имя таблицы заказов
+    public static final String TABLE_ORDER_STATUSES = "OrderStatuses"; // Имя справочника статусов заказов
     public static final String COLUMN_ORDER_ID = "id"; // Имя колонки с идентификатором заказа
     public static final String COLUMN_USER_ID = "user_id"; // Имя колонки с идентификатором пользователя
-    public static final String COLUMN_ORDER_DATE = "order_date"; // Имя колонки с датой заказа
-    public static final String COLUMN_STATUS = "status"; // Имя колонки с статусом заказа
+    public static final String COLUMN_ORDER_DATE = "order_date"; // Имя колонки с датой заказа (миллисекунды с начала эпохи)
+    public static final String COLUMN_STATUS = "status"; // Имя колонки с кодом статуса заказа
+    public static final String COLUMN_STATUS_NAME = "status_name"; // Название статуса из справочника (колонка результатов запросов)
     public static final String COLUMN_TOTAL_PRICE = "total_price"; // Имя колонки с общей стоимостью заказа
     public static final String COLUMN_DELIVERY_ADDRESS = "delivery_address"; // Имя колонки с адресом доставки
+    public static final String COLUMN_ARCHIVED = "archived"; // Признак заказа из архива (колонка результатов страниц истории)
+
+    // Коды статусов (строки справочника OrderStatuses, создаются миграцией)
+    public static final int STATUS_PENDING = 0; // В ожидании
+    public static final int STATUS_SHIPPED = 1; // Отправлен
+    public static final int STATUS_DELIVERED = 2; // Доставлен
+    public static final int STATUS_CANCELLED = 3; // Отменён
+
+    // Разрешенные переходы: индекс - код статуса, значения - коды, в которые из него можно перевести заказ
+    private static final int[][] TRANSITIONS = {
+            {STATUS_SHIPPED, STATUS_CANCELLED}, // Из "В ожидании"
+            {STATUS_DELIVERED, STATUS_CANCELLED}, // Из "Отправлен"
+            {}, // "Доставлен" - конечный статус
+            {} // "Отменён" - конечный статус
+    };
+    // Заказов в одном UPDATE: SQLITE_MAX_VARIABLE_NUMBER (999 в SQLite до 3.32) без параметра нового статуса
+    private static final int IDS_PER_UPDATE = 998;
+
+    // Колонки заказа с названием статуса; справочник присоединяется поиском по первичному ключу
+    private static final String ORDER_COLUMNS = "o.id, o.user_id, o.order_date, o.status, s.name AS " + COLUMN_STATUS_NAME
+            + ", o.total_price, o.delivery_address FROM " + TABLE_ORDERS + " o JOIN " + TABLE_ORDER_STATUSES + " s ON s.id = o.status";
+    // Запрос заказов пользователя, новые первыми (индекс (user_id, order_date) отдает их уже упорядоченными)
+    static final String SQL_ORDERS_BY_USER = "SELECT " + ORDER_COLUMNS + " WHERE o.user_id = ? ORDER BY o.order_date DESC";
+    // Заказы пользователя за период [from, to) - диапазон того же индекса
+    static final String SQL_ORDERS_BY_USER_AND_DATE = "SELECT " + ORDER_COLUMNS
+            + " WHERE o.user_id = ? AND o.order_date >= ? AND o.order_date < ? ORDER BY o.order_date DESC";
+    // Заказы в статусе за период [from, to) - диапазон индекса (status, order_date)
+    static final String SQL_ORDERS_BY_STATUS_AND_DATE = "SELECT " + ORDER_COLUMNS
+            + " WHERE o.status = ? AND o.order_date >= ? AND o.order_date < ? ORDER BY o.order_date DESC LIMIT ?";
+    // Страницы истории пользователя: сначала основная база, затем архив (OrderArchive); новые первыми, при равном времени - по id
+    static final String SQL_ORDER_PAGE_FIRST = orderPageQuery(TABLE_ORDERS, false, false);
+    static final String SQL_ORDER_PAGE_AFTER = orderPageQuery(TABLE_ORDERS, false, true);
+    static final String SQL_ARCHIVE_PAGE_FIRST = orderPageQuery(OrderArchive.TABLE_ARCHIVED_ORDERS, true, false);
+    static final String SQL_ARCHIVE_PAGE_AFTER = orderPageQuery(OrderArchive.TABLE_ARCHIVED_ORDERS, true, true);
+    // Справочник статусов
+    static final String SQL_STATUSES = "SELECT id, name FROM " + TABLE_ORDER_STATUSES + " ORDER BY id";
+    // Таблицы, от которых зависят кэшированные результаты запросов заказов
+    private static final String[] ORDERS_TABLES = {TABLE_ORDERS, TABLE_ORDER_STATUSES};
+    // Таблицы, от которых зависят кэшированные страницы архива
+    private static final String[] ARCHIVE_TABLES = {OrderArchive.TABLE_ARCHIVED_ORDERS, TABLE_ORDER_STATUSES};
+
+    // Запрос страницы заказов пользователя из основной таблицы или архива
+    // Продолжение - по ключу (order_date, id) последнего заказа предыдущей страницы, как у страниц каталога;
+    // индекс (user_id, order_date) вместе с rowid отдает заказы уже в нужном порядке
+    private static String orderPageQuery(String table, boolean archived, boolean after) {
+        return "SELECT o.id, o.user_id, o.order_date, o.status, s.name AS " + COLUMN_STATUS_NAME
+                + ", o.total_price, o.delivery_address, " + (archived ? 1 : 0) + " AS " + COLUMN_ARCHIVED
+                + " FROM " + table + " o JOIN main." + TABLE_ORDER_STATUSES + " s ON s.id = o.status"
+                + " WHERE o.user_id = ?"
+                + (after ? " AND o.order_date <= ? AND (o.order_date < ? OR o.id < ?)" : "")
+                + " ORDER BY o.order_date DESC, o.id DESC LIMIT ?";
+    }
 
     /**
      * Конструктор класса OrdersTableHandler
@@ -39,38 +106,211 @@ public class OrdersTableHandler {
         SQLiteDatabase db = dbHandler.getWritableDatabase(); // Получаем базу данных для записи
         ContentValues values = new ContentValues(); // Создаем объект для набора значений
         values.put(COLUMN_USER_ID, userId); // Записываем идентификатор пользователя
+        values.put(COLUMN_ORDER_DATE, System.currentTimeMillis()); // Записываем время создания заказа
         values.put(COLUMN_TOTAL_PRICE, totalPrice); // Записываем общую стоимость заказа
         values.put(COLUMN_DELIVERY_ADDRESS, deliveryAddress); // Записываем адрес доставки заказа
 
-        long id = db.insert(TABLE_ORDERS, null, values); // Вставляем данные и получаем идентификатор записи
-        db.close(); // Закрываем базу данных
+        long id = dbHandler.getQueryTracer().insert(db, TABLE_ORDERS, values); // Вставляем данные и получаем идентификатор записи
+        dbHandler.getQueryCache().invalidate(TABLE_ORDERS); // Сбрасываем кэшированные списки заказов
         return id; // Возвращаем идентификатор вставленной записи
     }
 
     /**
-     * Метод для получения заказов по идентификатору пользователя
+     * Оформляет заказ из корзины одной транзакцией: заказ, его позиции, очистка корзины и постановка в очередь отправки
+     * Если любой шаг не выполнился, не сохраняется ничего
+     * @param userId Идентификатор пользователя
+     * @param deliveryAddress Адрес доставки
+     * @param items Товары корзины на момент оформления
+     * @return Идентификатор заказа или -1 при ошибке
+     */
+    public long placeOrder(int userId, String deliveryAddress, List<CartProduct> items) {
+        double totalPrice = 0; // Общая стоимость заказа
+        for (CartProduct item : items) totalPrice += item.getProduct().getPrice() * item.getCartQuantity();
+        long now = System.currentTimeMillis(); // Время оформления
+
+        SQLiteDatabase db = dbHandler.getWritableDatabase(); // Получаем базу данных для записи
+        long orderId;
+        db.beginTransaction();
+        try {
+            ContentValues order = new ContentValues(); // Заказ
+            order.put(COLUMN_USER_ID, userId);
+            order.put(COLUMN_ORDER_DATE, now);
+            order.put(COLUMN_TOTAL_PRICE, totalPrice);
+            order.put(COLUMN_DELIVERY_ADDRESS, deliveryAddress);
+            orderId = dbHandler.getQueryTracer().insert(db, TABLE_ORDERS, order);
+            if (orderId == -1) return -1; // Транзакция откатится в finally
+
+            ContentValues detail = new ContentValues(); // Позиция заказа (переиспользуется)
+            for (CartProduct item : items) {
+                detail.put(OrderDetailsTableHandler.COLUMN_ORDER_ID, orderId);
+                detail.put(OrderDetailsTableHandler.COLUMN_PRODUCT_ID, item.getProduct().getId());
+                detail.put(OrderDetailsTableHandler.COLUMN_QUANTITY, item.getCartQuantity());
+                detail.put(OrderDetailsTableHandler.COLUMN_PRICE_PER_ITEM, item.getProduct().getPrice());
+                if (dbHandler.getQueryTracer().insert(db, OrderDetailsTableHandler.TABLE_ORDER_DETAILS, detail) == -1) return -1;
+            }
+            CartSyncEngine.recordCartCleared(db, userId); // Очистка корзины видна другим устройствам пользователя
+            dbHandler.getQueryTracer().delete(db, UserCartTableHandler.TABLE_USERCART,
+                    UserCartTableHandler.COLUMN_USER_ID + " = ?", new String[]{String.valueOf(userId)}); // Очищаем корзину
+            OrderOutboxTableHandler.enqueue(db, orderId, orderPayload(orderId, userId, totalPrice, deliveryAddress, now, items), now);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        // Сбрасываем кэшированные списки заказов и корзин
+        dbHandler.getQueryCache().invalidate(TABLE_ORDERS, OrderDetailsTableHandler.TABLE_ORDER_DETAILS, UserCartTableHandler.TABLE_USERCART);
+        int[] productIds = new int[items.size()]; // Продукты заказа для рекомендаций "С этим товаром покупают"
+        for (int i = 0; i < productIds.length; i++) productIds[i] = items.get(i).getProduct().getId();
+        RecommendationEngine.recordOrder(dbHandler, orderId, productIds);
+        return orderId;
+    }
+
+    // Заказ с позициями в JSON для отправки на сервер
+    private static String orderPayload(long orderId, int userId, double totalPrice, String deliveryAddress, long createdAt,
+                                       List<CartProduct> items) {
+        StringWriter out = new StringWriter();
+        try (JsonWriter json = new JsonWriter(out)) {
+            json.beginObject();
+            json.name("order_id").value(orderId);
+            json.name("user_id").value(userId);
+            json.name("created_at").value(createdAt);
+            json.name("total_price").value(totalPrice);
+            json.name("delivery_address").value(deliveryAddress);
+            json.name("items").beginArray();
+            for (CartProduct item : items) {
+                json.beginObject();
+                json.name("product_id").value(item.getProduct().getId());
+                json.name("quantity").value(item.getCartQuantity());
+                json.name("price_per_item").value(item.getProduct().getPrice());
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // StringWriter не бросает IOException
+        }
+        return out.toString();
+    }
+
+    /**
+     * Метод для получения заказов по идентификатору пользователя (новые первыми)
      * @param userId Идентификатор пользователя, заказы которого нужно получить
      * @return Курсор с данными заказов пользователя
      */
     public Cursor getOrdersByUserId(int userId) {
         SQLiteDatabase db = dbHandler.getReadableDatabase(); // Получаем базу данных для чтения
         // Выполняем запрос для выборки заказов, где user_id соответствует переданному значению
-        return db.rawQuery("SELECT * FROM " + TABLE_ORDERS + " WHERE " + COLUMN_USER_ID + " = ?", new String[]{String.valueOf(userId)});
+        return dbHandler.getQueryTracer().rawQuery(db, SQL_ORDERS_BY_USER, new String[]{String.valueOf(userId)});
     }
 
     /**
      * Метод для обновления статуса заказа
+     * Условие на текущий статус входит в UPDATE (как в transitionOrders): заказ, из статуса которого
+     * переход не разрешен (в том числе уже переведенный другим администратором), не меняется
      * @param orderId Идентификатор заказа
-     * @param status Новый статус заказа
-     * @return Количество обновленных строк
+     * @param status Код нового статуса (STATUS_*)
+     * @return Количество обновленных строк (0, если переход из текущего статуса заказа не разрешен)
+     * @throws IllegalArgumentException если в этот статус нельзя перевести ни из какого статуса
      */
-    public int updateOrderStatus(int orderId, String status) {
+    public int updateOrderStatus(int orderId, int status) {
+        String sources = sourceStatuses(status); // Статусы, из которых разрешен переход
         SQLiteDatabase db = dbHandler.getWritableDatabase(); // Получаем базу данных для записи
         ContentValues values = new ContentValues(); // Создаем объект для новых значений
         values.put(COLUMN_STATUS, status); // Обновляем значение статуса
 
-        // Обновляем запись, где order_id равен переданному значению, и возвращаем количество обновленных строк
-        return db.update(TABLE_ORDERS, values, COLUMN_ORDER_ID + " = ?", new String[]{String.valueOf(orderId)});
+        // Обновляем запись, где order_id равен переданному значению, а текущий статус допускает переход
+        int rows = dbHandler.getQueryTracer().update(db, TABLE_ORDERS, values,
+                COLUMN_STATUS + " IN (" + sources + ") AND " + COLUMN_ORDER_ID + " = ?", new String[]{String.valueOf(orderId)});
+        dbHandler.getQueryCache().invalidate(TABLE_ORDERS); // Сбрасываем кэшированные списки заказов
+        return rows; // Возвращаем количество обновленных строк
+    }
+
+    /**
+     * Статусы, в которые можно перевести заказ из заданного
+     * @param status Код текущего статуса
+     * @return Коды допустимых новых статусов (пустой массив для конечных и неизвестных статусов)
+     */
+    public static int[] allowedTransitions(int status) {
+        return status >= 0 && status < TRANSITIONS.length ? TRANSITIONS[status].clone() : new int[0];
+    }
+
+    /**
+     * @return true, если заказ можно перевести из статуса from в статус to
+     */
+    public static boolean isTransitionAllowed(int from, int to) {
+        for (int status : allowedTransitions(from)) if (status == to) return true;
+        return false;
+    }
+
+    /**
+     * Переводит выбранные заказы в новый статус
+     * Условие на текущий статус входит в UPDATE, поэтому заказы, из статуса которых переход не разрешен
+     * (в том числе уже переведенные другим администратором), не меняются. Выполняется одной транзакцией:
+     * один UPDATE на каждые IDS_PER_UPDATE заказов вместо UPDATE на заказ.
+     * @param orderIds Идентификаторы заказов
+     * @param status Код нового статуса
+     * @return Количество переведенных заказов
+     * @throws IllegalArgumentException если в этот статус нельзя перевести ни из какого статуса
+     */
+    public int transitionOrders(int[] orderIds, int status) {
+        String sources = sourceStatuses(status); // Статусы, из которых разрешен переход
+        if (orderIds.length == 0) return 0;
+
+        SQLiteDatabase db = dbHandler.getWritableDatabase(); // Получаем базу данных для записи
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_STATUS, status);
+        int rows = 0;
+        db.beginTransaction();
+        try {
+            for (int start = 0; start < orderIds.length; start += IDS_PER_UPDATE) {
+                int count = Math.min(IDS_PER_UPDATE, orderIds.length - start);
+                StringBuilder where = new StringBuilder(COLUMN_STATUS + " IN (" + sources + ") AND " + COLUMN_ORDER_ID + " IN (");
+                String[] args = new String[count];
+                for (int i = 0; i < count; i++) {
+                    where.append(i == 0 ? "?" : ", ?");
+                    args[i] = String.valueOf(orderIds[start + i]);
+                }
+                where.append(')');
+                rows += dbHandler.getQueryTracer().update(db, TABLE_ORDERS, values, where.toString(), args);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        dbHandler.getQueryCache().invalidate(TABLE_ORDERS); // Сбрасываем кэшированные списки заказов один раз
+        return rows;
+    }
+
+    // Статусы, из которых разрешен переход в status, через запятую для условия IN
+    private static String sourceStatuses(int status) {
+        StringBuilder sources = new StringBuilder();
+        for (int from = 0; from < TRANSITIONS.length; from++) {
+            if (!isTransitionAllowed(from, status)) continue;
+            if (sources.length() > 0) sources.append(", ");
+            sources.append(from);
+        }
+        if (sources.length() == 0) throw new IllegalArgumentException("No transitions to status " + status);
+        return sources.toString();
+    }
+
+    /**
+     * Переводит в новый статус все заказы в статусе from за период одним UPDATE по диапазону индекса (status, order_date)
+     * @param from Код текущего статуса
+     * @param to Код нового статуса
+     * @param fromMillis Начало периода включительно (миллисекунды с начала эпохи)
+     * @param toMillis Конец периода не включительно
+     * @return Количество переведенных заказов
+     * @throws IllegalArgumentException если переход из from в to не разрешен
+     */
+    public int transitionOrdersInPeriod(int from, int to, long fromMillis, long toMillis) {
+        if (!isTransitionAllowed(from, to)) throw new IllegalArgumentException("Transition " + from + " -> " + to + " is not allowed");
+        SQLiteDatabase db = dbHandler.getWritableDatabase(); // Получаем базу данных для записи
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_STATUS, to);
+        int rows = dbHandler.getQueryTracer().update(db, TABLE_ORDERS, values,
+                COLUMN_STATUS + " = ? AND " + COLUMN_ORDER_DATE + " >= ? AND " + COLUMN_ORDER_DATE + " < ?",
+                new String[]{String.valueOf(from), String.valueOf(fromMillis), String.valueOf(toMillis)});
+        dbHandler.getQueryCache().invalidate(TABLE_ORDERS); // Сбрасываем кэшированные списки заказов
+        return rows;
     }
 
     /**
@@ -84,8 +324,10 @@ public class OrdersTableHandler {
         ContentValues values = new ContentValues(); // Создаем объект для новых значений
         values.put(COLUMN_TOTAL_PRICE, totalPrice); // Обновляем общую стоимость заказа
 
-        // Выполняем обновление и возвращаем количество затронутых строк
-        return db.update(TABLE_ORDERS, values, COLUMN_ORDER_ID + " = ?", new String[]{String.valueOf(orderId)});
+        // Выполняем обновление записи заказа
+        int rows = dbHandler.getQueryTracer().update(db, TABLE_ORDERS, values, COLUMN_ORDER_ID + " = ?", new String[]{String.valueOf(orderId)});
+        dbHandler.getQueryCache().invalidate(TABLE_ORDERS); // Сбрасываем кэшированные списки заказов
+        return rows; // Возвращаем количество затронутых строк
     }
 
     /**
@@ -95,7 +337,97 @@ public class OrdersTableHandler {
     public void deleteOrder(int orderId) {
         SQLiteDatabase db = dbHandler.getWritableDatabase(); // Получаем базу для записи
         // Удаляем заказ, где order_id равен переданному значению
-        db.delete(TABLE_ORDERS, COLUMN_ORDER_ID + " = ?", new String[]{String.valueOf(orderId)});
-        db.close(); // Закрываем базу данных
+        dbHandler.getQueryTracer().delete(db, TABLE_ORDERS, COLUMN_ORDER_ID + " = ?", new String[]{String.valueOf(orderId)});
+        dbHandler.getQueryCache().invalidate(TABLE_ORDERS); // Сбрасываем кэшированные списки заказов
+    }
+
+    /**
+     * Метод для получения заказов пользователя в виде списка
+     * Результат берется из кэша запросов обработчика базы и сбрасывается при изменении таблицы заказов
+     * @param userId Идентификатор пользователя, заказы которого нужно получить
+     * @return Неизменяемый список заказов пользователя
+     */
+    public List<Order> getOrderListByUserId(int userId) {
+        SQLiteDatabase db = dbHandler.getReadableDatabase(); // Получаем базу данных для чтения
+        return dbHandler.getQueryCache().query(db, SQL_ORDERS_BY_USER, new String[]{String.valueOf(userId)},
+                ORDERS_TABLES, Order::createFromCursor); // Читаем через кэш
+    }
+
+    /**
+     * Заказы пользователя за период (новые первыми)
+     * @param userId Идентификатор пользователя
+     * @param fromMillis Начало периода включительно (миллисекунды с начала эпохи)
+     * @param toMillis Конец периода не включительно
+     * @return Неизменяемый список заказов
+     */
+    public List<Order> getOrderListByUserId(int userId, long fromMillis, long toMillis) {
+        SQLiteDatabase db = dbHandler.getReadableDatabase(); // Получаем базу данных для чтения
+        return dbHandler.getQueryCache().query(db, SQL_ORDERS_BY_USER_AND_DATE,
+                new String[]{String.valueOf(userId), String.valueOf(fromMillis), String.valueOf(toMillis)},
+                ORDERS_TABLES, Order::createFromCursor);
+    }
+
+    /**
+     * Заказы в заданном статусе за период (новые первыми), например неотправленные за последнюю неделю
+     * Читается только диапазон индекса (status, order_date), поэтому время не зависит от числа заказов в других статусах
+     * @param status Код статуса (STATUS_*)
+     * @param fromMillis Начало периода включительно (миллисекунды с начала эпохи)
+     * @param toMillis Конец периода не включительно
+     * @param limit Наибольшее количество заказов
+     * @return Неизменяемый список заказов
+     */
+    public List<Order> getOrderListByStatus(int status, long fromMillis, long toMillis, int limit) {
+        SQLiteDatabase db = dbHandler.getReadableDatabase(); // Получаем базу данных для чтения
+        return dbHandler.getQueryCache().query(db, SQL_ORDERS_BY_STATUS_AND_DATE,
+                new String[]{String.valueOf(status), String.valueOf(fromMillis), String.valueOf(toMillis), String.valueOf(limit)},
+                ORDERS_TABLES, Order::createFromCursor);
+    }
+
+    /**
+     * Страница истории заказов пользователя (новые первыми)
+     * Сначала читаются только недавние заказы основной базы; архив (OrderArchive) читается, лишь когда они
+     * закончились, - обычный просмотр истории не обращается к файлу архива. Заказы архива идут после всех
+     * заказов основной базы (в архив попадают только старые завершенные заказы).
+     * @param userId Идентификатор пользователя
+     * @param after Последний заказ предыдущей страницы или null для первой страницы
+     * @param limit Размер страницы
+     * @return Неизменяемый список заказов страницы (меньше limit - история закончилась)
+     */
+    public List<Order> getOrderPage(int userId, Order after, int limit) {
+        SQLiteDatabase db = dbHandler.getReadableDatabase(); // Получаем базу данных для чтения
+        if (after != null && after.getArchived()) { // Недавние заказы уже пролистаны: продолжаем по архиву
+            return dbHandler.getQueryCache().query(db, SQL_ARCHIVE_PAGE_AFTER, pageArgs(userId, after, limit),
+                    ARCHIVE_TABLES, Order::createFromCursor);
+        }
+        List<Order> recent = dbHandler.getQueryCache().query(db, after == null ? SQL_ORDER_PAGE_FIRST : SQL_ORDER_PAGE_AFTER,
+                pageArgs(userId, after, limit), ORDERS_TABLES, Order::createFromCursor);
+        if (recent.size() == limit) return recent; // Страница заполнена недавними заказами
+        // Недавние заказы закончились: остаток страницы - первые заказы архива
+        List<Order> archived = dbHandler.getQueryCache().query(db, SQL_ARCHIVE_PAGE_FIRST,
+                pageArgs(userId, null, limit - recent.size()), ARCHIVE_TABLES, Order::createFromCursor);
+        if (archived.isEmpty()) return recent;
+        List<Order> page = new ArrayList<>(recent.size() + archived.size());
+        page.addAll(recent);
+        page.addAll(archived);
+        return Collections.unmodifiableList(page);
+    }
+
+    // Параметры запроса страницы: пользователь, ключ последнего заказа (для продолжения) и размер страницы
+    private static String[] pageArgs(int userId, Order after, int limit) {
+        if (after == null) return new String[]{String.valueOf(userId), String.valueOf(limit)};
+        String date = String.valueOf(after.getOrderDate());
+        return new String[]{String.valueOf(userId), date, date, String.valueOf(after.getId()), String.valueOf(limit)};
+    }
+
+    /**
+     * Справочник статусов заказов
+     * @return Код статуса -> название в порядке кодов
+     */
+    public Map<Integer, String> getOrderStatuses() {
+        List<Object[]> rows = dbHandler.getQueryCache().query(dbHandler.getReadableDatabase(), SQL_STATUSES, null,
+                ORDERS_TABLES, cursor -> new Object[]{cursor.getInt(0), cursor.getString(1)});
+        Map<Integer, String> statuses = new LinkedHashMap<>();
+        for (Object[] row : rows) statuses.put((Integer) row[0], (String) row[1]);
+        return statuses;
     }
 }
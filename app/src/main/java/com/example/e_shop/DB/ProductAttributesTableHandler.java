@@ -0,0 +1,171 @@
+package com.example.e_shop.DB;
+
+import android.database.sqlite.SQLiteDatabase;  // Импортируем SQLiteDatabase для транзакций
+import android.database.sqlite.SQLiteStatement;  // Импортируем скомпилированные выражения для записи связей
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Класс для работы с характеристиками продуктов (бренд, память, цвет и т.д.)
+ * Названия характеристик (Attributes) и их значения (AttributeValues) - справочники, которые пополняются
+ * при первой встрече нового названия или значения; ProductAttributes связывает продукт со значениями.
+ * Фасетный фильтр каталога читает эти таблицы через FacetEngine.
+ */
+public class ProductAttributesTableHandler {
+
+    public static final String TABLE_ATTRIBUTES = "Attributes";  // Имя таблицы названий характеристик
+    public static final String TABLE_ATTRIBUTE_VALUES = "AttributeValues";  // Имя таблицы значений характеристик
+    public static final String TABLE_PRODUCT_ATTRIBUTES = "ProductAttributes";  // Имя таблицы связей продукта со значениями
+
+    // Таблицы, которые меняет запись характеристик (и от которых зависят кэшированные результаты)
+    static final String[] ATTRIBUTE_TABLES = {TABLE_ATTRIBUTES, TABLE_ATTRIBUTE_VALUES, TABLE_PRODUCT_ATTRIBUTES};
+
+    // Характеристики одного продукта (поиск по первичному ключу ProductAttributes)
+    static final String SQL_PRODUCT_ATTRIBUTES = "SELECT a.name, v.value FROM " + TABLE_PRODUCT_ATTRIBUTES + " pa"
+            + " JOIN " + TABLE_ATTRIBUTE_VALUES + " v ON v.id = pa.value_id"
+            + " JOIN " + TABLE_ATTRIBUTES + " a ON a.id = v.attribute_id"
+            + " WHERE pa.product_id = ?";
+
+    private final DataBaseHandler dbHandler;  // Обработчик базы данных
+
+    /**
+     * Конструктор класса ProductAttributesTableHandler
+     * @param dbHandler Обработчик базы данных
+     */
+    public ProductAttributesTableHandler(DataBaseHandler dbHandler) {
+        this.dbHandler = dbHandler;  // Сохраняем обработчик базы данных
+    }
+
+    /**
+     * Заменяет характеристики продукта
+     * Новые названия и значения добавляются в справочники; пустые значения пропускаются
+     * @param productId Идентификатор продукта
+     * @param attributes Название характеристики -> значение (например "Бренд" -> "Apple")
+     */
+    public void setProductAttributes(int productId, Map<String, String> attributes) {
+        SQLiteDatabase db = dbHandler.getWritableDatabase();  // Получаем базу данных в режиме записи
+        Writer writer = new Writer(db);
+        db.beginTransaction();  // Старые связи удаляются и новые вставляются атомарно
+        try {
+            writer.replace(productId, attributes);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            writer.close();
+        }
+        dbHandler.getQueryCache().invalidate(ATTRIBUTE_TABLES);  // Сбрасываем кэш и битовые карты фасетов
+    }
+
+    /**
+     * Удаляет все характеристики продукта (значения остаются в справочнике)
+     * @param productId Идентификатор продукта
+     */
+    public void removeProductAttributes(int productId) {
+        SQLiteDatabase db = dbHandler.getWritableDatabase();  // Получаем базу данных в режиме записи
+        dbHandler.getQueryTracer().delete(db, TABLE_PRODUCT_ATTRIBUTES, "product_id = ?", new String[]{String.valueOf(productId)});
+        dbHandler.getQueryCache().invalidate(TABLE_PRODUCT_ATTRIBUTES);  // Сбрасываем кэш и битовые карты фасетов
+    }
+
+    /**
+     * Возвращает характеристики продукта для карточки товара
+     * @param productId Идентификатор продукта
+     * @return Название характеристики -> значение в порядке названий
+     */
+    public Map<String, String> getProductAttributes(int productId) {
+        List<String[]> rows = dbHandler.getQueryCache().query(dbHandler.getReadableDatabase(), SQL_PRODUCT_ATTRIBUTES,
+                new String[]{String.valueOf(productId)}, ATTRIBUTE_TABLES, cursor -> new String[]{cursor.getString(0), cursor.getString(1)});
+        Map<String, String> attributes = new TreeMap<>();  // Несколько строк удобнее упорядочить здесь, чем сортировкой в SQLite
+        for (String[] row : rows) attributes.put(row[0], row[1]);
+        return attributes;
+    }
+
+    /**
+     * Запись связей продуктов со значениями скомпилированными выражениями
+     * Используется внутри чужой транзакции (синхронизация каталога, генератор данных): идентификаторы
+     * значений запоминаются, поэтому справочники читаются один раз на каждое новое значение.
+     * Кэш запросов вызывающий код сбрасывает сам после фиксации транзакции.
+     */
+    static final class Writer {
+        private final SQLiteStatement insertAttribute;
+        private final SQLiteStatement selectAttribute;
+        private final SQLiteStatement insertValue;
+        private final SQLiteStatement selectValue;
+        private final SQLiteStatement insertLink;
+        private final SQLiteStatement deleteLinks;
+        private final Map<String, Long> attributeIds = new HashMap<>();  // Название -> id характеристики
+        private final Map<String, Long> valueIds = new HashMap<>();  // "attribute_id:значение" -> id значения
+
+        Writer(SQLiteDatabase db) {
+            insertAttribute = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_ATTRIBUTES + " (name) VALUES (?)");
+            selectAttribute = db.compileStatement("SELECT id FROM " + TABLE_ATTRIBUTES + " WHERE name = ?");
+            insertValue = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_ATTRIBUTE_VALUES + " (attribute_id, value) VALUES (?, ?)");
+            selectValue = db.compileStatement("SELECT id FROM " + TABLE_ATTRIBUTE_VALUES + " WHERE attribute_id = ? AND value = ?");
+            insertLink = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_PRODUCT_ATTRIBUTES + " (product_id, value_id) VALUES (?, ?)");
+            deleteLinks = db.compileStatement("DELETE FROM " + TABLE_PRODUCT_ATTRIBUTES + " WHERE product_id = ?");
+        }
+
+        // Заменяет все характеристики продукта
+        void replace(long productId, Map<String, String> attributes) {
+            remove(productId);
+            for (Map.Entry<String, String> attribute : attributes.entrySet()) add(productId, attribute.getKey(), attribute.getValue());
+        }
+
+        // Связывает продукт со значением характеристики
+        void add(long productId, String attribute, String value) {
+            if (attribute == null || value == null) return;
+            attribute = attribute.trim();
+            value = value.trim();
+            if (attribute.isEmpty() || value.isEmpty()) return;
+            insertLink.bindLong(1, productId);
+            insertLink.bindLong(2, valueId(attributeId(attribute), value));
+            insertLink.executeInsert();
+        }
+
+        // Удаляет все связи продукта
+        void remove(long productId) {
+            deleteLinks.bindLong(1, productId);
+            deleteLinks.executeUpdateDelete();
+        }
+
+        // Идентификатор характеристики (создается при первой встрече)
+        private long attributeId(String name) {
+            Long id = attributeIds.get(name);
+            if (id == null) {
+                insertAttribute.bindString(1, name);
+                insertAttribute.executeInsert();
+                selectAttribute.bindString(1, name);
+                id = selectAttribute.simpleQueryForLong();
+                attributeIds.put(name, id);
+            }
+            return id;
+        }
+
+        // Идентификатор значения характеристики (создается при первой встрече)
+        private long valueId(long attributeId, String value) {
+            String key = attributeId + ":" + value;
+            Long id = valueIds.get(key);
+            if (id == null) {
+                insertValue.bindLong(1, attributeId);
+                insertValue.bindString(2, value);
+                insertValue.executeInsert();
+                selectValue.bindLong(1, attributeId);
+                selectValue.bindString(2, value);
+                id = selectValue.simpleQueryForLong();
+                valueIds.put(key, id);
+            }
+            return id;
+        }
+
+        void close() {
+            insertAttribute.close();
+            selectAttribute.close();
+            insertValue.close();
+            selectValue.close();
+            insertLink.close();
+            deleteLinks.close();
+        }
+    }
+}
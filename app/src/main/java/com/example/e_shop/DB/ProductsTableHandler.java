@@ -4,6 +4,20 @@ import android.content.ContentValues;  // Импортируем ContentValues 
 import android.database.Cursor;  // Импортируем Cursor для работы с результатами запросов
 import android.database.sqlite.SQLiteDatabase;  // Импортируем SQLiteDatabase для работы с базой данных
 
+import com.example.e_shop.DataClasses.PriceHistogram;  // Импортируем гистограмму цен для ползунка диапазона
+import com.example.e_shop.DataClasses.Product;
+import com.example.e_shop.DataClasses.ProductFilter;  // Импортируем фильтры каталога
+import com.example.e_shop.DataClasses.ProductSummary;  // Импортируем облегчённую модель продукта
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
 /**
  * Класс для работы с таблицей продуктов в базе данных
  */
@@ -17,7 +31,71 @@ public class ProductsTableHandler {
     public static final String COLUMN_PRICE = "price";  // Название колонки с ценой продукта
     public static final String COLUMN_QUANTITY = "quantity";  // Название колонки с количеством продукта
     public static final String COLUMN_IMAGE_URL = "image_url";  // Название колонки с URL изображения продукта
-    public static final String COLUMN_CATEGORY = "category";  // Название колонки с категорией продукта
+    public static final String COLUMN_CATEGORY_ID = "category_id";  // Название колонки с идентификатором категории продукта
+    public static final String COLUMN_SHORT_DESCRIPTION = "short_description";  // Псевдоним колонки с коротким описанием в облегчённых запросах
+
+    // Максимальная длина фрагмента описания, который попадает в карточку каталога
+    private static final int SHORT_DESCRIPTION_LENGTH = 120;
+
+    /**
+     * Набор колонок облегчённой модели продукта (без полного описания) для списков
+     * Описание обрезается на стороне SQLite, чтобы длинный текст не попадал в CursorWindow
+     */
+    public static final String SUMMARY_COLUMNS = summaryColumns("");
+
+    // Запросы облегчённых записей продуктов (используются и курсорными, и кэшируемыми методами)
+    static final String SQL_ALL_SUMMARIES = "SELECT " + SUMMARY_COLUMNS + " FROM " + TABLE_PRODUCTS;
+    static final String SQL_SUMMARIES_BY_NAME_AND_CATEGORY = SQL_ALL_SUMMARIES + " WHERE LOWER(name) LIKE ? AND category_id = ?";
+    static final String SQL_SUMMARIES_BY_NAME = SQL_ALL_SUMMARIES + " WHERE LOWER(name) LIKE ?";
+    static final String SQL_SUMMARIES_BY_CATEGORY = SQL_ALL_SUMMARIES + " WHERE category_id = ?";
+    // Запрос полной записи продукта
+    static final String SQL_PRODUCT_BY_ID = "SELECT * FROM " + TABLE_PRODUCTS + " WHERE " + COLUMN_ID + " = ?";
+    // Таблицы, от которых зависят кэшированные результаты запросов продуктов
+    private static final String[] PRODUCTS_TABLES = {TABLE_PRODUCTS};
+    private static final String[] PRODUCTS_WITH_ATTRIBUTES_TABLES = {TABLE_PRODUCTS, ProductAttributesTableHandler.TABLE_PRODUCT_ATTRIBUTES};
+
+    // Изменение цен категории в процентах одним выражением (продукты категории находит idx_products_category)
+    static final String SQL_ADJUST_CATEGORY_PRICES = "UPDATE " + TABLE_PRODUCTS + " SET " + COLUMN_PRICE + " = ROUND("
+            + COLUMN_PRICE + " * ?, 2) WHERE " + COLUMN_CATEGORY_ID + " = ?";
+    // Количество продуктов категории с положительной ценой, которая после изменения округлилась бы до нуля
+    static final String SQL_COUNT_PRICES_ROUNDED_TO_ZERO = "SELECT COUNT(*) FROM " + TABLE_PRODUCTS + " WHERE "
+            + COLUMN_CATEGORY_ID + " = ? AND " + COLUMN_PRICE + " > 0 AND ROUND(" + COLUMN_PRICE + " * ?, 2) <= 0";
+    // Изменение остатков категории на одну величину (остаток не опускается ниже нуля)
+    static final String SQL_ADJUST_CATEGORY_STOCK = "UPDATE " + TABLE_PRODUCTS + " SET " + COLUMN_QUANTITY + " = MAX(0, "
+            + COLUMN_QUANTITY + " + ?) WHERE " + COLUMN_CATEGORY_ID + " = ?";
+
+    // Количество интервалов гистограммы цен
+    public static final int PRICE_HISTOGRAM_BUCKETS = 20;
+    // Гистограмма цен: границы диапазона считаются подзапросом, затем продукты раскладываются по интервалам.
+    // Оба прохода читают только индекс (category_id, price)
+    private static final String SQL_PRICE_HISTOGRAM_TEMPLATE = "SELECT lo, hi, CASE WHEN hi > lo THEN MIN(CAST((price - lo) * "
+            + PRICE_HISTOGRAM_BUCKETS + " / (hi - lo) AS INTEGER), " + (PRICE_HISTOGRAM_BUCKETS - 1) + ") ELSE 0 END AS bucket, "
+            + "COUNT(*) FROM " + TABLE_PRODUCTS + ", (SELECT MIN(price) AS lo, MAX(price) AS hi FROM " + TABLE_PRODUCTS + "%1$s)%1$s"
+            + " GROUP BY bucket";
+    static final String SQL_PRICE_HISTOGRAM_BY_CATEGORY = String.format(SQL_PRICE_HISTOGRAM_TEMPLATE, " WHERE category_id = ?");
+    static final String SQL_PRICE_HISTOGRAM = String.format(SQL_PRICE_HISTOGRAM_TEMPLATE, "");
+
+    /**
+     * Порядок сортировки каталога
+     * Каждому порядку (с категорией и без) соответствует индекс, из которого строки читаются уже упорядоченными:
+     * NEWEST - первичный ключ или idx_products_category (индекс содержит rowid),
+     * PRICE_* - idx_products_price или idx_products_category_price, NAME - idx_products_name или idx_products_category_name.
+     * Второй ключ сортировки - id, поэтому порядок однозначен и подходит для постраничной выборки по ключу.
+     */
+    public enum SortOrder {
+        NEWEST(null, false),  // Сначала новые (id выдаются по возрастанию, отдельной даты у продукта нет)
+        PRICE_ASC(COLUMN_PRICE, true),  // Сначала дешевые
+        PRICE_DESC(COLUMN_PRICE, false),  // Сначала дорогие
+        NAME(COLUMN_NAME, true);  // По названию
+
+        final String column;  // Колонка сортировки (null - только id)
+        final boolean ascending;  // Направление сортировки
+
+        SortOrder(String column, boolean ascending) {
+            this.column = column;
+            this.ascending = ascending;
+        }
+    }
 
     /**
      * Конструктор для инициализации объекта ProductsTableHandler
@@ -27,6 +105,20 @@ public class ProductsTableHandler {
         this.dbHandler = dbHandler;  // Инициализируем объект dbHandler
     }
 
+    /**
+     * Формирует список колонок облегчённой модели продукта
+     * @param alias Псевдоним таблицы продуктов в запросе (например "p."), либо пустая строка
+     * @return Строка с перечислением колонок для SELECT
+     */
+    static String summaryColumns(String alias) {
+        return alias + COLUMN_ID + ", "
+                + alias + COLUMN_NAME + ", "
+                + "SUBSTR(" + alias + COLUMN_DESCRIPTION + ", 1, " + SHORT_DESCRIPTION_LENGTH + ") AS " + COLUMN_SHORT_DESCRIPTION + ", "
+                + alias + COLUMN_PRICE + ", "
+                + alias + COLUMN_IMAGE_URL + ", "
+                + alias + COLUMN_QUANTITY;
+    }
+
     /**
      * Метод для добавления нового продукта в базу данных
      * @param name Название продукта
@@ -34,10 +126,10 @@ public class ProductsTableHandler {
      * @param price Цена продукта
      * @param quantity Количество продукта
      * @param imageUrl URL изображения продукта
-     * @param category Категория продукта
+     * @param categoryId Идентификатор категории продукта
      * @return Возвращает идентификатор вновь добавленной записи
      */
-    public long addProduct(String name, String description, double price, int quantity, String imageUrl, String category) {
+    public long addProduct(String name, String description, double price, int quantity, String imageUrl, int categoryId) {
         SQLiteDatabase db = dbHandler.getWritableDatabase();  // Получаем базу данных в режиме записи
         ContentValues values = new ContentValues();  // Создаем ContentValues для хранения данных продукта
         values.put(COLUMN_NAME, name);  // Сохраняем название продукта
@@ -45,9 +137,9 @@ public class ProductsTableHandler {
         values.put(COLUMN_PRICE, price);  // Сохраняем цену продукта
         values.put(COLUMN_QUANTITY, quantity);  // Сохраняем количество продукта
         values.put(COLUMN_IMAGE_URL, imageUrl);  // Сохраняем URL изображения продукта
-        values.put(COLUMN_CATEGORY, category);  // Сохраняем категорию продукта
-        long id = db.insert(TABLE_PRODUCTS, null, values);  // Выполняем вставку и получаем id новой записи
-        db.close();  // Закрываем соединение с базой данных
+        values.put(COLUMN_CATEGORY_ID, categoryId);  // Сохраняем категорию продукта
+        long id = dbHandler.getQueryTracer().insert(db, TABLE_PRODUCTS, values);  // Выполняем вставку и получаем id новой записи
+        dbHandler.getQueryCache().invalidate(TABLE_PRODUCTS);  // Сбрасываем кэшированные списки продуктов
         return id;  // Возвращаем идентификатор добавленного продукта
     }
 
@@ -57,7 +149,7 @@ public class ProductsTableHandler {
      */
     public Cursor getAllProducts() {
         SQLiteDatabase db = dbHandler.getReadableDatabase();  // Получаем базу данных в режиме чтения
-        return db.rawQuery("SELECT * FROM " + TABLE_PRODUCTS, null);  // Выполняем SQL-запрос для извлечения всех продуктов
+        return dbHandler.getQueryTracer().rawQuery(db, "SELECT * FROM " + TABLE_PRODUCTS, null);  // Выполняем SQL-запрос для извлечения всех продуктов
     }
 
     /**
@@ -68,10 +160,10 @@ public class ProductsTableHandler {
      * @param price Новая цена продукта
      * @param quantity Новое количество продукта
      * @param imageUrl Новый URL изображения продукта
-     * @param category Новая категория продукта
+     * @param categoryId Идентификатор новой категории продукта
      * @return Возвращает количество строк, затронутых обновлением
      */
-    public int updateProduct(int id, String name, String description, double price, int quantity, String imageUrl, String category) {
+    public int updateProduct(int id, String name, String description, double price, int quantity, String imageUrl, int categoryId) {
         SQLiteDatabase db = dbHandler.getWritableDatabase();  // Получаем базу данных в режиме записи
         ContentValues values = new ContentValues();  // Создаем объект для хранения обновляемых данных
         values.put(COLUMN_NAME, name);  // Обновляем название продукта
@@ -79,8 +171,57 @@ public class ProductsTableHandler {
         values.put(COLUMN_PRICE, price);  // Обновляем цену продукта
         values.put(COLUMN_QUANTITY, quantity);  // Обновляем количество продукта
         values.put(COLUMN_IMAGE_URL, imageUrl);  // Обновляем URL изображения продукта
-        values.put(COLUMN_CATEGORY, category);  // Обновляем категорию продукта
-        return db.update(TABLE_PRODUCTS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(id)});  // Выполняем обновление по id и возвращаем число затронутых строк
+        values.put(COLUMN_CATEGORY_ID, categoryId);  // Обновляем категорию продукта
+        int rows = dbHandler.getQueryTracer().update(db, TABLE_PRODUCTS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(id)});  // Выполняем обновление по id
+        dbHandler.getQueryCache().invalidate(TABLE_PRODUCTS);  // Сбрасываем кэшированные списки продуктов
+        return rows;  // Возвращаем число затронутых строк
+    }
+
+    /**
+     * Меняет цены всех продуктов категории на заданный процент одним UPDATE вместо updateProduct на каждый продукт
+     * Цены округляются до копеек. Кэш продуктов сбрасывается один раз; корзины с товарами читаются
+     * через кэш, зависящий от таблицы продуктов, поэтому сбрасываются тем же вызовом.
+     * Проверка и изменение выполняются в одной транзакции: если хотя бы одна положительная цена
+     * округлилась бы до нуля (например, 0.01 со скидкой 60%), цены не меняются.
+     * @param categoryId Идентификатор категории
+     * @param percent Изменение в процентах (10 - подорожание на 10%, -15 - скидка 15%), больше -100
+     * @return Количество измененных продуктов
+     * @throws IllegalArgumentException если цена стала бы нулевой или отрицательной
+     */
+    public int adjustCategoryPrices(int categoryId, double percent) {
+        if (!(percent > -100)) throw new IllegalArgumentException("Percent must be greater than -100: " + percent);
+        String factor = String.valueOf(1 + percent / 100);
+        String category = String.valueOf(categoryId);
+        SQLiteDatabase db = dbHandler.getWritableDatabase();  // Получаем базу данных в режиме записи
+        int rows;
+        db.beginTransaction();
+        try {
+            long zeroPrices = dbHandler.queryFirst(SQL_COUNT_PRICES_ROUNDED_TO_ZERO, new String[]{category, factor}, cursor -> cursor.getLong(0));
+            if (zeroPrices > 0) {
+                throw new IllegalArgumentException(zeroPrices + " prices in category " + categoryId + " would round to zero at " + percent + "%");
+            }
+            rows = dbHandler.getQueryTracer().executeUpdateDelete(db, SQL_ADJUST_CATEGORY_PRICES, new String[]{factor, category});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        dbHandler.getQueryCache().invalidate(TABLE_PRODUCTS);  // Сбрасываем продукты, страницы каталога и корзины с продуктами
+        return rows;
+    }
+
+    /**
+     * Меняет остатки всех продуктов категории на одну величину одним UPDATE (остаток не опускается ниже нуля)
+     * @param categoryId Идентификатор категории
+     * @param delta Изменение количества (отрицательное - списание)
+     * @return Количество измененных продуктов
+     */
+    public int adjustCategoryStock(int categoryId, int delta) {
+        SQLiteDatabase db = dbHandler.getWritableDatabase();  // Получаем базу данных в режиме записи
+        // Одно выражение выполняется атомарно без явной транзакции
+        int rows = dbHandler.getQueryTracer().executeUpdateDelete(db, SQL_ADJUST_CATEGORY_STOCK,
+                new String[]{String.valueOf(delta), String.valueOf(categoryId)});
+        dbHandler.getQueryCache().invalidate(TABLE_PRODUCTS);  // Сбрасываем продукты, страницы каталога и корзины с продуктами
+        return rows;
     }
 
     /**
@@ -89,8 +230,9 @@ public class ProductsTableHandler {
      */
     public void deleteProduct(int id) {
         SQLiteDatabase db = dbHandler.getWritableDatabase();  // Открываем базу данных в режиме записи
-        db.delete(TABLE_PRODUCTS, COLUMN_ID + " = ?", new String[]{String.valueOf(id)});  // Удаляем запись, удовлетворяющую условию по id
-        db.close();  // Закрываем базу данных после выполнения операции
+        dbHandler.getQueryTracer().delete(db, TABLE_PRODUCTS, COLUMN_ID + " = ?", new String[]{String.valueOf(id)});  // Удаляем запись, удовлетворяющую условию по id
+        dbHandler.getQueryTracer().delete(db, ProductAttributesTableHandler.TABLE_PRODUCT_ATTRIBUTES, "product_id = ?", new String[]{String.valueOf(id)});  // Удаляем характеристики продукта
+        dbHandler.getQueryCache().invalidate(TABLE_PRODUCTS, ProductAttributesTableHandler.TABLE_PRODUCT_ATTRIBUTES);  // Сбрасываем кэшированные списки продуктов
     }
 
     /**
@@ -101,7 +243,7 @@ public class ProductsTableHandler {
      */
     public Cursor searchProducts(String query, int categoryId) {
         SQLiteDatabase db = dbHandler.getReadableDatabase();  // Получаем базу данных в режиме чтения
-        return db.rawQuery("SELECT * FROM Products WHERE LOWER(name) LIKE ? AND category_id = ?", new String[]{'%' + query.toLowerCase() + '%', String.valueOf(categoryId)});  // Выполняем запрос с фильтрацией по имени и категории
+        return dbHandler.getQueryTracer().rawQuery(db, "SELECT * FROM Products WHERE LOWER(name) LIKE ? AND category_id = ?", new String[]{'%' + query.toLowerCase() + '%', String.valueOf(categoryId)});  // Выполняем запрос с фильтрацией по имени и категории
     }
 
     /**
@@ -111,7 +253,7 @@ public class ProductsTableHandler {
      */
     public Cursor searchByProductName(String query) {
         SQLiteDatabase db = dbHandler.getReadableDatabase();  // Получаем базу данных в режиме чтения
-        return db.rawQuery("SELECT * FROM Products WHERE LOWER(name) LIKE ?", new String[]{'%' + query.toLowerCase() + '%'});  // Выполняем запрос для поиска по имени
+        return dbHandler.getQueryTracer().rawQuery(db, "SELECT * FROM Products WHERE LOWER(name) LIKE ?", new String[]{'%' + query.toLowerCase() + '%'});  // Выполняем запрос для поиска по имени
     }
 
     /**
@@ -121,6 +263,255 @@ public class ProductsTableHandler {
      */
     public Cursor searchByCategory(int categoryId) {
         SQLiteDatabase db = dbHandler.getReadableDatabase();  // Получаем базу данных для чтения
-        return db.rawQuery("SELECT * FROM Products WHERE category_id = ?", new String[]{String.valueOf(categoryId)});  // Выполняем запрос для поиска продуктов по категории
+        return dbHandler.getQueryTracer().rawQuery(db, "SELECT * FROM Products WHERE category_id = ?", new String[]{String.valueOf(categoryId)});  // Выполняем запрос для поиска продуктов по категории
+    }
+
+    /**
+     * Метод для получения полной записи одного продукта по идентификатору
+     * @param id Идентификатор продукта
+     * @return Возвращает Cursor с одной записью продукта (или пустой, если продукт не найден)
+     */
+    public Cursor getProductById(int id) {
+        SQLiteDatabase db = dbHandler.getReadableDatabase();  // Получаем базу данных в режиме чтения
+        return dbHandler.getQueryTracer().rawQuery(db, SQL_PRODUCT_BY_ID, new String[]{String.valueOf(id)});  // Выбираем продукт по первичному ключу
+    }
+
+    /**
+     * Метод для получения полной записи продукта без курсора
+     * @param id Идентификатор продукта
+     * @return Объект Product или null, если продукт не найден
+     */
+    public Product findProductById(int id) {
+        return dbHandler.queryFirst(SQL_PRODUCT_BY_ID, new String[]{String.valueOf(id)}, Product::createFromCursor);  // Курсор закрывается внутри
+    }
+
+    /**
+     * Метод для получения облегчённых записей всех продуктов (без полного описания)
+     * @return Возвращает Cursor с колонками SUMMARY_COLUMNS
+     */
+    public Cursor getAllProductSummaries() {
+        SQLiteDatabase db = dbHandler.getReadableDatabase();  // Получаем базу данных в режиме чтения
+        return dbHandler.getQueryTracer().rawQuery(db, SQL_ALL_SUMMARIES, null);  // Выбираем только колонки, нужные для списка
+    }
+
+    /**
+     * Метод для поиска облегчённых записей продуктов по названию с учетом категории
+     * @param query Строка поиска для названия продукта
+     * @param categoryId Идентификатор категории для фильтрации
+     * @return Возвращает Cursor с колонками SUMMARY_COLUMNS
+     */
+    public Cursor searchProductSummaries(String query, int categoryId) {
+        SQLiteDatabase db = dbHandler.getReadableDatabase();  // Получаем базу данных в режиме чтения
+        return dbHandler.getQueryTracer().rawQuery(db, SQL_SUMMARIES_BY_NAME_AND_CATEGORY, new String[]{likePattern(query), String.valueOf(categoryId)});  // Фильтруем по имени и категории
+    }
+
+    /**
+     * Метод для поиска облегчённых записей продуктов только по названию
+     * @param query Строка поиска для названия продукта
+     * @return Возвращает Cursor с колонками SUMMARY_COLUMNS
+     */
+    public Cursor searchProductSummariesByName(String query) {
+        SQLiteDatabase db = dbHandler.getReadableDatabase();  // Получаем базу данных в режиме чтения
+        return dbHandler.getQueryTracer().rawQuery(db, SQL_SUMMARIES_BY_NAME, new String[]{likePattern(query)});  // Фильтруем только по имени
+    }
+
+    /**
+     * Метод для получения облегчённых записей продуктов заданной категории
+     * @param categoryId Идентификатор категории
+     * @return Возвращает Cursor с колонками SUMMARY_COLUMNS
+     */
+    public Cursor getProductSummariesByCategory(int categoryId) {
+        SQLiteDatabase db = dbHandler.getReadableDatabase();  // Получаем базу данных в режиме чтения
+        return dbHandler.getQueryTracer().rawQuery(db, SQL_SUMMARIES_BY_CATEGORY, new String[]{String.valueOf(categoryId)});  // Фильтруем по категории
+    }
+
+    /**
+     * Метод для получения облегчённых моделей продуктов с учетом строки поиска и категории
+     * Результат берется из кэша запросов обработчика базы и сбрасывается при любом изменении таблицы продуктов
+     * @param query Строка поиска по названию (пустая строка - без фильтра по названию)
+     * @param categoryId Идентификатор категории (0 или меньше - все категории)
+     * @return Неизменяемый список облегчённых моделей продуктов
+     */
+    public List<ProductSummary> getProductSummaryList(String query, int categoryId) {
+        SQLiteDatabase db = dbHandler.getReadableDatabase();  // Получаем базу данных в режиме чтения
+        String sql;  // Текст запроса
+        String[] args;  // Аргументы запроса
+        if (!query.isEmpty() && categoryId > 0) {  // Поиск с фильтром по категории
+            sql = SQL_SUMMARIES_BY_NAME_AND_CATEGORY;
+            args = new String[]{likePattern(query), String.valueOf(categoryId)};
+        } else if (!query.isEmpty()) {  // Поиск только по названию
+            sql = SQL_SUMMARIES_BY_NAME;
+            args = new String[]{likePattern(query)};
+        } else if (categoryId > 0) {  // Фильтрация по категории
+            sql = SQL_SUMMARIES_BY_CATEGORY;
+            args = new String[]{String.valueOf(categoryId)};
+        } else {  // Все продукты
+            sql = SQL_ALL_SUMMARIES;
+            args = null;
+        }
+        return dbHandler.getQueryCache().query(db, sql, args, PRODUCTS_TABLES, ProductSummary::createFromCursor);  // Читаем через кэш
+    }
+
+    /**
+     * Возвращает страницу каталога с учетом фильтров и порядка сортировки
+     * Следующая страница начинается после последнего продукта предыдущей (keyset-пагинация), поэтому
+     * каждая страница читает из индекса только свои строки, сколько бы страниц ни было пролистано.
+     * Страницы берутся из кэша запросов обработчика базы и сбрасываются при любом изменении таблицы продуктов
+     * (и характеристик, если они есть в фильтре).
+     * @param filter Фильтры и порядок сортировки
+     * @param after Последний продукт предыдущей страницы (null - первая страница)
+     * @param limit Размер страницы
+     * @return Неизменяемый список облегчённых моделей продуктов
+     */
+    public List<ProductSummary> getProductSummaryPage(ProductFilter filter, ProductSummary after, int limit) {
+        List<String> args = new ArrayList<>();  // Аргументы в порядке появления в запросе
+        String sql = pageQuery(filter, after, limit, args);
+        String[] tables = filter.getAttributes().isEmpty() ? PRODUCTS_TABLES : PRODUCTS_WITH_ATTRIBUTES_TABLES;
+        return dbHandler.getQueryCache().query(dbHandler.getReadableDatabase(), sql, args.toArray(new String[0]), tables,
+                ProductSummary::createFromCursor);
+    }
+
+    /**
+     * Формирует запрос страницы каталога
+     * Условие диапазона цен записывается как +price, если сортировка не по цене: унарный плюс запрещает
+     * SQLite использовать для него индекс по цене, и планировщик выбирает индекс порядка сортировки
+     * (без временной сортировки всех подходящих строк)
+     * @param filter Фильтры и порядок сортировки
+     * @param after Последний продукт предыдущей страницы (null - первая страница)
+     * @param limit Размер страницы
+     * @param args Список, в который добавляются аргументы запроса
+     * @return Текст запроса
+     */
+    static String pageQuery(ProductFilter filter, ProductSummary after, int limit, List<String> args) {
+        SortOrder sort = filter.getSort();
+        List<String> conditions = new ArrayList<>();
+        filterConditions(filter, COLUMN_PRICE.equals(sort.column) ? COLUMN_PRICE : "+" + COLUMN_PRICE, conditions, args);
+        // Характеристики проверяются для каждой строки, прочитанной из индекса сортировки, поиском по индексу
+        // ProductAttributes; счетчики и количество подходящих продуктов считает FacetEngine по битовым картам
+        for (Map.Entry<Integer, Set<Integer>> attribute : new TreeMap<>(filter.getAttributes()).entrySet()) {
+            if (attribute.getValue().isEmpty()) continue;
+            StringBuilder values = new StringBuilder();
+            for (Integer valueId : new TreeSet<>(attribute.getValue())) {
+                values.append(values.length() == 0 ? "?" : ", ?");
+                args.add(String.valueOf(valueId));
+            }
+            conditions.add("EXISTS (SELECT 1 FROM " + ProductAttributesTableHandler.TABLE_PRODUCT_ATTRIBUTES
+                    + " WHERE product_id = " + TABLE_PRODUCTS + "." + COLUMN_ID + " AND value_id IN (" + values + "))");
+        }
+        if (after != null) { // Продолжение после последней строки: (ключ, id) строго дальше по порядку сортировки
+            String id = String.valueOf(after.getId());
+            if (sort.column == null) {
+                conditions.add(COLUMN_ID + (sort.ascending ? " > " : " < ") + "CAST(? AS INTEGER)");
+                args.add(id);
+            } else {
+                // Первое сравнение - диапазон по индексу, второе отсекает уже показанные строки с тем же ключом
+                String key = COLUMN_PRICE.equals(sort.column) ? "CAST(? AS REAL)" : "?";
+                String value = COLUMN_PRICE.equals(sort.column) ? String.valueOf(after.getPrice()) : after.getName();
+                String strict = sort.ascending ? " > " : " < ";
+                conditions.add(sort.column + (sort.ascending ? " >= " : " <= ") + key
+                        + " AND (" + sort.column + strict + key + " OR " + COLUMN_ID + strict + "CAST(? AS INTEGER))");
+                args.add(value);
+                args.add(value);
+                args.add(id);
+            }
+        }
+
+        StringBuilder sql = new StringBuilder(SQL_ALL_SUMMARIES);
+        for (int i = 0; i < conditions.size(); i++) sql.append(i == 0 ? " WHERE " : " AND ").append(conditions.get(i));
+        String direction = sort.ascending ? " ASC" : " DESC";
+        sql.append(" ORDER BY ");
+        if (sort.column != null) sql.append(sort.column).append(direction).append(", ");
+        sql.append(COLUMN_ID).append(direction).append(" LIMIT ").append(limit);
+        return sql.toString();
+    }
+
+    /**
+     * Формирует запрос идентификаторов продуктов, подходящих под строку поиска, категорию и диапазон цен
+     * (без учета характеристик и сортировки) - базовое множество фасетного фильтра
+     * @param filter Фильтры каталога
+     * @param args Список, в который добавляются аргументы запроса
+     * @return Текст запроса
+     */
+    static String idQuery(ProductFilter filter, List<String> args) {
+        List<String> conditions = new ArrayList<>();
+        filterConditions(filter, COLUMN_PRICE, conditions, args);  // Диапазон цен читается из индекса (category_id, price)
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMN_ID).append(" FROM ").append(TABLE_PRODUCTS);
+        for (int i = 0; i < conditions.size(); i++) sql.append(i == 0 ? " WHERE " : " AND ").append(conditions.get(i));
+        return sql.toString();
+    }
+
+    // Условия строки поиска, категории и диапазона цен
+    private static void filterConditions(ProductFilter filter, String priceColumn, List<String> conditions, List<String> args) {
+        if (filter.getCategoryId() > 0) {
+            conditions.add("category_id = ?");
+            args.add(String.valueOf(filter.getCategoryId()));
+        }
+        if (!filter.getQuery().isEmpty()) {
+            conditions.add("LOWER(name) LIKE ?");
+            args.add(likePattern(filter.getQuery()));
+        }
+        // Аргументы привязываются строками: CAST нужен, чтобы сравнение с +price (без affinity колонки) шло как с числом
+        if (filter.getMinPrice() != null) {
+            conditions.add(priceColumn + " >= CAST(? AS REAL)");
+            args.add(String.valueOf(filter.getMinPrice()));
+        }
+        if (filter.getMaxPrice() != null) {
+            conditions.add(priceColumn + " <= CAST(? AS REAL)");
+            args.add(String.valueOf(filter.getMaxPrice()));
+        }
+    }
+
+    /**
+     * Возвращает гистограмму цен категории для ползунка диапазона цен
+     * Считается одним запросом по индексу (category_id, price) и хранится в кэше запросов до изменения таблицы продуктов
+     * @param categoryId Идентификатор категории (0 или меньше - весь каталог)
+     * @return Гистограмма цен
+     */
+    public PriceHistogram getPriceHistogram(int categoryId) {
+        String sql = categoryId > 0 ? SQL_PRICE_HISTOGRAM_BY_CATEGORY : SQL_PRICE_HISTOGRAM;
+        String[] args = categoryId > 0 ? new String[]{String.valueOf(categoryId), String.valueOf(categoryId)} : null;
+        List<double[]> rows = dbHandler.getQueryCache().query(dbHandler.getReadableDatabase(), sql, args, PRODUCTS_TABLES,
+                cursor -> new double[]{cursor.getDouble(0), cursor.getDouble(1), cursor.getInt(2), cursor.getInt(3)});
+        Integer[] counts = new Integer[PRICE_HISTOGRAM_BUCKETS];
+        Arrays.fill(counts, 0);
+        double min = 0, max = 0;
+        for (double[] row : rows) {  // Строки есть только у непустых интервалов
+            min = row[0];
+            max = row[1];
+            counts[(int) row[2]] = (int) row[3];
+        }
+        return new PriceHistogram(min, max, Arrays.asList(counts));
+    }
+
+    /**
+     * Возвращает облегчённые модели продуктов по списку id в том же порядке (например, для рекомендаций)
+     * Отсутствующие продукты (удаленные из каталога) пропускаются
+     * @param ids Идентификаторы продуктов
+     * @return Список облегчённых моделей продуктов
+     */
+    public List<ProductSummary> getProductSummariesByIds(int[] ids) {
+        if (ids.length == 0) return new ArrayList<>();
+        StringBuilder sql = new StringBuilder(SQL_ALL_SUMMARIES).append(" WHERE ").append(COLUMN_ID).append(" IN (");
+        String[] args = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+            args[i] = String.valueOf(ids[i]);
+        }
+        sql.append(')');
+        Map<Integer, ProductSummary> byId = new HashMap<>();  // SQLite возвращает строки в порядке id, а не в порядке списка
+        for (ProductSummary summary : dbHandler.queryList(sql.toString(), args, ProductSummary::createFromCursor)) {
+            byId.put(summary.getId(), summary);
+        }
+        List<ProductSummary> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            ProductSummary summary = byId.get(id);
+            if (summary != null) result.add(summary);
+        }
+        return result;
+    }
+
+    // Формирует шаблон LIKE для поиска подстроки без учета регистра
+    private static String likePattern(String query) {
+        return '%' + query.toLowerCase() + '%';
     }
 }
@@ -0,0 +1,340 @@
+package com.example.e_shop.DB;
+
+import android.database.Cursor;  // Импортируем Cursor для чтения результатов запроса
+import android.database.CursorWrapper;  // Импортируем CursorWrapper для учета значений, которые читает преобразователь
+import android.database.sqlite.SQLiteDatabase;  // Импортируем SQLiteDatabase для выполнения запросов
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ограниченный кэш результатов запросов на уровне обработчиков таблиц
+ * Ключ записи - текст SQL-запроса и его аргументы, значение - неизменяемый список объектов.
+ * Каждая запись помнит таблицы, из которых она построена, и удаляется при любой записи в них.
+ * Размер записей оценивается в байтах, бюджет выдает CacheRegistry.
+ */
+public class QueryCache implements CacheRegistry.ManagedCache {
+
+    // Оценка накладных расходов на объект строки результата и на один String
+    private static final int ROW_OVERHEAD_BYTES = 16;
+    private static final int STRING_OVERHEAD_BYTES = 40;
+    // Оценка размера числового значения в объекте
+    private static final int NUMBER_BYTES = 8;
+
+    /**
+     * Преобразователь текущей строки курсора в объект
+     * @param <T> Тип объекта, который создается из строки
+     */
+    public interface RowMapper<T> {
+        T map(Cursor cursor);
+    }
+
+    /**
+     * Снимок статистики кэша
+     */
+    public static final class Stats {
+        public final long hits;  // Количество попаданий в кэш
+        public final long misses;  // Количество промахов (запросов к базе)
+        public final long evictions;  // Количество вытесненных по размеру записей
+        public final long invalidations;  // Количество записей, удаленных из-за изменения таблиц
+        public final int size;  // Текущее количество записей в кэше
+        public final long sizeBytes;  // Оценочный размер всех записей в байтах
+
+        Stats(long hits, long misses, long evictions, long invalidations, int size, long sizeBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.size = size;
+            this.sizeBytes = sizeBytes;
+        }
+
+        /**
+         * @return Доля попаданий в кэш от 0 до 1
+         */
+        public double hitRate() {
+            long total = hits + misses;  // Общее количество обращений
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return "QueryCache{size=" + size + ", bytes=" + sizeBytes + ", hits=" + hits + ", misses=" + misses
+                    + ", hitRate=" + String.format(Locale.US, "%.2f", hitRate())
+                    + ", evictions=" + evictions + ", invalidations=" + invalidations + "}";
+        }
+    }
+
+    // Запись кэша: результат запроса и таблицы, от которых он зависит
+    private static final class Entry {
+        final List<?> rows;  // Неизменяемый список объектов
+        final String[] tables;  // Таблицы-источники
+        final long sizeBytes;  // Оценочный размер записи в байтах
+
+        Entry(List<?> rows, String[] tables, long sizeBytes) {
+            this.rows = rows;
+            this.tables = tables;
+            this.sizeBytes = sizeBytes;
+        }
+    }
+
+    private final int maxEntries;  // Максимальное количество записей
+    private final QueryTracer tracer;  // Трассировщик, через который выполняются запросы при промахе
+    private long maxBytes = Long.MAX_VALUE;  // Бюджет кэша в байтах (назначается CacheRegistry)
+    private long sizeBytes;  // Текущий оценочный размер всех записей
+    // Записи в порядке последнего обращения (LRU)
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Счетчик изменений по каждой таблице, чтобы не сохранить результат, устаревший во время чтения
+    private final Map<String, Long> tableVersions = new HashMap<>();
+
+    private long hits;  // Количество попаданий
+    private long misses;  // Количество промахов
+    private long evictions;  // Количество вытеснений
+    private long invalidations;  // Количество инвалидаций
+
+    /**
+     * Конструктор кэша
+     * @param maxEntries Максимальное количество хранимых результатов
+     * @param tracer Трассировщик запросов
+     */
+    public QueryCache(int maxEntries, QueryTracer tracer) {
+        this.maxEntries = maxEntries;  // Сохраняем ограничение размера
+        this.tracer = tracer;  // Сохраняем трассировщик
+    }
+
+    /**
+     * Возвращает результат запроса из кэша либо выполняет запрос и кэширует его результат
+     * @param db База данных для выполнения запроса при промахе
+     * @param sql Текст SQL-запроса
+     * @param args Аргументы запроса (может быть null)
+     * @param tables Таблицы, из которых читает запрос
+     * @param mapper Преобразователь строки курсора в объект
+     * @return Неизменяемый список объектов
+     */
+    public <T> List<T> query(SQLiteDatabase db, String sql, String[] args, String[] tables, RowMapper<T> mapper) {
+        String key = buildKey(sql, args);  // Формируем ключ записи
+        long[] versions;  // Версии таблиц на момент начала чтения
+        synchronized (this) {
+            Entry entry = entries.get(key);  // Ищем запись (обновляет порядок LRU)
+            if (entry != null) {
+                hits++;  // Фиксируем попадание
+                @SuppressWarnings("unchecked")
+                List<T> rows = (List<T>) entry.rows;
+                return rows;  // Возвращаем кэшированный результат
+            }
+            misses++;  // Фиксируем промах
+            versions = snapshotVersions(tables);  // Запоминаем версии таблиц
+        }
+
+        List<T> rows = new ArrayList<>();  // Список для результата запроса
+        long entryBytes = key.length() * 2L;  // Оценочный размер записи, начиная с ключа
+        Cursor cursor = tracer.rawQuery(db, sql, args);  // Выполняем запрос с замером времени
+        try {
+            SizingCursor sizing = new SizingCursor(cursor);  // Считает размер значений, которые копирует преобразователь
+            while (sizing.moveToNext()) {  // Проходим по всем строкам
+                rows.add(mapper.map(sizing));  // Преобразуем строку в объект
+                entryBytes += ROW_OVERHEAD_BYTES + sizing.takeBytes();  // Учитываем размер строки
+            }
+        } finally {
+            cursor.close();  // Закрываем курсор в любом случае
+        }
+        List<T> result = Collections.unmodifiableList(rows);  // Делаем результат неизменяемым
+
+        synchronized (this) {
+            // Сохраняем результат, только если таблицы не менялись во время чтения
+            if (sameVersions(tables, versions) && entryBytes <= maxBytes) {
+                Entry previous = entries.put(key, new Entry(result, tables, entryBytes));  // Добавляем запись
+                if (previous != null) sizeBytes -= previous.sizeBytes;  // Параллельный промах мог уже добавить запись
+                sizeBytes += entryBytes;  // Учитываем размер новой записи
+                trimToSize(maxEntries, maxBytes);  // Вытесняем самые старые записи при переполнении
+            }
+        }
+        return result;  // Возвращаем результат
+    }
+
+    /**
+     * Удаляет все записи, построенные по указанным таблицам
+     * Вызывается обработчиками после каждой операции записи
+     * @param tables Имена измененных таблиц
+     */
+    public synchronized void invalidate(String... tables) {
+        Set<String> changed = new HashSet<>();  // Множество измененных таблиц
+        for (String table : tables) {
+            changed.add(table);  // Добавляем таблицу в множество
+            Long version = tableVersions.get(table);  // Текущая версия таблицы
+            tableVersions.put(table, version == null ? 1L : version + 1);  // Увеличиваем версию
+        }
+        Iterator<Entry> iterator = entries.values().iterator();  // Итератор по записям
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();  // Текущая запись
+            for (String table : entry.tables) {
+                if (changed.contains(table)) {  // Если запись зависит от измененной таблицы
+                    iterator.remove();  // Удаляем запись
+                    sizeBytes -= entry.sizeBytes;  // Уменьшаем текущий размер
+                    invalidations++;  // Фиксируем инвалидацию
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Возвращает счетчик изменений таблицы
+     * Структуры в памяти, построенные по таблице (например, битовые карты фасетов), сравнивают его
+     * со значением на момент построения, чтобы узнать об изменениях без запроса к базе
+     * @param table Имя таблицы
+     * @return Количество инвалидаций таблицы (0 - таблица не менялась с запуска)
+     */
+    public synchronized long getTableVersion(String table) {
+        Long version = tableVersions.get(table);
+        return version == null ? 0L : version;
+    }
+
+    /**
+     * Полностью очищает кэш
+     */
+    public synchronized void clear() {
+        invalidations += entries.size();  // Все записи считаются инвалидированными
+        entries.clear();  // Удаляем все записи
+        sizeBytes = 0;  // Кэш пуст
+    }
+
+    @Override
+    public String getName() {
+        return "QueryCache";
+    }
+
+    @Override
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    @Override
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;  // Сохраняем новый бюджет
+        trimToSize(maxEntries, maxBytes);  // Сразу укладываемся в него
+    }
+
+    @Override
+    public synchronized void trimToBytes(long targetBytes) {
+        trimToSize(maxEntries, targetBytes);  // Однократно вытесняем записи до целевого размера
+    }
+
+    /**
+     * @return Снимок текущей статистики кэша
+     */
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, evictions, invalidations, entries.size(), sizeBytes);
+    }
+
+    // Вытесняет наименее используемые записи, пока кэш не уложится в лимиты
+    private void trimToSize(int entryLimit, long byteLimit) {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > entryLimit || sizeBytes > byteLimit) && iterator.hasNext()) {
+            sizeBytes -= iterator.next().getValue().sizeBytes;  // Самая старая запись
+            iterator.remove();  // Удаляем ее
+            evictions++;  // Фиксируем вытеснение
+        }
+    }
+
+    /**
+     * Курсор, который оценивает объем памяти объекта по значениям, прочитанным преобразователем строки:
+     * размер считается по типу и длине уже скопированного значения, без повторного чтения колонок
+     */
+    private static final class SizingCursor extends CursorWrapper {
+        private long bytes;  // Оценка значений текущей строки
+
+        SizingCursor(Cursor cursor) {
+            super(cursor);
+        }
+
+        // Возвращает оценку значений, прочитанных с прошлого вызова, и обнуляет ее
+        long takeBytes() {
+            long result = bytes;
+            bytes = 0;
+            return result;
+        }
+
+        @Override
+        public String getString(int columnIndex) {
+            String value = super.getString(columnIndex);
+            if (value != null) bytes += STRING_OVERHEAD_BYTES + 2L * value.length();  // Строка UTF-16
+            return value;
+        }
+
+        @Override
+        public byte[] getBlob(int columnIndex) {
+            byte[] value = super.getBlob(columnIndex);
+            if (value != null) bytes += value.length;  // Двоичные данные
+            return value;
+        }
+
+        @Override
+        public short getShort(int columnIndex) {
+            bytes += NUMBER_BYTES;
+            return super.getShort(columnIndex);
+        }
+
+        @Override
+        public int getInt(int columnIndex) {
+            bytes += NUMBER_BYTES;
+            return super.getInt(columnIndex);
+        }
+
+        @Override
+        public long getLong(int columnIndex) {
+            bytes += NUMBER_BYTES;
+            return super.getLong(columnIndex);
+        }
+
+        @Override
+        public float getFloat(int columnIndex) {
+            bytes += NUMBER_BYTES;
+            return super.getFloat(columnIndex);
+        }
+
+        @Override
+        public double getDouble(int columnIndex) {
+            bytes += NUMBER_BYTES;
+            return super.getDouble(columnIndex);
+        }
+    }
+
+    // Возвращает версии указанных таблиц
+    private long[] snapshotVersions(String[] tables) {
+        long[] versions = new long[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            Long version = tableVersions.get(tables[i]);
+            versions[i] = version == null ? 0L : version;
+        }
+        return versions;
+    }
+
+    // Проверяет, что версии таблиц не изменились с момента снимка
+    private boolean sameVersions(String[] tables, long[] versions) {
+        long[] current = snapshotVersions(tables);
+        for (int i = 0; i < tables.length; i++) {
+            if (current[i] != versions[i]) return false;
+        }
+        return true;
+    }
+
+    // Формирует ключ записи из текста запроса и аргументов
+    private static String buildKey(String sql, String[] args) {
+        StringBuilder key = new StringBuilder(sql);
+        if (args != null) {
+            for (String arg : args) {
+                key.append('\u0000').append(arg);  // Разделяем аргументы символом, которого нет в SQL
+            }
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.e_shop.DB;
+
+import android.content.ContentValues;  // Импортируем ContentValues для операций вставки и обновления
+import android.database.Cursor;  // Импортируем Cursor для результатов запросов
+import android.database.sqlite.SQLiteDatabase;  // Импортируем SQLiteDatabase для выполнения операций
+import android.database.sqlite.SQLiteStatement;  // Импортируем SQLiteStatement для выражений UPDATE/DELETE с выражениями в SET
+import android.text.TextUtils;  // Импортируем TextUtils для склейки списка колонок
+import android.util.Log;  // Импортируем Log для журнала медленных запросов
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Инструментирование обращений обработчиков таблиц к базе данных
+ * Обработчики выполняют rawQuery/insert/update/delete через этот класс. Для каждого выражения
+ * накапливаются количество вызовов, число строк и гистограмма задержек с корзинами по степеням двойки.
+ * Выражения дольше порога записываются в журнал медленных запросов вместе с планом EXPLAIN QUERY PLAN.
+ * Сводка выводится методом dump (dumpsys activity com.example.e_shop/.MainActivity).
+ */
+public class QueryTracer {
+
+    private static final String TAG = "QueryTracer";  // Тег для логирования
+
+    // Порог медленного запроса по умолчанию: один кадр при 60 Гц
+    private static final long DEFAULT_SLOW_THRESHOLD_MILLIS = 16;
+    // Количество корзин гистограммы: корзина i содержит задержки меньше 2^i мкс (последняя - все остальные)
+    private static final int HISTOGRAM_BUCKETS = 24;
+    // Количество хранимых записей журнала медленных запросов
+    private static final int SLOW_LOG_SIZE = 50;
+
+    /**
+     * Накопленная статистика одного выражения
+     */
+    public static final class StatementStats {
+        public final String sql;  // Текст выражения (для insert/update/delete - эквивалентный SQL)
+        long count;  // Количество выполнений
+        long rows;  // Суммарное число прочитанных или измененных строк
+        long totalNanos;  // Суммарное время
+        long maxNanos;  // Максимальное время
+        final long[] histogram = new long[HISTOGRAM_BUCKETS];  // Гистограмма задержек
+
+        StatementStats(String sql) {
+            this.sql = sql;
+        }
+
+        // Добавляет один замер
+        void add(long nanos, long rowCount) {
+            count++;
+            rows += Math.max(rowCount, 0);
+            totalNanos += nanos;
+            if (nanos > maxNanos) maxNanos = nanos;
+            long micros = nanos / 1000;
+            int bucket = micros == 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);  // Номер старшего бита
+            histogram[Math.min(bucket, HISTOGRAM_BUCKETS - 1)]++;
+        }
+
+        /**
+         * Оценивает перцентиль по гистограмме (верхняя граница корзины)
+         * @param p Перцентиль от 0 до 1
+         * @return Оценка задержки в миллисекундах
+         */
+        public synchronized double percentileMillis(double p) {
+            long target = (long) Math.ceil(p * count);
+            long seen = 0;
+            for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+                seen += histogram[i];
+                if (seen >= target && seen > 0) return Math.min((1L << i) / 1000.0, maxNanos / 1e6);
+            }
+            return maxNanos / 1e6;
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getRows() {
+            return rows;
+        }
+
+        public synchronized double getTotalMillis() {
+            return totalNanos / 1e6;
+        }
+
+        public synchronized double getMaxMillis() {
+            return maxNanos / 1e6;
+        }
+    }
+
+    // Запись журнала медленных запросов
+    private static final class SlowQuery {
+        final long timestamp;  // Время выполнения (System.currentTimeMillis)
+        final String sql;  // Текст выражения
+        final double millis;  // Длительность
+        final String plan;  // План выполнения
+
+        SlowQuery(long timestamp, String sql, double millis, String plan) {
+            this.timestamp = timestamp;
+            this.sql = sql;
+            this.millis = millis;
+            this.plan = plan;
+        }
+    }
+
+    private final Map<String, StatementStats> statements = new HashMap<>();  // Статистика по тексту выражения
+    private final ArrayDeque<SlowQuery> slowLog = new ArrayDeque<>();  // Последние медленные запросы
+    private volatile boolean enabled = true;  // Включено ли инструментирование
+    private volatile long slowThresholdNanos = DEFAULT_SLOW_THRESHOLD_MILLIS * 1_000_000L;  // Порог медленного запроса
+
+    /**
+     * Включает или выключает инструментирование (выключенный трассировщик просто выполняет операции)
+     * @param enabled true для включения
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Устанавливает порог, начиная с которого выражение попадает в журнал медленных запросов
+     * @param millis Порог в миллисекундах
+     */
+    public void setSlowQueryThresholdMillis(long millis) {
+        this.slowThresholdNanos = millis * 1_000_000L;
+    }
+
+    /**
+     * Выполняет запрос и замеряет его время
+     * Курсор сразу заполняет первое окно строк (getCount), чтобы в замер попало выполнение запроса, а не только компиляция
+     * @param db База данных
+     * @param sql Текст запроса
+     * @param args Аргументы запроса
+     * @return Курсор с результатом (в отладочной сборке - отслеживаемый CursorLeakTracker)
+     */
+    public Cursor rawQuery(SQLiteDatabase db, String sql, String[] args) {
+        if (!enabled) return CursorLeakTracker.track(db.rawQuery(sql, args), sql);
+        long start = System.nanoTime();
+        Cursor cursor = db.rawQuery(sql, args);
+        int rows = cursor.getCount();  // Выполняет запрос и считает строки
+        record(db, sql, System.nanoTime() - start, rows);
+        return CursorLeakTracker.track(cursor, sql);
+    }
+
+    /**
+     * Вставляет строку и замеряет время вставки
+     * @return Идентификатор вставленной строки или -1
+     */
+    public long insert(SQLiteDatabase db, String table, ContentValues values) {
+        if (!enabled) return db.insert(table, null, values);
+        long start = System.nanoTime();
+        long id = db.insert(table, null, values);
+        record(db, "INSERT INTO " + table + " (" + TextUtils.join(", ", sortedColumns(values)) + ")", System.nanoTime() - start, id == -1 ? 0 : 1);
+        return id;
+    }
+
+    /**
+     * Обновляет строки и замеряет время обновления
+     * @return Количество обновленных строк
+     */
+    public int update(SQLiteDatabase db, String table, ContentValues values, String whereClause, String[] whereArgs) {
+        if (!enabled) return db.update(table, values, whereClause, whereArgs);
+        long start = System.nanoTime();
+        int rows = db.update(table, values, whereClause, whereArgs);
+        record(db, "UPDATE " + table + " SET " + assignmentList(values) + where(whereClause), System.nanoTime() - start, rows);
+        return rows;
+    }
+
+    /**
+     * Удаляет строки и замеряет время удаления
+     * @return Количество удаленных строк
+     */
+    public int delete(SQLiteDatabase db, String table, String whereClause, String[] whereArgs) {
+        if (!enabled) return db.delete(table, whereClause, whereArgs);
+        long start = System.nanoTime();
+        int rows = db.delete(table, whereClause, whereArgs);
+        record(db, "DELETE FROM " + table + where(whereClause), System.nanoTime() - start, rows);
+        return rows;
+    }
+
+    /**
+     * Выполняет произвольное выражение UPDATE или DELETE (например, с вычислением в SET) и замеряет его время
+     * @param db База данных
+     * @param sql Текст выражения
+     * @param args Аргументы выражения
+     * @return Количество измененных строк
+     */
+    public int executeUpdateDelete(SQLiteDatabase db, String sql, String[] args) {
+        long start = System.nanoTime();
+        int rows;
+        SQLiteStatement statement = db.compileStatement(sql);
+        try {
+            statement.bindAllArgsAsStrings(args);
+            rows = statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+        if (enabled) record(db, sql, System.nanoTime() - start, rows);
+        return rows;
+    }
+
+    /**
+     * @return Снимок статистики выражений, отсортированный по суммарному времени
+     */
+    public List<StatementStats> getStatementStats() {
+        List<StatementStats> result;
+        synchronized (statements) {
+            result = new ArrayList<>(statements.values());
+        }
+        Collections.sort(result, (a, b) -> Double.compare(b.getTotalMillis(), a.getTotalMillis()));
+        return result;
+    }
+
+    /**
+     * Сбрасывает накопленную статистику и журнал медленных запросов
+     */
+    public void reset() {
+        synchronized (statements) {
+            statements.clear();
+        }
+        synchronized (slowLog) {
+            slowLog.clear();
+        }
+    }
+
+    /**
+     * Выводит сводку по выражениям и журнал медленных запросов
+     * @param prefix Отступ строк
+     * @param writer Поток вывода
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Query stats (slow threshold " + slowThresholdNanos / 1_000_000L + " ms):");
+        writer.println(prefix + String.format(Locale.US, "  %8s %10s %10s %8s %8s %8s  %s",
+                "count", "rows", "total ms", "p50 ms", "p99 ms", "max ms", "sql"));
+        for (StatementStats stats : getStatementStats()) {
+            writer.println(prefix + String.format(Locale.US, "  %8d %10d %10.1f %8.3f %8.3f %8.3f  %s",
+                    stats.getCount(), stats.getRows(), stats.getTotalMillis(), stats.percentileMillis(0.5),
+                    stats.percentileMillis(0.99), stats.getMaxMillis(), stats.sql));
+        }
+        writer.println(prefix + "Slow queries (latest " + SLOW_LOG_SIZE + "):");
+        synchronized (slowLog) {
+            for (SlowQuery slow : slowLog) {
+                writer.println(prefix + String.format(Locale.US, "  %tT %.1f ms  %s", slow.timestamp, slow.millis, slow.sql));
+                if (!slow.plan.isEmpty()) writer.println(prefix + "    " + slow.plan.replace("\n", "\n" + prefix + "    "));
+            }
+        }
+    }
+
+    // Добавляет замер в статистику и при превышении порога - в журнал медленных запросов
+    private void record(SQLiteDatabase db, String sql, long nanos, long rows) {
+        StatementStats stats;
+        synchronized (statements) {
+            stats = statements.get(sql);
+            if (stats == null) {
+                stats = new StatementStats(sql);
+                statements.put(sql, stats);
+            }
+        }
+        synchronized (stats) {
+            stats.add(nanos, rows);
+        }
+        if (nanos >= slowThresholdNanos) {
+            String plan = explain(db, sql);  // План строится только для медленных выражений
+            Log.w(TAG, String.format(Locale.US, "Slow query %.1f ms: %s\n%s", nanos / 1e6, sql, plan));
+            synchronized (slowLog) {
+                if (slowLog.size() == SLOW_LOG_SIZE) slowLog.removeFirst();
+                slowLog.addLast(new SlowQuery(System.currentTimeMillis(), sql, nanos / 1e6, plan));
+            }
+        }
+    }
+
+    // Возвращает план выполнения выражения или пустую строку, если его нельзя построить
+    // Параметры не привязываются: план в SQLite не зависит от их значений
+    private static String explain(SQLiteDatabase db, String sql) {
+        if (sql.startsWith("INSERT")) return "";  // У вставки нет плана поиска
+        StringBuilder plan = new StringBuilder();
+        try (Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, null)) {
+            int detail = cursor.getColumnIndex("detail");  // Колонка с описанием шага плана
+            while (cursor.moveToNext()) {
+                if (plan.length() > 0) plan.append('\n');
+                plan.append(cursor.getString(detail));
+            }
+        } catch (RuntimeException e) {
+            return "";  // План недоступен (например, база уже закрыта)
+        }
+        return plan.toString();
+    }
+
+    // Колонки ContentValues в фиксированном порядке, чтобы одинаковые выражения попадали в одну строку статистики
+    private static List<String> sortedColumns(ContentValues values) {
+        List<String> columns = new ArrayList<>(values.keySet());
+        Collections.sort(columns);
+        return columns;
+    }
+
+    // Часть SET эквивалентного SQL: "a = ?, b = ?"
+    private static String assignmentList(ContentValues values) {
+        StringBuilder assignments = new StringBuilder();
+        for (String column : sortedColumns(values)) {
+            if (assignments.length() > 0) assignments.append(", ");
+            assignments.append(column).append(" = ?");
+        }
+        return assignments.toString();
+    }
+
+    // Часть WHERE эквивалентного SQL
+    private static String where(String whereClause) {
+        return whereClause == null || whereClause.isEmpty() ? "" : " WHERE " + whereClause;
+    }
+}
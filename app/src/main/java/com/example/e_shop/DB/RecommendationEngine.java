@@ -0,0 +1,308 @@
+package com.example.e_shop.DB;
+
+import android.database.Cursor;  // Импортируем Cursor для потокового чтения позиций заказов
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Рекомендации "С этим товаром покупают" на основе совместных покупок
+ * Хранит в памяти разреженную матрицу совместной встречаемости: для каждого продукта - таблица
+ * IntIntHashMap "другой продукт -> число заказов, где они были вместе". Матрица строится одним
+ * проходом по OrderDetails основной базы и архива (строки идут по порядку order_id, корзина заказа накапливается в массиве)
+ * и дальше обновляется при каждом оформлении заказа, без повторного чтения истории.
+ * Для каждого продукта кэшируются лучшие TOP_CACHE_SIZE соседей; кэш строки сбрасывается только при ее
+ * изменении, поэтому выдача рекомендаций - это копирование небольшого массива.
+ * Удаление заказов матрицу не уменьшает; точные значения дает rebuild().
+ * Движок принадлежит обработчику базы (DataBaseHandler.getRecommendationEngine) и учитывает заказы,
+ * оформленные через этот обработчик; заказы, записанные через другой обработчик того же файла, учтет rebuild().
+ * Матрица - кэш под управлением CacheRegistry: при нехватке памяти сначала освобождаются списки лучших соседей,
+ * затем вся матрица, которая строится заново при следующем запросе рекомендаций.
+ */
+public class RecommendationEngine implements CacheRegistry.ManagedCache {
+
+    // Заказы с большим числом позиций (оптовые) почти ничего не говорят о связи товаров и дают квадратичное число пар
+    private static final int MAX_ITEMS_PER_ORDER = 50;
+    // Количество соседей, которое хранится отсортированным для каждого продукта
+    private static final int TOP_CACHE_SIZE = 20;
+    // Оценка накладных расходов на объект вместе с заголовком его массива
+    private static final int OBJECT_BYTES = 32;
+
+    // Позиции всех заказов основной базы и архива по порядку заказа (порядок дает индекс idx_order_details_order
+    // в обеих базах, части сливаются без сортировки); заказ, который после сбоя переноса есть в обеих, читается из основной
+    static final String SQL_ORDER_LINES = "SELECT " + OrderDetailsTableHandler.COLUMN_ORDER_ID + ", "
+            + OrderDetailsTableHandler.COLUMN_PRODUCT_ID + " FROM main." + OrderDetailsTableHandler.TABLE_ORDER_DETAILS
+            + " UNION ALL SELECT d." + OrderDetailsTableHandler.COLUMN_ORDER_ID + ", d." + OrderDetailsTableHandler.COLUMN_PRODUCT_ID
+            + " FROM " + OrderArchive.TABLE_ARCHIVED_ORDER_DETAILS + " d"
+            + " WHERE NOT EXISTS (SELECT 1 FROM main." + OrdersTableHandler.TABLE_ORDERS + " m WHERE m.id = d." + OrderDetailsTableHandler.COLUMN_ORDER_ID + ")"
+            + " ORDER BY 1";
+
+    private final DataBaseHandler dbHandler;  // Обработчик базы данных
+    private final Object buildLock = new Object();  // Не допускает двух одновременных перестроений
+
+    // Состояние ниже защищено монитором this
+    private Matrix matrix;  // Текущая матрица (null, пока не построена)
+    private long builtThroughOrderId;  // Последний заказ, учтенный при построении
+    private boolean rebuilding;  // Идет перестроение: новые заказы откладываются в pending
+    private final List<int[]> pending = new ArrayList<>();  // Отложенные заказы: [orderId, productId...]
+
+    /**
+     * Учитывает оформленный заказ в матрице, если она уже построена (вызывается после фиксации транзакции)
+     * Если матрица еще не построена, заказ будет прочитан из OrderDetails при построении.
+     * @param dbHandler Обработчик базы данных, в которую записан заказ
+     * @param orderId Идентификатор заказа
+     * @param productIds Продукты заказа
+     */
+    static void recordOrder(DataBaseHandler dbHandler, long orderId, int[] productIds) {
+        RecommendationEngine engine = dbHandler.peekRecommendationEngine();
+        if (engine != null) engine.onOrderPlaced(orderId, productIds);
+    }
+
+    /**
+     * Конструктор; экземпляр выдает DataBaseHandler.getRecommendationEngine()
+     * @param dbHandler Обработчик базы данных
+     */
+    RecommendationEngine(DataBaseHandler dbHandler) {
+        this.dbHandler = dbHandler;
+    }
+
+    /**
+     * Возвращает продукты, которые чаще всего покупали вместе с указанным
+     * При первом вызове строит матрицу по всей истории заказов (вызывать не в главном потоке).
+     * @param productId Идентификатор продукта
+     * @param limit Максимальное количество продуктов (не больше 20)
+     * @return Идентификаторы продуктов по убыванию числа совместных заказов
+     */
+    public int[] getRelated(int productId, int limit) {
+        return getRelated(productId, limit, new int[0]);
+    }
+
+    /**
+     * Возвращает продукты, которые чаще всего покупали вместе с указанным, кроме исключенных
+     * (например, уже лежащих в корзине); выбор идет из 20 лучших соседей, поэтому продуктов может вернуться меньше limit
+     * @param productId Идентификатор продукта
+     * @param limit Максимальное количество продуктов (не больше 20)
+     * @param excludedIds Продукты, которые не нужно предлагать
+     * @return Идентификаторы продуктов по убыванию числа совместных заказов
+     */
+    public int[] getRelated(int productId, int limit, int[] excludedIds) {
+        synchronized (this) {
+            if (matrix != null) return matrix.top(productId, limit, excludedIds);
+        }
+        synchronized (buildLock) { // Первые запросы с нескольких экранов ждут одно построение
+            boolean built;
+            synchronized (this) {
+                built = matrix != null;
+            }
+            if (!built) rebuild();
+        }
+        synchronized (this) {
+            return matrix != null ? matrix.top(productId, limit, excludedIds) : new int[0];
+        }
+    }
+
+    /**
+     * Строит матрицу заново по всей истории заказов
+     * Чтение идет без блокировки выдачи рекомендаций: до замены отвечает старая матрица,
+     * а заказы, оформленные во время чтения, применяются к новой матрице после него.
+     */
+    public void rebuild() {
+        synchronized (buildLock) {
+            synchronized (this) {
+                rebuilding = true;
+                pending.clear();
+            }
+            Builder builder = new Builder();
+            try {
+                dbHandler.forEachRow(SQL_ORDER_LINES, null, builder);
+                builder.flush();
+            } finally {
+                synchronized (this) {
+                    rebuilding = false;
+                    if (builder.complete) {
+                        matrix = builder.matrix;
+                        builtThroughOrderId = builder.lastOrderId;
+                        for (int[] order : pending) { // Заказы, оформленные во время чтения истории
+                            if (order[0] > builtThroughOrderId) matrix.addBasket(order, 1, order.length);
+                        }
+                    }
+                    pending.clear();
+                }
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "RecommendationEngine";
+    }
+
+    @Override
+    public synchronized long getSizeBytes() {
+        return matrix != null ? matrix.sizeBytes() : 0;
+    }
+
+    @Override
+    public synchronized void setMaxBytes(long maxBytes) {
+        // Матрица нужна целиком, а перестроение читает всю историю: бюджет соблюдается при сжатии по сигналам памяти
+        trimToBytes(maxBytes);
+    }
+
+    /**
+     * Сжимает матрицу: сначала освобождает списки лучших соседей (они пересчитываются по строке),
+     * если этого мало - всю матрицу (она строится заново по истории заказов при следующем запросе)
+     * @param targetBytes Целевой размер в байтах
+     */
+    @Override
+    public synchronized void trimToBytes(long targetBytes) {
+        if (matrix == null || matrix.sizeBytes() <= targetBytes) return;
+        matrix.clearTops();
+        if (matrix.sizeBytes() > targetBytes) matrix = null;
+    }
+
+    // Учитывает новый заказ
+    private synchronized void onOrderPlaced(long orderId, int[] productIds) {
+        if (rebuilding) { // Новая матрица может не увидеть этот заказ: применим его после замены
+            int[] order = new int[productIds.length + 1];
+            order[0] = (int) orderId;
+            System.arraycopy(productIds, 0, order, 1, productIds.length);
+            pending.add(order);
+        } else if (matrix != null && orderId > builtThroughOrderId) {
+            int[] basket = productIds.clone(); // addBasket сортирует массив
+            matrix.addBasket(basket, 0, basket.length);
+        }
+    }
+
+    /**
+     * Разреженная матрица совместной встречаемости
+     */
+    private static final class Matrix {
+        private final IntIntHashMap rowIndex;  // productId -> индекс строки + 1
+        private final ArrayList<Row> rows;  // Строки матрицы
+
+        Matrix(int expectedProducts) {
+            rowIndex = new IntIntHashMap(expectedProducts);
+            rows = new ArrayList<>(expectedProducts);
+        }
+
+        // Учитывает корзину одного заказа: каждая пара различных продуктов получает +1 в обе стороны
+        void addBasket(int[] products, int from, int to) {
+            if (to - from > MAX_ITEMS_PER_ORDER) return;
+            Arrays.sort(products, from, to);
+            for (int i = from; i < to; i++) {
+                if (i > from && products[i] == products[i - 1]) continue; // Продукт повторяется в заказе
+                Row row = null;
+                for (int j = from; j < to; j++) {
+                    if (j > from && products[j] == products[j - 1]) continue;
+                    if (products[j] == products[i]) continue;
+                    if (row == null) row = row(products[i]);
+                    row.counts.addTo(products[j], 1);
+                }
+                if (row != null) row.top = null; // Соседи изменились
+            }
+        }
+
+        // Лучшие соседи продукта без исключенных (вычисляются заново только после изменения строки)
+        int[] top(int productId, int limit, int[] excludedIds) {
+            int index = rowIndex.get(productId);
+            if (index == 0) return new int[0];
+            Row row = rows.get(index - 1);
+            if (row.top == null) row.top = row.computeTop();
+            int[] result = new int[Math.min(limit, row.top.length)];
+            int n = 0;
+            for (int i = 0; i < row.top.length && n < result.length; i++) {
+                if (!contains(excludedIds, row.top[i])) result[n++] = row.top[i]; // Исключений мало: линейный поиск
+            }
+            return n == result.length ? result : Arrays.copyOf(result, n);
+        }
+
+        // Освобождает списки лучших соседей всех строк
+        void clearTops() {
+            for (Row row : rows) row.top = null;
+        }
+
+        // Оценка занимаемой памяти: таблица строк, список строк и строки с их соседями
+        long sizeBytes() {
+            long bytes = 3L * OBJECT_BYTES + 8L * rowIndex.capacity() + 4L * rows.size();
+            for (Row row : rows) bytes += row.sizeBytes();
+            return bytes;
+        }
+
+        private static boolean contains(int[] ids, int id) {
+            for (int value : ids) {
+                if (value == id) return true;
+            }
+            return false;
+        }
+
+        private Row row(int productId) {
+            int index = rowIndex.get(productId);
+            if (index != 0) return rows.get(index - 1);
+            Row row = new Row();
+            rows.add(row);
+            rowIndex.addTo(productId, rows.size());
+            return row;
+        }
+    }
+
+    /**
+     * Строка матрицы: соседи продукта и кэш лучших из них
+     */
+    private static final class Row {
+        final IntIntHashMap counts = new IntIntHashMap(8);  // Соседний продукт -> число совместных заказов
+        int[] top;  // Лучшие соседи (null - требуется пересчет)
+
+        long sizeBytes() {
+            return 2L * OBJECT_BYTES + 8L * counts.capacity() + (top != null ? OBJECT_BYTES + 4L * top.length : 0);
+        }
+
+        // Сортирует соседей по убыванию числа заказов, при равенстве - по возрастанию id
+        int[] computeTop() {
+            long[] packed = new long[counts.size()];
+            int n = 0;
+            for (int i = 0; i < counts.capacity(); i++) {
+                int productId = counts.keyAt(i);
+                if (productId == 0) continue;
+                // Старшие биты - число заказов, младшие - инвертированный id: сортировка по возрастанию дает нужный порядок с конца
+                packed[n++] = ((long) counts.valueAt(i) << 32) | (Integer.MAX_VALUE - productId);
+            }
+            Arrays.sort(packed, 0, n);
+            int[] result = new int[Math.min(TOP_CACHE_SIZE, n)];
+            for (int i = 0; i < result.length; i++) result[i] = Integer.MAX_VALUE - (int) packed[n - 1 - i];
+            return result;
+        }
+    }
+
+    /**
+     * Потоковое построение матрицы: строки одного заказа накапливаются в массиве и учитываются разом
+     */
+    private static final class Builder implements DataBaseHandler.RowCallback {
+        final Matrix matrix = new Matrix(1024);
+        private int[] basket = new int[16];  // Продукты текущего заказа
+        private int basketSize;
+        private long currentOrderId = -1;
+        long lastOrderId;  // Последний прочитанный заказ
+        boolean complete;  // История прочитана полностью
+
+        @Override
+        public boolean onRow(Cursor cursor) {
+            long orderId = cursor.getLong(0);
+            if (orderId != currentOrderId) {
+                matrix.addBasket(basket, 0, basketSize);
+                basketSize = 0;
+                currentOrderId = orderId;
+                lastOrderId = Math.max(lastOrderId, orderId);
+            }
+            if (basketSize == basket.length) basket = Arrays.copyOf(basket, basketSize * 2);
+            basket[basketSize++] = cursor.getInt(1);
+            return true;
+        }
+
+        void flush() {
+            matrix.addBasket(basket, 0, basketSize);
+            basketSize = 0;
+            complete = true;
+        }
+    }
+}
@@ -4,6 +4,11 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
+import com.example.e_shop.DataClasses.CartProduct;
+import com.example.e_shop.DataClasses.UserCartItem;
+
+import java.util.List;
+
 // Класс для работы с таблицей корзины пользователя
 public class UserCartTableHandler {
 
@@ -14,6 +19,17 @@ public class UserCartTableHandler {
     public static final String COLUMN_USER_ID = "user_id";  // Название колонки с идентификатором пользователя
     public static final String COLUMN_PRODUCT_ID = "product_id";  // Название колонки с идентификатором продукта
     public static final String COLUMN_QUANTITY = "quantity";  // Название колонки с количеством товара в корзине
+    public static final String COLUMN_CART_QUANTITY = "cart_quantity";  // Псевдоним колонки с количеством в корзине в объединенном запросе
+
+    // Запрос записей корзины пользователя
+    static final String SQL_ITEMS_IN_CART = "SELECT * FROM " + TABLE_USERCART + " WHERE " + COLUMN_USER_ID + " = ?";
+    // Запрос товаров корзины вместе с облегчённой информацией о продуктах
+    static final String SQL_CART_PRODUCTS = "SELECT " + ProductsTableHandler.summaryColumns("p.") + ", uc." + COLUMN_QUANTITY
+            + " AS " + COLUMN_CART_QUANTITY + " FROM " + TABLE_USERCART + " uc INNER JOIN " + ProductsTableHandler.TABLE_PRODUCTS
+            + " p ON uc." + COLUMN_PRODUCT_ID + " = p." + ProductsTableHandler.COLUMN_ID + " WHERE uc." + COLUMN_USER_ID + " = ?";
+    // Таблицы, от которых зависят кэшированные результаты запросов корзины
+    private static final String[] CART_TABLES = {TABLE_USERCART};
+    private static final String[] CART_PRODUCTS_TABLES = {TABLE_USERCART, ProductsTableHandler.TABLE_PRODUCTS};
 
     /**
      * Конструктор класса UserCartTableHandler
@@ -36,8 +52,16 @@ public class UserCartTableHandler {
         values.put(COLUMN_USER_ID, userId);  // Добавляем значение userId в ContentValues
         values.put(COLUMN_PRODUCT_ID, productId);  // Добавляем значение productId в ContentValues
         values.put(COLUMN_QUANTITY, quantity);  // Добавляем количество товара в ContentValues
-        long id = db.insert(TABLE_USERCART, null, values);  // Выполняем вставку и получаем id новой записи
-        db.close();  // Закрываем базу данных после выполнения операции
+        long id;  // Идентификатор новой записи
+        db.beginTransaction();  // Запись и ее отметка для синхронизации между устройствами - одна транзакция
+        try {
+            id = dbHandler.getQueryTracer().insert(db, TABLE_USERCART, values);  // Выполняем вставку и получаем id новой записи
+            CartSyncEngine.recordLocalChange(db, userId, productId);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        dbHandler.getQueryCache().invalidate(TABLE_USERCART);  // Сбрасываем кэшированное содержимое корзин
         return id;  // Возвращаем id добавленной записи
     }
 
@@ -48,8 +72,7 @@ public class UserCartTableHandler {
      */
     public Cursor getItemsInCart(int userId) {
         SQLiteDatabase db = dbHandler.getReadableDatabase();  // Получаем базу данных в режиме чтения
-        return db.rawQuery("SELECT * FROM " + TABLE_USERCART + " WHERE " + COLUMN_USER_ID + " = ?",
-                new String[]{String.valueOf(userId)});  // Выполняем запрос для выбора всех записей, где user_id равен указанному значению
+        return dbHandler.getQueryTracer().rawQuery(db, SQL_ITEMS_IN_CART, new String[]{String.valueOf(userId)});  // Выполняем запрос для выбора всех записей, где user_id равен указанному значению
     }
 
     /**
@@ -63,22 +86,30 @@ public class UserCartTableHandler {
         SQLiteDatabase db = dbHandler.getWritableDatabase();  // Получаем базу данных в режиме записи
         ContentValues values = new ContentValues();  // Создаем ContentValues для обновляемых данных
         values.put(COLUMN_QUANTITY, newQuantity);  // Обновляем значение количества товара
-        // Выполняем обновление записи с условием совпадения user_id и product_id
-        return db.update(TABLE_USERCART, values, COLUMN_USER_ID + " = ? AND " + COLUMN_PRODUCT_ID + " = ?",
-                new String[]{String.valueOf(userId), String.valueOf(productId)});
+        int rows;  // Количество обновленных строк
+        db.beginTransaction();  // Запись и ее отметка для синхронизации между устройствами - одна транзакция
+        try {
+            // Выполняем обновление записи с условием совпадения user_id и product_id
+            rows = dbHandler.getQueryTracer().update(db, TABLE_USERCART, values, COLUMN_USER_ID + " = ? AND " + COLUMN_PRODUCT_ID + " = ?",
+                    new String[]{String.valueOf(userId), String.valueOf(productId)});
+            if (rows > 0) CartSyncEngine.recordLocalChange(db, userId, productId);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        dbHandler.getQueryCache().invalidate(TABLE_USERCART);  // Сбрасываем кэшированное содержимое корзин
+        return rows;  // Возвращаем количество обновленных строк
     }
 
     /**
      * Метод получения товаров в корзине вместе с информацией о продуктах
      * @param userId Идентификатор пользователя
-     * @return Возвращает Cursor с результатами объединенного запроса корзины и таблицы продуктов
+     * @return Возвращает Cursor с колонками ProductsTableHandler.SUMMARY_COLUMNS и количеством в корзине (cart_quantity)
      */
     public Cursor getCartProductsForUser(int userId) {
         SQLiteDatabase db = dbHandler.getReadableDatabase();  // Получаем базу данных для чтения
-        // Формируем запрос с объединением таблиц корзины и продуктов для получения полной информации о товарах
-        String query = "SELECT p.*, uc." + COLUMN_QUANTITY + " AS cart_quantity FROM " + TABLE_USERCART + " uc INNER JOIN " +
-                ProductsTableHandler.TABLE_PRODUCTS + " p ON uc." + COLUMN_PRODUCT_ID + " = p." + ProductsTableHandler.COLUMN_ID + " WHERE uc." + COLUMN_USER_ID + " = ?";
-        return db.rawQuery(query, new String[]{String.valueOf(userId)});  // Выполняем запрос и возвращаем Cursor
+        // Выполняем запрос с объединением таблиц корзины и продуктов; берём только облегчённые колонки продукта без описания
+        return dbHandler.getQueryTracer().rawQuery(db, SQL_CART_PRODUCTS, new String[]{String.valueOf(userId)});
     }
 
     /**
@@ -88,10 +119,17 @@ public class UserCartTableHandler {
      */
     public void removeItemFromCart(int userId, int productId) {
         SQLiteDatabase db = dbHandler.getWritableDatabase();  // Получаем базу данных в режиме записи
-        // Выполняем удаление записи, где совпадают user_id и product_id
-        db.delete(TABLE_USERCART, COLUMN_USER_ID + " = ? AND " + COLUMN_PRODUCT_ID + " = ?",
-                new String[]{String.valueOf(userId), String.valueOf(productId)});
-        db.close();  // Закрываем соединение с базой данных
+        db.beginTransaction();  // Удаление и надгробие для синхронизации между устройствами - одна транзакция
+        try {
+            // Выполняем удаление записи, где совпадают user_id и product_id
+            dbHandler.getQueryTracer().delete(db, TABLE_USERCART, COLUMN_USER_ID + " = ? AND " + COLUMN_PRODUCT_ID + " = ?",
+                    new String[]{String.valueOf(userId), String.valueOf(productId)});
+            CartSyncEngine.recordLocalChange(db, userId, productId);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        dbHandler.getQueryCache().invalidate(TABLE_USERCART);  // Сбрасываем кэшированное содержимое корзин
     }
 
     /**
@@ -100,8 +138,39 @@ public class UserCartTableHandler {
      */
     public void clearUserCart(int userId) {
         SQLiteDatabase db = dbHandler.getWritableDatabase();  // Получаем базу данных для записи
-        // Удаляем все записи, соответствующие определенному user_id
-        db.delete(TABLE_USERCART, COLUMN_USER_ID + " = ?", new String[]{String.valueOf(userId)});
-        db.close();  // Закрываем базу данных после выполнения операции
+        db.beginTransaction();  // Очистка и надгробия для синхронизации между устройствами - одна транзакция
+        try {
+            CartSyncEngine.recordCartCleared(db, userId);  // Надгробия ставятся до удаления, пока известны товары
+            // Удаляем все записи, соответствующие определенному user_id
+            dbHandler.getQueryTracer().delete(db, TABLE_USERCART, COLUMN_USER_ID + " = ?", new String[]{String.valueOf(userId)});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        dbHandler.getQueryCache().invalidate(TABLE_USERCART);  // Сбрасываем кэшированное содержимое корзин
+    }
+
+    /**
+     * Метод получения записей корзины пользователя в виде списка
+     * Результат берется из кэша запросов обработчика базы и сбрасывается при изменении корзины
+     * @param userId Идентификатор пользователя
+     * @return Неизменяемый список записей корзины
+     */
+    public List<UserCartItem> getCartItemList(int userId) {
+        SQLiteDatabase db = dbHandler.getReadableDatabase();  // Получаем базу данных в режиме чтения
+        return dbHandler.getQueryCache().query(db, SQL_ITEMS_IN_CART, new String[]{String.valueOf(userId)},
+                CART_TABLES, UserCartItem::createFromCursor);  // Читаем через кэш
+    }
+
+    /**
+     * Метод получения товаров корзины вместе с облегчённой информацией о продуктах в виде списка
+     * Результат сбрасывается при изменении корзины или таблицы продуктов
+     * @param userId Идентификатор пользователя
+     * @return Неизменяемый список товаров корзины
+     */
+    public List<CartProduct> getCartProductList(int userId) {
+        SQLiteDatabase db = dbHandler.getReadableDatabase();  // Получаем базу данных в режиме чтения
+        return dbHandler.getQueryCache().query(db, SQL_CART_PRODUCTS, new String[]{String.valueOf(userId)},
+                CART_PRODUCTS_TABLES, CartProduct::createFromCursor);  // Читаем через кэш
     }
 }
\ No newline at end of file
@@ -4,6 +4,8 @@ import android.content.ContentValues; // Импортируем класс дл
 import android.database.Cursor; // Импортируем класс для работы с курсором базы данных
 import android.database.sqlite.SQLiteDatabase; // Импортируем класс для работы с SQLite базой данных
 
+import com.example.e_shop.DataClasses.User; // Импортируем модель пользователя
+
 /**
  * Класс-обработчик таблицы пользователей
  */
@@ -19,6 +21,11 @@ public class UsersTableHandler {
     public static final String COLUMN_PHONE = "phone"; // Колонка с номером телефона
     public static final String COLUMN_EMAIL = "email"; // Колонка с email
 
+    // Запрос пользователя по логину и паролю
+    static final String SQL_AUTHENTICATE = "SELECT * FROM " + TABLE_USERS + " WHERE username = ? AND password = ?";
+    // Запрос пользователя по идентификатору
+    static final String SQL_USER_BY_ID = "SELECT * FROM " + TABLE_USERS + " WHERE id = ?";
+
     /**
      * Конструктор класса UsersTableHandler
      * @param dbHandler Объект базы данных для доступа к таблице пользователей
@@ -46,8 +53,7 @@ public class UsersTableHandler {
         // Устанавливаем роль пользователя по умолчанию как "user"
         values.put(COLUMN_ROLE, "user"); // Устанавливаем роль
 
-        long id = db.insert(TABLE_USERS, null, values); // Вставляем запись в таблицу и получаем id
-        db.close(); // Закрываем базу для освобождения ресурсов
+        long id = dbHandler.getQueryTracer().insert(db, TABLE_USERS, values); // Вставляем запись в таблицу и получаем id
         return id; // Возвращаем id вставленной записи
     }
 
@@ -60,12 +66,22 @@ public class UsersTableHandler {
     public Cursor authenticateUser(String login, String password) {
         SQLiteDatabase db = dbHandler.getReadableDatabase(); // Получаем базу для чтения
         // Выполняем запрос для поиска пользователя с заданными логином и паролем
-        return db.rawQuery(
-                "SELECT * FROM " + TABLE_USERS + " WHERE username = ? AND password = ?",
+        return dbHandler.getQueryTracer().rawQuery(db,
+                SQL_AUTHENTICATE,
                 new String[]{login, password}
         );
     }
 
+    /**
+     * Метод для аутентификации пользователя без курсора
+     * @param login Логин пользователя
+     * @param password Пароль пользователя
+     * @return Объект User или null, если логин или пароль неверны
+     */
+    public User findUserByCredentials(String login, String password) {
+        return dbHandler.queryFirst(SQL_AUTHENTICATE, new String[]{login, password}, User::createFromCursor);  // Курсор закрывается внутри
+    }
+
     /**
      * Метод для получения данных пользователя по его идентификатору
      * @param userId Идентификатор пользователя
@@ -74,12 +90,21 @@ public class UsersTableHandler {
     public Cursor getUserData(int userId) {
         SQLiteDatabase db = dbHandler.getReadableDatabase(); // Получаем базу для чтения
         // Выполняем запрос для выбора пользователя по id
-        return db.rawQuery(
-                "SELECT * FROM " + TABLE_USERS + " WHERE id = ?",
+        return dbHandler.getQueryTracer().rawQuery(db,
+                SQL_USER_BY_ID,
                 new String[]{String.valueOf(userId)}
         );
     }
 
+    /**
+     * Метод для получения пользователя по идентификатору без курсора
+     * @param userId Идентификатор пользователя
+     * @return Объект User или null, если пользователь не найден
+     */
+    public User findUserById(int userId) {
+        return dbHandler.queryFirst(SQL_USER_BY_ID, new String[]{String.valueOf(userId)}, User::createFromCursor);  // Курсор закрывается внутри
+    }
+
     /**
      * Метод для обновления данных пользователя
      * @param userId Идентификатор пользователя
@@ -104,7 +129,7 @@ public class UsersTableHandler {
         values.put(COLUMN_EMAIL, email); // Обновляем email
 
         // Выполняем обновление записи, где id соответствует заданному, и возвращаем количество затронутых строк
-        return db.update(
+        return dbHandler.getQueryTracer().update(db,
                 TABLE_USERS,
                 values,
                 COLUMN_USER_ID + " = ?",
@@ -119,7 +144,6 @@ public class UsersTableHandler {
     public void deleteUser(int userId) {
         SQLiteDatabase db = dbHandler.getWritableDatabase(); // Получаем базу для записи
         // Удаляем пользователя, где id равен заданному значению
-        db.delete(TABLE_USERS, COLUMN_USER_ID + " = ?", new String[]{String.valueOf(userId)});
-        db.close(); // Закрываем базу для освобождения ресурсов
+        dbHandler.getQueryTracer().delete(db, TABLE_USERS, COLUMN_USER_ID + " = ?", new String[]{String.valueOf(userId)});
     }
 }
\ No newline at end of file
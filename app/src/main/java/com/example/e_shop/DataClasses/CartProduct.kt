@@ -0,0 +1,34 @@
+package com.example.e_shop.DataClasses
+
+import android.database.Cursor
+import com.example.e_shop.DB.UserCartTableHandler
+
+/**
+ * Класс данных для товара в корзине вместе с информацией о продукте
+ *
+ * @param product Облегчённая модель продукта
+ * @param cartQuantity Количество продукта в корзине
+ */
+data class CartProduct(
+    val product: ProductSummary,  // Облегчённая модель продукта
+    val cartQuantity: Int         // Количество продукта в корзине
+) {
+
+    companion object {
+        /**
+         * Создает объект CartProduct из курсора UserCartTableHandler.getCartProductsForUser
+         *
+         * @param cursor Курсор, указывающий на запись корзины, объединенную с продуктом
+         * @return Объект CartProduct, созданный на основе данных курсора
+         */
+        @JvmStatic
+        fun createFromCursor(cursor: Cursor): CartProduct {
+            // Создаем облегчённую модель продукта из курсора
+            val product = ProductSummary.createFromCursor(cursor)
+            // Получаем количество товара в корзине из курсора
+            val cartQuantity = cursor.getInt(cursor.getColumnIndexOrThrow(UserCartTableHandler.COLUMN_CART_QUANTITY))
+            // Возвращаем созданный объект CartProduct
+            return CartProduct(product, cartQuantity)
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.e_shop.DataClasses
+
+import androidx.compose.runtime.Immutable
+
+/**
+ * Фасет каталога: характеристика продукта и ее значения со счетчиками
+ *
+ * @param attributeId Идентификатор характеристики
+ * @param name Название характеристики (например "Бренд")
+ * @param values Значения, которые есть у подходящих продуктов, и выбранные значения
+ */
+@Immutable
+data class Facet(
+    val attributeId: Int,          // Идентификатор характеристики
+    val name: String,              // Название характеристики
+    val values: List<FacetValue>   // Значения характеристики
+)
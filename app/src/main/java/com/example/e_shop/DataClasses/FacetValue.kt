@@ -0,0 +1,21 @@
+package com.example.e_shop.DataClasses
+
+import androidx.compose.runtime.Immutable
+
+/**
+ * Значение характеристики в фасетном фильтре
+ * Счетчик учитывает все остальные условия фильтра, кроме выбора в этой же характеристике,
+ * поэтому показывает, сколько продуктов добавится (или останется) при выборе значения
+ *
+ * @param valueId Идентификатор значения
+ * @param value Значение (например "Apple")
+ * @param count Количество подходящих продуктов с этим значением
+ * @param selected Выбрано ли значение в фильтре
+ */
+@Immutable
+data class FacetValue(
+    val valueId: Int,       // Идентификатор значения
+    val value: String,      // Значение
+    val count: Int,         // Количество продуктов
+    val selected: Boolean   // Выбрано ли значение
+)
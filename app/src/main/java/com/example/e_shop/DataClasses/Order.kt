@@ -1,20 +1,59 @@
 package com.example.e_shop.DataClasses
 
+import android.database.Cursor
+import com.example.e_shop.DB.OrdersTableHandler
+
 /**
  * Класс данных для заказа
  *
  * @param id Уникальный идентификатор заказа
  * @param userId Идентификатор пользователя, разместившего заказ
- * @param orderDate Дата размещения заказа
- * @param status Статус заказа
+ * @param orderDate Время размещения заказа в миллисекундах с начала эпохи
+ * @param status Код статуса заказа (OrdersTableHandler.STATUS_*)
+ * @param statusName Название статуса из справочника
  * @param totalPrice Общая стоимость заказа (может быть null)
  * @param deliveryAddress Адрес доставки заказа
+ * @param archived Прочитан ли заказ из архива старых заказов (OrderArchive)
  */
 data class Order(
     val id: Int,                // Уникальный идентификатор заказа
     val userId: Int,            // Идентификатор пользователя, разместившего заказ
-    val orderDate: String,      // Дата размещения заказа
-    val status: String,         // Текущий статус заказа
+    val orderDate: Long,        // Время размещения заказа (миллисекунды с начала эпохи)
+    val status: Int,            // Код текущего статуса заказа
+    val statusName: String,     // Название текущего статуса
     val totalPrice: Double?,    // Общая стоимость заказа (может быть null)
-    val deliveryAddress: String // Адрес доставки
-)
\ No newline at end of file
+    val deliveryAddress: String, // Адрес доставки
+    val archived: Boolean = false // Заказ из архива (страницы истории продолжаются по архиву)
+) {
+
+    companion object {
+        /**
+         * Создает объект Order из курсора базы данных
+         *
+         * @param cursor Курсор, указывающий на запись заказа
+         * @return Объект Order, созданный на основе данных курсора
+         */
+        @JvmStatic
+        fun createFromCursor(cursor: Cursor): Order {
+            // Получаем идентификатор заказа из курсора
+            val id = cursor.getInt(cursor.getColumnIndexOrThrow(OrdersTableHandler.COLUMN_ORDER_ID))
+            // Получаем идентификатор пользователя из курсора
+            val userId = cursor.getInt(cursor.getColumnIndexOrThrow(OrdersTableHandler.COLUMN_USER_ID))
+            // Получаем время заказа из курсора
+            val orderDate = cursor.getLong(cursor.getColumnIndexOrThrow(OrdersTableHandler.COLUMN_ORDER_DATE))
+            // Получаем код и название статуса заказа из курсора
+            val status = cursor.getInt(cursor.getColumnIndexOrThrow(OrdersTableHandler.COLUMN_STATUS))
+            val statusName = cursor.getString(cursor.getColumnIndexOrThrow(OrdersTableHandler.COLUMN_STATUS_NAME))
+            // Получаем общую стоимость заказа (может отсутствовать)
+            val priceIndex = cursor.getColumnIndexOrThrow(OrdersTableHandler.COLUMN_TOTAL_PRICE)
+            val totalPrice = if (cursor.isNull(priceIndex)) null else cursor.getDouble(priceIndex)
+            // Получаем адрес доставки из курсора
+            val deliveryAddress = cursor.getString(cursor.getColumnIndexOrThrow(OrdersTableHandler.COLUMN_DELIVERY_ADDRESS))
+            // Признак архива есть только в страницах истории (OrdersTableHandler.getOrderPage)
+            val archivedIndex = cursor.getColumnIndex(OrdersTableHandler.COLUMN_ARCHIVED)
+            val archived = archivedIndex >= 0 && cursor.getInt(archivedIndex) != 0
+            // Возвращаем созданный объект Order
+            return Order(id, userId, orderDate, status, statusName, totalPrice, deliveryAddress, archived)
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.e_shop.DataClasses
+
+import android.database.Cursor
+import com.example.e_shop.DB.OrderDetailsTableHandler
+
+/**
+ * Класс данных для строки заказа
+ *
+ * @param id Уникальный идентификатор строки заказа
+ * @param orderId Идентификатор заказа
+ * @param productId Идентификатор продукта
+ * @param quantity Количество продукта
+ * @param pricePerItem Цена за единицу на момент оформления заказа
+ */
+data class OrderDetail(
+    val id: Int,             // Уникальный идентификатор строки заказа
+    val orderId: Int,        // Идентификатор заказа
+    val productId: Int,      // Идентификатор продукта
+    val quantity: Int,       // Количество продукта
+    val pricePerItem: Double // Цена за единицу
+) {
+
+    companion object {
+        /**
+         * Создает объект OrderDetail из курсора базы данных
+         *
+         * @param cursor Курсор, указывающий на запись таблицы деталей заказа
+         * @return Объект OrderDetail, созданный на основе данных курсора
+         */
+        @JvmStatic
+        fun createFromCursor(cursor: Cursor): OrderDetail {
+            // Получаем значения колонок строки заказа
+            val id = cursor.getInt(cursor.getColumnIndexOrThrow(OrderDetailsTableHandler.COLUMN_ID))
+            val orderId = cursor.getInt(cursor.getColumnIndexOrThrow(OrderDetailsTableHandler.COLUMN_ORDER_ID))
+            val productId = cursor.getInt(cursor.getColumnIndexOrThrow(OrderDetailsTableHandler.COLUMN_PRODUCT_ID))
+            val quantity = cursor.getInt(cursor.getColumnIndexOrThrow(OrderDetailsTableHandler.COLUMN_QUANTITY))
+            val pricePerItem = cursor.getDouble(cursor.getColumnIndexOrThrow(OrderDetailsTableHandler.COLUMN_PRICE_PER_ITEM))
+            // Возвращаем созданный объект OrderDetail
+            return OrderDetail(id, orderId, productId, quantity, pricePerItem)
+        }
+    }
+}
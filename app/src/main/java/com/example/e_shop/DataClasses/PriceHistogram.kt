@@ -0,0 +1,28 @@
+package com.example.e_shop.DataClasses
+
+import androidx.compose.runtime.Immutable
+
+/**
+ * Гистограмма цен категории для ползунка диапазона цен
+ * Диапазон [minPrice, maxPrice] делится на counts.size равных интервалов; последний интервал включает maxPrice
+ *
+ * @param minPrice Минимальная цена в категории
+ * @param maxPrice Максимальная цена в категории
+ * @param counts Количество продуктов в каждом интервале
+ */
+@Immutable
+data class PriceHistogram(
+    val minPrice: Double,    // Минимальная цена
+    val maxPrice: Double,    // Максимальная цена
+    val counts: List<Int>    // Количество продуктов по интервалам
+) {
+    /**
+     * @return Наибольшее количество продуктов в одном интервале (для масштаба столбцов)
+     */
+    fun maxCount(): Int = counts.maxOrNull() ?: 0
+
+    /**
+     * @return true, если в категории нет продуктов
+     */
+    fun isEmpty(): Boolean = counts.all { it == 0 }
+}
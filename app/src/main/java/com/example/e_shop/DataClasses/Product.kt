@@ -1,7 +1,11 @@
 package com.example.e_shop.DataClasses
 
+import android.database.Cursor
+import com.example.e_shop.DB.ProductsTableHandler
+
 /**
  * Класс данных для продукта
+ * Полная модель с описанием, загружается только для экрана деталей товара
  *
  * @param id Уникальный идентификатор продукта
  * @param name Название продукта
@@ -17,4 +21,31 @@ data class Product(
     val price: Double,          // Цена продукта
     val image_url: String?,     // URL изображения продукта (необязательно)
     val quantity: Int           // Количество товара на складе
-)
\ No newline at end of file
+) {
+
+    companion object {
+        /**
+         * Создает объект Product из курсора базы данных
+         *
+         * @param cursor Курсор, указывающий на полную запись продукта
+         * @return Объект Product, созданный на основе данных курсора
+         */
+        @JvmStatic
+        fun createFromCursor(cursor: Cursor): Product {
+            // Получаем идентификатор продукта из курсора
+            val id = cursor.getInt(cursor.getColumnIndexOrThrow(ProductsTableHandler.COLUMN_ID))
+            // Получаем название продукта из курсора
+            val name = cursor.getString(cursor.getColumnIndexOrThrow(ProductsTableHandler.COLUMN_NAME))
+            // Получаем полное описание продукта из курсора
+            val description = cursor.getString(cursor.getColumnIndexOrThrow(ProductsTableHandler.COLUMN_DESCRIPTION))
+            // Получаем цену продукта из курсора
+            val price = cursor.getDouble(cursor.getColumnIndexOrThrow(ProductsTableHandler.COLUMN_PRICE))
+            // Получаем URL изображения из курсора
+            val imageUrl = cursor.getString(cursor.getColumnIndexOrThrow(ProductsTableHandler.COLUMN_IMAGE_URL))
+            // Получаем количество товара на складе из курсора
+            val quantity = cursor.getInt(cursor.getColumnIndexOrThrow(ProductsTableHandler.COLUMN_QUANTITY))
+            // Возвращаем созданный объект Product
+            return Product(id, name, description, price, imageUrl, quantity)
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.e_shop.DataClasses
+
+import androidx.compose.runtime.Immutable
+import com.example.e_shop.DB.ProductsTableHandler
+
+/**
+ * Фильтры и порядок сортировки каталога
+ *
+ * @param query Строка поиска по названию (пустая строка - без фильтра по названию)
+ * @param categoryId Идентификатор категории (0 или меньше - все категории)
+ * @param minPrice Нижняя граница цены включительно (null - без ограничения)
+ * @param maxPrice Верхняя граница цены включительно (null - без ограничения)
+ * @param sort Порядок сортировки
+ * @param attributes Выбранные значения характеристик: id характеристики -> id значений
+ *                   (значения одной характеристики объединяются через ИЛИ, разные характеристики - через И)
+ */
+@Immutable
+data class ProductFilter(
+    val query: String = "",                   // Строка поиска по названию
+    val categoryId: Int = 0,                  // Идентификатор категории
+    val minPrice: Double? = null,             // Нижняя граница цены
+    val maxPrice: Double? = null,             // Верхняя граница цены
+    val sort: ProductsTableHandler.SortOrder = ProductsTableHandler.SortOrder.NEWEST, // Порядок сортировки
+    val attributes: Map<Int, Set<Int>> = emptyMap() // Выбранные значения характеристик
+)
@@ -0,0 +1,55 @@
+package com.example.e_shop.DataClasses
+
+import android.database.Cursor
+import androidx.compose.runtime.Immutable
+import com.example.e_shop.DB.ProductsTableHandler
+
+/**
+ * Облегчённая модель продукта для списков (каталог, корзина)
+ * Полное описание не загружается, вместо него хранится короткий фрагмент для карточки
+ * Помечен как @Immutable, чтобы Compose пропускал перерисовку карточек с неизменившимся продуктом
+ *
+ * @param id Уникальный идентификатор продукта
+ * @param name Название продукта
+ * @param shortDescription Начало описания продукта для карточки (необязательно)
+ * @param price Цена продукта
+ * @param image_url URL изображения продукта (необязательно)
+ * @param quantity Количество товара на складе
+ */
+@Immutable
+data class ProductSummary(
+    val id: Int,                       // Уникальный идентификатор продукта
+    val name: String,                  // Название продукта
+    val shortDescription: String?,     // Короткий фрагмент описания (необязательно)
+    val price: Double,                 // Цена продукта
+    val image_url: String?,            // URL изображения продукта (необязательно)
+    val quantity: Int                  // Количество товара на складе
+) {
+
+    companion object {
+        /**
+         * Создает объект ProductSummary из курсора, полученного запросом с ProductsTableHandler.SUMMARY_COLUMNS
+         *
+         * @param cursor Курсор, указывающий на запись продукта
+         * @return Объект ProductSummary, созданный на основе данных курсора
+         */
+        @JvmStatic
+        fun createFromCursor(cursor: Cursor): ProductSummary {
+            // Получаем идентификатор продукта из курсора
+            val id = cursor.getInt(cursor.getColumnIndexOrThrow(ProductsTableHandler.COLUMN_ID))
+            // Получаем название продукта из курсора
+            val name = cursor.getString(cursor.getColumnIndexOrThrow(ProductsTableHandler.COLUMN_NAME))
+            // Получаем короткое описание (колонка может отсутствовать, например в корзине)
+            val shortDescriptionIndex = cursor.getColumnIndex(ProductsTableHandler.COLUMN_SHORT_DESCRIPTION)
+            val shortDescription = if (shortDescriptionIndex != -1) cursor.getString(shortDescriptionIndex) else null
+            // Получаем цену продукта из курсора
+            val price = cursor.getDouble(cursor.getColumnIndexOrThrow(ProductsTableHandler.COLUMN_PRICE))
+            // Получаем URL изображения из курсора
+            val imageUrl = cursor.getString(cursor.getColumnIndexOrThrow(ProductsTableHandler.COLUMN_IMAGE_URL))
+            // Получаем количество товара на складе из курсора
+            val quantity = cursor.getInt(cursor.getColumnIndexOrThrow(ProductsTableHandler.COLUMN_QUANTITY))
+            // Возвращаем созданный объект ProductSummary
+            return ProductSummary(id, name, shortDescription, price, imageUrl, quantity)
+        }
+    }
+}
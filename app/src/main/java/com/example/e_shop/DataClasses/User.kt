@@ -31,6 +31,7 @@ data class User(
          * @param cursor Курсор, указывающий на запись пользователя
          * @return Объект User, созданный на основе данных курсора
          */
+        @JvmStatic
         fun createFromCursor(cursor: Cursor): User {
             // Получаем идентификатор пользователя из курсора
             val id = cursor.getInt(cursor.getColumnIndexOrThrow("id"))
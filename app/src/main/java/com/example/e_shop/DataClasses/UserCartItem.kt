@@ -1,5 +1,8 @@
 package com.example.e_shop.DataClasses
 
+import android.database.Cursor
+import com.example.e_shop.DB.UserCartTableHandler
+
 /**
  * Класс данных для элемента корзины пользователя
  *
@@ -13,4 +16,27 @@ data class UserCartItem(
     val userId: Int,     // Идентификатор пользователя
     val productId: Int,  // Идентификатор продукта
     val quantity: Int    // Количество продукта в корзине
-)
\ No newline at end of file
+) {
+
+    companion object {
+        /**
+         * Создает объект UserCartItem из курсора базы данных
+         *
+         * @param cursor Курсор, указывающий на запись таблицы корзины
+         * @return Объект UserCartItem, созданный на основе данных курсора
+         */
+        @JvmStatic
+        fun createFromCursor(cursor: Cursor): UserCartItem {
+            // Получаем идентификатор записи корзины из курсора
+            val id = cursor.getInt(cursor.getColumnIndexOrThrow(UserCartTableHandler.COLUMN_CART_ID))
+            // Получаем идентификатор пользователя из курсора
+            val userId = cursor.getInt(cursor.getColumnIndexOrThrow(UserCartTableHandler.COLUMN_USER_ID))
+            // Получаем идентификатор продукта из курсора
+            val productId = cursor.getInt(cursor.getColumnIndexOrThrow(UserCartTableHandler.COLUMN_PRODUCT_ID))
+            // Получаем количество товара из курсора
+            val quantity = cursor.getInt(cursor.getColumnIndexOrThrow(UserCartTableHandler.COLUMN_QUANTITY))
+            // Возвращаем созданный объект UserCartItem
+            return UserCartItem(id, userId, productId, quantity)
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.example.e_shop.Images;
+
+import android.content.Context;  // Импортируем Context для доступа к каталогу кэша приложения
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Дисковый LRU-кэш изображений, загружаемых по HTTP
+ * Каждое изображение хранится в двух файлах: содержимое ({ключ}.img) и метаданные ({ключ}.meta: ETag,
+ * Last-Modified, срок свежести). Свежая копия отдается без обращения к сети, устаревшая проверяется
+ * условным запросом (If-None-Match / If-Modified-Since): ответ 304 лишь продлевает срок свежести.
+ * Если сервер недоступен, отдается устаревшая копия.
+ * Одновременные запросы одного адреса (например, сетка каталога и карточка товара) объединяются в одну загрузку.
+ * Время последнего обращения хранится как время изменения файла метаданных, поэтому порядок LRU
+ * переживает перезапуск приложения, а сам файл изображения меняется только при смене содержимого.
+ */
+public class ImageCache {
+
+    private static final String DIRECTORY_NAME = "images";  // Подкаталог в каталоге кэша приложения
+    private static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;  // Размер кэша по умолчанию - 32 МБ
+    // Срок свежести, если сервер не указал Cache-Control: max-age
+    private static final long DEFAULT_FRESHNESS_MILLIS = 60 * 60 * 1000L;
+
+    // Таймауты соединения и чтения
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+    private static final int READ_TIMEOUT_MILLIS = 30_000;
+
+    private static final String IMAGE_SUFFIX = ".img";
+    private static final String META_SUFFIX = ".meta";
+    private static final String META_ETAG = "etag";
+    private static final String META_LAST_MODIFIED = "last_modified";
+    private static final String META_EXPIRES_AT = "expires_at";
+
+    private static final Pattern MAX_AGE = Pattern.compile("max-age=(\\d+)");
+
+    private static volatile ImageCache instance;  // Общий кэш всех экранов
+
+    private final File directory;  // Каталог кэша
+    private final long maxBytes;  // Предельный суммарный размер изображений
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);  // Ключ -> размер, в порядке обращений
+    private long sizeBytes;  // Текущий суммарный размер изображений
+    // Загрузки в процессе: повторный запрос того же адреса ждет уже начатую загрузку
+    private final ConcurrentHashMap<String, FutureTask<File>> inFlight = new ConcurrentHashMap<>();
+
+    // Статистика для тестов и отладки
+    private final AtomicInteger networkRequests = new AtomicInteger();  // Выполнено HTTP-запросов
+    private final AtomicInteger notModifiedResponses = new AtomicInteger();  // Из них завершились ответом 304
+
+    /**
+     * Возвращает общий кэш изображений приложения
+     * @param context Контекст приложения
+     * @return Кэш изображений
+     */
+    public static ImageCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ImageCache.class) {
+                if (instance == null) {
+                    instance = new ImageCache(new File(context.getApplicationContext().getCacheDir(), DIRECTORY_NAME), DEFAULT_MAX_BYTES);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @param directory Каталог для файлов кэша (создается при необходимости)
+     * @param maxBytes Предельный суммарный размер изображений в байтах
+     */
+    public ImageCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        directory.mkdirs();
+        loadEntries();
+    }
+
+    /**
+     * Проверяет, указывает ли адрес изображения на сервер (а не на файл из assets)
+     * @param imageUrl Значение Products.image_url
+     * @return true для адресов http:// и https://
+     */
+    public static boolean isRemote(String imageUrl) {
+        return imageUrl != null && (imageUrl.startsWith("http://") || imageUrl.startsWith("https://"));
+    }
+
+    /**
+     * Возвращает файл с изображением, при необходимости загружая или перепроверяя его
+     * Выполняет сетевой запрос, поэтому вызывается не в главном потоке.
+     * @param url Адрес изображения
+     * @return Файл изображения в кэше
+     * @throws IOException Если изображение не удалось загрузить и в кэше его нет
+     */
+    public File get(String url) throws IOException {
+        String key = keyFor(url);
+        FutureTask<File> task = new FutureTask<>(() -> load(url, key));
+        FutureTask<File> running = inFlight.putIfAbsent(key, task);
+        if (running == null) { // Загрузку выполняет этот поток
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+            running = task;
+        }
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading " + url, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException("Failed to load " + url, cause);
+        }
+    }
+
+    /**
+     * @return Текущий суммарный размер изображений в кэше
+     */
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * @return Количество выполненных HTTP-запросов
+     */
+    public int getNetworkRequests() {
+        return networkRequests.get();
+    }
+
+    /**
+     * @return Количество запросов, завершившихся ответом 304 Not Modified
+     */
+    public int getNotModifiedResponses() {
+        return notModifiedResponses.get();
+    }
+
+    // Отдает свежую копию из кэша или обращается к серверу
+    private File load(String url, String key) throws IOException {
+        File image = new File(directory, key + IMAGE_SUFFIX);
+        File metaFile = new File(directory, key + META_SUFFIX);
+        boolean cached;
+        synchronized (this) {
+            cached = entries.get(key) != null && image.exists();
+        }
+        Properties meta = cached ? readMeta(metaFile) : new Properties();
+        long now = System.currentTimeMillis();
+        if (cached && now < Long.parseLong(meta.getProperty(META_EXPIRES_AT, "0"))) {
+            touch(key, metaFile);
+            return image; // Копия свежая: сеть не нужна
+        }
+
+        HttpURLConnection connection;
+        int code;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            if (cached) { // Условный запрос: сервер ответит 304, если изображение не изменилось
+                String etag = meta.getProperty(META_ETAG);
+                String lastModified = meta.getProperty(META_LAST_MODIFIED);
+                if (etag != null) connection.setRequestProperty("If-None-Match", etag);
+                if (lastModified != null) connection.setRequestProperty("If-Modified-Since", lastModified);
+            }
+            networkRequests.incrementAndGet();
+            code = connection.getResponseCode();
+        } catch (IOException e) {
+            if (cached) return image; // Сервер недоступен: устаревшая копия лучше пустого места
+            throw e;
+        }
+
+        try {
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached) {
+                notModifiedResponses.incrementAndGet();
+                meta.setProperty(META_EXPIRES_AT, String.valueOf(now + freshnessMillis(connection)));
+                writeMeta(metaFile, meta); // Запись метаданных одновременно отмечает обращение
+                return image;
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                if (cached) return image;
+                throw new IOException("Image request failed: HTTP " + code + " for " + url);
+            }
+
+            // Новое содержимое пишется во временный файл и заменяет старое только после полной загрузки
+            File temp = new File(directory, key + ".tmp");
+            long length = 0;
+            try (InputStream in = connection.getInputStream(); OutputStream out = new FileOutputStream(temp)) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    length += read;
+                }
+            } catch (IOException e) {
+                temp.delete();
+                if (cached) return image;
+                throw e;
+            }
+
+            Properties fresh = new Properties();
+            String etag = connection.getHeaderField("ETag");
+            String lastModified = connection.getHeaderField("Last-Modified");
+            if (etag != null) fresh.setProperty(META_ETAG, etag);
+            if (lastModified != null) fresh.setProperty(META_LAST_MODIFIED, lastModified);
+            fresh.setProperty(META_EXPIRES_AT, String.valueOf(now + freshnessMillis(connection)));
+
+            synchronized (this) {
+                if (!temp.renameTo(image)) {
+                    temp.delete();
+                    throw new IOException("Failed to store image for " + url);
+                }
+                writeMeta(metaFile, fresh);
+                Long previous = entries.put(key, length);
+                sizeBytes += length - (previous != null ? previous : 0);
+                trim(key);
+            }
+            return image;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    // Срок свежести ответа из Cache-Control (no-cache и no-store означают немедленную перепроверку)
+    private static long freshnessMillis(HttpURLConnection connection) {
+        String cacheControl = connection.getHeaderField("Cache-Control");
+        if (cacheControl == null) return DEFAULT_FRESHNESS_MILLIS;
+        if (cacheControl.contains("no-cache") || cacheControl.contains("no-store")) return 0;
+        Matcher matcher = MAX_AGE.matcher(cacheControl);
+        return matcher.find() ? Long.parseLong(matcher.group(1)) * 1000L : DEFAULT_FRESHNESS_MILLIS;
+    }
+
+    // Вытесняет наименее используемые изображения, пока кэш не уложится в лимит (только что загруженное не трогаем)
+    private void trim(String keep) {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (sizeBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            if (eldest.getKey().equals(keep)) continue;
+            new File(directory, eldest.getKey() + IMAGE_SUFFIX).delete();
+            new File(directory, eldest.getKey() + META_SUFFIX).delete();
+            sizeBytes -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    // Отмечает обращение к изображению для порядка LRU
+    private void touch(String key, File metaFile) {
+        synchronized (this) {
+            entries.get(key); // Чтение переносит запись в конец порядка доступа
+        }
+        metaFile.setLastModified(System.currentTimeMillis());
+    }
+
+    // Восстанавливает порядок LRU из времени изменения файлов метаданных и удаляет осиротевшие файлы
+    private void loadEntries() {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        List<File> metaFiles = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(META_SUFFIX)) {
+                metaFiles.add(file);
+            } else if (name.endsWith(IMAGE_SUFFIX)) {
+                String key = name.substring(0, name.length() - IMAGE_SUFFIX.length());
+                if (!new File(directory, key + META_SUFFIX).exists()) file.delete();
+            } else {
+                file.delete(); // Незавершенная загрузка
+            }
+        }
+        metaFiles.sort(Comparator.comparingLong(File::lastModified));
+        synchronized (this) {
+            for (File metaFile : metaFiles) {
+                String key = metaFile.getName().substring(0, metaFile.getName().length() - META_SUFFIX.length());
+                File image = new File(directory, key + IMAGE_SUFFIX);
+                if (!image.exists()) {
+                    metaFile.delete();
+                    continue;
+                }
+                entries.put(key, image.length());
+                sizeBytes += image.length();
+            }
+            trim(null);
+        }
+    }
+
+    private static Properties readMeta(File metaFile) {
+        Properties meta = new Properties();
+        try (InputStream in = new FileInputStream(metaFile)) {
+            meta.load(in);
+        } catch (IOException e) {
+            // Поврежденные метаданные: копия будет перепроверена как устаревшая
+        }
+        return meta;
+    }
+
+    private static void writeMeta(File metaFile, Properties meta) throws IOException {
+        try (OutputStream out = new FileOutputStream(metaFile)) {
+            meta.store(out, null);
+        }
+    }
+
+    // Имя файла кэша - SHA-1 адреса изображения
+    private static String keyFor(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
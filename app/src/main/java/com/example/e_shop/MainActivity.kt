@@ -4,19 +4,22 @@ import android.annotation.SuppressLint
 import android.app.Activity
 import android.content.Context
 import android.content.Intent
-import android.net.Uri
 import android.os.Build
 import android.os.Bundle
 import android.os.Parcelable
 import android.widget.Toast
 import androidx.activity.ComponentActivity
 import androidx.activity.compose.setContent
+import androidx.activity.viewModels
 import androidx.annotation.RequiresApi
-import androidx.compose.foundation.Image
+import androidx.compose.foundation.background
 import androidx.compose.foundation.clickable
+import androidx.compose.foundation.horizontalScroll
 import androidx.compose.foundation.layout.*
-import androidx.compose.foundation.lazy.LazyColumn
-import androidx.compose.foundation.lazy.itemsIndexed
+import androidx.compose.foundation.lazy.grid.GridCells
+import androidx.compose.foundation.lazy.grid.LazyVerticalGrid
+import androidx.compose.foundation.lazy.grid.items
+import androidx.compose.foundation.rememberScrollState
 import androidx.compose.foundation.shape.RoundedCornerShape
 import androidx.compose.material.icons.Icons
 import androidx.compose.material.icons.filled.*
@@ -28,20 +31,26 @@ import androidx.compose.ui.draw.clip
 import androidx.compose.ui.platform.LocalContext
 import androidx.compose.ui.unit.dp
 import coil.annotation.ExperimentalCoilApi
-import coil.compose.rememberImagePainter
+import com.example.e_shop.DB.CacheRegistry
+import com.example.e_shop.DB.CursorLeakTracker
 import com.example.e_shop.DB.DataBaseHandler
 import com.example.e_shop.DB.ProductsTableHandler
-import com.example.e_shop.DB.UserCartTableHandler
 import com.example.e_shop.DB.UsersTableHandler
-import com.example.e_shop.DataClasses.Product
+import com.example.e_shop.DataClasses.ProductSummary
 import com.example.e_shop.DataClasses.User
+import com.example.e_shop.ViewModels.CatalogViewModel
+import com.example.e_shop.Workers.DatabaseMaintenanceWorker
+import com.example.e_shop.Workers.OrderArchiveWorker
 import com.example.e_shop.ui.theme.E_ShopTheme
+import java.io.FileDescriptor
+import java.io.PrintWriter
+import kotlin.math.roundToInt
 
 // Основная активность приложения, отвечающая за отображение главного экрана
 class MainActivity : ComponentActivity() {
 
     private lateinit var dbHandler: DataBaseHandler // Обработчик базы данных
-    private lateinit var productsTableHandler: ProductsTableHandler // Обработчик таблицы продуктов
+    private val catalogViewModel: CatalogViewModel by viewModels() // Состояние каталога, переживающее поворот и возврат на экран
     private var currentUser: User? = null // Переменная для хранения текущего пользователя
 
     /**
@@ -50,6 +59,7 @@ class MainActivity : ComponentActivity() {
      */
     fun setCurrentUser(user: User?) {
         currentUser = user // Сохраняем пользователя в переменной
+        catalogViewModel.setUser(user?.id) // Передаем пользователя в ViewModel для загрузки корзины
     }
 
     /**
@@ -67,21 +77,21 @@ class MainActivity : ComponentActivity() {
     @RequiresApi(Build.VERSION_CODES.O)
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState) // Вызов базового метода onCreate
-        dbHandler = DataBaseHandler(this) // Инициализация обработчика базы данных
-        productsTableHandler = ProductsTableHandler(dbHandler) // Инициализация обработчика таблицы продуктов
+        dbHandler = DataBaseHandler.getInstance(this) // Инициализация обработчика базы данных
+        OrderArchiveWorker.schedule(this) // Ежедневный перенос старых заказов в архив (повторный вызов не меняет расписание)
+        DatabaseMaintenanceWorker.schedule(this) // Ежедневное обслуживание базы во время простоя и зарядки
 
         // 1) Проверяем, есть ли сохранённый userId
         val prefs = getSharedPreferences("EshopPrefs", Context.MODE_PRIVATE) // Получаем SharedPreferences для хранения настроек
         val savedUserId = prefs.getInt("SAVED_USER_ID", -1) // Извлекаем сохранённый идентификатор пользователя
-        if (savedUserId != -1) { // Если сохранённый userId найден
+        if (savedInstanceState?.containsKey("CURRENT_USER") == true) { // Если активность пересоздана (например, после поворота)
+            setCurrentUser(savedInstanceState.getParcelable("CURRENT_USER")) // Восстанавливаем пользователя без запроса к БД
+        } else if (savedUserId != -1) { // Если сохранённый userId найден
             // Если есть, пробуем получить пользователя из БД
-            val userCursor = UsersTableHandler(dbHandler).getUserData(savedUserId) // Получаем данные пользователя из БД
-            if (userCursor != null && userCursor.moveToFirst()) { // Если данные найдены
-                val user = User.createFromCursor(userCursor) // Создаем объект пользователя из курсора
-                userCursor.close() // Закрываем курсор после использования
+            val user = UsersTableHandler(dbHandler).findUserById(savedUserId) // Получаем пользователя из БД (курсор закрывается внутри)
+            if (user != null) { // Если данные найдены
                 setCurrentUser(user) // Устанавливаем текущего пользователя
             }
-            userCursor?.close() // Дополнительная проверка и закрытие курсора
         } else { // Если сохранённого userId нет
             // Если в интенте передаётся пользователь (например, после авторизации),
             // берем его в качестве currentUser
@@ -91,7 +101,7 @@ class MainActivity : ComponentActivity() {
             }
         }
 
-        // Запуск пользовательского интерфейса
+        // Запуск пользовательского интерфейса (один раз; дальнейшие обновления идут через состояние ViewModel)
         setContent {
             E_ShopTheme { // Применяем тему приложения
                 MainScreen() // Вызываем функцию MainScreen для отображения главного экрана
@@ -99,14 +109,19 @@ class MainActivity : ComponentActivity() {
         }
     }
 
-    // Метод onResume для обновления UI при возврате в активность
+    /**
+     * Сохраняет текущего пользователя, чтобы после пересоздания активности не читать его из БД заново
+     * @param outState Bundle для сохранения состояния
+     */
+    override fun onSaveInstanceState(outState: Bundle) {
+        super.onSaveInstanceState(outState) // Вызов базового метода
+        currentUser?.let { outState.putParcelable("CURRENT_USER", it) } // Сохраняем пользователя, если он авторизован
+    }
+
+    // Метод onResume для обновления состояния корзины при возврате в активность
     override fun onResume() {
         super.onResume() // Вызов базового метода onResume
-        setContent { // Обновляем содержимое через Compose
-            E_ShopTheme { // Применяем тему
-                MainScreen() // Вызываем функцию главного экрана
-            }
-        }
+        catalogViewModel.refreshCart() // Корзина могла измениться на другом экране; список продуктов и прокрутка сохраняются
     }
 
     /**
@@ -119,14 +134,26 @@ class MainActivity : ComponentActivity() {
     override fun onActivityResult(requestCode: Int, resultCode: Int, data: Intent?) {
         super.onActivityResult(requestCode, resultCode, data) // Вызов базового метода
         if (requestCode == 200 && resultCode == Activity.RESULT_OK) { // Если результат соответствует ожиданиям
-            setContent { // Обновляем содержимое
-                E_ShopTheme { // Применяем тему
-                    MainScreen() // Вызываем главный экран
-                }
-            }
+            catalogViewModel.refreshCart() // Обновляем только признаки наличия товаров в корзине
         }
     }
 
+    /**
+     * Выводит статистику обращений к базе и кэшей
+     * Вызывается командой: adb shell dumpsys activity com.example.e_shop/.MainActivity
+     * С аргументом reset статистика запросов после вывода сбрасывается
+     */
+    override fun dump(prefix: String, fd: FileDescriptor?, writer: PrintWriter, args: Array<out String>?) {
+        super.dump(prefix, fd, writer, args) // Стандартный вывод состояния активности
+        if (!::dbHandler.isInitialized) return // Активность еще не создана
+        writer.println("${prefix}E-Shop database:")
+        dbHandler.queryTracer.dump("$prefix  ", writer) // Гистограммы задержек и журнал медленных запросов
+        writer.println("$prefix  ${dbHandler.queryCache.stats}") // Статистика кэша запросов
+        CacheRegistry.getInstance(this).report.forEach { writer.println("$prefix  $it") } // Размеры и бюджеты кэшей
+        CursorLeakTracker.dump("$prefix  ", writer) // Незакрытые курсоры (в отладочной сборке)
+        if (args?.contains("reset") == true) dbHandler.queryTracer.reset() // Сброс статистики по запросу
+    }
+
     /**
      * Главный экран приложения
      */
@@ -135,8 +162,6 @@ class MainActivity : ComponentActivity() {
     @Composable
     fun MainScreen() {
         val context = LocalContext.current // Получаем локальный контекст
-        var searchText by remember { mutableStateOf("") } // Состояние строки поиска
-        var selectedCategoryIndex by remember { mutableStateOf(-1) } // Состояние выбранной категории
 
         Scaffold( // Основной макет экрана с верхней панелью и контентом
             topBar = {
@@ -184,13 +209,17 @@ class MainActivity : ComponentActivity() {
             ) {
                 // Вывод поля поиска и фильтрации по категориям
                 SearchAndCategoryFilter(
-                    searchText = searchText, // Передаем текущее значение строки поиска
-                    onSearchTextChanged = { searchText = it }, // Callback обновления строки поиска
-                    selectedCategoryIndex = selectedCategoryIndex, // Передаем выбранный индекс категории
-                    onSelectedCategoryIndexChanged = { selectedCategoryIndex = it } // Callback изменения выбранной категории
+                    searchText = catalogViewModel.searchText, // Передаем текущее значение строки поиска
+                    onSearchTextChanged = catalogViewModel::onSearchTextChanged, // Callback обновления строки поиска
+                    selectedCategoryIndex = catalogViewModel.selectedCategoryIndex, // Передаем выбранный индекс категории
+                    onSelectedCategoryIndexChanged = catalogViewModel::onSelectedCategoryIndexChanged // Callback изменения выбранной категории
                 )
+                // Порядок сортировки и диапазон цен
+                SortAndPriceFilter()
+                // Фильтр по характеристикам со счетчиками
+                AttributeFilter()
                 // Отображение списка продуктов
-                DisplayProducts(searchText, selectedCategoryIndex)
+                DisplayProducts()
             }
         }
     }
@@ -212,7 +241,7 @@ class MainActivity : ComponentActivity() {
         onSelectedCategoryIndexChanged: (Int) -> Unit // Callback для обновления выбранной категории
     ) {
         var isDropdownExpanded by remember { mutableStateOf(false) } // Состояние показа выпадающего списка
-        val categories = listOf("Все категории") + dbHandler.getAllCategories() // Формирование списка категорий
+        val categories = catalogViewModel.categories // Список категорий, загруженный ViewModel
 
         Row(
             modifier = Modifier
@@ -269,63 +298,129 @@ class MainActivity : ComponentActivity() {
     }
 
     /**
-     * Компонент для отображения списка продуктов
-     *
-     * @param searchText Текст для поиска продуктов
-     * @param selectedCategoryIndex Индекс выбранной категории для фильтрации
+     * Компонент выбора порядка сортировки и диапазона цен
+     * Над ползунком диапазона выводится гистограмма цен выбранной категории; запрос к базе выполняется
+     * только после отпускания ползунка
      */
+    @OptIn(ExperimentalMaterial3Api::class)
     @Composable
-    fun DisplayProducts(searchText: String, selectedCategoryIndex: Int) {
-        // Получаем курсор в зависимости от введенного текста и выбранной категории
-        val productsCursor = when {
-            searchText.isNotEmpty() && selectedCategoryIndex > 0 ->
-                productsTableHandler.searchProducts(searchText, selectedCategoryIndex) // Поиск с фильтром по категории
-            searchText.isNotEmpty() && selectedCategoryIndex == 0 ->
-                productsTableHandler.searchByProductName(searchText) // Поиск только по названию
-            selectedCategoryIndex > 0 ->
-                productsTableHandler.searchByCategory(selectedCategoryIndex) // Фильтрация по категории
-            else ->
-                productsTableHandler.getAllProducts() // Получение всех продуктов
+    fun SortAndPriceFilter() {
+        var isSortExpanded by remember { mutableStateOf(false) } // Состояние показа списка сортировок
+        val sortOrder = catalogViewModel.sortOrder // Текущий порядок сортировки
+
+        Box(
+            modifier = Modifier
+                .fillMaxWidth() // Бокс занимает всю ширину
+                .padding(start = 8.dp, end = 8.dp, top = 4.dp) // Отступы вокруг бокса
+        ) {
+            Row(
+                modifier = Modifier
+                    .fillMaxWidth() // Ряд занимает всю ширину бокса
+                    .clickable { isSortExpanded = true }, // По клику открывается список сортировок
+                verticalAlignment = Alignment.CenterVertically, // Центрирование по вертикали
+                horizontalArrangement = Arrangement.SpaceBetween // Элементы распределяются по краям
+            ) {
+                Text("Сортировка")
+                Text(sortOrderTitle(sortOrder)) // Выбранный порядок сортировки
+                Icon(Icons.Default.ArrowDropDown, contentDescription = null) // Декоративная иконка
+            }
+            DropdownMenu(
+                expanded = isSortExpanded, // Показ выпадающего меню
+                onDismissRequest = { isSortExpanded = false } // Callback скрытия меню
+            ) {
+                ProductsTableHandler.SortOrder.values().forEach { order ->
+                    DropdownMenuItem(
+                        onClick = {
+                            catalogViewModel.onSortOrderChanged(order) // Перезагружаем каталог в новом порядке
+                            isSortExpanded = false
+                        },
+                        text = { Text(text = sortOrderTitle(order)) }
+                    )
+                }
+            }
         }
 
-        val products = mutableListOf<Product>() // Создаем список для хранения продуктов
-        while (productsCursor.moveToNext()) { // Проходим по каждой записи курсора
-            val idIndex = productsCursor.getColumnIndex(ProductsTableHandler.COLUMN_ID) // Получаем индекс колонки id
-            val nameIndex = productsCursor.getColumnIndex(ProductsTableHandler.COLUMN_NAME) // Получаем индекс колонки названия
-            val descriptionIndex = productsCursor.getColumnIndex(ProductsTableHandler.COLUMN_DESCRIPTION) // Получаем индекс колонки описания
-            val priceIndex = productsCursor.getColumnIndex(ProductsTableHandler.COLUMN_PRICE) // Получаем индекс колонки цены
-            val imageUrlIndex = productsCursor.getColumnIndex(ProductsTableHandler.COLUMN_IMAGE_URL) // Получаем индекс колонки URL изображения
-
-            if (idIndex != -1 && nameIndex != -1 && descriptionIndex != -1 && priceIndex != -1) { // Проверяем корректность индексов
-                val id = productsCursor.getInt(idIndex) // Считываем id продукта
-                val name = productsCursor.getString(nameIndex) // Считываем название продукта
-                val description = productsCursor.getString(descriptionIndex) // Считываем описание продукта
-                val price = productsCursor.getDouble(priceIndex) // Считываем цену продукта
-                val imageUrl = if (imageUrlIndex != -1) productsCursor.getString(imageUrlIndex) else null // Считываем URL изображения, если он существует
-
-                products.add(Product(id, name, description, price, imageUrl, 1)) // Создаем объект продукта и добавляем его в список
+        val histogram = catalogViewModel.priceHistogram ?: return // Гистограмма еще загружается
+        if (histogram.isEmpty() || histogram.maxPrice <= histogram.minPrice) return // Диапазон из одной цены выбирать не из чего
+        val range = catalogViewModel.priceRange ?: histogram.minPrice..histogram.maxPrice // Без ограничения - вся категория
+
+        Column(modifier = Modifier.padding(horizontal = 8.dp)) {
+            Text(
+                text = "Цена: $${range.start.roundToInt()} - $${range.endInclusive.roundToInt()}",
+                style = MaterialTheme.typography.bodySmall
+            )
+            // Столбцы гистограммы: высота пропорциональна количеству продуктов, выбранный диапазон выделен цветом
+            val maxCount = histogram.maxCount()
+            val bucketWidth = (histogram.maxPrice - histogram.minPrice) / histogram.counts.size
+            Row(
+                modifier = Modifier
+                    .fillMaxWidth()
+                    .height(32.dp)
+                    .padding(horizontal = 10.dp), // Выравнивание по дорожке ползунка
+                verticalAlignment = Alignment.Bottom
+            ) {
+                histogram.counts.forEachIndexed { index, count ->
+                    val bucketStart = histogram.minPrice + index * bucketWidth
+                    val selected = bucketStart + bucketWidth >= range.start && bucketStart <= range.endInclusive
+                    Box(
+                        modifier = Modifier
+                            .weight(1f)
+                            .fillMaxHeight(if (count == 0) 0.02f else count.toFloat() / maxCount)
+                            .padding(horizontal = 1.dp)
+                            .background(if (selected) MaterialTheme.colorScheme.primary else MaterialTheme.colorScheme.surfaceVariant)
+                    )
+                }
             }
+            RangeSlider(
+                value = range.start.toFloat()..range.endInclusive.toFloat(), // Текущий диапазон
+                onValueChange = { catalogViewModel.onPriceRangeChanged(it.start.toDouble()..it.endInclusive.toDouble()) },
+                valueRange = histogram.minPrice.toFloat()..histogram.maxPrice.toFloat(), // Границы цен категории
+                onValueChangeFinished = catalogViewModel::onPriceRangeChangeFinished // Перезагружаем каталог после отпускания
+            )
         }
-        productsCursor.close() // Закрываем курсор после чтения
+    }
 
-        // Отображаем список продуктов в колонке
-        LazyColumn(
-            modifier = Modifier
-                .fillMaxSize() // Заполняет все доступное пространство
-                .padding(8.dp) // Отступ 8 dp со всех сторон
-        ) {
-            itemsIndexed(products.chunked(2)) { _, rowProducts ->
-                // Выводим ряд, содержащий по два продукта
+    /**
+     * Компонент фильтра по характеристикам (бренд, память, цвет и т.д.)
+     * Для каждой характеристики выводится ряд значений с количеством продуктов, которые останутся
+     * при выборе значения; счетчики пересчитываются после каждого изменения фильтров
+     */
+    @OptIn(ExperimentalMaterial3Api::class)
+    @Composable
+    fun AttributeFilter() {
+        val facets = catalogViewModel.facets // Характеристики со счетчиками
+        if (facets.isEmpty()) return // У продуктов каталога нет характеристик
+
+        Column(modifier = Modifier.padding(horizontal = 8.dp)) {
+            Row(
+                modifier = Modifier.fillMaxWidth(),
+                verticalAlignment = Alignment.CenterVertically,
+                horizontalArrangement = Arrangement.SpaceBetween
+            ) {
+                val matchCount = catalogViewModel.matchCount
+                Text(
+                    text = if (matchCount != null) "Найдено: $matchCount" else "",
+                    style = MaterialTheme.typography.bodySmall
+                )
+                if (catalogViewModel.selectedAttributes.isNotEmpty()) {
+                    TextButton(onClick = catalogViewModel::clearAttributes) { Text("Сбросить") } // Снимаем выбор всех значений
+                }
+            }
+            facets.forEach { facet ->
                 Row(
-                    modifier = Modifier.fillMaxWidth(), // Ряд занимает всю ширину
-                    horizontalArrangement = Arrangement.SpaceBetween // Элементы распределяются равномерно
+                    modifier = Modifier
+                        .fillMaxWidth()
+                        .horizontalScroll(rememberScrollState()), // Значений может быть больше, чем помещается в ширину
+                    verticalAlignment = Alignment.CenterVertically,
+                    horizontalArrangement = Arrangement.spacedBy(4.dp)
                 ) {
-                    rowProducts.forEach { product ->
-                        ProductItem(
-                            product = product, // Передаем объект продукта
-                            userId = getCurrentUser()?.id, // Передаем id текущего пользователя (если он есть)
-                            cartHandler = UserCartTableHandler(dbHandler), // Создаем новый обработчик корзины
-                            modifier = Modifier.weight(1f) // Каждый продукт занимает равную долю ширины ряда
+                    Text(facet.name, style = MaterialTheme.typography.bodySmall)
+                    facet.values.forEach { value ->
+                        FilterChip(
+                            selected = value.selected,
+                            onClick = { catalogViewModel.onAttributeValueToggled(facet.attributeId, value.valueId) },
+                            label = { Text("${value.value} (${value.count})") },
+                            enabled = value.selected || value.count > 0 // Значение без продуктов выбрать нельзя, но можно снять
                         )
                     }
                 }
@@ -333,135 +428,166 @@ class MainActivity : ComponentActivity() {
         }
     }
 
+    // Название порядка сортировки для интерфейса
+    private fun sortOrderTitle(order: ProductsTableHandler.SortOrder): String = when (order) {
+        ProductsTableHandler.SortOrder.NEWEST -> "Сначала новые"
+        ProductsTableHandler.SortOrder.PRICE_ASC -> "Сначала дешевые"
+        ProductsTableHandler.SortOrder.PRICE_DESC -> "Сначала дорогие"
+        ProductsTableHandler.SortOrder.NAME -> "По названию"
+    }
+
     /**
-     * Компонент для отображения одного продукта в списке
-     *
-     * @param product Объект продукта для отображения
-     * @param userId Идентификатор текущего пользователя
-     * @param cartHandler Обработчик операций с корзиной
-     * @param modifier Модификатор для компонента
+     * Компонент для отображения списка продуктов
+     * Продукты, фильтры и позиция прокрутки берутся из CatalogViewModel; следующая страница
+     * загружается, когда до конца загруженного списка остается меньше PREFETCH_DISTANCE карточек
      */
     @Composable
-    fun ProductItem(
-        product: Product, // Объект продукта
-        userId: Int?, // Идентификатор пользователя (может быть null)
-        cartHandler: UserCartTableHandler?, // Обработчик корзины
-        modifier: Modifier = Modifier // Модификатор по умолчанию
-    ) {
-        val context = LocalContext.current // Получаем текущий контекст
-
-        // Проверяем, добавлен ли продукт в корзину (возвращает true/false)
-        val productInCart = userId?.let { isProductInCart(it, product.id, cartHandler) } ?: false
-
-        Card(
-            modifier = modifier
-                .padding(8.dp) // Внешние отступы карточки
-                .clip(RoundedCornerShape(8.dp)) // Скругляем углы карточки
-                .fillMaxWidth() // Карточка занимает всю ширину
-                .clickable { // Обработка клика по карточке
-                    val intent = Intent(context, ProductDetailActivity::class.java).apply {
-                        putExtra("CURRENT_USER", currentUser as Parcelable) // Передаем текущего пользователя
-                        putExtra("PRODUCT_ID", product.id) // Передаем id выбранного продукта
-                    }
-                    (context as? Activity)?.startActivityForResult(intent, 200) // Запускаем активность с ожиданием результата
-                },
-            elevation = CardDefaults.cardElevation(4.dp) // Высота тени карточки
-        ) {
-            Column(
-                modifier = Modifier.padding(16.dp) // Внутренние отступы внутри карточки
-            ) {
-                product.image_url?.let { imageUrl -> // Если URL изображения существует
-                    val imageUri = Uri.parse("file:///android_asset/$imageUrl") // Преобразуем строку в URI
-                    Image(
-                        painter = rememberImagePainter(imageUri), // Загружаем изображение с помощью Coil
-                        contentDescription = "Product Image", // Описание изображения для доступности
-                        modifier = Modifier
-                            .fillMaxWidth() // Изображение занимает всю ширину карточки
-                            .aspectRatio(1f) // Соотношение сторон 1:1
-                    )
+    fun DisplayProducts() {
+        val products = catalogViewModel.products // Продукты, удовлетворяющие текущим фильтрам
+        val cartProductIds = catalogViewModel.cartProductIds // Множество id продуктов в корзине
+        // Один экземпляр обработчика нажатия на весь список, чтобы карточки не перерисовывались из-за новой лямбды
+        val onAddToCart: (Int) -> Unit = remember {
+            { productId ->
+                val wasInCart = productId in catalogViewModel.cartProductIds // Был ли продукт в корзине до нажатия
+                if (!catalogViewModel.addToCart(productId)) { // Если пользователь не авторизован
+                    Toast.makeText(
+                        applicationContext,
+                        "Сначала необходимо авторизоваться",
+                        Toast.LENGTH_SHORT
+                    ).show() // Выводим сообщение об ошибке
+                } else if (!wasInCart) { // Если продукт только что добавлен
+                    Toast.makeText(
+                        applicationContext, // Контекст приложения
+                        "Товар добавлен в корзину", // Сообщение об успехе
+                        Toast.LENGTH_SHORT // Кратковременное сообщение
+                    ).show() // Показываем сообщение
                 }
+            }
+        }
 
-                Spacer(modifier = Modifier.height(8.dp)) // Вертикальный отступ
+        // Открытие карточки товара; пользователь читается в момент нажатия, поэтому обработчик тоже один на весь список
+        val onOpen: (Int) -> Unit = remember {
+            { productId ->
+                val intent = Intent(this@MainActivity, ProductDetailActivity::class.java).apply {
+                    putExtra("CURRENT_USER", currentUser as Parcelable?) // Передаем текущего пользователя
+                    putExtra("PRODUCT_ID", productId) // Передаем id выбранного продукта
+                }
+                startActivityForResult(intent, 200) // Запускаем активность с ожиданием результата
+            }
+        }
 
-                Text(
-                    text = product.name, // Вывод названия продукта
-                    style = MaterialTheme.typography.bodyMedium // Применяем стиль текста
+        // Признак того, что сетка прокручена почти до конца загруженных продуктов
+        val gridState = catalogViewModel.gridState
+        val nearEnd by remember {
+            derivedStateOf {
+                val lastVisible = gridState.layoutInfo.visibleItemsInfo.lastOrNull()?.index ?: -1
+                lastVisible >= gridState.layoutInfo.totalItemsCount - PREFETCH_DISTANCE
+            }
+        }
+        LaunchedEffect(nearEnd, products.size) {
+            if (nearEnd) catalogViewModel.loadNextPage() // Догружаем следующую страницу по ключу последнего продукта
+        }
+
+        // Отображаем продукты в ленивой сетке из двух колонок
+        LazyVerticalGrid(
+            columns = GridCells.Fixed(2), // По два продукта в ряду
+            state = catalogViewModel.gridState, // Позиция прокрутки хранится в ViewModel
+            modifier = Modifier
+                .fillMaxSize() // Заполняет все доступное пространство
+                .padding(8.dp) // Отступ 8 dp со всех сторон
+        ) {
+            items(
+                items = products,
+                key = { product -> product.id } // Стабильный ключ по id продукта
+            ) { product ->
+                ProductItem(
+                    product = product, // Передаем облегчённую модель продукта
+                    inCart = product.id in cartProductIds, // Признак наличия продукта в корзине
+                    onOpen = onOpen, // Общий обработчик открытия карточки
+                    onAddToCart = onAddToCart // Общий обработчик добавления в корзину
                 )
-                Text(
-                    text = product.description.orEmpty(), // Вывод описания продукта (или пустой строки, если null)
-                    style = MaterialTheme.typography.bodySmall, // Стиль мелкого текста
-                    maxLines = 2 // Ограничение на 2 строки текста
+            }
+        }
+    }
+
+    companion object {
+        private const val PREFETCH_DISTANCE = 10 // За сколько карточек до конца списка загружается следующая страница
+    }
+}
+
+/**
+ * Компонент для отображения одного продукта в списке
+ * Функция верхнего уровня без обращений к активности, а все параметры стабильны (обработчики - одни и те же
+ * экземпляры на весь список), поэтому карточка перерисовывается только при изменении своего продукта или признака корзины
+ *
+ * @param product Облегчённая модель продукта для отображения
+ * @param inCart true, если продукт уже добавлен в корзину
+ * @param onOpen Обработчик нажатия на карточку (принимает id продукта)
+ * @param onAddToCart Обработчик добавления продукта в корзину (принимает id продукта)
+ * @param modifier Модификатор для компонента
+ */
+@Composable
+fun ProductItem(
+    product: ProductSummary, // Облегчённая модель продукта
+    inCart: Boolean, // Признак наличия продукта в корзине
+    onOpen: (Int) -> Unit, // Обработчик открытия карточки товара
+    onAddToCart: (Int) -> Unit, // Обработчик добавления в корзину
+    modifier: Modifier = Modifier // Модификатор по умолчанию
+) {
+    Card(
+        modifier = modifier
+            .padding(8.dp) // Внешние отступы карточки
+            .clip(RoundedCornerShape(8.dp)) // Скругляем углы карточки
+            .fillMaxWidth() // Карточка занимает всю ширину
+            .clickable { onOpen(product.id) }, // Открываем карточку товара через общий обработчик
+        elevation = CardDefaults.cardElevation(4.dp) // Высота тени карточки
+    ) {
+        Column(
+            modifier = Modifier.padding(16.dp) // Внутренние отступы внутри карточки
+        ) {
+            product.image_url?.let { imageUrl -> // Если URL изображения существует
+                ProductImage(
+                    imageUrl = imageUrl, // Изображение из assets или из дискового кэша
+                    modifier = Modifier
+                        .fillMaxWidth() // Изображение занимает всю ширину карточки
+                        .aspectRatio(1f) // Соотношение сторон 1:1
                 )
+            }
 
-                Spacer(modifier = Modifier.height(8.dp)) // Ещё один отступ
+            Spacer(modifier = Modifier.height(8.dp)) // Вертикальный отступ
 
-                Row(
-                    horizontalArrangement = Arrangement.SpaceBetween, // Элементы ряда распределяются по краям
-                    modifier = Modifier.fillMaxWidth() // Ряд занимает всю ширину карточки
-                ) {
-                    Text(
-                        text = "$${product.price}", // Вывод цены продукта
-                        style = MaterialTheme.typography.bodyLarge // Стиль для крупного текста
-                    )
+            Text(
+                text = product.name, // Вывод названия продукта
+                style = MaterialTheme.typography.bodyMedium // Применяем стиль текста
+            )
+            Text(
+                text = product.shortDescription.orEmpty(), // Вывод начала описания продукта (или пустой строки, если null)
+                style = MaterialTheme.typography.bodySmall, // Стиль мелкого текста
+                maxLines = 2 // Ограничение на 2 строки текста
+            )
 
-                    IconButton(
-                        onClick = {
-                            // Если пользователь авторизован и продукт еще не добавлен в корзину
-                            if (userId != null && cartHandler != null && !productInCart) {
-                                cartHandler.addItemToCart(userId, product.id, 1) // Добавляем продукт в корзину
-                                Toast.makeText(
-                                    applicationContext, // Контекст приложения
-                                    "Товар добавлен в корзину", // Сообщение об успехе
-                                    Toast.LENGTH_SHORT // Кратковременное сообщение
-                                ).show() // Показываем сообщение
-                                // Обновляем UI, чтобы отобразить изменение (например, появление галочки)
-                                setContent {
-                                    E_ShopTheme {
-                                        MainScreen() // Перерисовываем главный экран
-                                    }
-                                }
-                            } else if (userId == null) { // Если пользователь не авторизован
-                                Toast.makeText(
-                                    applicationContext,
-                                    "Сначала необходимо авторизоваться",
-                                    Toast.LENGTH_SHORT
-                                ).show() // Выводим сообщение об ошибке
-                            }
-                        }
-                    ) {
-                        // Если продукт уже в корзине, показываем иконку галочки, иначе иконку плюса
-                        if (productInCart) {
-                            Icon(Icons.Filled.Check, contentDescription = "Товар добавлен") // Иконка "Товар добавлен"
-                        } else {
-                            Icon(Icons.Filled.Add, contentDescription = "Добавить в корзину") // Иконка "Добавить в корзину"
-                        }
-                    }
-                }
-            }
-        }
-    }
+            Spacer(modifier = Modifier.height(8.dp)) // Ещё один отступ
 
-    /**
-     * Функция для проверки, добавлен ли продукт в корзину
-     * @param userId Идентификатор пользователя
-     * @param productId Идентификатор продукта
-     * @param cartHandler Обработчик корзины
-     * @return true если продукт найден в корзине, иначе false
-     */
-    fun isProductInCart(userId: Int, productId: Int, cartHandler: UserCartTableHandler?): Boolean {
-        cartHandler?.let { // Если обработчик корзины не равен null
-            val cursor = it.getItemsInCart(userId) // Получаем курсор с элементами корзины
-            val productIdColumnIndex = cursor.getColumnIndex(UserCartTableHandler.COLUMN_PRODUCT_ID) // Получаем индекс колонки с id продукта
-            if (productIdColumnIndex != -1) { // Если индекс корректный
-                while (cursor.moveToNext()) { // Проходим по всем записям
-                    if (cursor.getInt(productIdColumnIndex) == productId) { // Если найден продукт с нужным id
-                        cursor.close() // Закрываем курсор
-                        return true // Возвращаем true
+            Row(
+                horizontalArrangement = Arrangement.SpaceBetween, // Элементы ряда распределяются по краям
+                modifier = Modifier.fillMaxWidth() // Ряд занимает всю ширину карточки
+            ) {
+                Text(
+                    text = "$${product.price}", // Вывод цены продукта
+                    style = MaterialTheme.typography.bodyLarge // Стиль для крупного текста
+                )
+
+                IconButton(
+                    onClick = { onAddToCart(product.id) } // Добавляем продукт в корзину через общий обработчик
+                ) {
+                    // Если продукт уже в корзине, показываем иконку галочки, иначе иконку плюса
+                    if (inCart) {
+                        Icon(Icons.Filled.Check, contentDescription = "Товар добавлен") // Иконка "Товар добавлен"
+                    } else {
+                        Icon(Icons.Filled.Add, contentDescription = "Добавить в корзину") // Иконка "Добавить в корзину"
                     }
                 }
             }
-            cursor.close() // Закрываем курсор после проверки
         }
-        return false // Если обработчик null или продукт не найден, возвращаем false
     }
 }
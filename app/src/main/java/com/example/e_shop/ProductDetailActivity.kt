@@ -2,16 +2,18 @@ package com.example.e_shop
 
 import android.app.Activity
 import android.content.Intent
-import android.net.Uri
 import android.os.Build
 import android.os.Bundle
+import android.os.Parcelable
 import android.widget.Toast
 import androidx.activity.ComponentActivity
 import androidx.activity.compose.setContent
+import androidx.activity.viewModels
 import androidx.annotation.RequiresApi
-import androidx.compose.foundation.Image
 import androidx.compose.foundation.clickable
 import androidx.compose.foundation.layout.*
+import androidx.compose.foundation.lazy.LazyRow
+import androidx.compose.foundation.lazy.items
 import androidx.compose.foundation.shape.RoundedCornerShape
 import androidx.compose.material.icons.Icons
 import androidx.compose.material.icons.filled.Add
@@ -23,23 +25,19 @@ import androidx.compose.ui.Modifier
 import androidx.compose.ui.draw.clip
 import androidx.compose.ui.platform.LocalContext
 import androidx.compose.ui.unit.dp
-import coil.compose.rememberImagePainter
-import com.example.e_shop.DB.DataBaseHandler
-import com.example.e_shop.DB.ProductsTableHandler
-import com.example.e_shop.DB.UserCartTableHandler
 import com.example.e_shop.DataClasses.Product
+import com.example.e_shop.DataClasses.ProductSummary
 import com.example.e_shop.DataClasses.User
+import com.example.e_shop.ViewModels.ProductDetailViewModel
 import com.example.e_shop.ui.theme.E_ShopTheme
 
 // Класс ProductDetailActivity наследуется от ComponentActivity для работы с Compose
 class ProductDetailActivity : ComponentActivity() {
 
     private var currentUser: User? = null  // Переменная для хранения текущего пользователя
-    private var productId: Int? = null  // Переменная для хранения id продукта
 
-    private lateinit var dbHandler: DataBaseHandler  // Обработчик базы данных
-    private lateinit var productsTableHandler: ProductsTableHandler  // Обработчик таблицы продуктов
-    private lateinit var cartHandler: UserCartTableHandler  // Обработчик таблицы корзины
+    // Продукт и состояние корзины; PRODUCT_ID и CURRENT_USER передаются в ViewModel из extras интента
+    private val productDetailViewModel: ProductDetailViewModel by viewModels()
 
     /**
      * Метод onCreate вызывается при создании активности
@@ -48,12 +46,7 @@ class ProductDetailActivity : ComponentActivity() {
     @RequiresApi(Build.VERSION_CODES.O)  // Требуется API уровня O
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)  // Вызов базового onCreate
-        dbHandler = DataBaseHandler(this)  // Инициализация базы данных с контекстом активности
-        productsTableHandler = ProductsTableHandler(dbHandler)  // Создание объекта для работы с таблицей продуктов
-        cartHandler = UserCartTableHandler(dbHandler)  // Создание объекта для работы с таблицей корзины
-
         currentUser = intent.getParcelableExtra("CURRENT_USER")  // Извлекаем пользователя из интента
-        productId = intent.getIntExtra("PRODUCT_ID", -1)  // Извлекаем id продукта из интента
 
         // Если пользователь не найден, перенаправляем на экран авторизации
         if (currentUser == null) {
@@ -83,17 +76,7 @@ class ProductDetailActivity : ComponentActivity() {
     @OptIn(ExperimentalMaterial3Api::class)
     @Composable
     fun ProductDetailScreen() {
-        val product = remember { loadProductById(productId) }  // Запоминаем продукт, полученный из базы
-        /*
-           Параметр initialInCart определяет, добавлен ли продукт в корзину
-           @param initialInCart Логическое значение, true если продукт в корзине, иначе false
-        */
-        val initialInCart = product?.let {
-            currentUser?.id?.let { userId ->
-                isProductInCart(userId, product.id)  // Проверяем наличие продукта в корзине
-            }
-        } ?: false
-        val inCartState = remember { mutableStateOf(initialInCart) }  // Создаем изменяемое состояние для корзины
+        val product = productDetailViewModel.product  // Продукт, загруженный ViewModel
 
         Scaffold(
             topBar = {
@@ -110,13 +93,14 @@ class ProductDetailActivity : ComponentActivity() {
                 )
             }
         ) { paddingValues ->
+            if (!productDetailViewModel.isLoaded) return@Scaffold  // Продукт еще загружается
             product?.let {
                 Column(
                     modifier = Modifier
                         .fillMaxSize()  // Заполняем всё доступное пространство
                         .padding(paddingValues)  // Учитываем отступы от Scaffold
                 ) {
-                    ProductDetailContent(it, inCartState)  // Вызываем компонент для вывода деталей продукта
+                    ProductDetailContent(it, productDetailViewModel.inCart)  // Вызываем компонент для вывода деталей продукта
                 }
             } ?: run {
                 Text(
@@ -130,17 +114,15 @@ class ProductDetailActivity : ComponentActivity() {
     /**
      * Компонент для вывода подробной информации о продукте
      * @param product Объект продукта для отображения
-     * @param inCartState Изменяемое состояние, указывающее, добавлен ли продукт в корзину
+     * @param inCart Признак того, что продукт уже добавлен в корзину
      */
     @Composable
-    fun ProductDetailContent(product: Product, inCartState: MutableState<Boolean>) {
+    fun ProductDetailContent(product: Product, inCart: Boolean) {
         val context = LocalContext.current  // Получаем текущий контекст из Compose
         Column(modifier = Modifier.fillMaxSize().padding(16.dp)) {  // Создаем колонку с отступами
             product.image_url?.let { imageUrl ->  // Если URL изображения существует
-                val imageUri = Uri.parse("file:///android_asset/$imageUrl")  // Преобразуем строку в URI
-                Image(
-                    painter = rememberImagePainter(imageUri),  // Загружаем изображение с помощью Coil
-                    contentDescription = "Product Image",  // Описание изображения для доступности
+                ProductImage(
+                    imageUrl = imageUrl,  // Изображение из assets или из дискового кэша
                     modifier = Modifier
                         .fillMaxWidth()  // Изображение занимает всю ширину
                         .clip(RoundedCornerShape(8.dp))  // Скругляем углы изображения
@@ -159,10 +141,8 @@ class ProductDetailActivity : ComponentActivity() {
                         Toast.makeText(context, "Сначала необходимо авторизоваться", Toast.LENGTH_SHORT).show()  // Выводим сообщение, если нет
                         context.startActivity(Intent(context, UserActivity::class.java))  // Перенаправляем на экран авторизации
                     } else {
-                        if (!inCartState.value) {  // Если продукт еще не добавлен в корзину
-                            cartHandler.addItemToCart(currentUser!!.id, product.id, 1)  // Добавляем продукт в корзину
+                        if (productDetailViewModel.addToCart()) {  // Если продукт еще не был в корзине
                             Toast.makeText(context, "Товар добавлен в корзину", Toast.LENGTH_SHORT).show()  // Сообщаем об успехе
-                            inCartState.value = true  // Обновляем состояние, что товар в корзине
                             setResult(Activity.RESULT_OK)  // Сообщаем родительской активности об изменении
                         } else {  // Если товар уже в корзине
                             Toast.makeText(context, "Товар уже в корзине", Toast.LENGTH_SHORT).show()  // Выводим сообщение
@@ -171,7 +151,7 @@ class ProductDetailActivity : ComponentActivity() {
                 },
                 modifier = Modifier.fillMaxWidth()  // Кнопка занимает всю ширину
             ) {
-                if (inCartState.value) {  // Если товар в корзине
+                if (inCart) {  // Если товар в корзине
                     Icon(Icons.Filled.Check, contentDescription = "Добавлено")  // Выводим иконку подтверждения
                     Spacer(modifier = Modifier.width(4.dp))  // Отступ между иконкой и текстом
                     Text(text = "Уже в корзине")  // Текст кнопки
@@ -191,59 +171,45 @@ class ProductDetailActivity : ComponentActivity() {
                     }
                     .padding(8.dp)  // Отступ вокруг текста
             )
-        }
-    }
-
-    /**
-     * Функция для загрузки продукта по его id
-     * @param productId Идентификатор продукта
-     * @return Объект Product или null, если продукт не найден
-     */
-    private fun loadProductById(productId: Int?): Product? {
-        if (productId == null || productId == -1) return null  // Если id недопустимый, возвращаем null
-        val cursor = productsTableHandler.getAllProducts()  // Получаем курсор со всеми продуктами
-        var product: Product? = null  // Переменная для хранения найденного продукта
-        while (cursor.moveToNext()) {  // Итерируем по всем записям курсора
-            val idIndex = cursor.getColumnIndex(ProductsTableHandler.COLUMN_ID)  // Получаем индекс колонки id
-            val nameIndex = cursor.getColumnIndex(ProductsTableHandler.COLUMN_NAME)  // Получаем индекс колонки названия
-            val descriptionIndex = cursor.getColumnIndex(ProductsTableHandler.COLUMN_DESCRIPTION)  // Получаем индекс колонки описания
-            val priceIndex = cursor.getColumnIndex(ProductsTableHandler.COLUMN_PRICE)  // Получаем индекс колонки цены
-            val imageUrlIndex = cursor.getColumnIndex(ProductsTableHandler.COLUMN_IMAGE_URL)  // Получаем индекс колонки изображения
-            if (idIndex != -1 && nameIndex != -1 && descriptionIndex != -1 && priceIndex != -1) {  // Если все индексы корректны
-                val id = cursor.getInt(idIndex)  // Считываем id продукта
-                if (id == productId) {  // Если найден нужный id
-                    val name = cursor.getString(nameIndex)  // Считываем название
-                    val description = cursor.getString(descriptionIndex)  // Считываем описание
-                    val price = cursor.getDouble(priceIndex)  // Считываем цену
-                    val imageUrl = if (imageUrlIndex != -1) cursor.getString(imageUrlIndex) else null  // Считываем URL изображения, если возможно
-                    product = Product(id, name, description, price, imageUrl, 1)  // Создаем объект продукта
-                    break  // Прерываем цикл, так как продукт найден
+            val related = productDetailViewModel.related  // Товары, которые покупают вместе с этим
+            if (related.isNotEmpty()) {
+                Spacer(modifier = Modifier.height(16.dp))  // Отступ перед рекомендациями
+                Text(text = "С этим товаром покупают", style = MaterialTheme.typography.titleMedium)
+                Spacer(modifier = Modifier.height(8.dp))
+                LazyRow(horizontalArrangement = Arrangement.spacedBy(8.dp)) {
+                    items(related, key = { it.id }) { relatedProduct ->
+                        RelatedProductCard(relatedProduct)
+                    }
                 }
             }
         }
-        cursor.close()  // Закрываем курсор после чтения
-        return product  // Возвращаем найденный продукт или null
     }
 
     /**
-     * Функция для проверки наличия продукта в корзине
-     * @param userId Идентификатор пользователя
-     * @param productId Идентификатор продукта
-     * @return true если продукт найден в корзине, иначе false
+     * Карточка рекомендованного товара; нажатие открывает его детали
+     * @param product Облегчённая модель продукта
      */
-    private fun isProductInCart(userId: Int, productId: Int): Boolean {
-        val cursor = cartHandler.getItemsInCart(userId)  // Получаем курсор с элементами корзины для пользователя
-        val productIdColumnIndex = cursor.getColumnIndex(UserCartTableHandler.COLUMN_PRODUCT_ID)  // Получаем индекс колонки с id продукта
-        var inCart = false  // Флаг, указывающий, найден ли продукт
-        if (productIdColumnIndex != -1) {  // Если индекс корректный
-            while (cursor.moveToNext()) {  // Перебираем записи курсора
-                if (cursor.getInt(productIdColumnIndex) == productId) {  // Если найден нужный id
-                    inCart = true  // Устанавливаем флаг в true
-                    break  // Прерываем цикл, так как продукт найден
+    @Composable
+    fun RelatedProductCard(product: ProductSummary) {
+        val context = LocalContext.current  // Контекст для запуска активности
+        Card(
+            modifier = Modifier
+                .width(120.dp)  // Фиксированная ширина карточки в ленте
+                .clickable {
+                    val intent = Intent(context, ProductDetailActivity::class.java).apply {
+                        putExtra("CURRENT_USER", currentUser as Parcelable?)  // Передаем текущего пользователя
+                        putExtra("PRODUCT_ID", product.id)  // Передаем id выбранного продукта
+                    }
+                    context.startActivity(intent)
+                }
+        ) {
+            Column(modifier = Modifier.padding(8.dp)) {
+                product.image_url?.let { imageUrl ->
+                    ProductImage(imageUrl = imageUrl, modifier = Modifier.fillMaxWidth().aspectRatio(1f))  // Тот же кэш изображений, что и в каталоге
                 }
+                Text(text = product.name, style = MaterialTheme.typography.bodySmall, maxLines = 2)  // Название товара
+                Text(text = "$${product.price}", style = MaterialTheme.typography.labelMedium)  // Цена товара
             }
         }
-        cursor.close()  // Закрываем курсор
-        return inCart  // Возвращаем результат проверки
     }
 }
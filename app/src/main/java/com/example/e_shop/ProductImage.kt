@@ -0,0 +1,56 @@
+package com.example.e_shop
+
+import android.net.Uri
+import androidx.compose.foundation.Image
+import androidx.compose.foundation.layout.Box
+import androidx.compose.runtime.Composable
+import androidx.compose.runtime.getValue
+import androidx.compose.runtime.produceState
+import androidx.compose.ui.Modifier
+import androidx.compose.ui.platform.LocalContext
+import coil.compose.rememberImagePainter
+import com.example.e_shop.Images.ImageCache
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import java.io.File
+import java.io.IOException
+
+/**
+ * Изображение продукта, общее для каталога, корзины и карточки товара
+ * Адреса http(s) загружаются через дисковый кэш ImageCache (один файл на все экраны),
+ * остальные значения image_url считаются путями внутри assets.
+ * @param imageUrl Значение Products.image_url
+ * @param modifier Модификатор изображения (размер, скругление)
+ */
+@Composable
+fun ProductImage(imageUrl: String, modifier: Modifier = Modifier) {
+    if (!ImageCache.isRemote(imageUrl)) {
+        Image(
+            painter = rememberImagePainter(Uri.parse("file:///android_asset/$imageUrl")), // Изображение из assets
+            contentDescription = "Product Image", // Описание изображения для доступности
+            modifier = modifier
+        )
+        return
+    }
+    val context = LocalContext.current
+    // Файл из кэша; до окончания загрузки (или при ошибке без сохраненной копии) место под изображение остается пустым
+    val file by produceState<File?>(initialValue = null, imageUrl) {
+        value = withContext(Dispatchers.IO) {
+            try {
+                ImageCache.getInstance(context).get(imageUrl)
+            } catch (e: IOException) {
+                null
+            }
+        }
+    }
+    val cached = file
+    if (cached != null) {
+        Image(
+            painter = rememberImagePainter(cached), // Декодирование и кэш в памяти выполняет Coil
+            contentDescription = "Product Image",
+            modifier = modifier
+        )
+    } else {
+        Box(modifier = modifier) // Сохраняем размер, чтобы сетка не прыгала при появлении изображения
+    }
+}
@@ -4,9 +4,11 @@ import android.content.Context
 import android.content.Intent
 import android.os.Build
 import android.os.Bundle
+import android.os.Parcelable
 import android.widget.Toast
 import androidx.activity.ComponentActivity
 import androidx.activity.compose.setContent
+import androidx.activity.viewModels
 import androidx.annotation.RequiresApi
 import androidx.compose.foundation.layout.*
 import androidx.compose.foundation.lazy.LazyColumn
@@ -15,16 +17,20 @@ import androidx.compose.material.icons.Icons
 import androidx.compose.material.icons.filled.Home
 import androidx.compose.material3.*
 import androidx.compose.runtime.*
+import androidx.compose.ui.Alignment
 import androidx.compose.ui.Modifier
 import androidx.compose.ui.platform.LocalContext
 import androidx.compose.ui.unit.dp
 import com.example.e_shop.DB.DataBaseHandler
+import com.example.e_shop.DB.OrderExporter
 import com.example.e_shop.DB.OrderDetailsTableHandler
-import com.example.e_shop.DB.OrdersTableHandler
 import com.example.e_shop.DB.UsersTableHandler
 import com.example.e_shop.DataClasses.Order
 import com.example.e_shop.DataClasses.User
+import com.example.e_shop.ViewModels.ProfileViewModel
 import com.example.e_shop.ui.theme.E_ShopTheme
+import java.text.DateFormat
+import java.util.Date
 
 // Класс ProfileActivity наследуется от ComponentActivity для работы с Compose
 class ProfileActivity : ComponentActivity() { // Начало определения активности профиля
@@ -32,7 +38,7 @@ class ProfileActivity : ComponentActivity() { // Начало определен
     private var currentUser: User? = null  // Переменная для хранения текущего пользователя (или null)
     private lateinit var dbHandler: DataBaseHandler  // Обработчик базы данных, будет инициализирован позднее
     private lateinit var usersTableHandler: UsersTableHandler  // Обработчик таблицы пользователей
-    private lateinit var ordersTableHandler: OrdersTableHandler  // Обработчик таблицы заказов
+    private val profileViewModel: ProfileViewModel by viewModels()  // Заказы и позиция прокрутки, переживающие поворот экрана
     private lateinit var orderDetailsTableHandler: OrderDetailsTableHandler  // Обработчик таблицы деталей заказа
 
     /**
@@ -42,12 +48,12 @@ class ProfileActivity : ComponentActivity() { // Начало определен
     @RequiresApi(Build.VERSION_CODES.O) // Аннотация, указывающая, что метод требует API уровня O и выше
     override fun onCreate(savedInstanceState: Bundle?) { // Переопределение метода onCreate
         super.onCreate(savedInstanceState) // Вызов реализации суперкласса onCreate
-        dbHandler = DataBaseHandler(this) // Инициализация обработчика базы данных с текущим контекстом
+        dbHandler = DataBaseHandler.getInstance(this) // Инициализация обработчика базы данных с текущим контекстом
         usersTableHandler = UsersTableHandler(dbHandler) // Инициализация обработчика таблицы пользователей
-        ordersTableHandler = OrdersTableHandler(dbHandler) // Инициализация обработчика таблицы заказов
         orderDetailsTableHandler = OrderDetailsTableHandler(dbHandler) // Инициализация обработчика деталей заказа
 
         currentUser = intent.getParcelableExtra("CURRENT_USER") // Получение переданного объекта User из Intent
+        currentUser?.let { profileViewModel.setUser(it.id) } // Загрузка заказов пользователя в ViewModel
 
         setContent { // Установка UI с помощью Jetpack Compose
             E_ShopTheme { // Применение темы приложения
@@ -69,8 +75,9 @@ class ProfileActivity : ComponentActivity() { // Начало определен
             return // Выход из функции, если пользователь не авторизован
         }
 
-        val userOrders = remember { fetchUserOrders(currentUser!!.id) } // Запрос заказов пользователя и запоминание результата
+        val userOrders = profileViewModel.orders // Заказы пользователя из ViewModel
         var showEditDialog by remember { mutableStateOf(false) } // Состояние видимости диалога редактирования
+        var showExportDialog by remember { mutableStateOf(false) } // Состояние видимости диалога выгрузки заказов
 
         Scaffold( // Опорный макет Material3 с TopAppBar и контентом
             topBar = { // Определение верхней панели
@@ -119,6 +126,10 @@ class ProfileActivity : ComponentActivity() { // Начало определен
                     }
                 }
 
+                if (currentUser?.role == "admin") { // Выгрузка заказов доступна только администратору
+                    ExportSection(onExportClick = { showExportDialog = true })
+                }
+
                 Divider( // Разделитель между секциями
                     modifier = Modifier
                         .fillMaxWidth() // Полная ширина
@@ -143,14 +154,35 @@ class ProfileActivity : ComponentActivity() { // Начало определен
                         color = MaterialTheme.colorScheme.onSurfaceVariant // Цвет текста
                     )
                 } else {
-                    LazyColumn { // Ленивый список для отображения заказов
-                        items(userOrders) { order -> // Проход по каждому заказу
+                    // Следующая страница (после недавних заказов - из архива) загружается у конца списка
+                    val listState = profileViewModel.listState
+                    val nearEnd by remember {
+                        derivedStateOf {
+                            val lastVisible = listState.layoutInfo.visibleItemsInfo.lastOrNull()?.index ?: -1
+                            lastVisible >= listState.layoutInfo.totalItemsCount - PREFETCH_DISTANCE
+                        }
+                    }
+                    LaunchedEffect(nearEnd, userOrders.size) {
+                        if (nearEnd) profileViewModel.loadNextPage() // Догружаем по ключу последнего заказа
+                    }
+                    LazyColumn(state = listState) { // Ленивый список для отображения заказов
+                        items(userOrders, key = { it.id }) { order -> // Проход по каждому заказу
                             OrderItem(order) // Вызов компонента отображения одного заказа
                         }
                     }
                 }
             }
 
+            if (showExportDialog) { // Если нужно показать диалог выгрузки
+                ExportDialog(
+                    onDismiss = { showExportDialog = false }, // Скрытие диалога по отмене
+                    onExport = { format, fromDate, toDate -> // Запуск выгрузки в фоне
+                        profileViewModel.startExport(format, fromDate, toDate)
+                        showExportDialog = false
+                    }
+                )
+            }
+
             if (showEditDialog) { // Если нужно показать диалог редактирования
                 EditUserDialog( // Вызов компонуемого диалога
                     user = currentUser!!, // Передача текущего пользователя
@@ -266,6 +298,86 @@ class ProfileActivity : ComponentActivity() { // Начало определен
         )
     }
 
+    @Composable
+    fun ExportSection(onExportClick: () -> Unit) { // Компонуемая функция секции выгрузки заказов для администратора
+        Column(modifier = Modifier.padding(horizontal = 16.dp)) { // Вертикальная компоновка с отступами
+            Row(horizontalArrangement = Arrangement.spacedBy(8.dp)) { // Кнопки выгрузки
+                Button(onClick = onExportClick, enabled = !profileViewModel.isExporting) { // Новая выгрузка
+                    Text("Выгрузить заказы") // Надпись кнопки
+                }
+                OutlinedButton(onClick = { // Очередь заказов для смены статусов
+                    startActivity(Intent(this@ProfileActivity, AdminOrdersActivity::class.java).putExtra("CURRENT_USER", currentUser as Parcelable?))
+                }) {
+                    Text("Очередь заказов") // Надпись кнопки
+                }
+                if (profileViewModel.canResumeExport) { // Прерванную выгрузку можно продолжить
+                    OutlinedButton(onClick = { profileViewModel.resumeExport() }) {
+                        Text("Продолжить") // Надпись кнопки
+                    }
+                }
+            }
+            profileViewModel.exportStatus?.let { status -> // Ход или результат выгрузки
+                Text(
+                    text = status, // Текст состояния
+                    style = MaterialTheme.typography.bodySmall, // Стиль текста
+                    modifier = Modifier.padding(top = 4.dp) // Отступ сверху
+                )
+            }
+        }
+    }
+
+    @Composable
+    fun ExportDialog( // Компонуемая функция диалога параметров выгрузки
+        onDismiss: () -> Unit, // Лямбда для обработки отмены
+        onExport: (OrderExporter.Format, String, String) -> Unit // Лямбда запуска выгрузки
+    ) {
+        var fromDate by remember { mutableStateOf("") } // Начальная дата диапазона
+        var toDate by remember { mutableStateOf("") } // Конечная дата диапазона
+        var format by remember { mutableStateOf(OrderExporter.Format.CSV) } // Выбранный формат
+        val fromValid = fromDate.isEmpty() || OrderExporter.parseDay(fromDate) != null // Пустая дата - без границы
+        val toValid = toDate.isEmpty() || OrderExporter.parseDay(toDate) != null
+        val datesValid = fromValid && toValid
+
+        AlertDialog(
+            onDismissRequest = onDismiss, // Обработка отмены
+            title = { Text("Выгрузка заказов") }, // Заголовок диалога
+            text = {
+                Column {
+                    OutlinedTextField(
+                        value = fromDate, // Начальная дата
+                        onValueChange = { fromDate = it }, // Обновление при вводе
+                        label = { Text("С даты (ГГГГ-ММ-ДД)") }, // Надпись поля
+                        isError = !fromValid, // Неверная дата
+                        modifier = Modifier.fillMaxWidth() // Полная ширина
+                    )
+                    OutlinedTextField(
+                        value = toDate, // Конечная дата
+                        onValueChange = { toDate = it }, // Обновление при вводе
+                        label = { Text("По дату (ГГГГ-ММ-ДД)") }, // Надпись поля
+                        isError = !toValid, // Неверная дата
+                        modifier = Modifier.fillMaxWidth() // Полная ширина
+                    )
+                    OrderExporter.Format.values().forEach { option -> // Выбор формата
+                        Row(verticalAlignment = Alignment.CenterVertically) {
+                            RadioButton(selected = format == option, onClick = { format = option })
+                            Text(if (option == OrderExporter.Format.CSV) "CSV" else "JSON Lines")
+                        }
+                    }
+                }
+            },
+            confirmButton = {
+                TextButton(onClick = { onExport(format, fromDate, toDate) }, enabled = datesValid) {
+                    Text("Выгрузить") // Надпись кнопки
+                }
+            },
+            dismissButton = {
+                TextButton(onClick = onDismiss) {
+                    Text("Отмена") // Надпись кнопки
+                }
+            }
+        )
+    }
+
     @Composable
     fun UserInfoSection() { // Компонуемая функция отображения информации пользователя
         Column(modifier = Modifier.padding(16.dp)) { // Вертикальная компоновка с отступами
@@ -282,6 +394,7 @@ class ProfileActivity : ComponentActivity() { // Начало определен
 
     @Composable
     fun OrderItem(order: Order) { // Компонуемая функция отображения одного заказа
+        val dateFormat = remember { DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT) } // Дата и время в локали и часовом поясе устройства
         Card( // Карточка для заказа
             modifier = Modifier
                 .fillMaxWidth() // Полная ширина
@@ -290,35 +403,15 @@ class ProfileActivity : ComponentActivity() { // Начало определен
         ) {
             Column(modifier = Modifier.padding(16.dp)) { // Вертикальная компоновка внутри карточки
                 Text(text = "Номер заказа: ${order.id}") // Отображение ID заказа
-                Text(text = "Дата: ${order.orderDate}") // Отображение даты заказа
-                Text(text = "Статус: ${order.status}") // Отображение статуса заказа
+                Text(text = "Дата: ${dateFormat.format(Date(order.orderDate))}") // Отображение даты заказа
+                Text(text = "Статус: ${order.statusName}${if (order.archived) " (архив)" else ""}") // Отображение статуса заказа
                 Text(text = "Сумма: \$${order.totalPrice}") // Отображение суммы заказа
                 Text(text = "Адрес: ${order.deliveryAddress}") // Отображение адреса доставки
             }
         }
     }
 
-    private fun fetchUserOrders(userId: Int): List<Order> { // Функция получения списка заказов из базы
-        val cursor = ordersTableHandler.getOrdersByUserId(userId) // Запрос к базе для получения заказов по ID пользователя
-        val result = mutableListOf<Order>() // Создание изменяемого списка для результатов
-        while (cursor.moveToNext()) { // Итерация по результатам курсора
-            val idIndex = cursor.getColumnIndex("id") // Получение индекса столбца id
-            val dateIndex = cursor.getColumnIndex("order_date") // Индекс столбца даты
-            val statusIndex = cursor.getColumnIndex("status") // Индекс столбца статуса
-            val priceIndex = cursor.getColumnIndex("total_price") // Индекс столбца суммы
-            val addressIndex = cursor.getColumnIndex("delivery_address") // Индекс столбца адреса
-            result.add( // Добавление нового объекта Order в список
-                Order(
-                    id = cursor.getInt(idIndex), // Чтение id заказа
-                    userId = userId, // Установка ID пользователя
-                    orderDate = cursor.getString(dateIndex), // Чтение даты заказа
-                    status = cursor.getString(statusIndex), // Чтение статуса заказа
-                    totalPrice = cursor.getDouble(priceIndex), // Чтение суммы заказа
-                    deliveryAddress = cursor.getString(addressIndex) // Чтение адреса доставки
-                )
-            )
-        }
-        cursor.close() // Закрытие курсора после работы
-        return result // Возврат списка заказов
+    companion object {
+        private const val PREFETCH_DISTANCE = 5 // За сколько заказов до конца списка загружается следующая страница
     }
 }
\ No newline at end of file
@@ -12,7 +12,6 @@ import androidx.activity.ComponentActivity
 import androidx.annotation.RequiresApi
 import com.example.e_shop.DB.DataBaseHandler
 import com.example.e_shop.DB.UsersTableHandler
-import com.example.e_shop.DataClasses.User
 
 // Класс регистрации пользователя, наследует ComponentActivity
 class RegisterActivity : ComponentActivity() {
@@ -35,7 +34,7 @@ class RegisterActivity : ComponentActivity() {
         super.onCreate(savedInstanceState)  // Вызываем метод родительского класса
         setContentView(R.layout.activity_register)  // Устанавливаем XML-разметку для активности
 
-        dbHandler = DataBaseHandler(this)  // Инициализируем объект базы данных с текущим контекстом
+        dbHandler = DataBaseHandler.getInstance(this)  // Инициализируем объект базы данных с текущим контекстом
         userTableHandler = UsersTableHandler(dbHandler)  // Инициализируем обработчик таблицы пользователей с помощью dbHandler
 
         loginEditText = findViewById(R.id.regLoginEditText)  // Получаем ссылку на EditText логина по ID из разметки
@@ -71,11 +70,9 @@ class RegisterActivity : ComponentActivity() {
             if (userId > 0) {
                 Toast.makeText(applicationContext, "Пользователь зарегистрирован!", Toast.LENGTH_SHORT).show()
 
-                // Авторизуем пользователя и получаем курсор
-                val cursor = userTableHandler.authenticateUser(login, password)
-                if (cursor != null && cursor.moveToFirst()) {
-                    val newUser = User.createFromCursor(cursor)  // Создаем объект User из курсора
-                    cursor.close()  // Закрываем курсор
+                // Авторизуем пользователя (курсор закрывается внутри обработчика)
+                val newUser = userTableHandler.findUserByCredentials(login, password)
+                if (newUser != null) {
 
                     // Сохраняем ID в SharedPreferences
                     val prefs = getSharedPreferences("EshopPrefs", Context.MODE_PRIVATE)
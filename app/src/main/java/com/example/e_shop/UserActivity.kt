@@ -35,7 +35,7 @@ class UserActivity : ComponentActivity() {
         super.onCreate(savedInstanceState)  // Вызов базовой реализации onCreate
         setContentView(R.layout.activity_user)  // Устанавливаем разметку для активности из activity_user.xml
 
-        dbHandler = DataBaseHandler(this)  // Инициализируем объект dbHandler текущим контекстом
+        dbHandler = DataBaseHandler.getInstance(this)  // Инициализируем объект dbHandler текущим контекстом
 
         // Инициализируем UI компоненты, используя findViewById с идентификаторами из XML разметки
         loginEditText = findViewById(R.id.loginEditText)  // Находим элемент для ввода логина
@@ -50,13 +50,10 @@ class UserActivity : ComponentActivity() {
         // Если сохранённый идентификатор найден, пытаемся получить данные пользователя из базы
         if (savedUserId != -1) {
             val userTableHandler = UsersTableHandler(dbHandler)  // Создаем объект для работы с таблицей пользователей
-            val cursor = userTableHandler.getUserData(savedUserId)  // Выполняем запрос на получение данных пользователя по id
-            if (cursor != null && cursor.moveToFirst()) {  // Если курсор содержит запись
-                val user = User.createFromCursor(cursor)  // Создаем объект User из данных курсора
-                cursor.close()  // Закрываем курсор после получения данных
+            val user = userTableHandler.findUserById(savedUserId)  // Получаем пользователя по id (курсор закрывается внутри)
+            if (user != null) {  // Если пользователь найден
                 goToProfile(user)  // Переходим на экран профиля с данным пользователем
             }
-            cursor?.close()  // Если курсор не равен null, закрываем его (на случай, если условие не выполнено)
         }
 
         // Обработчик нажатия кнопки входа
@@ -67,10 +64,8 @@ class UserActivity : ComponentActivity() {
             // Если логин и пароль не пусты, продолжаем процесс аутентификации
             if (login.isNotEmpty() && password.isNotEmpty()) {
                 val userTableHandler = UsersTableHandler(dbHandler)  // Создаем экземпляр UsersTableHandler для взаимодействия с БД
-                val cursor = userTableHandler.authenticateUser(login, password)  // Выполняем запрос для проверки логина и пароля
-                if (cursor != null && cursor.moveToFirst()) {  // Если пользователь найден (курсор содержит запись)
-                    val user = User.createFromCursor(cursor)  // Создаем объект пользователя из данных курсора
-                    cursor.close()  // Закрываем курсор после использования
+                val user = userTableHandler.findUserByCredentials(login, password)  // Проверяем логин и пароль (курсор закрывается внутри)
+                if (user != null) {  // Если пользователь найден
 
                     Toast.makeText(applicationContext, "Успешная авторизация!", Toast.LENGTH_SHORT).show()  // Сообщаем об успешной авторизации
 
@@ -80,7 +75,6 @@ class UserActivity : ComponentActivity() {
                     goToProfile(user)  // Переходим на экран профиля с авторизованным пользователем
                 } else {
                     Toast.makeText(applicationContext, "Неверный логин или пароль!", Toast.LENGTH_SHORT).show()  // Выводим сообщение об ошибке, если аутентификация не пройдена
-                    cursor?.close()  // Если курсор не null, закрываем его
                 }
             } else {
                 // Если поля логина или пароля пусты, уведомляем пользователя
@@ -0,0 +1,170 @@
+package com.example.e_shop.ViewModels
+
+import android.app.Application
+import android.database.SQLException
+import android.os.Build
+import androidx.annotation.RequiresApi
+import androidx.compose.foundation.lazy.LazyListState
+import androidx.compose.runtime.getValue
+import androidx.compose.runtime.mutableStateOf
+import androidx.compose.runtime.setValue
+import androidx.lifecycle.AndroidViewModel
+import androidx.lifecycle.viewModelScope
+import com.example.e_shop.DB.DataBaseHandler
+import com.example.e_shop.DB.OrdersTableHandler
+import com.example.e_shop.DataClasses.Order
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+
+/**
+ * ViewModel очереди заказов администратора
+ * Хранит фильтр (статус и период), загруженные заказы и выбранные заказы. Перевод в новый статус выполняется
+ * одной транзакцией для всех выбранных заказов или одним UPDATE для всех заказов фильтра.
+ */
+@RequiresApi(Build.VERSION_CODES.O)
+class AdminOrdersViewModel(application: Application) : AndroidViewModel(application) {
+
+    /**
+     * Период очереди: заказы за последние days дней (null - за все время)
+     */
+    enum class Period(val title: String, val days: Int?) {
+        DAY("Сутки", 1),
+        WEEK("7 дней", 7),
+        MONTH("30 дней", 30),
+        ALL("Все", null)
+    }
+
+    private val dbHandler = DataBaseHandler.getInstance(application) // Обработчик базы данных
+    private val ordersTableHandler = OrdersTableHandler(dbHandler) // Обработчик таблицы заказов
+
+    var statuses by mutableStateOf<Map<Int, String>>(emptyMap()) // Справочник статусов: код -> название
+        private set
+
+    var status by mutableStateOf(OrdersTableHandler.STATUS_PENDING) // Статус заказов в очереди
+        private set
+
+    var period by mutableStateOf(Period.DAY) // Период заказов в очереди
+        private set
+
+    var orders by mutableStateOf<List<Order>>(emptyList()) // Заказы фильтра, новые первыми
+        private set
+
+    var selectedIds by mutableStateOf<Set<Int>>(emptySet()) // Выбранные заказы
+        private set
+
+    var message by mutableStateOf<String?>(null) // Результат последнего перевода статусов
+        private set
+
+    var isUpdating by mutableStateOf(false) // Выполняется ли перевод статусов
+        private set
+
+    val listState = LazyListState() // Позиция прокрутки очереди
+
+    private var loadJob: Job? = null // Текущая загрузка очереди (отменяется новой)
+
+    init {
+        viewModelScope.launch {
+            statuses = withContext(Dispatchers.IO) { ordersTableHandler.orderStatuses }
+        }
+        load()
+    }
+
+    /**
+     * Статусы, в которые можно перевести заказы текущего фильтра
+     */
+    val targetStatuses: List<Int>
+        get() = OrdersTableHandler.allowedTransitions(status).toList()
+
+    /**
+     * Выбирает статус заказов очереди (выбор заказов сбрасывается)
+     */
+    fun onStatusSelected(status: Int) {
+        if (this.status == status) return
+        this.status = status
+        load()
+    }
+
+    /**
+     * Выбирает период заказов очереди (выбор заказов сбрасывается)
+     */
+    fun onPeriodSelected(period: Period) {
+        if (this.period == period) return
+        this.period = period
+        load()
+    }
+
+    /**
+     * Отмечает заказ или снимает отметку
+     */
+    fun onOrderToggled(orderId: Int) {
+        selectedIds = if (orderId in selectedIds) selectedIds - orderId else selectedIds + orderId
+    }
+
+    /**
+     * Отмечает все загруженные заказы или снимает отметку со всех, если все уже отмечены
+     */
+    fun onSelectAllToggled() {
+        selectedIds = if (selectedIds.size == orders.size) emptySet() else orders.map { it.id }.toSet()
+    }
+
+    /**
+     * Переводит выбранные заказы в новый статус
+     */
+    fun transitionSelected(target: Int) {
+        val ids = selectedIds.toIntArray()
+        if (ids.isEmpty()) return
+        runTransition { ordersTableHandler.transitionOrders(ids, target) }
+    }
+
+    /**
+     * Переводит в новый статус все заказы фильтра, в том числе не поместившиеся в список
+     */
+    fun transitionAll(target: Int) {
+        val (from, to) = range()
+        val current = status
+        runTransition { ordersTableHandler.transitionOrdersInPeriod(current, target, from, to) }
+    }
+
+    // Выполняет перевод статусов в фоне и перезагружает очередь
+    private fun runTransition(transition: () -> Int) {
+        if (isUpdating) return
+        isUpdating = true
+        viewModelScope.launch {
+            val rows = withContext(Dispatchers.IO) {
+                try {
+                    transition()
+                } catch (e: SQLException) {
+                    null // Ошибка записи: статусы не изменились (транзакция откатилась)
+                }
+            }
+            isUpdating = false
+            message = if (rows != null) "Переведено заказов: $rows" else "Ошибка при изменении статусов"
+            load()
+        }
+    }
+
+    // Загружает заказы текущего фильтра
+    private fun load() {
+        val (from, to) = range()
+        val current = status
+        selectedIds = emptySet()
+        loadJob?.cancel()
+        loadJob = viewModelScope.launch {
+            orders = withContext(Dispatchers.IO) { ordersTableHandler.getOrderListByStatus(current, from, to, PAGE_LIMIT) }
+        }
+    }
+
+    // Границы периода [from, to) в миллисекундах
+    private fun range(): Pair<Long, Long> {
+        val days = period.days ?: return Pair(Long.MIN_VALUE, Long.MAX_VALUE)
+        val now = System.currentTimeMillis()
+        return Pair(now - days * DAY_MILLIS, Long.MAX_VALUE) // Верхней границы нет: заказы, оформленные во время работы, тоже попадают
+    }
+
+    companion object {
+        private const val PAGE_LIMIT = 500 // Наибольшее число заказов в списке (остальные переводятся через "Все за период")
+        private const val DAY_MILLIS = 24 * 60 * 60 * 1000L
+    }
+}
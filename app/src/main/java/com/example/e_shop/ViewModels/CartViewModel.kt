@@ -0,0 +1,132 @@
+package com.example.e_shop.ViewModels
+
+import android.app.Application
+import android.database.SQLException
+import android.os.Build
+import androidx.annotation.RequiresApi
+import androidx.compose.foundation.lazy.LazyListState
+import androidx.compose.runtime.derivedStateOf
+import androidx.compose.runtime.getValue
+import androidx.compose.runtime.mutableStateOf
+import androidx.compose.runtime.setValue
+import androidx.lifecycle.AndroidViewModel
+import androidx.lifecycle.viewModelScope
+import com.example.e_shop.BuildConfig
+import com.example.e_shop.DB.CartSyncEngine
+import com.example.e_shop.DB.DataBaseHandler
+import com.example.e_shop.DB.HttpCartRelay
+import com.example.e_shop.DB.OrdersTableHandler
+import com.example.e_shop.DB.UserCartTableHandler
+import com.example.e_shop.DataClasses.CartProduct
+import com.example.e_shop.Workers.OrderUploadWorker
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import java.io.IOException
+
+/**
+ * ViewModel экрана корзины
+ * Хранит товары корзины и позицию прокрутки; изменения количества применяются к состоянию сразу,
+ * а запись в базу выполняется в фоне по одной в порядке действий пользователя
+ */
+@RequiresApi(Build.VERSION_CODES.O)
+class CartViewModel(application: Application) : AndroidViewModel(application) {
+
+    private val dbHandler = DataBaseHandler.getInstance(application) // Обработчик базы данных
+    private val userCartTableHandler = UserCartTableHandler(dbHandler) // Обработчик таблицы корзины
+
+    var cartProducts by mutableStateOf<List<CartProduct>>(emptyList()) // Товары в корзине вместе с количеством
+        private set
+
+    // Общая сумма заказа, пересчитывается только при изменении списка товаров
+    val totalAmount by derivedStateOf { cartProducts.sumOf { it.product.price * it.cartQuantity } }
+
+    val listState = LazyListState() // Позиция прокрутки списка корзины
+
+    private var userId: Int? = null // Идентификатор текущего пользователя
+
+    // Записи корзины выполняются по одной в порядке вызова: иначе более раннее количество могло бы записаться
+    // позже (и получить более позднюю метку синхронизации), чем последнее выбранное пользователем
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private val cartWrites = Dispatchers.IO.limitedParallelism(1)
+
+    /**
+     * Устанавливает пользователя и загружает его корзину (повторный вызов с тем же пользователем ничего не делает)
+     * @param userId Идентификатор пользователя
+     */
+    fun setUser(userId: Int) {
+        if (this.userId == userId) return // Корзина этого пользователя уже загружена
+        this.userId = userId
+        viewModelScope.launch {
+            cartProducts = withContext(Dispatchers.IO) { userCartTableHandler.getCartProductList(userId) } // Загружаем корзину
+            if (syncCart(userId)) { // Корзина изменилась на другом устройстве пользователя
+                cartProducts = withContext(Dispatchers.IO) { userCartTableHandler.getCartProductList(userId) }
+            }
+        }
+    }
+
+    // Обменивается изменениями корзины с другими устройствами пользователя; возвращает true, если корзина изменилась
+    private suspend fun syncCart(userId: Int): Boolean {
+        if (BuildConfig.CART_SYNC_URL.isEmpty()) return false // Сервер синхронизации корзины не настроен
+        return withContext(Dispatchers.IO) {
+            try {
+                CartSyncEngine(dbHandler, HttpCartRelay(BuildConfig.CART_SYNC_URL)).sync(userId).applied > 0
+            } catch (e: IOException) {
+                false // Нет сети: локальные изменения уйдут при следующей синхронизации
+            } catch (e: SQLException) {
+                false
+            }
+        }
+    }
+
+    /**
+     * Изменяет количество товара в корзине
+     * @param productId Идентификатор продукта
+     * @param newQuantity Новое количество
+     */
+    fun updateQuantity(productId: Int, newQuantity: Int) {
+        val currentUserId = userId ?: return
+        // Обновляем только изменившийся элемент списка
+        cartProducts = cartProducts.map { if (it.product.id == productId) it.copy(cartQuantity = newQuantity) else it }
+        viewModelScope.launch(cartWrites) {
+            userCartTableHandler.updateItemQuantityInCart(currentUserId, productId, newQuantity) // Записываем новое количество
+        }
+    }
+
+    /**
+     * Удаляет товар из корзины
+     * @param productId Идентификатор продукта
+     */
+    fun remove(productId: Int) {
+        val currentUserId = userId ?: return
+        cartProducts = cartProducts.filter { it.product.id != productId } // Убираем товар из состояния
+        viewModelScope.launch(cartWrites) {
+            userCartTableHandler.removeItemFromCart(currentUserId, productId) // Удаляем товар из базы
+        }
+    }
+
+    // Дожидается записи всех изменений корзины, сделанных до вызова
+    internal suspend fun awaitCartWrites() = withContext(cartWrites) {}
+
+    /**
+     * Оформляет заказ из всех товаров корзины, очищает корзину и ставит заказ в очередь отправки на сервер
+     * @param deliveryAddress Адрес доставки
+     * @param onResult Callback с результатом: true, если заказ оформлен
+     */
+    fun checkout(deliveryAddress: String, onResult: (Boolean) -> Unit) {
+        val currentUserId = userId ?: return onResult(false)
+        val items = cartProducts // Снимок корзины на момент оформления
+        viewModelScope.launch {
+            val success = withContext(cartWrites) { // После уже начатых изменений корзины, которые заказ очистит
+                // Заказ, позиции, очистка корзины и очередь отправки - одна транзакция
+                OrdersTableHandler(dbHandler).placeOrder(currentUserId, deliveryAddress, items) != -1L
+            }
+            if (success) {
+                cartProducts = emptyList() // Корзина пуста после оформления
+                OrderUploadWorker.enqueue(getApplication()) // Отправляем заказ на сервер, когда будет сеть
+            }
+            onResult(success)
+        }
+    }
+}
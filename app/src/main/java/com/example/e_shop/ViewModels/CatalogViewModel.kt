@@ -0,0 +1,283 @@
+package com.example.e_shop.ViewModels
+
+import android.app.Application
+import android.database.SQLException
+import android.os.Build
+import androidx.annotation.RequiresApi
+import androidx.compose.foundation.lazy.grid.LazyGridState
+import androidx.compose.runtime.getValue
+import androidx.compose.runtime.mutableStateOf
+import androidx.compose.runtime.setValue
+import androidx.lifecycle.AndroidViewModel
+import androidx.lifecycle.viewModelScope
+import com.example.e_shop.BuildConfig
+import com.example.e_shop.DB.CatalogSyncEngine
+import com.example.e_shop.DB.DataBaseHandler
+import com.example.e_shop.DB.ProductsTableHandler
+import com.example.e_shop.DB.UserCartTableHandler
+import com.example.e_shop.DataClasses.Facet
+import com.example.e_shop.DataClasses.PriceHistogram
+import com.example.e_shop.DataClasses.ProductFilter
+import com.example.e_shop.DataClasses.ProductSummary
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import java.io.IOException
+
+/**
+ * ViewModel главного экрана (каталога)
+ * Хранит фильтры, загруженный список продуктов, содержимое корзины и позицию прокрутки,
+ * поэтому возврат на экран и поворот устройства не приводят к повторным запросам к базе
+ */
+@RequiresApi(Build.VERSION_CODES.O)
+class CatalogViewModel(application: Application) : AndroidViewModel(application) {
+
+    private val dbHandler = DataBaseHandler.getInstance(application) // Обработчик базы данных
+    private val productsTableHandler = ProductsTableHandler(dbHandler) // Обработчик таблицы продуктов
+    private val cartTableHandler = UserCartTableHandler(dbHandler) // Обработчик таблицы корзины
+    private val facetEngine = dbHandler.facetEngine // Фасетный фильтр по характеристикам
+
+    var searchText by mutableStateOf("") // Текущий текст поиска
+        private set
+    var selectedCategoryIndex by mutableStateOf(-1) // Индекс выбранной категории
+        private set
+    var categories by mutableStateOf<List<String>>(emptyList()) // Список категорий для фильтра
+        private set
+    var sortOrder by mutableStateOf(ProductsTableHandler.SortOrder.NEWEST) // Порядок сортировки каталога
+        private set
+    var priceRange by mutableStateOf<ClosedFloatingPointRange<Double>?>(null) // Выбранный диапазон цен (null - без ограничения)
+        private set
+    var priceHistogram by mutableStateOf<PriceHistogram?>(null) // Гистограмма цен выбранной категории для ползунка
+        private set
+    var selectedAttributes by mutableStateOf<Map<Int, Set<Int>>>(emptyMap()) // Выбранные значения характеристик
+        private set
+    var facets by mutableStateOf<List<Facet>>(emptyList()) // Характеристики со счетчиками для текущих фильтров
+        private set
+    var matchCount by mutableStateOf<Int?>(null) // Количество продуктов по текущим фильтрам (null - еще не посчитано)
+        private set
+    var products by mutableStateOf<List<ProductSummary>>(emptyList()) // Загруженные страницы продуктов, удовлетворяющих фильтрам
+        private set
+    var endReached by mutableStateOf(false) // Все продукты по текущим фильтрам загружены
+        private set
+    var cartProductIds by mutableStateOf<Set<Int>>(emptySet()) // Идентификаторы продуктов в корзине пользователя
+        private set
+
+    val gridState = LazyGridState() // Позиция прокрутки сетки продуктов (переживает поворот и возврат на экран)
+
+    private var userId: Int? = null // Идентификатор текущего пользователя
+    private var productsJob: Job? = null // Текущая загрузка страницы продуктов
+    private var histogramJob: Job? = null // Текущая загрузка гистограммы цен
+    private var facetsJob: Job? = null // Текущий подсчет фасетов
+
+    init {
+        viewModelScope.launch {
+            categories = withContext(Dispatchers.IO) { listOf("Все категории") + dbHandler.getAllCategories() } // Загружаем категории один раз
+        }
+        loadProducts() // Загружаем первую страницу продуктов без фильтров
+        loadPriceHistogram()
+        loadFacets()
+        syncCatalog() // Затем подтягиваем изменения каталога с сервера
+    }
+
+    /**
+     * Устанавливает текущего пользователя и загружает его корзину
+     * @param userId Идентификатор пользователя (null, если пользователь не авторизован)
+     */
+    fun setUser(userId: Int?) {
+        if (this.userId == userId) return // Пользователь не изменился, корзина уже загружена
+        this.userId = userId
+        refreshCart()
+    }
+
+    /**
+     * Изменяет текст поиска и перезагружает список продуктов
+     * @param text Новый текст поиска
+     */
+    fun onSearchTextChanged(text: String) {
+        searchText = text
+        loadProducts()
+        loadFacets()
+    }
+
+    /**
+     * Изменяет выбранную категорию и перезагружает список продуктов
+     * @param index Индекс категории в списке categories
+     */
+    fun onSelectedCategoryIndexChanged(index: Int) {
+        selectedCategoryIndex = index
+        priceRange = null // Диапазон цен другой категории не подходит к новой
+        loadPriceHistogram()
+        loadProducts()
+        loadFacets()
+    }
+
+    /**
+     * Изменяет порядок сортировки и перезагружает список продуктов
+     * @param order Новый порядок сортировки
+     */
+    fun onSortOrderChanged(order: ProductsTableHandler.SortOrder) {
+        if (sortOrder == order) return
+        sortOrder = order
+        loadProducts()
+    }
+
+    /**
+     * Изменяет диапазон цен во время перемещения ползунка (без запроса к базе)
+     * @param range Новый диапазон цен
+     */
+    fun onPriceRangeChanged(range: ClosedFloatingPointRange<Double>) {
+        priceRange = range
+    }
+
+    /**
+     * Применяет выбранный диапазон цен после отпускания ползунка
+     */
+    fun onPriceRangeChangeFinished() {
+        val histogram = priceHistogram
+        val range = priceRange
+        // Диапазон, совпадающий с границами категории, не ограничивает выборку
+        if (histogram != null && range != null && range.start <= histogram.minPrice && range.endInclusive >= histogram.maxPrice) {
+            priceRange = null
+        }
+        loadProducts()
+        loadFacets()
+    }
+
+    /**
+     * Выбирает или снимает значение характеристики и перезагружает список продуктов и счетчики
+     * @param attributeId Идентификатор характеристики
+     * @param valueId Идентификатор значения
+     */
+    fun onAttributeValueToggled(attributeId: Int, valueId: Int) {
+        val values = selectedAttributes[attributeId].orEmpty()
+        val updated = if (valueId in values) values - valueId else values + valueId
+        selectedAttributes = if (updated.isEmpty()) selectedAttributes - attributeId else selectedAttributes + (attributeId to updated)
+        loadProducts()
+        loadFacets()
+    }
+
+    /**
+     * Снимает выбор всех характеристик
+     */
+    fun clearAttributes() {
+        if (selectedAttributes.isEmpty()) return
+        selectedAttributes = emptyMap()
+        loadProducts()
+        loadFacets()
+    }
+
+    /**
+     * Загружает следующую страницу продуктов (вызывается, когда сетка прокручена почти до конца)
+     */
+    fun loadNextPage() {
+        if (endReached || productsJob?.isActive == true) return // Все загружено или страница уже загружается
+        val filter = currentFilter()
+        val loaded = products
+        productsJob = viewModelScope.launch {
+            val page = withContext(Dispatchers.IO) { productsTableHandler.getProductSummaryPage(filter, loaded.lastOrNull(), PAGE_SIZE) }
+            products = loaded + page
+            endReached = page.size < PAGE_SIZE
+        }
+    }
+
+    /**
+     * Перечитывает содержимое корзины (например, после возврата с экрана деталей товара)
+     * Пока корзина не менялась, результат берется из кэша запросов без обращения к базе
+     */
+    fun refreshCart() {
+        val currentUserId = userId
+        if (currentUserId == null) { // У неавторизованного пользователя корзины нет
+            cartProductIds = emptySet()
+            return
+        }
+        viewModelScope.launch {
+            cartProductIds = withContext(Dispatchers.IO) {
+                cartTableHandler.getCartItemList(currentUserId).mapTo(HashSet()) { it.productId } // Собираем id продуктов из корзины
+            }
+        }
+    }
+
+    /**
+     * Добавляет продукт в корзину текущего пользователя
+     * @param productId Идентификатор продукта
+     * @return false, если пользователь не авторизован, иначе true
+     */
+    fun addToCart(productId: Int): Boolean {
+        val currentUserId = userId ?: return false // Без авторизации добавить в корзину нельзя
+        if (productId in cartProductIds) return true // Продукт уже в корзине
+        cartProductIds = cartProductIds + productId // Сразу обновляем признак только этого продукта
+        viewModelScope.launch(Dispatchers.IO) {
+            cartTableHandler.addItemToCart(currentUserId, productId, 1) // Записываем продукт в корзину
+        }
+        return true
+    }
+
+    // Загружает изменения каталога с сервера и, если каталог изменился, перечитывает категории и продукты
+    private fun syncCatalog() {
+        if (BuildConfig.CATALOG_SYNC_URL.isEmpty()) return // Сервер каталога не настроен
+        viewModelScope.launch {
+            val result = withContext(Dispatchers.IO) {
+                try {
+                    CatalogSyncEngine(dbHandler, BuildConfig.CATALOG_SYNC_URL).sync()
+                } catch (e: IOException) {
+                    null // Нет сети или сервер недоступен: показываем локальный каталог
+                } catch (e: SQLException) {
+                    null // Страница не применилась (откатилась): повторим при следующем запуске
+                }
+            }
+            if (result == null || result.version == result.fromVersion) return@launch
+            categories = withContext(Dispatchers.IO) { listOf("Все категории") + dbHandler.getAllCategories() }
+            loadPriceHistogram()
+            loadProducts()
+            loadFacets()
+            refreshCart() // Удаленные продукты убираются из корзины
+        }
+    }
+
+    // Загружает первую страницу продуктов с учетом текущих фильтров, отменяя предыдущую незавершенную загрузку
+    private fun loadProducts() {
+        val filter = currentFilter()
+        productsJob?.cancel()
+        productsJob = viewModelScope.launch {
+            val page = withContext(Dispatchers.IO) { productsTableHandler.getProductSummaryPage(filter, null, PAGE_SIZE) }
+            products = page
+            endReached = page.size < PAGE_SIZE
+            gridState.scrollToItem(0) // Новый набор продуктов показывается с начала
+        }
+    }
+
+    // Загружает гистограмму цен выбранной категории
+    private fun loadPriceHistogram() {
+        val categoryId = selectedCategoryIndex
+        histogramJob?.cancel()
+        histogramJob = viewModelScope.launch {
+            priceHistogram = withContext(Dispatchers.IO) { productsTableHandler.getPriceHistogram(categoryId) }
+        }
+    }
+
+    // Пересчитывает счетчики характеристик и количество продуктов по текущим фильтрам
+    private fun loadFacets() {
+        val filter = currentFilter()
+        facetsJob?.cancel()
+        facetsJob = viewModelScope.launch {
+            val result = withContext(Dispatchers.IO) { facetEngine.query(filter) }
+            facets = result.facets
+            matchCount = result.matchCount
+        }
+    }
+
+    // Текущие фильтры каталога
+    private fun currentFilter() = ProductFilter(
+        query = searchText,
+        categoryId = selectedCategoryIndex,
+        minPrice = priceRange?.start,
+        maxPrice = priceRange?.endInclusive,
+        sort = sortOrder,
+        attributes = selectedAttributes
+    )
+
+    companion object {
+        private const val PAGE_SIZE = 40 // Количество продуктов на странице (несколько экранов сетки)
+    }
+}
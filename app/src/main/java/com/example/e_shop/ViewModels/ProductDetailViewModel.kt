@@ -0,0 +1,92 @@
+package com.example.e_shop.ViewModels
+
+import android.app.Application
+import android.os.Build
+import androidx.annotation.RequiresApi
+import androidx.compose.runtime.getValue
+import androidx.compose.runtime.mutableStateOf
+import androidx.compose.runtime.setValue
+import androidx.lifecycle.AndroidViewModel
+import androidx.lifecycle.SavedStateHandle
+import androidx.lifecycle.viewModelScope
+import com.example.e_shop.DB.DataBaseHandler
+import com.example.e_shop.DB.ProductsTableHandler
+import com.example.e_shop.DB.UserCartTableHandler
+import com.example.e_shop.DataClasses.Product
+import com.example.e_shop.DataClasses.ProductSummary
+import com.example.e_shop.DataClasses.User
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+
+/**
+ * ViewModel экрана деталей продукта
+ * Идентификатор продукта и пользователь берутся из extras интента через SavedStateHandle,
+ * продукт загружается один раз и не перечитывается при повороте экрана
+ */
+@RequiresApi(Build.VERSION_CODES.O)
+class ProductDetailViewModel(application: Application, savedStateHandle: SavedStateHandle) : AndroidViewModel(application) {
+
+    private val dbHandler = DataBaseHandler.getInstance(application) // Обработчик базы данных
+    private val productsTableHandler = ProductsTableHandler(dbHandler) // Обработчик таблицы продуктов
+    private val cartTableHandler = UserCartTableHandler(dbHandler) // Обработчик таблицы корзины
+
+    private val productId: Int = savedStateHandle["PRODUCT_ID"] ?: -1 // Идентификатор продукта из интента
+    private val currentUser: User? = savedStateHandle["CURRENT_USER"] // Текущий пользователь из интента
+
+    var product by mutableStateOf<Product?>(null) // Загруженный продукт (null, пока не загружен или не найден)
+        private set
+    var isLoaded by mutableStateOf(false) // Признак завершения загрузки
+        private set
+    var inCart by mutableStateOf(false) // Признак наличия продукта в корзине пользователя
+        private set
+    var related by mutableStateOf<List<ProductSummary>>(emptyList()) // Товары, которые покупают вместе с этим
+        private set
+
+    init {
+        viewModelScope.launch {
+            product = withContext(Dispatchers.IO) { loadProduct() } // Загружаем полную запись продукта
+            inCart = withContext(Dispatchers.IO) { isProductInCart() } // Проверяем корзину через кэш запросов
+            isLoaded = true
+            related = withContext(Dispatchers.IO) { loadRelated() } // Рекомендации не задерживают показ продукта
+        }
+    }
+
+    /**
+     * Добавляет продукт в корзину текущего пользователя
+     * @return false, если продукт уже был в корзине или пользователь не авторизован
+     */
+    fun addToCart(): Boolean {
+        val user = currentUser ?: return false // Без авторизации добавить в корзину нельзя
+        if (inCart || product == null) return false // Продукт уже в корзине
+        inCart = true // Сразу обновляем состояние кнопки
+        viewModelScope.launch(Dispatchers.IO) {
+            cartTableHandler.addItemToCart(user.id, productId, 1) // Записываем продукт в корзину
+        }
+        return true
+    }
+
+    // Загружает полную запись продукта (с описанием) по его id
+    private fun loadProduct(): Product? {
+        if (productId == -1) return null // Если id недопустимый, продукта нет
+        return productsTableHandler.findProductById(productId) // Курсор закрывается внутри обработчика
+    }
+
+    // Загружает продукты, которые чаще всего покупали вместе с этим, кроме уже лежащих в корзине
+    private fun loadRelated(): List<ProductSummary> {
+        if (productId == -1) return emptyList()
+        val inCartIds = currentUser?.let { user -> cartTableHandler.getCartItemList(user.id).map { it.productId }.toIntArray() } ?: IntArray(0)
+        val ids = dbHandler.recommendationEngine.getRelated(productId, RELATED_LIMIT, inCartIds) // Первый вызов строит матрицу
+        return productsTableHandler.getProductSummariesByIds(ids)
+    }
+
+    // Проверяет наличие продукта в корзине текущего пользователя
+    private fun isProductInCart(): Boolean {
+        val user = currentUser ?: return false
+        return cartTableHandler.getCartItemList(user.id).any { it.productId == productId }
+    }
+
+    companion object {
+        private const val RELATED_LIMIT = 8 // Количество рекомендаций на экране
+    }
+}
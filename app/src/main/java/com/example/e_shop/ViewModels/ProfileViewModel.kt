@@ -0,0 +1,173 @@
+package com.example.e_shop.ViewModels
+
+import android.app.Application
+import android.content.Context
+import android.database.SQLException
+import android.os.Build
+import androidx.annotation.RequiresApi
+import androidx.compose.foundation.lazy.LazyListState
+import androidx.compose.runtime.getValue
+import androidx.compose.runtime.mutableStateOf
+import androidx.compose.runtime.setValue
+import androidx.lifecycle.AndroidViewModel
+import androidx.lifecycle.viewModelScope
+import com.example.e_shop.DB.DataBaseHandler
+import com.example.e_shop.DB.OrderExporter
+import com.example.e_shop.DB.OrdersTableHandler
+import com.example.e_shop.DataClasses.Order
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
+import java.io.File
+import java.io.IOException
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+
+/**
+ * ViewModel экрана профиля
+ * Хранит загруженные страницы заказов пользователя и позицию прокрутки списка, а для администратора -
+ * состояние выгрузки заказов (OrderExporter), которая выполняется в фоне и переживает поворот экрана
+ */
+@RequiresApi(Build.VERSION_CODES.O)
+class ProfileViewModel(application: Application) : AndroidViewModel(application) {
+
+    private val dbHandler = DataBaseHandler.getInstance(application) // Обработчик базы данных
+    private val ordersTableHandler = OrdersTableHandler(dbHandler) // Обработчик таблицы заказов
+
+    var orders by mutableStateOf<List<Order>>(emptyList()) // Загруженные заказы текущего пользователя, новые первыми
+        private set
+
+    var endReached by mutableStateOf(false) // Вся история заказов, включая архив, загружена
+        private set
+
+    val listState = LazyListState() // Позиция прокрутки списка заказов
+
+    private var userId: Int? = null // Идентификатор пользователя, чьи заказы загружены
+    private var ordersJob: Job? = null // Текущая загрузка страницы заказов
+
+    // Параметры и точка возобновления выгрузки хранятся в SharedPreferences, чтобы пережить завершение процесса
+    private val exportPrefs = application.getSharedPreferences("EshopPrefs", Context.MODE_PRIVATE)
+
+    var isExporting by mutableStateOf(false) // Выполняется ли выгрузка
+        private set
+
+    var exportStatus by mutableStateOf<String?>(null) // Текст о ходе или результате выгрузки
+        private set
+
+    var canResumeExport by mutableStateOf(exportPrefs.contains(KEY_EXPORT_FILE)) // Есть ли прерванная выгрузка
+        private set
+
+    /**
+     * Устанавливает пользователя и загружает первую страницу его заказов (повторный вызов с тем же пользователем ничего не делает)
+     * @param userId Идентификатор пользователя
+     */
+    fun setUser(userId: Int) {
+        if (this.userId == userId) return // Заказы этого пользователя уже загружены
+        this.userId = userId
+        ordersJob?.cancel()
+        orders = emptyList()
+        endReached = false
+        loadNextPage()
+    }
+
+    /**
+     * Загружает следующую страницу заказов по ключу последнего загруженного заказа
+     * Архив старых заказов читается только здесь, когда пользователь пролистал недавние заказы
+     */
+    fun loadNextPage() {
+        val userId = userId ?: return
+        if (endReached || ordersJob?.isActive == true) return // Все загружено или страница уже загружается
+        val loaded = orders
+        ordersJob = viewModelScope.launch {
+            val page = withContext(Dispatchers.IO) { ordersTableHandler.getOrderPage(userId, loaded.lastOrNull(), PAGE_SIZE) }
+            orders = loaded + page
+            endReached = page.size < PAGE_SIZE
+        }
+    }
+
+    /**
+     * Начинает новую выгрузку заказов в файл exports/orders-<время>.<расширение> каталога приложения
+     * @param format Формат выгрузки
+     * @param fromDate Начальная дата YYYY-MM-DD или пустая строка
+     * @param toDate Конечная дата YYYY-MM-DD или пустая строка
+     */
+    fun startExport(format: OrderExporter.Format, fromDate: String, toDate: String) {
+        if (isExporting) return
+        val app = getApplication<Application>()
+        val dir = app.getExternalFilesDir("exports") ?: File(app.filesDir, "exports")
+        dir.mkdirs()
+        val stamp = SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(Date())
+        val file = File(dir, "orders-$stamp.${format.extension}")
+        exportPrefs.edit()
+            .putString(KEY_EXPORT_FILE, file.absolutePath)
+            .putString(KEY_EXPORT_FORMAT, format.name)
+            .putString(KEY_EXPORT_FROM, fromDate)
+            .putString(KEY_EXPORT_TO, toDate)
+            .putLong(KEY_EXPORT_LAST_ID, 0)
+            .putLong(KEY_EXPORT_LENGTH, 0)
+            .apply()
+        runExport()
+    }
+
+    /**
+     * Продолжает прерванную выгрузку с последнего выгруженного заказа, дописывая тот же файл
+     */
+    fun resumeExport() {
+        if (isExporting || !exportPrefs.contains(KEY_EXPORT_FILE)) return
+        runExport()
+    }
+
+    // Выполняет выгрузку по сохраненным параметрам, сохраняя точку возобновления после каждой страницы
+    private fun runExport() {
+        val file = File(exportPrefs.getString(KEY_EXPORT_FILE, null) ?: return)
+        val format = OrderExporter.Format.valueOf(exportPrefs.getString(KEY_EXPORT_FORMAT, null) ?: OrderExporter.Format.CSV.name)
+        val fromDate = exportPrefs.getString(KEY_EXPORT_FROM, "")
+        val toDate = exportPrefs.getString(KEY_EXPORT_TO, "")
+        val afterOrderId = exportPrefs.getLong(KEY_EXPORT_LAST_ID, 0)
+        val resumeLength = exportPrefs.getLong(KEY_EXPORT_LENGTH, file.length())
+        isExporting = true
+        canResumeExport = false
+        exportStatus = "Выгрузка заказов..."
+        viewModelScope.launch {
+            val result = withContext(Dispatchers.IO) {
+                try {
+                    // При возобновлении файл обрезается до длины в точке возобновления и дописывается;
+                    // id заказа и длина файла сохраняются вместе, одной записью
+                    OrderExporter(dbHandler).exportToFile(file, format, fromDate, toDate, afterOrderId, resumeLength) { progress ->
+                        exportPrefs.edit()
+                            .putLong(KEY_EXPORT_LAST_ID, progress.lastOrderId)
+                            .putLong(KEY_EXPORT_LENGTH, progress.fileLength)
+                            .apply()
+                        exportStatus = "Выгружено заказов: ${progress.orders}"
+                    }
+                } catch (e: IOException) {
+                    null // Ошибка записи файла
+                } catch (e: SQLException) {
+                    null // Ошибка чтения базы
+                }
+            }
+            isExporting = false
+            if (result != null) {
+                exportPrefs.edit().remove(KEY_EXPORT_FILE).remove(KEY_EXPORT_LAST_ID).remove(KEY_EXPORT_LENGTH).apply() // Выгрузка завершена
+                exportStatus = "Выгружено заказов: ${result.orders}, позиций: ${result.lines}\n${file.absolutePath}"
+            } else {
+                canResumeExport = true
+                exportStatus = "Ошибка выгрузки, можно продолжить"
+            }
+        }
+    }
+
+    companion object {
+        private const val PAGE_SIZE = 20 // Количество заказов на странице истории (несколько экранов списка)
+
+        // Ключи SharedPreferences для выгрузки заказов
+        private const val KEY_EXPORT_FILE = "ORDER_EXPORT_FILE"
+        private const val KEY_EXPORT_FORMAT = "ORDER_EXPORT_FORMAT"
+        private const val KEY_EXPORT_FROM = "ORDER_EXPORT_FROM"
+        private const val KEY_EXPORT_TO = "ORDER_EXPORT_TO"
+        private const val KEY_EXPORT_LAST_ID = "ORDER_EXPORT_LAST_ID"
+        private const val KEY_EXPORT_LENGTH = "ORDER_EXPORT_LENGTH"
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.e_shop.Workers
+
+import android.content.Context
+import android.database.SQLException
+import android.os.Build
+import android.util.Log
+import androidx.annotation.RequiresApi
+import androidx.work.Constraints
+import androidx.work.CoroutineWorker
+import androidx.work.ExistingPeriodicWorkPolicy
+import androidx.work.PeriodicWorkRequestBuilder
+import androidx.work.WorkManager
+import androidx.work.WorkerParameters
+import com.example.e_shop.DB.DataBaseHandler
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import java.util.concurrent.TimeUnit
+
+/**
+ * Фоновое обслуживание базы (DatabaseMaintenance)
+ * Раз в сутки, когда устройство не используется и заряжается, обновляет статистику планировщика
+ * и возвращает свободные страницы в пределах бюджета времени; итоги шагов пишутся в MaintenanceLog
+ */
+@RequiresApi(Build.VERSION_CODES.O)
+class DatabaseMaintenanceWorker(context: Context, params: WorkerParameters) : CoroutineWorker(context, params) {
+
+    override suspend fun doWork(): Result = withContext(Dispatchers.IO) {
+        try {
+            val report = DataBaseHandler.getInstance(applicationContext).maintenance.run(BUDGET_MILLIS)
+            Log.i(TAG, report.toString())
+            Result.success()
+        } catch (e: SQLException) {
+            Result.retry() // База занята: обслуживание повторится позже
+        }
+    }
+
+    companion object {
+        private const val TAG = "DatabaseMaintenance"
+        private const val WORK_NAME = "database-maintenance" // Имя единственной периодической работы обслуживания
+        private const val BUDGET_MILLIS = 30_000L // Бюджет времени запуска (на это время соединение с базой занято)
+
+        /**
+         * Планирует ежедневное обслуживание базы, пока устройство не используется и заряжается
+         * Уже запланированная работа сохраняется вместе со своим расписанием
+         * @param context Контекст приложения
+         */
+        @JvmStatic
+        fun schedule(context: Context) {
+            val request = PeriodicWorkRequestBuilder<DatabaseMaintenanceWorker>(1, TimeUnit.DAYS)
+                .setConstraints(Constraints.Builder().setRequiresDeviceIdle(true).setRequiresCharging(true).build())
+                .build()
+            WorkManager.getInstance(context).enqueueUniquePeriodicWork(WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request)
+        }
+    }
+}
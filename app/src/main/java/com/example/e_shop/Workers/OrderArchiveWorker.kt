@@ -0,0 +1,58 @@
+package com.example.e_shop.Workers
+
+import android.content.Context
+import android.database.SQLException
+import android.os.Build
+import android.util.Log
+import androidx.annotation.RequiresApi
+import androidx.work.Constraints
+import androidx.work.CoroutineWorker
+import androidx.work.ExistingPeriodicWorkPolicy
+import androidx.work.PeriodicWorkRequestBuilder
+import androidx.work.WorkManager
+import androidx.work.WorkerParameters
+import com.example.e_shop.BuildConfig
+import com.example.e_shop.DB.DataBaseHandler
+import com.example.e_shop.DB.OrderArchive
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import java.util.concurrent.TimeUnit
+
+/**
+ * Фоновый перенос старых заказов в архив (OrderArchive)
+ * Раз в сутки переносит завершенные заказы старше BuildConfig.ORDER_ARCHIVE_AGE_DAYS дней; каждая пачка
+ * фиксируется отдельно, поэтому прерванный запуск продолжается следующим с того же места
+ */
+@RequiresApi(Build.VERSION_CODES.O)
+class OrderArchiveWorker(context: Context, params: WorkerParameters) : CoroutineWorker(context, params) {
+
+    override suspend fun doWork(): Result = withContext(Dispatchers.IO) {
+        val cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(BuildConfig.ORDER_ARCHIVE_AGE_DAYS.toLong())
+        try {
+            val result = OrderArchive(DataBaseHandler.getInstance(applicationContext)).archiveOlderThan(cutoff)
+            Log.i(TAG, result.toString())
+            Result.success()
+        } catch (e: SQLException) {
+            Result.retry() // База занята или файл архива недоступен: зафиксированные пачки уже перенесены
+        }
+    }
+
+    companion object {
+        private const val TAG = "OrderArchiveWorker"
+        private const val WORK_NAME = "order-archive" // Имя единственной периодической работы архивации
+
+        /**
+         * Планирует ежедневную архивацию, пока устройство не используется
+         * Уже запланированная работа сохраняется вместе со своим расписанием
+         * @param context Контекст приложения
+         */
+        @JvmStatic
+        fun schedule(context: Context) {
+            if (BuildConfig.ORDER_ARCHIVE_AGE_DAYS <= 0) return // Архивация выключена
+            val request = PeriodicWorkRequestBuilder<OrderArchiveWorker>(1, TimeUnit.DAYS)
+                .setConstraints(Constraints.Builder().setRequiresDeviceIdle(true).setRequiresBatteryNotLow(true).build())
+                .build()
+            WorkManager.getInstance(context).enqueueUniquePeriodicWork(WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request)
+        }
+    }
+}
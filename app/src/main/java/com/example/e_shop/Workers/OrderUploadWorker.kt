@@ -0,0 +1,57 @@
+package com.example.e_shop.Workers
+
+import android.content.Context
+import android.database.SQLException
+import android.os.Build
+import androidx.annotation.RequiresApi
+import androidx.work.BackoffPolicy
+import androidx.work.Constraints
+import androidx.work.CoroutineWorker
+import androidx.work.ExistingWorkPolicy
+import androidx.work.NetworkType
+import androidx.work.OneTimeWorkRequestBuilder
+import androidx.work.WorkManager
+import androidx.work.WorkerParameters
+import com.example.e_shop.BuildConfig
+import com.example.e_shop.DB.DataBaseHandler
+import com.example.e_shop.DB.OrderUploader
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import java.util.concurrent.TimeUnit
+
+/**
+ * Фоновая отправка очереди заказов на сервер
+ * Запускается после оформления заказа и при наличии сети; пока в очереди остаются заказы,
+ * WorkManager повторяет работу с экспоненциальной задержкой (в том числе после перезапуска устройства)
+ */
+@RequiresApi(Build.VERSION_CODES.O)
+class OrderUploadWorker(context: Context, params: WorkerParameters) : CoroutineWorker(context, params) {
+
+    override suspend fun doWork(): Result = withContext(Dispatchers.IO) {
+        if (BuildConfig.ORDERS_UPLOAD_URL.isEmpty()) return@withContext Result.success() // Сервер заказов не настроен
+        try {
+            val result = OrderUploader(DataBaseHandler.getInstance(applicationContext), BuildConfig.ORDERS_UPLOAD_URL).uploadPending()
+            if (result.pending > 0) Result.retry() else Result.success() // Отложенные заказы отправит следующий запуск
+        } catch (e: SQLException) {
+            Result.retry() // База занята или недоступна: попробуем позже
+        }
+    }
+
+    companion object {
+        private const val WORK_NAME = "order-upload" // Имя единственной цепочки отправки
+
+        /**
+         * Планирует отправку очереди заказов при наличии сети
+         * Если отправка уже запланирована, новая выполнится после нее и подхватит только что добавленные заказы
+         * @param context Контекст приложения
+         */
+        @JvmStatic
+        fun enqueue(context: Context) {
+            val request = OneTimeWorkRequestBuilder<OrderUploadWorker>()
+                .setConstraints(Constraints.Builder().setRequiredNetworkType(NetworkType.CONNECTED).build())
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 30, TimeUnit.SECONDS)
+                .build()
+            WorkManager.getInstance(context).enqueueUniqueWork(WORK_NAME, ExistingWorkPolicy.APPEND_OR_REPLACE, request)
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.e_shop.DB
+
+import android.content.ComponentCallbacks2
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+/**
+ * Реестр кэшей: бюджеты по долям, порядок сжатия по приоритету и уровни onTrimMemory
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class CacheRegistryTest {
+
+    // Кэш, который запоминает назначенный бюджет и однократные сжатия
+    private class FakeCache(private val name: String, private val trims: MutableList<String>) : CacheRegistry.ManagedCache {
+        var budget = -1L // Последний назначенный бюджет
+        var size = 0L // Текущий размер
+
+        override fun getName() = name
+        override fun getSizeBytes() = size
+        override fun setMaxBytes(maxBytes: Long) {
+            budget = maxBytes
+        }
+        override fun trimToBytes(targetBytes: Long) {
+            trims += "$name=$targetBytes"
+            size = minOf(size, targetBytes)
+        }
+    }
+
+    private val trims = mutableListOf<String>()
+    private val high = FakeCache("high", trims)
+    private val low = FakeCache("low", trims)
+    private val normal = FakeCache("normal", trims)
+    private lateinit var registry: CacheRegistry
+
+    @Before
+    fun setUp() {
+        registry = CacheRegistry(1000)
+        registry.register(high, CacheRegistry.PRIORITY_HIGH, 0.5)
+        registry.register(low, CacheRegistry.PRIORITY_LOW, 0.2)
+        registry.register(normal, CacheRegistry.PRIORITY_NORMAL, 0.3)
+        registry.register(low, CacheRegistry.PRIORITY_HIGH, 0.9) // Повторная регистрация игнорируется
+    }
+
+    @Test
+    fun assignsBudgetsAndReportsByPriority() {
+        assertEquals(listOf(200L, 300L, 500L), listOf(low.budget, normal.budget, high.budget))
+        low.size = 150
+        high.size = 400
+        assertEquals(listOf("low", "normal", "high"), registry.report.map { it.name })
+        assertEquals(listOf(200L, 300L, 500L), registry.report.map { it.budgetBytes })
+        assertEquals(550L, registry.totalSizeBytes)
+    }
+
+    @Test
+    fun trimLevelsShrinkLessImportantCachesFirst() {
+        // Интерфейс скрыт или памяти мало: второстепенные кэши сжимаются вдвое, важный не трогается
+        for (level in intArrayOf(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN, ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW,
+                ComponentCallbacks2.TRIM_MEMORY_BACKGROUND)) {
+            assertEquals("level $level", listOf("low=100", "normal=150", "high=500"), trim(level))
+        }
+        // Процесс в середине списка на выгрузку или памяти критически мало: второстепенные очищаются, важный сжимается вдвое
+        for (level in intArrayOf(ComponentCallbacks2.TRIM_MEMORY_MODERATE, ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL)) {
+            assertEquals("level $level", listOf("low=0", "normal=0", "high=250"), trim(level))
+        }
+        // Процесс будет выгружен первым: очищаются все кэши
+        assertEquals(listOf("low=0", "normal=0", "high=0"), trim(ComponentCallbacks2.TRIM_MEMORY_COMPLETE))
+        // Умеренная нехватка памяти при работе приложения кэши не трогает
+        assertEquals(emptyList<String>(), trim(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE))
+
+        trims.clear()
+        registry.onLowMemory()
+        assertEquals(listOf("low=0", "normal=0", "high=0"), trims)
+    }
+
+    // Сжатия кэшей в порядке выполнения для уровня onTrimMemory
+    private fun trim(level: Int): List<String> {
+        trims.clear()
+        registry.onTrimMemory(level)
+        return trims.toList()
+    }
+}
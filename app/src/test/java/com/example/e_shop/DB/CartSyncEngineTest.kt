@@ -0,0 +1,157 @@
+package com.example.e_shop.DB
+
+import androidx.test.core.app.ApplicationProvider
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.IOException
+
+/**
+ * Синхронизация корзины между двумя локальными базами ("телефон" и "планшет") через ретранслятор в памяти
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class CartSyncEngineTest {
+
+    private lateinit var relay: StandInRelay
+    private lateinit var phone: DataBaseHandler
+    private lateinit var tablet: DataBaseHandler
+
+    @Before
+    fun setUp() {
+        val context = ApplicationProvider.getApplicationContext<android.app.Application>()
+        relay = StandInRelay()
+        phone = DataBaseHandler(context, "phone.db")
+        tablet = DataBaseHandler(context, "tablet.db")
+        UserCartTableHandler(phone).clearUserCart(USER_ID) // Корзина фикстуры не участвует в сценариях
+        UserCartTableHandler(tablet).clearUserCart(USER_ID)
+        sync(phone)
+        sync(tablet)
+    }
+
+    @Test
+    fun itemAddedOnOneDeviceAppearsOnTheOther() {
+        UserCartTableHandler(phone).addItemToCart(USER_ID, 5, 2)
+        sync(phone)
+        sync(tablet)
+        assertEquals(mapOf(5 to 2), cart(tablet))
+    }
+
+    @Test
+    fun concurrentEditsConvergeToLatestWriteInAnySyncOrder() {
+        UserCartTableHandler(phone).addItemToCart(USER_ID, 7, 2)
+        sync(phone)
+        sync(tablet)
+        UserCartTableHandler(phone).updateItemQuantityInCart(USER_ID, 7, 3)
+        Thread.sleep(2) // Изменение на планшете позже по часам
+        UserCartTableHandler(tablet).updateItemQuantityInCart(USER_ID, 7, 9)
+
+        sync(tablet) // Позднее изменение уходит первым
+        sync(phone)
+        sync(tablet)
+        assertEquals(mapOf(7 to 9), cart(phone))
+        assertEquals(cart(phone), cart(tablet))
+    }
+
+    @Test
+    fun removalPropagatesAsTombstoneAndLaterAddWins() {
+        UserCartTableHandler(phone).addItemToCart(USER_ID, 3, 1)
+        sync(phone)
+        sync(tablet)
+        UserCartTableHandler(tablet).removeItemFromCart(USER_ID, 3)
+        sync(tablet)
+        sync(phone)
+        assertTrue(cart(phone).isEmpty())
+
+        UserCartTableHandler(phone).addItemToCart(USER_ID, 3, 4) // Повторное добавление новее надгробия
+        sync(phone)
+        sync(tablet)
+        assertEquals(mapOf(3 to 4), cart(tablet))
+    }
+
+    @Test
+    fun checkoutClearsCartOnOtherDevices() {
+        UserCartTableHandler(phone).addItemToCart(USER_ID, 1, 1)
+        UserCartTableHandler(phone).addItemToCart(USER_ID, 2, 1)
+        sync(phone)
+        sync(tablet)
+        OrdersTableHandler(tablet).placeOrder(USER_ID, "addr", UserCartTableHandler(tablet).getCartProductList(USER_ID))
+        sync(tablet)
+        sync(phone)
+        assertTrue(cart(phone).isEmpty())
+    }
+
+    @Test
+    fun onlyUnsentChangesAreExchanged() {
+        UserCartTableHandler(phone).addItemToCart(USER_ID, 4, 1)
+        assertEquals(1, sync(phone).sent)
+        assertEquals(0, sync(phone).sent) // Повторная синхронизация без изменений ничего не отправляет
+        UserCartTableHandler(phone).updateItemQuantityInCart(USER_ID, 4, 2)
+        assertEquals(1, sync(phone).sent)
+        assertEquals(1, sync(tablet).received) // Планшет получает только последнее значение продукта
+    }
+
+    @Test
+    fun failedExchangeKeepsChangesForNextSync() {
+        UserCartTableHandler(phone).addItemToCart(USER_ID, 6, 1)
+        relay.online = false
+        try {
+            sync(phone)
+            fail("Offline relay must fail")
+        } catch (expected: IOException) {
+        }
+        relay.online = true
+        assertEquals(1, sync(phone).sent)
+        sync(tablet)
+        assertEquals(mapOf(6 to 1), cart(tablet))
+    }
+
+    @Test
+    fun equalTimestampsAreResolvedByDeviceId() {
+        val a = CartSyncEngine.Entry(1, 2, 100, 5)
+        val b = CartSyncEngine.Entry(1, 3, 100, 9)
+        assertTrue(b.wins(a))
+        assertFalse(a.wins(b))
+        assertFalse(a.wins(a))
+    }
+
+    private fun sync(db: DataBaseHandler) = CartSyncEngine(db, relay).sync(USER_ID)
+
+    // Корзина пользователя: продукт -> количество
+    private fun cart(db: DataBaseHandler): Map<Int, Int> =
+        UserCartTableHandler(db).getCartItemList(USER_ID).associate { it.productId to it.quantity }
+
+    /**
+     * Ретранслятор в памяти: хранит победителя по каждому продукту и журнал изменений с номерами (курсор)
+     */
+    private class StandInRelay : CartRelay {
+        var online = true
+        private val winners = mutableMapOf<Pair<Int, Int>, CartSyncEngine.Entry>() // (пользователь, продукт) -> запись
+        private val log = mutableListOf<Pair<Int, Pair<Int, Int>>>() // Журнал: позиция - курсор, значение - ключ записи
+
+        override fun exchange(userId: Int, delta: List<CartSyncEngine.Entry>, cursor: Long): CartRelay.Exchange {
+            if (!online) throw IOException("Relay is offline")
+            for (entry in delta) {
+                val key = userId to entry.productId
+                val current = winners[key]
+                if (current == null || entry.wins(current)) {
+                    winners[key] = entry
+                    log += log.size to key
+                }
+            }
+            // Последнее значение каждого ключа, измененного после курсора
+            val changed = log.drop(cursor.toInt()).map { it.second }.filter { it.first == userId }.toSet()
+            return CartRelay.Exchange(changed.map { winners.getValue(it) }, log.size.toLong())
+        }
+    }
+
+    companion object {
+        private const val USER_ID = 1 // Пользователь admin из предзаполненной базы
+    }
+}
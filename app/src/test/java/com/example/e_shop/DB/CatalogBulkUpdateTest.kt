@@ -0,0 +1,85 @@
+package com.example.e_shop.DB
+
+import androidx.test.core.app.ApplicationProvider
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.ByteArrayInputStream
+
+/**
+ * Массовые изменения каталога: цены и остатки категории одним выражением, остатки из файла изменений
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class CatalogBulkUpdateTest {
+
+    private lateinit var dbHandler: DataBaseHandler
+    private lateinit var products: ProductsTableHandler
+    private val ids = mutableListOf<Int>()
+
+    @Before
+    fun setUp() {
+        dbHandler = DataBaseHandler(ApplicationProvider.getApplicationContext())
+        products = ProductsTableHandler(dbHandler)
+        ids += products.addProduct("Bulk A", "", 100.0, 5, null, CATEGORY_ID).toInt()
+        ids += products.addProduct("Bulk B", "", 33.33, 1, null, CATEGORY_ID).toInt()
+        ids += products.addProduct("Bulk other", "", 50.0, 5, null, CATEGORY_ID + 1).toInt()
+    }
+
+    @Test
+    fun categoryPricesAndStock() {
+        val cart = UserCartTableHandler(dbHandler)
+        cart.addItemToCart(USER_ID, ids[0], 1)
+        assertEquals(100.0, cart.getCartProductList(USER_ID).first { it.product.id == ids[0] }.product.price, 0.0) // В кэше
+
+        assertEquals(2, products.adjustCategoryPrices(CATEGORY_ID, -15.0))
+        assertEquals(listOf(85.0, 28.33, 50.0), ids.map { products.findProductById(it).price }) // Округление до копеек
+        assertEquals(85.0, cart.getCartProductList(USER_ID).first { it.product.id == ids[0] }.product.price, 0.0) // Кэш корзины сброшен
+
+        assertEquals(2, products.adjustCategoryStock(CATEGORY_ID, -3))
+        assertEquals(listOf(2, 0, 5), ids.map { products.findProductById(it).quantity }) // Остаток не ниже нуля
+        try {
+            products.adjustCategoryPrices(CATEGORY_ID, -100.0)
+            fail("Price must stay positive")
+        } catch (expected: IllegalArgumentException) {
+        }
+    }
+
+    @Test
+    fun priceThatWouldRoundToZeroRejectsWholeChange() {
+        val cheap = products.addProduct("Bulk cheap", "", 0.01, 1, null, CATEGORY_ID).toInt()
+        val free = products.addProduct("Bulk free", "", 0.0, 1, null, CATEGORY_ID).toInt() // Уже нулевая цена не мешает
+        val before = (ids + cheap).map { products.findProductById(it).price }
+        try {
+            products.adjustCategoryPrices(CATEGORY_ID, -60.0) // 0.01 * 0.4 = 0.004 округляется до 0.00
+            fail("Price must stay positive")
+        } catch (expected: IllegalArgumentException) {
+        }
+        assertEquals(before, (ids + cheap).map { products.findProductById(it).price }) // Ни одна цена не изменилась
+
+        assertEquals(4, products.adjustCategoryPrices(CATEGORY_ID, -40.0)) // 0.006 округляется до 0.01
+        assertEquals(listOf(60.0, 20.0, 50.0, 0.01, 0.0), (ids + cheap + free).map { products.findProductById(it).price })
+        // Изменения идут через трассировщик, как остальные записи обработчиков
+        assertTrue(dbHandler.queryTracer.statementStats.any { it.sql == ProductsTableHandler.SQL_ADJUST_CATEGORY_PRICES })
+    }
+
+    @Test
+    fun stockDeltaFile() {
+        val csv = "delta,product_id\n4,${ids[0]}\n-10,${ids[1]}\n1,999999\nx,${ids[2]}\n"
+        val result = CatalogImporter(dbHandler).importStockDeltaCsv(ByteArrayInputStream(csv.toByteArray()), null)
+        assertEquals(4, result.rowsRead)
+        assertEquals(2, result.updated)
+        assertEquals(2, result.skipped) // Неизвестный продукт и неверное значение
+        assertEquals(listOf(9, 0, 5), ids.map { products.findProductById(it).quantity })
+    }
+
+    companion object {
+        private const val CATEGORY_ID = 901
+        private const val USER_ID = 1
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.e_shop.DB
+
+import androidx.test.core.app.ApplicationProvider
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.StringReader
+
+/**
+ * Разбор CSV по RFC 4180 и импорт каталога: обновление продукта по названию, вставка, создание категорий
+ * и пропуск некорректных строк
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class CatalogImporterTest {
+
+    private lateinit var dbHandler: DataBaseHandler
+
+    @Before
+    fun setUp() {
+        dbHandler = DataBaseHandler(ApplicationProvider.getApplicationContext())
+    }
+
+    @Test
+    fun csvReaderHandlesQuotesEscapesAndLineEndings() {
+        val reader = CatalogImporter.CsvReader(StringReader(
+            "name,description\r\n" +
+            "\"Phone, big\",\"First line\r\nsecond \"\"quoted\"\" line\"\r\n" +
+            "plain,\n" +
+            "last,\"\"\"\""))
+
+        assertEquals(listOf("name", "description"), reader.readRecord())
+        assertEquals(1, reader.lineNumber)
+        assertEquals(listOf("Phone, big", "First line\r\nsecond \"quoted\" line"), reader.readRecord())
+        assertEquals(3, reader.lineNumber) // Перевод строки внутри кавычек тоже считается
+        assertEquals(listOf("plain", ""), reader.readRecord())
+        assertEquals(listOf("last", "\""), reader.readRecord()) // Последняя строка без перевода строки
+        assertNull(reader.readRecord())
+    }
+
+    @Test
+    fun importUpdatesByNameInsertsNewAndSkipsInvalidRows() {
+        val existing = uniqueProductName()
+        val description = productColumns(existing)[0]
+        val csv = "category,name,price,quantity,description\r\n" +
+            "Импорт-тест,\"$existing\",123.45,7,\r\n" +
+            "импорт-тест,\"Новый, товар\",\"9,99\",3,\"Две строки\r\nи \"\"кавычки\"\"\"\r\n" +
+            "Импорт-тест,,10,1,без названия\r\n" +
+            "Импорт-тест,Без цены,abc,1,\r\n" +
+            "Импорт-тест,Минус,5,-1,\r\n"
+
+        val result = CatalogImporter(dbHandler).importCsv(csv.byteInputStream(), null)
+        assertEquals(5, result.rowsRead)
+        assertEquals(1, result.updated)
+        assertEquals(1, result.inserted)
+        assertEquals(3, result.skipped)
+        assertEquals(1, result.categoriesCreated) // Категории сопоставляются без учета регистра
+        assertEquals(3, result.errors.size)
+        assertTrue(result.errors.toString(), result.errors.all { it.startsWith("line ") })
+
+        val categoryId = dbHandler.queryFirst("SELECT id FROM Categories WHERE name = 'Импорт-тест'", null) { it.getLong(0) }!!
+        assertEquals(listOf("123.45 7 $categoryId"), productRows(existing))
+        assertEquals(description, productColumns(existing)[0]) // Пустое описание в файле не стирает описание продукта
+        assertEquals(listOf("9.99 3 $categoryId"), productRows("Новый, товар"))
+        assertEquals("Две строки\r\nи \"кавычки\"",
+            dbHandler.queryFirst("SELECT description FROM Products WHERE name = ?", arrayOf("Новый, товар")) { it.getString(0) })
+        assertTrue(productRows("Без цены").isEmpty())
+
+        // Повторный импорт того же файла только обновляет продукты
+        val again = CatalogImporter(dbHandler).importCsv(csv.byteInputStream(), null)
+        assertEquals(2, again.updated)
+        assertEquals(0, again.inserted)
+        assertEquals(0, again.categoriesCreated)
+    }
+
+    @Test
+    fun partialColumnImportKeepsOtherColumns() {
+        val existing = uniqueProductName()
+        dbHandler.writableDatabase.execSQL("UPDATE Products SET image_url = 'img.png' WHERE name = ?", arrayOf(existing))
+        val before = productColumns(existing)
+
+        val result = CatalogImporter(dbHandler).importCsv("name,price\r\n\"$existing\",77.5\r\nТолько цена,5\r\n".byteInputStream(), null)
+        assertEquals(1, result.updated)
+        assertEquals(1, result.inserted)
+        val after = productColumns(existing)
+        assertEquals("77.5", after[1])
+        // Описание, остаток, изображение и категория не указаны в файле и остаются прежними
+        assertEquals(before.filterIndexed { i, _ -> i != 1 }, after.filterIndexed { i, _ -> i != 1 })
+        assertEquals("img.png", after[3])
+        assertEquals(listOf(null, "5.0", "0", null, null), productColumns("Только цена")) // Новый продукт без остатка
+
+        // Колонка остатка с пустыми значениями тоже не меняет остаток
+        CatalogImporter(dbHandler).importCsv("name,price,quantity,description\r\n\"$existing\",80,,\r\n".byteInputStream(), null)
+        assertEquals(listOf(before[0], "80.0", before[2], before[3], before[4]), productColumns(existing))
+    }
+
+    // Название продукта, которое не повторяется в каталоге
+    private fun uniqueProductName(): String =
+        dbHandler.queryFirst("SELECT name FROM Products GROUP BY name HAVING COUNT(*) = 1 ORDER BY MIN(id) LIMIT 1", null) { it.getString(0) }!!
+
+    // Описание, цена, остаток, изображение и категория продукта с заданным названием
+    private fun productColumns(name: String): List<String?> =
+        dbHandler.queryFirst("SELECT description, price, quantity, image_url, category_id FROM Products WHERE name = ?", arrayOf(name)) { cursor ->
+            (0 until 5).map { cursor.getString(it) }
+        }!!
+
+    // Цена, остаток и категория продуктов с заданным названием
+    private fun productRows(name: String): List<String> =
+        dbHandler.queryList("SELECT price, quantity, category_id FROM Products WHERE name = ?", arrayOf(name)) {
+            "${it.getDouble(0)} ${it.getInt(1)} ${it.getLong(2)}"
+        }
+}
@@ -0,0 +1,198 @@
+package com.example.e_shop.DB
+
+import androidx.test.core.app.ApplicationProvider
+import com.sun.net.httpserver.HttpServer
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Синхронизация каталога против локального HTTP-сервера, который отдает заранее заданные страницы изменений
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class CatalogSyncEngineTest {
+
+    private lateinit var server: HttpServer
+    private lateinit var dbHandler: DataBaseHandler
+    private lateinit var engine: CatalogSyncEngine
+    private val pages = mutableMapOf<Long, String>() // Ответ сервера по параметру since
+    private val requests = CopyOnWriteArrayList<String>() // Полученные сервером запросы
+
+    @Before
+    fun setUp() {
+        server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext("/catalog/changes") { exchange ->
+            requests += exchange.requestURI.query
+            val since = Regex("since=(\\d+)").find(exchange.requestURI.query)!!.groupValues[1].toLong()
+            val body = pages[since]
+            val bytes = (body ?: "").toByteArray()
+            exchange.sendResponseHeaders(if (body == null) 500 else 200, if (bytes.isEmpty()) -1 else bytes.size.toLong())
+            exchange.responseBody.use { it.write(bytes) }
+        }
+        server.start()
+        dbHandler = DataBaseHandler(ApplicationProvider.getApplicationContext())
+        engine = CatalogSyncEngine(dbHandler, "http://127.0.0.1:${server.address.port}/")
+    }
+
+    @After
+    fun tearDown() {
+        server.stop(0)
+    }
+
+    @Test
+    fun appliesDeltaAndRequestsOnlyNewerChanges() {
+        pages[0] = """{"version": 5, "has_more": false,
+            "categories": [{"id": 900, "name": "Синхронизированные", "version": 4}],
+            "products": [{"id": 9000, "name": "Sync phone", "description": "d", "price": 10.5, "quantity": 3,
+                          "image_url": null, "category_id": 900, "version": 5, "extra": {"ignored": [1, 2]}}]}"""
+        pages[5] = """{"version": 5, "has_more": false, "categories": [], "products": []}"""
+
+        val first = engine.sync()
+        assertEquals(5, first.version)
+        assertEquals(1, first.categoriesChanged)
+        assertEquals(1, first.productsChanged)
+        assertEquals(5, engine.getSyncedVersion())
+        assertEquals("Sync phone", productName(9000))
+        assertTrue(dbHandler.allCategories.contains("Синхронизированные"))
+
+        val second = engine.sync()
+        assertEquals(0, second.productsChanged)
+        assertEquals(listOf("since=0&limit=1000", "since=5&limit=1000"), requests)
+    }
+
+    @Test
+    fun followsPagesUntilHasMoreIsFalse() {
+        pages[0] = """{"version": 2, "has_more": true, "products": [{"id": 9001, "name": "A", "price": 1, "version": 2}]}"""
+        pages[2] = """{"version": 3, "has_more": false, "products": [{"id": 9002, "name": "B", "price": 2, "version": 3}]}"""
+
+        val result = engine.sync()
+        assertEquals(2, result.pages)
+        assertEquals(3, result.version)
+        assertEquals("A", productName(9001))
+        assertEquals("B", productName(9002))
+    }
+
+    @Test
+    fun ignoresStaleRowsAndDeletesFromCarts() {
+        pages[0] = """{"version": 10, "products": [{"id": 9003, "name": "New", "price": 5, "version": 10}]}"""
+        engine.sync()
+        UserCartTableHandler(dbHandler).addItemToCart(1, 9003, 1)
+
+        // Повторная доставка старой версии ничего не меняет, удаление с новой версией убирает продукт и из корзины
+        pages[10] = """{"version": 12, "products": [{"id": 9003, "name": "Old", "price": 4, "version": 9},
+                                                     {"id": 9003, "deleted": true, "version": 12}]}"""
+        val result = engine.sync()
+        assertEquals(0, result.productsChanged)
+        assertEquals(1, result.deleted)
+        assertNull(productName(9003))
+        assertFalse(UserCartTableHandler(dbHandler).getCartItemList(1).any { it.productId == 9003 })
+    }
+
+    @Test
+    fun malformedPageIsRolledBack() {
+        pages[0] = """{"version": 7, "products": [{"id": 9004, "name": "Partial", "price": 1, "version": 7}, {"id": """
+        try {
+            engine.sync()
+            fail("Malformed response must fail")
+        } catch (expected: IOException) {
+        }
+        assertEquals(0, engine.getSyncedVersion())
+        assertNull(productName(9004))
+    }
+
+    @Test
+    fun serverErrorKeepsVersion() {
+        try {
+            engine.sync() // Для since=0 страница не задана: сервер отвечает 500
+            fail("HTTP error must fail")
+        } catch (expected: IOException) {
+        }
+        assertEquals(0, engine.getSyncedVersion())
+    }
+
+    @Test
+    fun syncInvalidatesCachedCatalog() {
+        val products = ProductsTableHandler(dbHandler)
+        val before = products.getProductSummaryList("Cached sync", 0) // Результат попадает в кэш запросов
+        assertTrue(before.isEmpty())
+        pages[0] = """{"version": 1, "products": [{"id": 9005, "name": "Cached sync item", "price": 3, "version": 1}]}"""
+        engine.sync()
+        assertEquals(listOf(9005), products.getProductSummaryList("Cached sync", 0).map { it.id })
+    }
+
+    @Test
+    fun appliesProductAttributes() {
+        val attributes = ProductAttributesTableHandler(dbHandler)
+        pages[0] = """{"version": 1, "products": [{"id": 9006, "name": "Attr phone", "price": 3, "version": 1,
+                                                    "attributes": {"Бренд": "Apple", "Память": 128}}]}"""
+        pages[1] = """{"version": 2, "products": [{"id": 9006, "name": "Attr phone 2", "price": 4, "version": 2}]}"""
+        pages[2] = """{"version": 3, "products": [{"id": 9006, "deleted": true, "version": 3}]}"""
+
+        engine.sync()
+        assertEquals(mapOf("Бренд" to "Apple", "Память" to "128"), attributes.getProductAttributes(9006))
+        engine.sync() // Без поля attributes характеристики не меняются
+        assertEquals(mapOf("Бренд" to "Apple", "Память" to "128"), attributes.getProductAttributes(9006))
+        engine.sync() // Удаление продукта удаляет и его характеристики
+        assertTrue(attributes.getProductAttributes(9006).isEmpty())
+    }
+
+    @Test
+    fun deletedProductLeavesCartTombstoneThatOtherDevicesCannotOverride() {
+        pages[0] = """{"version": 1, "products": [{"id": 9007, "name": "Tombstoned", "price": 2, "version": 1}]}"""
+        pages[1] = """{"version": 2, "products": [{"id": 9007, "deleted": true, "version": 2}]}"""
+        engine.sync()
+        UserCartTableHandler(dbHandler).addItemToCart(USER_ID, 9007, 2)
+        val addedHlc = cartEntryHlc(9007)!!
+
+        engine.sync()
+        assertEquals(0, dbHandler.queryFirst("SELECT quantity FROM CartEntries WHERE user_id = $USER_ID AND product_id = 9007", null) { it.getInt(0) })
+        assertTrue(cartEntryHlc(9007)!! > addedHlc)
+
+        // Другое устройство еще не получило удаление и присылает свое значение того же продукта
+        val stale = CartSyncEngine.Entry(9007, 2, addedHlc, Long.MAX_VALUE)
+        CartSyncEngine(dbHandler) { _, _, cursor -> CartRelay.Exchange(listOf(stale), cursor + 1) }.sync(USER_ID)
+        assertFalse(UserCartTableHandler(dbHandler).getCartItemList(USER_ID).any { it.productId == 9007 })
+    }
+
+    @Test
+    fun deletedCategoryTakesItsProductsAlong() {
+        pages[0] = """{"version": 1, "categories": [{"id": 901, "name": "Закрытая", "version": 1}],
+            "products": [{"id": 9008, "name": "Orphan", "price": 1, "category_id": 901, "version": 1},
+                         {"id": 9009, "name": "Moving", "price": 1, "category_id": 901, "version": 1}]}"""
+        // Сервер переносит один продукт в другую категорию и удаляет категорию вместе с остальными
+        pages[1] = """{"version": 2, "categories": [{"id": 901, "deleted": true, "version": 2}],
+            "products": [{"id": 9009, "name": "Moved", "price": 1, "category_id": 1, "version": 2}]}"""
+        engine.sync()
+        UserCartTableHandler(dbHandler).addItemToCart(USER_ID, 9008, 1)
+
+        engine.sync()
+        assertNull(productName(9008))
+        assertEquals("Moved", productName(9009))
+        assertFalse(dbHandler.allCategories.contains("Закрытая"))
+        assertFalse(UserCartTableHandler(dbHandler).getCartItemList(USER_ID).any { it.productId == 9008 })
+    }
+
+    // Метка HLC записи корзины пользователя для продукта или null, если записи нет
+    private fun cartEntryHlc(productId: Int): Long? =
+        dbHandler.queryFirst("SELECT hlc FROM CartEntries WHERE user_id = $USER_ID AND product_id = $productId", null) { it.getLong(0) }
+
+    // Название продукта по id или null, если продукта нет
+    private fun productName(id: Int): String? =
+        dbHandler.queryFirst("SELECT name FROM Products WHERE id = ?", arrayOf(id.toString())) { it.getString(0) }
+
+    companion object {
+        private const val USER_ID = 1 // Пользователь admin из предзаполненной базы
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.e_shop.DB
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.BitSet
+import kotlin.random.Random
+
+/**
+ * Сжатое множество против java.util.BitSet: переходы массив <-> карта, несколько блоков по старшим 16 битам
+ * и независимость результатов and/or от аргументов
+ */
+class CompressedBitmapTest {
+
+    @Test
+    fun randomSetsAgreeWithBitSet() {
+        for (seed in 1..20) {
+            val random = Random(seed)
+            val (a, expectedA) = randomSet(random)
+            val (b, expectedB) = randomSet(random)
+            assertSameSet(expectedA, a, "seed $seed: a")
+            assertSameSet(expectedB, b, "seed $seed: b")
+
+            val and = expectedA.clone() as BitSet
+            and.and(expectedB)
+            val or = expectedA.clone() as BitSet
+            or.or(expectedB)
+            assertSameSet(and, CompressedBitmap.and(a, b), "seed $seed: and")
+            assertSameSet(or, CompressedBitmap.or(a, b), "seed $seed: or")
+            assertEquals("seed $seed: andCardinality", and.cardinality(), CompressedBitmap.andCardinality(a, b))
+            for (probe in 0 until 50) {
+                val value = random.nextInt(BLOCKS * BLOCK)
+                assertEquals("seed $seed: contains $value", expectedA[value], a.contains(value))
+            }
+        }
+    }
+
+    @Test
+    fun arrayBlockBecomesBitmapAboveArrayMax() {
+        val bitmap = CompressedBitmap()
+        val expected = BitSet()
+        for (value in 0 until 4096 * 2 step 2) { // Ровно ARRAY_MAX значений: блок еще массив
+            bitmap.add(BLOCK + value)
+            expected.set(BLOCK + value)
+        }
+        bitmap.add(BLOCK + 1) // Значение в середине: массив становится картой
+        expected.set(BLOCK + 1)
+        assertSameSet(expected, bitmap, "after conversion")
+        for (value in 4096 * 2 until BLOCK step 7) { // Добавления в карту после перехода
+            bitmap.add(BLOCK + value)
+            expected.set(BLOCK + value)
+        }
+        assertSameSet(expected, bitmap, "bitmap")
+        assertSameSet(expected, CompressedBitmap.or(bitmap, CompressedBitmap()), "copy")
+    }
+
+    @Test
+    fun intersectionOfBitmapsBecomesArray() {
+        val evens = CompressedBitmap()
+        val multiplesOfThree = CompressedBitmap()
+        val head = CompressedBitmap()
+        for (value in 0 until BLOCK) {
+            if (value % 2 == 0) evens.add(value)
+            if (value % 3 == 0) multiplesOfThree.add(value)
+            if (value < 8000) head.add(value)
+        }
+        // Все три блока - карты; пересечение кратных 2 и 3 (10923 значения) остается картой
+        assertEquals(10923, CompressedBitmap.and(evens, multiplesOfThree).cardinality())
+
+        val sparse = CompressedBitmap.and(evens, head) // 4000 значений: не больше ARRAY_MAX, хранится массивом
+        assertArrayEquals((0 until 8000 step 2).toList().toIntArray(), sparse.toArray())
+        assertTrue(sparse.sizeBytes() < 8192)
+        sparse.add(1)
+        assertTrue(sparse.contains(1))
+        assertFalse(evens.contains(1))
+    }
+
+    @Test
+    fun unionDoesNotShareBlocksWithArguments() {
+        val a = CompressedBitmap()
+        val b = CompressedBitmap()
+        a.add(1)
+        for (value in 0 until BLOCK step 2) a.add(2 * BLOCK + value) // Плотный блок только в a
+        b.add(BLOCK + 1) // Разреженный блок только в b
+        b.add(1)
+
+        val union = CompressedBitmap.or(a, b)
+        union.add(2 * BLOCK + 1)
+        union.add(BLOCK + 2)
+        union.add(3)
+        assertFalse(a.contains(2 * BLOCK + 1))
+        assertFalse(b.contains(BLOCK + 2))
+        assertFalse(a.contains(3))
+        assertFalse(b.contains(3))
+        assertEquals(BLOCK / 2 + 1, a.cardinality())
+        assertEquals(2, b.cardinality())
+    }
+
+    // Случайное множество в нескольких блоках: пустые, разреженные, плотные и около границы ARRAY_MAX
+    private fun randomSet(random: Random): Pair<CompressedBitmap, BitSet> {
+        val bitmap = CompressedBitmap()
+        val expected = BitSet()
+        val values = mutableListOf<Int>()
+        for (block in 0 until BLOCKS) {
+            val count = when (random.nextInt(4)) {
+                0 -> 0
+                1 -> random.nextInt(1, 100)
+                2 -> random.nextInt(4000, 4200)
+                else -> random.nextInt(10_000, 40_000)
+            }
+            repeat(count) { values += block * BLOCK + random.nextInt(BLOCK) }
+        }
+        if (random.nextBoolean()) values.shuffle(random) else values.sort() // Добавление вразнобой и по возрастанию
+        for (value in values) {
+            bitmap.add(value)
+            expected.set(value)
+        }
+        return bitmap to expected
+    }
+
+    private fun assertSameSet(expected: BitSet, actual: CompressedBitmap, message: String) {
+        assertArrayEquals(message, expected.stream().toArray(), actual.toArray())
+        assertEquals(message, expected.cardinality(), actual.cardinality())
+        assertEquals(message, expected.isEmpty, actual.isEmpty)
+    }
+
+    companion object {
+        private const val BLOCK = 65536 // Значений в блоке (младшие 16 бит)
+        private const val BLOCKS = 5
+    }
+}
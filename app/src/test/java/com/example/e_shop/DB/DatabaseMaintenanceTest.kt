@@ -0,0 +1,80 @@
+package com.example.e_shop.DB
+
+import androidx.test.core.app.ApplicationProvider
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+/**
+ * Обслуживание базы: возврат свободных страниц, бюджет времени и журнал шагов
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class DatabaseMaintenanceTest {
+
+    private lateinit var dbHandler: DataBaseHandler
+
+    @Before
+    fun setUp() {
+        dbHandler = DataBaseHandler(ApplicationProvider.getApplicationContext())
+    }
+
+    @Test
+    fun reclaimsFreePagesAndLogsSteps() {
+        // Первый запуск переводит базу в auto_vacuum = INCREMENTAL полным VACUUM, следующий возвращает страницы порциями
+        for (run in 1..2) {
+            fillAndDelete()
+            val report = dbHandler.maintenance.run(60_000)
+            assertEquals(listOf(DatabaseMaintenance.STEP_ANALYZE, DatabaseMaintenance.STEP_OPTIMIZE,
+                DatabaseMaintenance.STEP_CHECKPOINT, DatabaseMaintenance.STEP_VACUUM), report.steps.map { it.name })
+            val vacuum = report.steps.last()
+            assertEquals(DatabaseMaintenance.STATUS_DONE, vacuum.status)
+            assertTrue("Reclaimed ${vacuum.bytesReclaimed}", vacuum.bytesReclaimed >= 1024 * 1024)
+            assertEquals(0L, pragma("PRAGMA main.freelist_count"))
+        }
+        assertEquals(2L, pragma("PRAGMA main.auto_vacuum"))
+        assertEquals(DatabaseMaintenance.STATUS_SKIPPED, dbHandler.maintenance.run(60_000).steps[2].status) // База без WAL
+        assertTrue(pragma("SELECT COUNT(*) FROM sqlite_master WHERE name = 'sqlite_stat1'") == 1L) // Статистика собрана
+        assertEquals(12L, pragma("SELECT COUNT(*) FROM MaintenanceLog"))
+    }
+
+    @Test
+    fun exhaustedBudgetSkipsSteps() {
+        val report = dbHandler.maintenance.run(0)
+        assertTrue(report.steps.all { it.status == DatabaseMaintenance.STATUS_NO_BUDGET })
+        assertEquals(4L, pragma("SELECT COUNT(*) FROM MaintenanceLog WHERE status = 'no_budget'"))
+    }
+
+    @Test
+    fun fullVacuumThatDoesNotFitBudgetIsNotStarted() {
+        fillAndDelete()
+        val free = pragma("PRAGMA main.freelist_count")
+        val vacuum = dbHandler.maintenance.run(1).steps.last() // Файл в несколько мегабайт за миллисекунду не перестроить
+        assertEquals(DatabaseMaintenance.STATUS_NO_BUDGET, vacuum.status)
+        assertEquals(0L, pragma("PRAGMA main.auto_vacuum"))
+        assertEquals(free, pragma("PRAGMA main.freelist_count"))
+        assertEquals(1L, pragma("SELECT COUNT(*) FROM MaintenanceLog WHERE step = 'incremental_vacuum' AND status = 'no_budget'"))
+    }
+
+    // Оставляет в файле больше мегабайта свободных страниц
+    private fun fillAndDelete() {
+        val db = dbHandler.writableDatabase
+        db.beginTransaction()
+        try {
+            val address = "x".repeat(1000)
+            repeat(2000) {
+                db.execSQL("INSERT INTO Orders (user_id, order_date, status, delivery_address) VALUES (1, 0, 0, ?)", arrayOf(address))
+            }
+            db.execSQL("DELETE FROM Orders WHERE delivery_address = ?", arrayOf(address))
+            db.setTransactionSuccessful()
+        } finally {
+            db.endTransaction()
+        }
+    }
+
+    private fun pragma(sql: String): Long = dbHandler.queryFirst(sql, null) { it.getLong(0) }!!
+}
@@ -0,0 +1,138 @@
+package com.example.e_shop.DB
+
+import androidx.test.core.app.ApplicationProvider
+import com.example.e_shop.DataClasses.ProductFilter
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+/**
+ * Фасетный фильтр: счетчики по битовым картам и согласованность с постраничной выборкой каталога
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class FacetEngineTest {
+
+    private lateinit var dbHandler: DataBaseHandler
+    private lateinit var products: ProductsTableHandler
+    private lateinit var attributes: ProductAttributesTableHandler
+    private lateinit var engine: FacetEngine
+    private val ids = mutableMapOf<String, Int>() // Название продукта -> id
+
+    @Before
+    fun setUp() {
+        dbHandler = DataBaseHandler(ApplicationProvider.getApplicationContext())
+        products = ProductsTableHandler(dbHandler)
+        attributes = ProductAttributesTableHandler(dbHandler)
+        engine = dbHandler.facetEngine
+        add("Facet A1", 100.0, 1, "Apple", "128 ГБ", "Черный")
+        add("Facet A2", 200.0, 1, "Apple", "256 ГБ", "Белый")
+        add("Facet S1", 300.0, 1, "Samsung", "128 ГБ", "Черный")
+        add("Facet S2", 400.0, 2, "Samsung", "256 ГБ", "Черный")
+        add("Facet X1", 50.0, 1, "Xiaomi", "64 ГБ", null)
+    }
+
+    @Test
+    fun countsWithoutSelection() {
+        val result = engine.query(ProductFilter(categoryId = 1))
+        assertEquals(mapOf("Apple" to 2, "Samsung" to 1, "Xiaomi" to 1), counts(result, "Бренд"))
+        assertEquals(listOf("64 ГБ", "128 ГБ", "256 ГБ"), counts(result, "Память").keys.toList()) // Числовой порядок значений
+        assertEquals(mapOf("Черный" to 2, "Белый" to 1), counts(result, "Цвет"))
+    }
+
+    @Test
+    fun valuesAreOredWithinAttributeAndAndedAcrossAttributes() {
+        val all = engine.query(ProductFilter())
+        val filter = ProductFilter(attributes = mapOf(
+            attributeId(all, "Бренд") to setOf(valueId(all, "Бренд", "Apple"), valueId(all, "Бренд", "Samsung")),
+            attributeId(all, "Цвет") to setOf(valueId(all, "Цвет", "Черный"))))
+
+        val result = engine.query(filter)
+        assertEquals(3, result.matchCount) // A1, S1, S2
+        // Счетчики бренда не учитывают выбор бренда: сколько черных продуктов у каждого бренда
+        assertEquals(mapOf("Apple" to 1, "Samsung" to 2), counts(result, "Бренд"))
+        // Счетчики цвета не учитывают выбор цвета: цвета продуктов Apple и Samsung
+        assertEquals(mapOf("Черный" to 3, "Белый" to 1), counts(result, "Цвет"))
+        assertEquals(mapOf("128 ГБ" to 2, "256 ГБ" to 1), counts(result, "Память"))
+        assertTrue(result.facets.first { it.name == "Бренд" }.values.filter { it.selected }.map { it.value }.containsAll(listOf("Apple", "Samsung")))
+    }
+
+    @Test
+    fun matchesAgreeWithCatalogPages() {
+        val all = engine.query(ProductFilter())
+        val black = attributeId(all, "Цвет") to setOf(valueId(all, "Цвет", "Черный"))
+        val storage = attributeId(all, "Память") to setOf(valueId(all, "Память", "128 ГБ"), valueId(all, "Память", "64 ГБ"))
+        for (filter in listOf(
+            ProductFilter(attributes = mapOf(black)),
+            ProductFilter(categoryId = 1, attributes = mapOf(black, storage)),
+            ProductFilter(query = "facet", minPrice = 60.0, maxPrice = 350.0, attributes = mapOf(storage)),
+            ProductFilter(query = "facet s", sort = ProductsTableHandler.SortOrder.PRICE_DESC, attributes = mapOf(black))
+        )) {
+            val page = products.getProductSummaryPage(filter, null, 1000)
+            assertEquals(filter.toString(), page.size, engine.query(filter).matchCount)
+        }
+    }
+
+    @Test
+    fun countsFollowChanges() {
+        engine.query(ProductFilter()) // Карты построены
+        attributes.setProductAttributes(ids.getValue("Facet X1"), mapOf("Бренд" to "Samsung"))
+        assertEquals(mapOf("Apple" to 2, "Samsung" to 3), counts(engine.query(ProductFilter()), "Бренд"))
+
+        products.deleteProduct(ids.getValue("Facet A2"))
+        val result = engine.query(ProductFilter())
+        assertEquals(mapOf("Apple" to 1, "Samsung" to 3), counts(result, "Бренд"))
+        assertEquals(mapOf("Черный" to 3), counts(result, "Цвет")) // Значение без продуктов не показывается
+    }
+
+    @Test
+    fun engineBelongsToItsHandler() {
+        assertSame(engine, dbHandler.facetEngine)
+        // Новый обработчик того же файла получает свой движок, а не карты, построенные через прежний
+        val other = DataBaseHandler(ApplicationProvider.getApplicationContext())
+        assertNotSame(engine, other.facetEngine)
+        assertEquals(mapOf("Apple" to 2, "Samsung" to 1, "Xiaomi" to 1), counts(other.facetEngine.query(ProductFilter(categoryId = 1)), "Бренд"))
+        other.close()
+    }
+
+    @Test
+    fun trimmedMapsAreRebuiltOnNextQuery() {
+        val before = counts(engine.query(ProductFilter()), "Бренд")
+        assertTrue(engine.sizeBytes > 0)
+        engine.trimToBytes(engine.sizeBytes) // Карты помещаются в цель и остаются
+        assertTrue(engine.sizeBytes > 0)
+
+        engine.trimToBytes(0) // Нехватка памяти: карты освобождаются целиком
+        assertEquals(0L, engine.sizeBytes)
+        assertEquals(before, counts(engine.query(ProductFilter()), "Бренд"))
+        assertTrue(engine.sizeBytes > 0)
+
+        engine.setMaxBytes(1) // Карты больше бюджета отвечают на запрос, но не хранятся
+        assertEquals(before, counts(engine.query(ProductFilter()), "Бренд"))
+        assertEquals(0L, engine.sizeBytes)
+    }
+
+    // Добавляет продукт с характеристиками
+    private fun add(name: String, price: Double, categoryId: Int, brand: String, storage: String, color: String?) {
+        val id = products.addProduct(name, "", price, 1, null, categoryId).toInt()
+        ids[name] = id
+        val values = mutableMapOf("Бренд" to brand, "Память" to storage)
+        if (color != null) values["Цвет"] = color
+        attributes.setProductAttributes(id, values)
+    }
+
+    private fun counts(result: FacetEngine.Result, attribute: String): Map<String, Int> =
+        result.facets.first { it.name == attribute }.values.associate { it.value to it.count }
+
+    private fun attributeId(result: FacetEngine.Result, attribute: String): Int =
+        result.facets.first { it.name == attribute }.attributeId
+
+    private fun valueId(result: FacetEngine.Result, attribute: String, value: String): Int =
+        result.facets.first { it.name == attribute }.values.first { it.value == value }.valueId
+}
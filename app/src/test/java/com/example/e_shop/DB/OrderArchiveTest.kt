@@ -0,0 +1,135 @@
+package com.example.e_shop.DB
+
+import androidx.test.core.app.ApplicationProvider
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+/**
+ * Перенос старых заказов в подключенный архив и страницы истории, которые продолжаются по архиву
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class OrderArchiveTest {
+
+    private lateinit var dbHandler: DataBaseHandler
+    private lateinit var orders: OrdersTableHandler
+
+    @Before
+    fun setUp() {
+        dbHandler = DataBaseHandler(ApplicationProvider.getApplicationContext())
+        orders = OrdersTableHandler(dbHandler)
+    }
+
+    @Test
+    fun movesOldCompletedOrdersInBatches() {
+        val old = OrderExporter.parseDay("2020-01-01")!!
+        val delivered = (1..600).map { addOrder(old + it, OrdersTableHandler.STATUS_DELIVERED) } // Больше одной пачки
+        val pending = addOrder(old, OrdersTableHandler.STATUS_PENDING) // Незавершенный заказ остается в основной базе
+        val recent = addOrder(System.currentTimeMillis(), OrdersTableHandler.STATUS_DELIVERED)
+        OrderDetailsTableHandler(dbHandler).addOrderDetail(delivered[0], 1, 2, 5.0)
+
+        val result = OrderArchive(dbHandler).archiveOlderThan(OrderExporter.parseDay("2021-01-01")!!)
+        assertEquals(600, result.orders)
+        assertEquals(1, result.lines)
+        assertEquals(2, result.batches)
+        assertEquals(600L, count("SELECT COUNT(*) FROM archive.Orders"))
+        assertEquals(0L, count("SELECT COUNT(*) FROM main.Orders WHERE id IN (${delivered.joinToString()})"))
+        assertEquals(1L, count("SELECT COUNT(*) FROM archive.OrderDetails WHERE order_id = ${delivered[0]}"))
+        assertEquals(0L, count("SELECT COUNT(*) FROM main.OrderDetails WHERE order_id = ${delivered[0]}"))
+        assertEquals(listOf(recent), orders.getOrderListByUserId(USER_ID).take(1).map { it.id })
+        assertTrue(orders.getOrderListByUserId(USER_ID).any { it.id == pending })
+
+        // Повторный запуск ничего не находит; новый заказ не получает id заказа из архива
+        assertEquals(0, OrderArchive(dbHandler).archiveOlderThan(OrderExporter.parseDay("2021-01-01")!!).orders)
+        assertTrue(addOrder(System.currentTimeMillis(), OrdersTableHandler.STATUS_PENDING) > delivered.last())
+    }
+
+    @Test
+    fun fullBatchesStayWithinVariableLimitOfOldSqlite() {
+        // SQLite до 3.32 (API 24-29) допускает не больше 999 параметров; Robolectric этот предел не проверяет
+        for (sql in OrderArchive.moveStatements(OrderArchive.BATCH_SIZE)) {
+            assertTrue(sql, sql.count { it == '?' } <= 999)
+        }
+        val old = OrderExporter.parseDay("2020-01-01")!!
+        val delivered = (1..1100).map { addOrder(old + it, OrdersTableHandler.STATUS_DELIVERED) } // Две полные пачки и остаток
+        addOrder(System.currentTimeMillis(), OrdersTableHandler.STATUS_PENDING)
+        val details = OrderDetailsTableHandler(dbHandler)
+        for (i in delivered.indices step 100) details.addOrderDetail(delivered[i], 1, 1, 5.0)
+
+        val result = OrderArchive(dbHandler).archiveOlderThan(OrderExporter.parseDay("2021-01-01")!!)
+        assertEquals(1100, result.orders)
+        assertEquals(11, result.lines)
+        assertEquals(3, result.batches)
+        assertEquals(1100L, count("SELECT COUNT(*) FROM archive.Orders WHERE id BETWEEN ${delivered.first()} AND ${delivered.last()}"))
+        assertEquals(11L, count("SELECT COUNT(*) FROM archive.OrderDetails WHERE order_id BETWEEN ${delivered.first()} AND ${delivered.last()}"))
+        assertEquals(0L, count("SELECT COUNT(*) FROM main.Orders WHERE id BETWEEN ${delivered.first()} AND ${delivered.last()}"))
+    }
+
+    @Test
+    fun orderAlreadyCopiedBeforeCrashIsNotDuplicated() {
+        val old = OrderExporter.parseDay("2020-01-01")!!
+        val copied = addOrder(old, OrdersTableHandler.STATUS_DELIVERED)
+        val other = addOrder(old + 1, OrdersTableHandler.STATUS_DELIVERED)
+        addOrder(System.currentTimeMillis(), OrdersTableHandler.STATUS_PENDING)
+        val details = OrderDetailsTableHandler(dbHandler)
+        details.addOrderDetail(copied, 1, 2, 5.0)
+        details.addOrderDetail(other, 1, 1, 5.0)
+        // Сбой между фиксациями файлов: архив уже содержит заказ с позицией, основная база еще тоже
+        val db = dbHandler.writableDatabase
+        db.execSQL("INSERT INTO archive.Orders SELECT id, user_id, order_date, status, total_price, delivery_address FROM main.Orders WHERE id = $copied")
+        db.execSQL("INSERT INTO archive.OrderDetails (order_id, product_id, quantity, price_per_item) "
+                + "SELECT order_id, product_id, quantity, price_per_item FROM main.OrderDetails WHERE order_id = $copied")
+
+        val result = OrderArchive(dbHandler).archiveOlderThan(OrderExporter.parseDay("2021-01-01")!!)
+        assertEquals(2, result.orders)
+        assertEquals(1L, count("SELECT COUNT(*) FROM archive.Orders WHERE id = $copied"))
+        assertEquals(1L, count("SELECT COUNT(*) FROM archive.OrderDetails WHERE order_id = $copied"))
+        assertEquals(1L, count("SELECT COUNT(*) FROM archive.OrderDetails WHERE order_id = $other"))
+        assertEquals(0L, count("SELECT COUNT(*) FROM main.Orders WHERE id IN ($copied, $other)"))
+        assertEquals(0L, count("SELECT COUNT(*) FROM main.OrderDetails WHERE order_id IN ($copied, $other)"))
+    }
+
+    @Test
+    fun historyPagesReadArchiveAfterRecentOrders() {
+        val old = OrderExporter.parseDay("2020-01-01")!!
+        val archived = (1..30).map { addOrder(old + it, OrdersTableHandler.STATUS_CANCELLED) }
+        addOrder(System.currentTimeMillis(), OrdersTableHandler.STATUS_PENDING)
+        OrderArchive(dbHandler).archiveOlderThan(OrderExporter.parseDay("2021-01-01")!!)
+        val recentCount = orders.getOrderListByUserId(USER_ID).size
+
+        // Первая страница из недавних заказов не обращается к архиву
+        val first = orders.getOrderPage(USER_ID, null, recentCount)
+        assertFalse(first.any { it.archived })
+
+        // Остальные страницы идут по архиву от новых к старым без пропусков и повторов
+        val history = first.toMutableList()
+        while (true) {
+            val page = orders.getOrderPage(USER_ID, history.last(), 7)
+            history += page
+            if (page.size < 7) break
+        }
+        assertEquals(archived.reversed(), history.filter { it.archived }.map { it.id })
+        assertEquals(recentCount + archived.size, history.map { it.id }.toSet().size)
+        assertEquals("Отменён", history.last().statusName)
+    }
+
+    // Добавляет заказ пользователя с заданными временем и статусом
+    private fun addOrder(orderDate: Long, status: Int): Int {
+        val id = orders.addOrder(USER_ID, 10.0, "addr").toInt()
+        dbHandler.writableDatabase.execSQL("UPDATE Orders SET order_date = ?, status = ? WHERE id = ?", arrayOf<Any>(orderDate, status, id))
+        dbHandler.queryCache.invalidate(OrdersTableHandler.TABLE_ORDERS)
+        return id
+    }
+
+    private fun count(sql: String): Long = dbHandler.queryFirst(sql, null) { it.getLong(0) }!!
+
+    companion object {
+        private const val USER_ID = 1
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.e_shop.DB
+
+import androidx.test.core.app.ApplicationProvider
+import org.json.JSONObject
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.StringWriter
+
+/**
+ * Выгрузка заказов: слияние страницы заказов с позициями по диапазону order_id и продолжение после прерывания
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class OrderExporterTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private lateinit var dbHandler: DataBaseHandler
+    private lateinit var exporter: OrderExporter
+
+    @Before
+    fun setUp() {
+        dbHandler = DataBaseHandler(ApplicationProvider.getApplicationContext())
+        exporter = OrderExporter(dbHandler)
+    }
+
+    @Test
+    fun mergesDetailsIntoOrdersAndSkipsFilteredOnes() {
+        val day = OrderExporter.parseDay("2031-01-10")!!
+        val twoLines = addOrder(day, "Москва, ул. Ленина")
+        val outside = addOrder(OrderExporter.parseDay("2031-03-01")!!, "addr") // Между заказами диапазона, отфильтрован
+        val noLines = addOrder(day + 1000, "addr")
+        val oneLine = addOrder(day + 2000, "addr")
+        addDetail(twoLines, 1, 2, 5.0)
+        addDetail(twoLines, 2, 1, 7.5)
+        addDetail(outside, 3, 9, 1.0)
+        addDetail(oneLine, 4, 3, 2.0)
+
+        val csv = StringWriter()
+        val result = exporter.export(csv, OrderExporter.Format.CSV, "2031-01-10", "2031-01-10", 0, null)
+        assertEquals(3, result.orders)
+        assertEquals(3, result.lines)
+        assertEquals(oneLine.toLong(), result.lastOrderId)
+        assertEquals(listOf(
+            "$twoLines,$USER_ID,2031-01-10T00:00:00Z,В ожидании,10.00,\"Москва, ул. Ленина\",1,2,5.00",
+            "$twoLines,$USER_ID,2031-01-10T00:00:00Z,В ожидании,10.00,\"Москва, ул. Ленина\",2,1,7.50",
+            "$noLines,$USER_ID,2031-01-10T00:00:01Z,В ожидании,10.00,addr,,,",
+            "$oneLine,$USER_ID,2031-01-10T00:00:02Z,В ожидании,10.00,addr,4,3,2.00"
+        ), csv.toString().lines().drop(1).filter { it.isNotEmpty() })
+
+        val jsonl = StringWriter()
+        exporter.export(jsonl, OrderExporter.Format.JSON_LINES, "2031-01-10", "2031-01-10", 0, null)
+        val orders = jsonl.toString().lines().filter { it.isNotEmpty() }.map { JSONObject(it) }
+        assertEquals(listOf(twoLines, noLines, oneLine), orders.map { it.getInt("order_id") })
+        assertEquals(listOf(2, 0, 1), orders.map { it.getJSONArray("items").length() })
+        assertEquals(2, orders[0].getJSONArray("items").getJSONObject(1).getInt("product_id"))
+    }
+
+    @Test
+    fun exportOfArchivedPeriodReadsArchive() {
+        val day = OrderExporter.parseDay("2020-06-01")!!
+        val archived = addOrder(day, "addr")
+        val stillInMain = addOrder(day + 1000, "addr") // Перенесен до сбоя: есть в обеих базах
+        addDetail(archived, 1, 2, 5.0)
+        addDetail(stillInMain, 2, 1, 3.0)
+        addOrder(System.currentTimeMillis(), "addr") // Заказ с наибольшим id не архивируется
+        dbHandler.writableDatabase.execSQL("UPDATE Orders SET status = ${OrdersTableHandler.STATUS_DELIVERED} WHERE id IN ($archived, $stillInMain)")
+        OrderArchive(dbHandler).archiveOlderThan(OrderExporter.parseDay("2021-01-01")!!)
+        assertEquals(0L, dbHandler.queryFirst("SELECT COUNT(*) FROM main.Orders WHERE id IN ($archived, $stillInMain)", null) { it.getLong(0) })
+        val db = dbHandler.writableDatabase
+        db.execSQL("INSERT INTO main.Orders (id, user_id, order_date, status, total_price, delivery_address) "
+                + "SELECT id, user_id, order_date, status, total_price, delivery_address FROM archive.Orders WHERE id = $stillInMain")
+        db.execSQL("INSERT INTO main.OrderDetails (order_id, product_id, quantity, price_per_item) "
+                + "SELECT order_id, product_id, quantity, price_per_item FROM archive.OrderDetails WHERE order_id = $stillInMain")
+
+        val csv = StringWriter()
+        val result = exporter.export(csv, OrderExporter.Format.CSV, "2020-06-01", "2020-06-01", 0, null)
+        assertEquals(2, result.orders) // Заказ из обеих баз выгружается один раз
+        assertEquals(listOf(
+            "$archived,$USER_ID,2020-06-01T00:00:00Z,Доставлен,10.00,addr,1,2,5.00",
+            "$stillInMain,$USER_ID,2020-06-01T00:00:01Z,Доставлен,10.00,addr,2,1,3.00"
+        ), csv.toString().lines().drop(1).filter { it.isNotEmpty() })
+
+        // Строки архивного заказа в истории профиля
+        val details = OrderDetailsTableHandler(dbHandler)
+        assertEquals(listOf(1), details.getOrderDetailList(archived).map { it.productId })
+        assertEquals(listOf(2), details.getOrderDetailList(stillInMain).map { it.productId })
+    }
+
+    @Test
+    fun resumeAfterFailureDoesNotDuplicateRowsPastCheckpoint() {
+        val day = OrderExporter.parseDay("2032-01-01")!!
+        val db = dbHandler.writableDatabase
+        db.beginTransaction()
+        try {
+            for (i in 1..1200) { // Три страницы: 500, 500 и 200 заказов
+                val id = addOrder(day + i, "addr $i")
+                if (i % 3 != 0) addDetail(id, i % 7 + 1, 1, 1.0)
+            }
+            db.setTransactionSuccessful()
+        } finally {
+            db.endTransaction()
+        }
+        for (format in OrderExporter.Format.values()) {
+            val complete = folder.newFile("complete.${format.extension}")
+            exporter.exportToFile(complete, format, "2032-01-01", "2032-01-01", 0, 0, null)
+
+            // Процесс прерван после записи второй страницы, но до сохранения ее точки возобновления
+            val resumed = folder.newFile("resumed.${format.extension}")
+            var checkpoint: OrderExporter.Result? = null
+            try {
+                exporter.exportToFile(resumed, format, "2032-01-01", "2032-01-01", 0, 0) { progress ->
+                    if (checkpoint != null) throw IllegalStateException("Process killed")
+                    checkpoint = OrderExporter.Result().apply { lastOrderId = progress.lastOrderId; fileLength = progress.fileLength }
+                }
+                fail("Export must be interrupted")
+            } catch (expected: IllegalStateException) {
+            }
+            assertTrue(resumed.length() > checkpoint!!.fileLength) // Строки второй страницы уже в файле
+
+            val result = exporter.exportToFile(resumed, format, "2032-01-01", "2032-01-01",
+                checkpoint!!.lastOrderId, checkpoint!!.fileLength, null)
+            assertEquals(700, result.orders)
+            assertEquals(complete.readText(), resumed.readText())
+            assertEquals(resumed.length(), result.fileLength)
+        }
+    }
+
+    // Добавляет заказ пользователя с заданными временем и адресом
+    private fun addOrder(orderDate: Long, address: String): Int {
+        val id = OrdersTableHandler(dbHandler).addOrder(USER_ID, 10.0, address).toInt()
+        dbHandler.writableDatabase.execSQL("UPDATE Orders SET order_date = ? WHERE id = ?", arrayOf<Any>(orderDate, id))
+        dbHandler.queryCache.invalidate(OrdersTableHandler.TABLE_ORDERS)
+        return id
+    }
+
+    private fun addDetail(orderId: Int, productId: Int, quantity: Int, price: Double) {
+        OrderDetailsTableHandler(dbHandler).addOrderDetail(orderId, productId, quantity, price)
+    }
+
+    companion object {
+        private const val USER_ID = 1
+    }
+}
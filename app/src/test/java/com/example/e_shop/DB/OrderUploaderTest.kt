@@ -0,0 +1,178 @@
+package com.example.e_shop.DB
+
+import androidx.test.core.app.ApplicationProvider
+import com.example.e_shop.DataClasses.CartProduct
+import com.example.e_shop.DataClasses.ProductSummary
+import com.sun.net.httpserver.HttpServer
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.net.InetSocketAddress
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.zip.GZIPInputStream
+
+/**
+ * Очередь заказов и их отправка против локального HTTP-сервера, который принимает сжатые пачки
+ * и подтверждает их заданными кодами ответа; пачку с заказом на адрес BAD_ADDRESS сервер отклоняет целиком
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class OrderUploaderTest {
+
+    private lateinit var server: HttpServer
+    private lateinit var dbHandler: DataBaseHandler
+    private lateinit var uploader: OrderUploader
+    private val responseCodes = ArrayDeque<Int>() // Коды следующих ответов (по умолчанию 200)
+    private val received = CopyOnWriteArrayList<JSONObject>() // Разжатые тела запросов
+    private val deliveredKeys = mutableSetOf<String>() // Ключи, принятые сервером (дубликаты отбрасываются)
+    private var listRejected = false // Перечислять ли в ответе 422 ключи отклоненных заказов
+
+    @Before
+    fun setUp() {
+        server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext("/orders/batch") { exchange ->
+            assertEquals("gzip", exchange.requestHeaders.getFirst("Content-Encoding"))
+            val body = JSONObject(GZIPInputStream(exchange.requestBody).bufferedReader().readText())
+            received += body
+            val orders = body.getJSONArray("orders")
+            val badKeys = (0 until orders.length()).map { orders.getJSONObject(it) }
+                .filter { it.getJSONObject("order").getString("delivery_address") == BAD_ADDRESS }
+                .map { it.getString("idempotency_key") }
+            val code = synchronized(responseCodes) { responseCodes.removeFirstOrNull() } ?: if (badKeys.isEmpty()) 200 else 422
+            if (code == 200) {
+                for (i in 0 until orders.length()) deliveredKeys += orders.getJSONObject(i).getString("idempotency_key")
+            }
+            if (code == 503) exchange.responseHeaders.add("Retry-After", "120")
+            val response = if (code == 422 && listRejected) JSONObject().put("rejected", JSONArray(badKeys)).toString().toByteArray() else ByteArray(0)
+            exchange.sendResponseHeaders(code, if (response.isEmpty()) -1 else response.size.toLong())
+            if (response.isNotEmpty()) exchange.responseBody.write(response)
+            exchange.close()
+        }
+        server.start()
+        dbHandler = DataBaseHandler(ApplicationProvider.getApplicationContext())
+        uploader = OrderUploader(dbHandler, "http://127.0.0.1:${server.address.port}")
+    }
+
+    @After
+    fun tearDown() {
+        server.stop(0)
+    }
+
+    @Test
+    fun placeOrderWritesOrderDetailsAndOutboxInOneStep() {
+        val cart = UserCartTableHandler(dbHandler)
+        cart.addItemToCart(USER_ID, 1, 2)
+        val orderId = OrdersTableHandler(dbHandler).placeOrder(USER_ID, "addr", cart.getCartProductList(USER_ID))
+
+        assertTrue(orderId > 0)
+        assertEquals(1, OrderDetailsTableHandler(dbHandler).getOrderDetailList(orderId.toInt()).size)
+        assertTrue(cart.getCartProductList(USER_ID).isEmpty())
+        val entry = OrderOutboxTableHandler(dbHandler).getDueEntries(Long.MAX_VALUE, 10).single()
+        assertEquals(orderId, entry.orderId)
+        assertEquals(2, JSONObject(entry.payload).getJSONArray("items").getJSONObject(0).getInt("quantity"))
+    }
+
+    @Test
+    fun uploadsInCompressedBatchesAndEmptiesQueue() {
+        repeat(120) { placeOrder() }
+
+        val result = uploader.uploadPending()
+        assertEquals(120, result.sent)
+        assertEquals(0, result.pending)
+        assertEquals(listOf(50, 50, 20), received.map { it.getJSONArray("orders").length() })
+        assertEquals(120, deliveredKeys.size)
+    }
+
+    @Test
+    fun serverErrorBacksOffAndRetryKeepsIdempotencyKey() {
+        placeOrder()
+        responseCodes += 503
+
+        val failed = uploader.uploadPending()
+        assertEquals(1, failed.failed)
+        assertEquals(1, failed.pending)
+        assertTrue("Retry-After must be honored", failed.nextAttemptAt >= System.currentTimeMillis() + 119_000)
+        assertEquals(0, uploader.uploadPending().sent) // Время следующей попытки еще не наступило
+
+        // Ответ на доставленную пачку потерялся: повтор отправляет тот же ключ, сервер не создает дубликат
+        val outbox = OrderOutboxTableHandler(dbHandler)
+        val entry = outbox.getDueEntries(Long.MAX_VALUE, 10).single()
+        dbHandler.writableDatabase.execSQL("UPDATE OrderOutbox SET next_attempt_at = 0")
+        responseCodes += 500
+        uploader.uploadPending()
+        dbHandler.writableDatabase.execSQL("UPDATE OrderOutbox SET next_attempt_at = 0")
+        assertEquals(1, uploader.uploadPending().sent)
+        assertEquals(setOf(entry.idempotencyKey), deliveredKeys)
+        assertEquals(3, received.size)
+    }
+
+    @Test
+    fun clientErrorRejectsBatch() {
+        placeOrder()
+        responseCodes += 422
+
+        val result = uploader.uploadPending()
+        assertEquals(1, result.rejected)
+        assertEquals(0, result.pending)
+    }
+
+    @Test
+    fun badOrderInBatchIsFoundBySplittingAndRejectedAlone() {
+        repeat(6) { placeOrder() }
+        val badOrderId = placeOrder(BAD_ADDRESS)
+        repeat(5) { placeOrder() }
+
+        val result = uploader.uploadPending()
+        assertEquals(11, result.sent)
+        assertEquals(1, result.rejected)
+        assertEquals(0, result.pending)
+        assertEquals(11, deliveredKeys.size)
+        assertEquals(listOf(badOrderId), rejectedOrderIds())
+    }
+
+    @Test
+    fun ordersListedByServerAreRejectedAndRestIsResent() {
+        listRejected = true
+        repeat(3) { placeOrder() }
+        val badOrderId = placeOrder(BAD_ADDRESS)
+        repeat(3) { placeOrder() }
+
+        val result = uploader.uploadPending()
+        assertEquals(6, result.sent)
+        assertEquals(1, result.rejected)
+        assertEquals(listOf(7, 6), received.map { it.getJSONArray("orders").length() }) // Без деления пачки
+        assertEquals(listOf(badOrderId), rejectedOrderIds())
+    }
+
+    @Test
+    fun unreachableServerKeepsOrdersQueued() {
+        placeOrder()
+        server.stop(0)
+
+        val result = uploader.uploadPending()
+        assertEquals(1, result.failed)
+        assertEquals(1, OrderOutboxTableHandler(dbHandler).getPendingCount())
+    }
+
+    // Оформляет заказ из одного товара
+    private fun placeOrder(address: String = "addr"): Long {
+        val item = CartProduct(ProductSummary(1, "Товар", null, 10.0, null, 5), 1)
+        return OrdersTableHandler(dbHandler).placeOrder(USER_ID, address, listOf(item))
+    }
+
+    // Заказы, отклоненные сервером насовсем
+    private fun rejectedOrderIds(): List<Long> =
+        dbHandler.queryList("SELECT order_id FROM OrderOutbox WHERE status = ${OrderOutboxTableHandler.STATUS_REJECTED}", null) { it.getLong(0) }
+
+    companion object {
+        private const val USER_ID = 1 // Пользователь admin из предзаполненной базы
+        private const val BAD_ADDRESS = "BAD" // Адрес заказа, который сервер считает ошибочным
+    }
+}
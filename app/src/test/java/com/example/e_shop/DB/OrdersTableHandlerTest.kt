@@ -0,0 +1,125 @@
+package com.example.e_shop.DB
+
+import androidx.test.core.app.ApplicationProvider
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.StringWriter
+
+/**
+ * Коды статусов и даты заказов в миллисекундах: перенос заказа из assets миграцией и выборки по периоду и статусу
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class OrdersTableHandlerTest {
+
+    private lateinit var dbHandler: DataBaseHandler
+    private lateinit var orders: OrdersTableHandler
+
+    @Before
+    fun setUp() {
+        dbHandler = DataBaseHandler(ApplicationProvider.getApplicationContext())
+        orders = OrdersTableHandler(dbHandler)
+    }
+
+    @Test
+    fun migrationConvertsTextStatusAndDate() {
+        val order = orders.getOrderListByUserId(1).first { it.id == 1 } // Заказ из assets: '2024-03-02', 'В ожидании'
+        assertEquals(OrderExporter.parseDay("2024-03-02"), order.orderDate)
+        assertEquals(OrdersTableHandler.STATUS_PENDING, order.status)
+        assertEquals("В ожидании", order.statusName)
+        assertEquals(listOf(0, 1, 2, 3), orders.orderStatuses.keys.toList().take(4))
+    }
+
+    @Test
+    fun rangeAndStatusQueries() {
+        val day = OrderExporter.parseDay("2030-01-10")!!
+        val first = addOrder(day + 1000, OrdersTableHandler.STATUS_SHIPPED)
+        val second = addOrder(day + 2000, OrdersTableHandler.STATUS_SHIPPED)
+        val next = addOrder(day + 86_400_000L, OrdersTableHandler.STATUS_DELIVERED)
+
+        // Период [from, to), новые первыми
+        assertEquals(listOf(second, first), orders.getOrderListByUserId(USER_ID, day, day + 86_400_000L).map { it.id })
+        assertEquals(listOf(next, second, first), orders.getOrderListByUserId(1).take(3).map { it.id })
+        assertEquals(listOf(second), orders.getOrderListByStatus(OrdersTableHandler.STATUS_SHIPPED, day, day + 3000, 1).map { it.id })
+
+        orders.updateOrderStatus(first, OrdersTableHandler.STATUS_CANCELLED) // Кэш сбрасывается записью
+        assertEquals(listOf(second), orders.getOrderListByStatus(OrdersTableHandler.STATUS_SHIPPED, day, day + 3000, 10).map { it.id })
+        assertEquals("Отменён", orders.getOrderListByStatus(OrdersTableHandler.STATUS_CANCELLED, day, day + 3000, 10).single().statusName)
+    }
+
+    @Test
+    fun exportFormatsDateAndStatusName() {
+        val day = OrderExporter.parseDay("2030-02-01")!!
+        val id = addOrder(day + 3_600_000L, OrdersTableHandler.STATUS_DELIVERED)
+        val out = StringWriter()
+        val result = OrderExporter(dbHandler).export(out, OrderExporter.Format.CSV, "2030-02-01", "2030-02-01", 0, null)
+        assertEquals(1, result.orders)
+        assertTrue(out.toString(), out.toString().lines()[1].startsWith("$id,$USER_ID,2030-02-01T01:00:00Z,Доставлен,"))
+        assertEquals(null, OrderExporter.parseDay("2030-02-30"))
+    }
+
+    @Test
+    fun bulkTransitionsRespectAllowedStatuses() {
+        val day = OrderExporter.parseDay("2030-03-01")!!
+        val pending = (1..1200).map { addOrder(day + it, OrdersTableHandler.STATUS_PENDING) } // Больше одного UPDATE по id
+        val delivered = addOrder(day, OrdersTableHandler.STATUS_DELIVERED)
+
+        // Доставленный заказ нельзя отправить: он пропускается, остальные переводятся
+        assertEquals(1200, orders.transitionOrders((pending + delivered).toIntArray(), OrdersTableHandler.STATUS_SHIPPED))
+        assertEquals(1200, orders.getOrderListByStatus(OrdersTableHandler.STATUS_SHIPPED, day, day + 86_400_000L, 5000).size)
+        assertEquals(OrdersTableHandler.STATUS_DELIVERED,
+            orders.getOrderListByStatus(OrdersTableHandler.STATUS_DELIVERED, day, day + 1, 10).single { it.id == delivered }.status)
+
+        // Все отправленные за период - одним UPDATE; повторный перевод ничего не находит
+        assertEquals(1200, orders.transitionOrdersInPeriod(OrdersTableHandler.STATUS_SHIPPED, OrdersTableHandler.STATUS_DELIVERED,
+            day, day + 86_400_000L))
+        assertEquals(0, orders.transitionOrders(pending.toIntArray(), OrdersTableHandler.STATUS_CANCELLED))
+        assertFails { orders.transitionOrders(pending.toIntArray(), OrdersTableHandler.STATUS_PENDING) }
+        assertFails { orders.transitionOrdersInPeriod(OrdersTableHandler.STATUS_DELIVERED, OrdersTableHandler.STATUS_SHIPPED, day, day + 1) }
+    }
+
+    @Test
+    fun singleStatusUpdateFollowsAllowedTransitions() {
+        val day = OrderExporter.parseDay("2030-04-01")!!
+        val order = addOrder(day, OrdersTableHandler.STATUS_PENDING)
+
+        assertEquals(0, orders.updateOrderStatus(order, OrdersTableHandler.STATUS_DELIVERED)) // Доставить можно только отправленный
+        assertEquals(OrdersTableHandler.STATUS_PENDING, status(order, day))
+        assertEquals(1, orders.updateOrderStatus(order, OrdersTableHandler.STATUS_SHIPPED))
+        assertEquals(0, orders.updateOrderStatus(order, OrdersTableHandler.STATUS_SHIPPED)) // Повторный перевод ничего не меняет
+        assertEquals(1, orders.updateOrderStatus(order, OrdersTableHandler.STATUS_DELIVERED))
+        assertEquals(0, orders.updateOrderStatus(order, OrdersTableHandler.STATUS_CANCELLED)) // Доставленный заказ - конечный статус
+        assertEquals(OrdersTableHandler.STATUS_DELIVERED, status(order, day))
+        assertFails { orders.updateOrderStatus(order, OrdersTableHandler.STATUS_PENDING) } // В ожидание не переводится ни из какого статуса
+    }
+
+    // Текущий статус заказа с заданным временем
+    private fun status(orderId: Int, orderDate: Long): Int =
+        orders.getOrderListByUserId(USER_ID, orderDate, orderDate + 1).single { it.id == orderId }.status
+
+    // Добавляет заказ с заданными временем и статусом
+    private fun addOrder(orderDate: Long, status: Int): Int {
+        val id = orders.addOrder(USER_ID, 10.0, "addr").toInt()
+        dbHandler.writableDatabase.execSQL("UPDATE Orders SET order_date = ?, status = ? WHERE id = ?", arrayOf<Any>(orderDate, status, id))
+        dbHandler.queryCache.invalidate(OrdersTableHandler.TABLE_ORDERS)
+        return id
+    }
+
+    private fun assertFails(block: () -> Unit) {
+        try {
+            block()
+            fail("Transition must be rejected")
+        } catch (expected: IllegalArgumentException) {
+        }
+    }
+
+    companion object {
+        private const val USER_ID = 1
+    }
+}
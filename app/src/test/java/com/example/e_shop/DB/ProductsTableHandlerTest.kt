@@ -0,0 +1,74 @@
+package com.example.e_shop.DB
+
+import androidx.test.core.app.ApplicationProvider
+import com.example.e_shop.DataClasses.ProductFilter
+import com.example.e_shop.DataClasses.ProductSummary
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+/**
+ * Keyset-пагинация каталога: страницы по ключу сортировки с повторяющимися ценами и названиями
+ * не пропускают и не повторяют продукты ни в одном порядке сортировки
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class ProductsTableHandlerTest {
+
+    private lateinit var dbHandler: DataBaseHandler
+    private lateinit var productsTableHandler: ProductsTableHandler
+
+    @Before
+    fun setUp() {
+        dbHandler = DataBaseHandler(ApplicationProvider.getApplicationContext())
+        productsTableHandler = ProductsTableHandler(dbHandler)
+    }
+
+    @Test
+    fun pagesWithDuplicateKeysNeitherSkipNorRepeatRows() {
+        val db = dbHandler.writableDatabase
+        db.execSQL("INSERT INTO Categories (id, name) VALUES ($CATEGORY_ID, 'Paging')")
+        // Три цены (одна без точного десятичного представления) и два названия на 31 продукт:
+        // границы страниц по 4 продукта приходятся на середину групп с одинаковым ключом
+        val prices = doubleArrayOf(10.0, 0.1 + 0.2, 19.99)
+        for (i in 0 until 31) {
+            db.execSQL("INSERT INTO Products (name, price, quantity, category_id) VALUES (?, ?, 1, $CATEGORY_ID)",
+                arrayOf<Any>(if (i % 2 == 0) "Dup B" else "Dup A", prices[i % prices.size]))
+        }
+        dbHandler.queryCache.invalidate(ProductsTableHandler.TABLE_PRODUCTS)
+
+        for (minPrice in listOf(null, 1.0)) { // С диапазоном цен условие по цене не использует индекс сортировки
+            val filter = ProductFilter(categoryId = CATEGORY_ID, minPrice = minPrice)
+            for (sort in ProductsTableHandler.SortOrder.values()) {
+                val expected = productsTableHandler.getProductSummaryPage(filter.copy(sort = sort), null, 1000)
+                val all = expected.filter { minPrice == null || it.price >= minPrice }
+                assertEquals(if (minPrice == null) 31 else 21, all.size)
+                assertEquals("$sort", all.sortedWith(order(sort)).map { it.id }, expected.map { it.id })
+
+                val paged = mutableListOf<ProductSummary>()
+                while (true) {
+                    val page = productsTableHandler.getProductSummaryPage(filter.copy(sort = sort), paged.lastOrNull(), PAGE_SIZE)
+                    paged += page
+                    if (page.size < PAGE_SIZE) break
+                }
+                assertEquals("$sort, minPrice=$minPrice", expected.map { it.id }, paged.map { it.id })
+            }
+        }
+    }
+
+    // Ожидаемый порядок: ключ сортировки, при равенстве - id в том же направлении
+    private fun order(sort: ProductsTableHandler.SortOrder): Comparator<ProductSummary> = when (sort) {
+        ProductsTableHandler.SortOrder.NEWEST -> compareByDescending { it.id }
+        ProductsTableHandler.SortOrder.PRICE_ASC -> compareBy<ProductSummary> { it.price }.thenBy { it.id }
+        ProductsTableHandler.SortOrder.PRICE_DESC -> compareByDescending<ProductSummary> { it.price }.thenByDescending { it.id }
+        ProductsTableHandler.SortOrder.NAME -> compareBy<ProductSummary> { it.name }.thenBy { it.id }
+    }
+
+    companion object {
+        private const val CATEGORY_ID = 950
+        private const val PAGE_SIZE = 4
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.e_shop.DB
+
+import android.database.sqlite.SQLiteDatabase
+import androidx.test.core.app.ApplicationProvider
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+/**
+ * Кэш результатов запросов: инвалидация по таблицам и их версиям, оценка размера и вытеснение LRU по байтам
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class QueryCacheTest {
+
+    private lateinit var db: SQLiteDatabase
+    private lateinit var cache: QueryCache
+
+    @Before
+    fun setUp() {
+        db = DataBaseHandler(ApplicationProvider.getApplicationContext()).readableDatabase
+        cache = QueryCache(64, QueryTracer()) // Отдельный кэш, не кэш обработчика базы
+    }
+
+    @Test
+    fun writeToSourceTableInvalidatesEntry() {
+        val first = productName()
+        assertSame(first, productName())
+        cache.invalidate(DataBaseHandler.TABLE_CATEGORIES) // Другая таблица запись не затрагивает
+        assertSame(first, productName())
+        assertEquals(0L, cache.getTableVersion(ProductsTableHandler.TABLE_PRODUCTS))
+
+        cache.invalidate(ProductsTableHandler.TABLE_PRODUCTS)
+        assertEquals(1L, cache.getTableVersion(ProductsTableHandler.TABLE_PRODUCTS))
+        val second = productName()
+        assertNotSame(first, second)
+        assertEquals(first, second)
+        val stats = cache.stats
+        assertEquals(2L, stats.hits)
+        assertEquals(2L, stats.misses)
+        assertEquals(1L, stats.invalidations)
+    }
+
+    @Test
+    fun resultReadDuringWriteIsNotStored() {
+        // Запись в таблицу между началом и концом чтения: версия таблицы изменилась, результат мог устареть
+        val stale = cache.query(db, SQL_PRODUCT_NAME, arrayOf("1"), PRODUCTS) {
+            cache.invalidate(ProductsTableHandler.TABLE_PRODUCTS)
+            it.getString(0)
+        }
+        assertEquals(1, stale.size)
+        assertEquals(0, cache.stats.size)
+        assertNotSame(stale, productName())
+        assertEquals(2L, cache.stats.misses)
+    }
+
+    @Test
+    fun evictsLeastRecentlyUsedEntriesByBytes() {
+        val a = text("a")
+        // Ключ (запрос и аргумент) и строка в UTF-16 плюс накладные расходы на строку результата и String
+        val entryBytes = 2L * (SQL_TEXT.length + 1 + TEXT_LENGTH) + 16 + 40 + 2L * TEXT_LENGTH
+        assertEquals(entryBytes, cache.sizeBytes)
+
+        cache.setMaxBytes(2 * entryBytes) // Помещаются две записи
+        text("b")
+        assertSame(a, text("a")) // "a" использована последней, старейшая теперь "b"
+        text("c")
+        assertEquals(2, cache.stats.size)
+        assertEquals(1L, cache.stats.evictions)
+        assertSame(a, text("a"))
+        val misses = cache.stats.misses
+        text("b")
+        assertEquals(misses + 1, cache.stats.misses) // "b" была вытеснена
+
+        cache.setMaxBytes(entryBytes - 1) // Запись больше бюджета не сохраняется и вытесняет остальные
+        text("d")
+        assertEquals(0, cache.stats.size)
+        assertEquals(0L, cache.sizeBytes)
+    }
+
+    @Test
+    fun handlerCacheLeavesRegistryOnClose() {
+        val context = ApplicationProvider.getApplicationContext<android.app.Application>()
+        val registry = CacheRegistry.getInstance(context)
+        val registered = registry.report.size
+        val handler = DataBaseHandler(context)
+        assertEquals(registered + 1, registry.report.size) // Свой кэш у каждого обработчика
+        handler.queryCache.query(handler.readableDatabase, SQL_PRODUCT_NAME, arrayOf("1"), PRODUCTS) { it.getString(0) }
+        assertEquals(1, handler.queryCache.stats.size)
+
+        handler.close()
+        assertEquals(registered, registry.report.size)
+        assertEquals(0, handler.queryCache.stats.size)
+    }
+
+    // Название продукта 1 через кэш
+    private fun productName(): List<String> =
+        cache.query(db, SQL_PRODUCT_NAME, arrayOf("1"), PRODUCTS) { it.getString(0) }
+
+    // Строка из TEXT_LENGTH одинаковых символов через кэш
+    private fun text(symbol: String): List<String> =
+        cache.query(db, SQL_TEXT, arrayOf(symbol.repeat(TEXT_LENGTH)), arrayOf("Nothing")) { it.getString(0) }
+
+    companion object {
+        private const val SQL_PRODUCT_NAME = "SELECT name FROM Products WHERE id = ?"
+        private const val SQL_TEXT = "SELECT ?"
+        private const val TEXT_LENGTH = 1000
+        private val PRODUCTS = arrayOf(ProductsTableHandler.TABLE_PRODUCTS)
+    }
+}
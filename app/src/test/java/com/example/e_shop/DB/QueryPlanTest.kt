@@ -0,0 +1,149 @@
+package com.example.e_shop.DB
+
+import android.database.sqlite.SQLiteDatabase
+import androidx.test.core.app.ApplicationProvider
+import com.example.e_shop.DataClasses.ProductFilter
+import com.example.e_shop.DataClasses.ProductSummary
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+/**
+ * Проверка планов выполнения запросов обработчиков таблиц на схеме после всех миграций
+ * Горячий запрос не должен полностью просматривать таблицу (SCAN) и сортировать во временном B-дереве.
+ * Тексты запросов берутся из тех же констант, что используют обработчики.
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class QueryPlanTest {
+
+    private lateinit var db: SQLiteDatabase
+
+    @Before
+    fun setUp() {
+        db = DataBaseHandler(ApplicationProvider.getApplicationContext()).readableDatabase // Открытие выполняет миграции
+    }
+
+    @Test
+    fun migrationCreatesIndexes() {
+        assertEquals(10, db.version)
+        val indexes = mutableSetOf<String>()
+        db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'index'", null).use {
+            while (it.moveToNext()) indexes += it.getString(0)
+        }
+        assertTrue(indexes.containsAll(listOf("idx_products_category", "idx_usercart_user_product", "idx_orders_user_date",
+            "idx_order_details_order", "idx_users_username", "idx_products_name", "idx_cart_entries_seq",
+            "idx_products_price", "idx_products_category_price", "idx_products_category_name",
+            "idx_product_attributes_value", "idx_orders_status_date")))
+    }
+
+    @Test
+    fun productQueriesUseIndexes() {
+        assertIndexed(ProductsTableHandler.SQL_SUMMARIES_BY_CATEGORY)
+        assertIndexed(ProductsTableHandler.SQL_SUMMARIES_BY_NAME_AND_CATEGORY)
+        assertIndexed("SELECT * FROM Products WHERE id = ?") // getProductById
+        assertIndexed(CatalogImporter.SQL_UPDATE_BY_NAME) // Импорт каталога сопоставляет продукты по названию
+        assertIndexed(CatalogSyncEngine.SQL_UPDATE_PRODUCT) // Синхронизация применяет изменения по id
+        assertIndexed(CatalogSyncEngine.SQL_UPDATE_CATEGORY)
+        assertIndexed(CatalogSyncEngine.SQL_CATEGORY_PRODUCTS) // Продукты удаленной категории
+        assertIndexed(ProductsTableHandler.SQL_ADJUST_CATEGORY_PRICES) // Массовые изменения категории
+        assertIndexed(ProductsTableHandler.SQL_ADJUST_CATEGORY_STOCK)
+        assertIndexed(ProductsTableHandler.SQL_COUNT_PRICES_ROUNDED_TO_ZERO)
+        assertIndexed(CatalogImporter.SQL_ADJUST_STOCK)
+        assertIndexed(ProductAttributesTableHandler.SQL_PRODUCT_ATTRIBUTES) // Характеристики в карточке товара
+    }
+
+    @Test
+    fun cartQueriesUseIndexes() {
+        assertIndexed(UserCartTableHandler.SQL_ITEMS_IN_CART)
+        assertIndexed(UserCartTableHandler.SQL_CART_PRODUCTS) // getCartProductsForUser
+        assertIndexed("UPDATE UserCart SET quantity = ? WHERE user_id = ? AND product_id = ?") // updateItemQuantityInCart
+        assertIndexed("DELETE FROM UserCart WHERE user_id = ? AND product_id = ?") // removeItemFromCart
+        assertIndexed("DELETE FROM UserCart WHERE user_id = ?") // clearUserCart
+        assertIndexed(CartSyncEngine.SQL_UNSENT) // Дельта корзины для синхронизации
+    }
+
+    @Test
+    fun orderQueriesUseIndexes() {
+        assertIndexed(OrdersTableHandler.SQL_ORDERS_BY_USER) // getOrdersByUserId, новые первыми без сортировки
+        assertIndexed(OrdersTableHandler.SQL_ORDERS_BY_USER_AND_DATE)
+        assertIndexed(OrdersTableHandler.SQL_ORDERS_BY_STATUS_AND_DATE)
+        assertIndexed("UPDATE Orders SET status = ? WHERE status = ? AND order_date >= ? AND order_date < ?") // transitionOrdersInPeriod
+        assertIndexed("UPDATE Orders SET status = ? WHERE status IN (0, 1) AND id IN (?, ?)") // transitionOrders
+        assertIndexed(OrderDetailsTableHandler.SQL_DETAILS_BY_ORDER)
+        assertIndexed(OrderExporter.SQL_ORDERS_PAGE) // Страницы выгрузки идут по первичному ключу
+        assertIndexed(OrderExporter.SQL_DETAILS_RANGE)
+        assertIndexed(OrderOutboxTableHandler.SQL_DUE) // Выборка очереди отправки
+        assertIndexed(OrdersTableHandler.SQL_ORDER_PAGE_FIRST) // Страницы истории: основная база и архив
+        assertIndexed(OrdersTableHandler.SQL_ORDER_PAGE_AFTER)
+        assertIndexed(OrdersTableHandler.SQL_ARCHIVE_PAGE_FIRST)
+        assertIndexed(OrdersTableHandler.SQL_ARCHIVE_PAGE_AFTER)
+        assertIndexed(OrderArchive.SQL_BATCH) // Пачка заказов для переноса в архив
+    }
+
+    @Test
+    fun userQueriesUseIndexes() {
+        assertIndexed(UsersTableHandler.SQL_AUTHENTICATE)
+        assertIndexed(UsersTableHandler.SQL_USER_BY_ID)
+    }
+
+    /**
+     * Запросы, для которых полный просмотр ожидаем: весь каталог, поиск по подстроке (LIKE '%...%' не использует индекс)
+     * вся история заказов для построения рекомендаций и все связи продуктов для битовых карт фасетов.
+     * Они не должны хотя бы сортировать во временном B-дереве.
+     */
+    @Test
+    fun knownFullScansDoNotSort() {
+        for (sql in listOf(ProductsTableHandler.SQL_ALL_SUMMARIES, ProductsTableHandler.SQL_SUMMARIES_BY_NAME,
+                RecommendationEngine.SQL_ORDER_LINES, FacetEngine.SQL_VALUE_PRODUCTS, FacetEngine.SQL_CATEGORY_PRODUCTS)) {
+            val plan = planOf(sql)
+            assertFalse("Temp B-tree in plan of $sql:\n${plan.joinToString("\n")}", plan.any { it.contains("TEMP B-TREE") })
+        }
+    }
+
+    /**
+     * Страницы каталога во всех сочетаниях фильтров и сортировок читаются из индекса в нужном порядке,
+     * а с выбранной категорией еще и только из ее диапазона индекса; характеристики проверяются поиском по индексу
+     */
+    @Test
+    fun catalogPagesUseSortIndexes() {
+        val after = ProductSummary(5, "Товар", null, 500.0, null, 1) // Последний продукт предыдущей страницы
+        val selections = listOf(emptyMap(), mapOf(1 to setOf(2, 3), 4 to setOf(5))) // Без характеристик и с двумя характеристиками
+        for (sort in ProductsTableHandler.SortOrder.values()) for (categoryId in listOf(0, 1)) for (query in listOf("", "a"))
+            for (range in listOf(false, true)) for (page in listOf(null, after)) for (attributes in selections) {
+                val filter = ProductFilter(query, categoryId, if (range) 100.0 else null, if (range) 900.0 else null, sort, attributes)
+                val sql = ProductsTableHandler.pageQuery(filter, page, 40, mutableListOf())
+                val plan = planOf(sql)
+                assertFalse("Temp B-tree in plan of $sql:\n${plan.joinToString("\n")}", plan.any { it.contains("TEMP B-TREE") })
+                if (categoryId > 0) assertIndexed(sql)
+            }
+        // Базовое множество фасетов для категории с диапазоном цен - диапазон индекса (category_id, price)
+        assertIndexed(ProductsTableHandler.idQuery(ProductFilter(categoryId = 1, minPrice = 100.0, maxPrice = 900.0), mutableListOf()))
+        // Гистограмма цен читает только индекс (category_id, price); группировка идет по 20 интервалам
+        val histogram = planOf(ProductsTableHandler.SQL_PRICE_HISTOGRAM_BY_CATEGORY)
+        assertTrue(histogram.joinToString("\n"), histogram.filter { it.contains("Products") }
+            .all { it.contains("COVERING INDEX idx_products_category_price") })
+    }
+
+    // Проверяет, что план не содержит полного просмотра и временной сортировки
+    private fun assertIndexed(sql: String) {
+        val plan = planOf(sql)
+        val problems = plan.filter { it.startsWith("SCAN") || it.contains("TEMP B-TREE") }
+        assertTrue("Query is not index-backed:\n$sql\nPlan:\n${plan.joinToString("\n")}", problems.isEmpty())
+    }
+
+    // Возвращает описания шагов плана (колонка detail); параметры не привязываются, план от них не зависит
+    private fun planOf(sql: String): List<String> {
+        val plan = mutableListOf<String>()
+        db.rawQuery("EXPLAIN QUERY PLAN $sql", null).use {
+            val detail = it.getColumnIndexOrThrow("detail")
+            while (it.moveToNext()) plan += it.getString(detail)
+        }
+        return plan
+    }
+}
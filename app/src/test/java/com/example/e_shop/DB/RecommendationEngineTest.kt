@@ -0,0 +1,115 @@
+package com.example.e_shop.DB
+
+import androidx.test.core.app.ApplicationProvider
+import com.example.e_shop.DataClasses.CartProduct
+import com.example.e_shop.DataClasses.ProductSummary
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+/**
+ * Рекомендации "С этим товаром покупают": порядок по числу совместных заказов, учет новых заказов
+ * и исключение продуктов, которые уже лежат в корзине
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class RecommendationEngineTest {
+
+    private lateinit var dbHandler: DataBaseHandler
+
+    @Before
+    fun setUp() {
+        dbHandler = DataBaseHandler(ApplicationProvider.getApplicationContext())
+    }
+
+    @Test
+    fun ranksByCoPurchasesAndExcludesCartItems() {
+        // Продукты без истории заказов в базе из assets: с A покупали B трижды, C дважды, D и E по разу
+        placeOrder(A, B, C)
+        placeOrder(A, B)
+        placeOrder(A, B, D)
+        placeOrder(A, C)
+        placeOrder(A, E)
+        val engine = dbHandler.recommendationEngine
+        assertArrayEquals(intArrayOf(B, C, D, E), engine.getRelated(A, 10)) // При равенстве - по возрастанию id
+        assertArrayEquals(intArrayOf(B, C), engine.getRelated(A, 2))
+        assertArrayEquals(intArrayOf(A, B), engine.getRelated(D, 10))
+
+        // Заказы после построения учитываются без перечитывания истории и совпадают с построением заново
+        placeOrder(A, E)
+        placeOrder(E, A, E) // Повтор продукта в заказе считается один раз
+        assertArrayEquals(intArrayOf(B, E, C, D), engine.getRelated(A, 10))
+        engine.rebuild()
+        assertArrayEquals(intArrayOf(B, E, C, D), engine.getRelated(A, 10))
+
+        // Продукты из корзины пользователя не предлагаются, остальные сохраняют порядок
+        val cart = UserCartTableHandler(dbHandler)
+        cart.addItemToCart(USER_ID, B, 1)
+        cart.addItemToCart(USER_ID, D, 1)
+        val inCartIds = cart.getCartItemList(USER_ID).map { it.productId }.toIntArray()
+        assertArrayEquals(intArrayOf(E, C), engine.getRelated(A, 10, inCartIds))
+        assertArrayEquals(intArrayOf(E), engine.getRelated(A, 1, inCartIds))
+    }
+
+    @Test
+    fun engineBelongsToItsHandler() {
+        val engine = dbHandler.recommendationEngine
+        assertSame(engine, dbHandler.recommendationEngine)
+        // Новый обработчик того же файла (как в каждом тесте) не получает движок, читающий через прежний
+        val other = DataBaseHandler(ApplicationProvider.getApplicationContext())
+        assertNotSame(engine, other.recommendationEngine)
+
+        placeOrder(A, B)
+        assertArrayEquals(intArrayOf(B), other.recommendationEngine.getRelated(A, 10))
+    }
+
+    @Test
+    fun matrixIsTrimmedAsManagedCache() {
+        placeOrder(A, B, C)
+        placeOrder(A, B)
+        val engine = dbHandler.recommendationEngine
+        val registry = CacheRegistry.getInstance(ApplicationProvider.getApplicationContext())
+        assertTrue(registry.report.any { it.name == engine.name }) // Обработчик регистрирует движок при создании
+        assertEquals(0L, engine.sizeBytes) // Матрица еще не построена
+
+        assertArrayEquals(intArrayOf(B, C), engine.getRelated(A, 10))
+        val full = engine.sizeBytes
+        assertTrue(full > 0)
+        engine.trimToBytes(full - 1) // Сначала освобождаются списки лучших соседей
+        val withoutTops = engine.sizeBytes
+        assertTrue(withoutTops in 1 until full)
+        assertArrayEquals(intArrayOf(B, C), engine.getRelated(A, 10))
+
+        engine.trimToBytes(0) // Затем матрица целиком; следующий запрос строит ее заново
+        assertEquals(0L, engine.sizeBytes)
+        placeOrder(A, C)
+        placeOrder(A, C)
+        assertArrayEquals(intArrayOf(C, B), engine.getRelated(A, 10))
+
+        val engines = registry.report.count { it.name == engine.name }
+        dbHandler.close() // Закрытый обработчик снимает свои кэши с учета
+        assertEquals(engines - 1, registry.report.count { it.name == engine.name })
+    }
+
+    // Оформляет заказ из продуктов по одной штуке
+    private fun placeOrder(vararg productIds: Int) {
+        val items = productIds.map { CartProduct(ProductSummary(it, "Product $it", null, 1.0, null, 10), 1) }
+        OrdersTableHandler(dbHandler).placeOrder(USER_ID, "addr", items)
+    }
+
+    companion object {
+        private const val USER_ID = 1
+        private const val A = 900_001
+        private const val B = 900_002
+        private const val C = 900_003
+        private const val D = 900_004
+        private const val E = 900_005
+    }
+}
@@ -0,0 +1,348 @@
+package com.example.e_shop.DB;
+
+import android.database.sqlite.SQLiteDatabase;  // Импортируем SQLiteDatabase для выполнения транзакций
+import android.database.sqlite.SQLiteStatement;  // Импортируем скомпилированные выражения для массовой вставки
+import android.os.SystemClock;  // Импортируем SystemClock для замера времени генерации
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Генератор синтетических данных для нагрузочных тестов и профилирования
+ * Заполняет Categories, Products, ProductAttributes, Users, UserCart, Orders и OrderDetails заданными объемами.
+ * При одинаковом seed и одинаковом начальном состоянии базы результат полностью повторяется:
+ * используются только java.util.Random и фиксированная опорная дата, но не текущее время.
+ * Вставка идет скомпилированными выражениями пачками по BATCH_SIZE строк в одной транзакции.
+ * Лежит в тестовых исходниках рядом с бенчмарками и в сборку приложения не попадает.
+ */
+public class SyntheticDataGenerator {
+
+    // Количество строк в одной транзакции: достаточно для амортизации fsync и не раздувает журнал
+    private static final int BATCH_SIZE = 10000;
+    // Опорная дата заказов и глубина истории в днях
+    private static final int BASE_YEAR = 2024, BASE_MONTH = Calendar.JUNE, BASE_DAY = 1;
+    private static final int ORDER_HISTORY_DAYS = 730;
+    // Длина описания продукта в словах
+    private static final int DESCRIPTION_WORDS = 30;
+
+    private static final String[] CATEGORY_NAMES = {"Телефоны", "Компьютеры", "Ноутбуки", "Телевизоры",
+            "Планшеты", "Наушники", "Мониторы", "Фотоаппараты", "Часы", "Аксессуары"};
+    private static final String[] BRANDS = {"Apple", "Samsung", "LG", "Xiaomi", "Sony", "Lenovo", "Asus",
+            "Acer", "HP", "Dell", "Huawei", "Honor", "Oxygen", "Philips"};
+    private static final String[] MODELS = {"Air", "Pro", "Max", "Lite", "Mini", "Ultra", "Plus", "Neo", "X", "S"};
+    private static final String[] WORDS = {"быстрый", "надежный", "легкий", "экран", "память", "батарея",
+            "камера", "корпус", "процессор", "гарантия", "доставка", "новый", "компактный", "мощный",
+            "яркий", "тихий", "беспроводной", "металлический", "удобный", "современный"};
+    // Изображения, которые есть в assets, чтобы сгенерированные продукты отображались в интерфейсе
+    private static final String[] IMAGES = {"/images/products/phone_1.png", "/images/products/iphone_xr.png",
+            "/images/products/iphone_5c.png", "/images/products/iphone_5s.png",
+            "/images/products/macbook_air.png", "/images/products/oxygen.png"};
+    private static final int[] STATUSES = {OrdersTableHandler.STATUS_PENDING, OrdersTableHandler.STATUS_SHIPPED,
+            OrdersTableHandler.STATUS_DELIVERED, OrdersTableHandler.STATUS_CANCELLED};
+    private static final int DAY_MILLIS = 24 * 60 * 60 * 1000;
+    // Характеристики продуктов: бренд совпадает с брендом в названии, память и цвет выбираются случайно
+    private static final String ATTRIBUTE_BRAND = "Бренд", ATTRIBUTE_STORAGE = "Память", ATTRIBUTE_COLOR = "Цвет";
+    private static final String[] STORAGE = {"64 ГБ", "128 ГБ", "256 ГБ", "512 ГБ", "1 ТБ"};
+    private static final String[] COLORS = {"Черный", "Белый", "Серебристый", "Синий", "Красный", "Зеленый", "Золотой"};
+    // Доля продуктов, у которых указаны память и цвет (у остальных только бренд)
+    private static final double DETAILED_ATTRIBUTES_SHARE = 0.7;
+
+    /**
+     * Объемы генерируемых данных
+     * Количество строк каждой таблицы добавляется к уже существующим (если не задан clearExisting)
+     */
+    public static final class Config {
+        public int categories = 10;  // Количество категорий
+        public int products = 100000;  // Количество продуктов
+        public int users = 1000;  // Количество пользователей
+        public int cartItemsPerUser = 5;  // Количество позиций в корзине каждого нового пользователя
+        public int orders = 200000;  // Количество заказов
+        public int orderLines = 1000000;  // Общее количество строк заказов (распределяются по заказам равномерно)
+        public boolean productAttributes = true;  // Заполнить характеристики продуктов (бренд, память, цвет)
+        public boolean clearExisting = false;  // Удалить существующие данные перед генерацией
+
+        /**
+         * @return Небольшой набор для быстрых тестов
+         */
+        public static Config small() {
+            Config config = new Config();
+            config.categories = 5;
+            config.products = 1000;
+            config.users = 50;
+            config.cartItemsPerUser = 3;
+            config.orders = 500;
+            config.orderLines = 2000;
+            return config;
+        }
+    }
+
+    /**
+     * Итог генерации
+     */
+    public static final class Result {
+        public final int firstCategoryId, firstProductId, firstUserId, firstOrderId;  // Первые id сгенерированных строк
+        public final long rowsInserted;  // Общее количество вставленных строк
+        public final long elapsedMillis;  // Время генерации
+
+        Result(int firstCategoryId, int firstProductId, int firstUserId, int firstOrderId, long rowsInserted, long elapsedMillis) {
+            this.firstCategoryId = firstCategoryId;
+            this.firstProductId = firstProductId;
+            this.firstUserId = firstUserId;
+            this.firstOrderId = firstOrderId;
+            this.rowsInserted = rowsInserted;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "SyntheticDataGenerator.Result{rows=" + rowsInserted + ", elapsedMillis=" + elapsedMillis + "}";
+        }
+    }
+
+    private final DataBaseHandler dbHandler;  // Обработчик базы данных
+    private final long seed;  // Начальное значение генератора случайных чисел
+
+    private SQLiteDatabase db;  // База на время генерации
+    private int rowsInBatch;  // Строк в текущей транзакции
+    private long rowsInserted;  // Всего вставлено строк
+
+    /**
+     * Конструктор генератора
+     * @param dbHandler Обработчик базы данных
+     * @param seed Начальное значение генератора случайных чисел
+     */
+    public SyntheticDataGenerator(DataBaseHandler dbHandler, long seed) {
+        this.dbHandler = dbHandler;  // Сохраняем обработчик базы данных
+        this.seed = seed;  // Сохраняем seed
+    }
+
+    /**
+     * Заполняет базу данными заданного объема
+     * Выполняется синхронно, вызывать нужно не из главного потока
+     * @param config Объемы данных
+     * @return Итог генерации
+     */
+    public Result generate(Config config) {
+        long start = SystemClock.elapsedRealtime();  // Время начала генерации
+        Random random = new Random(seed);  // Единственный источник случайности
+        db = dbHandler.getWritableDatabase();  // Получаем базу для записи
+        rowsInBatch = 0;
+        rowsInserted = 0;
+        db.beginTransaction();  // Первая пачка
+        try {
+            if (config.clearExisting) clearTables();  // Удаляем существующие данные
+
+            int firstCategoryId = nextId(DataBaseHandler.TABLE_CATEGORIES);
+            int firstProductId = nextId(ProductsTableHandler.TABLE_PRODUCTS);
+            int firstUserId = nextId(UsersTableHandler.TABLE_USERS);
+            int firstOrderId = nextId(OrdersTableHandler.TABLE_ORDERS);
+
+            insertCategories(firstCategoryId, config.categories);
+            int[] brands = new int[config.products];  // Бренд каждого продукта (индекс в BRANDS)
+            double[] prices = insertProducts(random, firstProductId, config.products, firstCategoryId, config.categories, brands);
+            insertUsers(firstUserId, config.users);
+            insertCarts(random, firstUserId, config.users, config.cartItemsPerUser, firstProductId, prices);
+            insertOrders(random, firstOrderId, config, firstUserId, firstProductId, prices);
+            // Отдельный генератор, чтобы характеристики не меняли остальные данные при том же seed
+            if (config.productAttributes) insertAttributes(new Random(seed ^ 0x5DEECE66DL), firstProductId, brands);
+
+            db.setTransactionSuccessful();  // Фиксируем последнюю пачку
+            return new Result(firstCategoryId, firstProductId, firstUserId, firstOrderId, rowsInserted,
+                    SystemClock.elapsedRealtime() - start);
+        } finally {
+            db.endTransaction();  // Завершаем последнюю транзакцию
+            db = null;
+            // Все кэшированные результаты устарели
+            dbHandler.getQueryCache().invalidate(DataBaseHandler.TABLE_CATEGORIES, ProductsTableHandler.TABLE_PRODUCTS,
+                    UsersTableHandler.TABLE_USERS, UserCartTableHandler.TABLE_USERCART, OrdersTableHandler.TABLE_ORDERS,
+                    OrderDetailsTableHandler.TABLE_ORDER_DETAILS, ProductAttributesTableHandler.TABLE_ATTRIBUTES,
+                    ProductAttributesTableHandler.TABLE_ATTRIBUTE_VALUES, ProductAttributesTableHandler.TABLE_PRODUCT_ATTRIBUTES);
+        }
+    }
+
+    // Удаляет данные из всех заполняемых таблиц (дочерние таблицы первыми)
+    private void clearTables() {
+        db.delete(OrderDetailsTableHandler.TABLE_ORDER_DETAILS, null, null);
+        db.delete(OrdersTableHandler.TABLE_ORDERS, null, null);
+        db.delete(UserCartTableHandler.TABLE_USERCART, null, null);
+        db.delete(ProductAttributesTableHandler.TABLE_PRODUCT_ATTRIBUTES, null, null);
+        db.delete(ProductsTableHandler.TABLE_PRODUCTS, null, null);
+        db.delete(UsersTableHandler.TABLE_USERS, null, null);
+        db.delete(DataBaseHandler.TABLE_CATEGORIES, null, null);
+    }
+
+    // Возвращает id, с которого начнутся новые строки таблицы
+    private int nextId(String table) {
+        SQLiteStatement statement = db.compileStatement("SELECT IFNULL(MAX(id), 0) + 1 FROM " + table);
+        try {
+            return (int) statement.simpleQueryForLong();
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void insertCategories(int firstId, int count) {
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + DataBaseHandler.TABLE_CATEGORIES + " (id, name) VALUES (?, ?)");
+        try {
+            for (int i = 0; i < count; i++) {
+                String name = CATEGORY_NAMES[i % CATEGORY_NAMES.length];
+                if (i >= CATEGORY_NAMES.length) name += " " + (i / CATEGORY_NAMES.length + 1);  // Имена категорий уникальны
+                insert.bindLong(1, firstId + i);
+                insert.bindString(2, name);
+                execute(insert);
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    // Вставляет продукты и возвращает их цены (индекс - смещение от firstId) для расчета сумм заказов
+    private double[] insertProducts(Random random, int firstId, int count, int firstCategoryId, int categories, int[] brands) {
+        double[] prices = new double[count];
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + ProductsTableHandler.TABLE_PRODUCTS
+                + " (id, name, description, price, quantity, image_url, category_id) VALUES (?, ?, ?, ?, ?, ?, ?)");
+        StringBuilder description = new StringBuilder();
+        try {
+            for (int i = 0; i < count; i++) {
+                // Цены распределены логарифмически от 10 до ~5000, как в реальном каталоге
+                double price = Math.round(10 * Math.exp(random.nextDouble() * 6.2) * 100) / 100.0;
+                prices[i] = price;
+                description.setLength(0);
+                for (int w = 0; w < DESCRIPTION_WORDS; w++) {
+                    if (w > 0) description.append(' ');
+                    description.append(WORDS[random.nextInt(WORDS.length)]);
+                }
+                brands[i] = random.nextInt(BRANDS.length);
+                insert.bindLong(1, firstId + i);
+                insert.bindString(2, BRANDS[brands[i]] + " " + MODELS[random.nextInt(MODELS.length)] + " " + (i + 1));
+                insert.bindString(3, description.toString());
+                insert.bindDouble(4, price);
+                insert.bindLong(5, random.nextInt(100));
+                insert.bindString(6, IMAGES[i % IMAGES.length]);
+                insert.bindLong(7, categories > 0 ? firstCategoryId + random.nextInt(categories) : 1);
+                execute(insert);
+            }
+        } finally {
+            insert.close();
+        }
+        return prices;
+    }
+
+    // Связывает продукты со значениями характеристик
+    private void insertAttributes(Random random, int firstProductId, int[] brands) {
+        ProductAttributesTableHandler.Writer writer = new ProductAttributesTableHandler.Writer(db);
+        try {
+            for (int i = 0; i < brands.length; i++) {
+                int productId = firstProductId + i;
+                writer.add(productId, ATTRIBUTE_BRAND, BRANDS[brands[i]]);
+                countRow();
+                if (random.nextDouble() < DETAILED_ATTRIBUTES_SHARE) {
+                    writer.add(productId, ATTRIBUTE_STORAGE, STORAGE[random.nextInt(STORAGE.length)]);
+                    countRow();
+                    writer.add(productId, ATTRIBUTE_COLOR, COLORS[random.nextInt(COLORS.length)]);
+                    countRow();
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void insertUsers(int firstId, int count) {
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + UsersTableHandler.TABLE_USERS
+                + " (id, username, password, role, phone, email) VALUES (?, ?, ?, 'user', ?, ?)");
+        try {
+            for (int i = 0; i < count; i++) {
+                int id = firstId + i;
+                insert.bindLong(1, id);
+                insert.bindString(2, "user" + id);
+                insert.bindString(3, "password" + id);
+                insert.bindString(4, String.format(Locale.US, "+7900%07d", id));
+                insert.bindString(5, "user" + id + "@example.ru");
+                execute(insert);
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    private void insertCarts(Random random, int firstUserId, int users, int itemsPerUser, int firstProductId, double[] prices) {
+        if (prices.length == 0) return;
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + UserCartTableHandler.TABLE_USERCART
+                + " (user_id, product_id, quantity) VALUES (?, ?, ?)");
+        try {
+            for (int u = 0; u < users; u++) {
+                int start = random.nextInt(prices.length);  // Продукты корзины идут подряд, поэтому не повторяются
+                for (int i = 0; i < Math.min(itemsPerUser, prices.length); i++) {
+                    insert.bindLong(1, firstUserId + u);
+                    insert.bindLong(2, firstProductId + (start + i) % prices.length);
+                    insert.bindLong(3, 1 + random.nextInt(3));
+                    execute(insert);
+                }
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    private void insertOrders(Random random, int firstOrderId, Config config, int firstUserId, int firstProductId, double[] prices) {
+        if (config.orders <= 0 || config.users <= 0 || prices.length == 0) return;
+        SQLiteStatement insertOrder = db.compileStatement("INSERT INTO " + OrdersTableHandler.TABLE_ORDERS
+                + " (id, user_id, order_date, status, total_price, delivery_address) VALUES (?, ?, ?, ?, ?, ?)");
+        SQLiteStatement insertLine = db.compileStatement("INSERT INTO " + OrderDetailsTableHandler.TABLE_ORDER_DETAILS
+                + " (order_id, product_id, quantity, price_per_item) VALUES (?, ?, ?, ?)");
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.US);  // Календарь для дат заказов
+        int linesPerOrder = config.orderLines / config.orders;  // Строк на заказ
+        int extraLines = config.orderLines % config.orders;  // Первые заказы получают по одной дополнительной строке
+        try {
+            for (int o = 0; o < config.orders; o++) {
+                int orderId = firstOrderId + o;
+                int lines = linesPerOrder + (o < extraLines ? 1 : 0);
+                double total = 0;
+                for (int l = 0; l < lines; l++) {
+                    int offset = random.nextInt(prices.length);
+                    int quantity = 1 + random.nextInt(3);
+                    insertLine.bindLong(1, orderId);
+                    insertLine.bindLong(2, firstProductId + offset);
+                    insertLine.bindLong(3, quantity);
+                    insertLine.bindDouble(4, prices[offset]);
+                    execute(insertLine);
+                    total += prices[offset] * quantity;
+                }
+                calendar.clear();
+                calendar.set(BASE_YEAR, BASE_MONTH, BASE_DAY);
+                calendar.add(Calendar.DAY_OF_YEAR, -random.nextInt(ORDER_HISTORY_DAYS));
+                int userId = firstUserId + random.nextInt(config.users);
+                insertOrder.bindLong(1, orderId);
+                insertOrder.bindLong(2, userId);
+                insertOrder.bindLong(3, calendar.getTimeInMillis() + random.nextInt(DAY_MILLIS));  // Случайное время дня
+                insertOrder.bindLong(4, STATUSES[random.nextInt(STATUSES.length)]);
+                insertOrder.bindDouble(5, Math.round(total * 100) / 100.0);
+                insertOrder.bindString(6, "Адрес пользователя " + userId);
+                execute(insertOrder);
+            }
+        } finally {
+            insertOrder.close();
+            insertLine.close();
+        }
+    }
+
+    // Выполняет вставку и учитывает строку в текущей пачке
+    private void execute(SQLiteStatement statement) {
+        statement.executeInsert();
+        countRow();
+    }
+
+    // Учитывает вставленную строку и при заполнении пачки фиксирует транзакцию и открывает следующую
+    private void countRow() {
+        rowsInserted++;
+        if (++rowsInBatch >= BATCH_SIZE) {
+            db.setTransactionSuccessful();
+            db.endTransaction();
+            db.beginTransaction();
+            rowsInBatch = 0;
+        }
+    }
+}
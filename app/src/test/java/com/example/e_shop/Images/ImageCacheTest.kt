@@ -0,0 +1,160 @@
+package com.example.e_shop.Images
+
+import com.sun.net.httpserver.HttpServer
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Дисковый кэш изображений против локального сервера, который отдает изображения с ETag
+ * и отвечает 304 на условные запросы
+ */
+class ImageCacheTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private lateinit var server: HttpServer
+    private lateinit var baseUrl: String
+    private val images = mutableMapOf<String, ByteArray>() // Путь -> текущее содержимое
+    private var cacheControl = "max-age=0" // По умолчанию каждое обращение перепроверяется
+    private val requests = AtomicInteger() // Всего запросов к серверу
+    @Volatile private var gate: CountDownLatch? = null // Задерживает ответы сервера, пока тест не откроет его
+
+    @Before
+    fun setUp() {
+        server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.executor = Executors.newCachedThreadPool()
+        server.createContext("/img/") { exchange ->
+            requests.incrementAndGet()
+            gate?.await(5, TimeUnit.SECONDS)
+            val body = synchronized(images) { images[exchange.requestURI.path] }
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1)
+            } else {
+                val etag = "\"${body.contentHashCode()}\""
+                exchange.responseHeaders.add("Cache-Control", cacheControl)
+                exchange.responseHeaders.add("ETag", etag)
+                if (exchange.requestHeaders.getFirst("If-None-Match") == etag) {
+                    exchange.sendResponseHeaders(304, -1)
+                } else {
+                    exchange.sendResponseHeaders(200, body.size.toLong())
+                    exchange.responseBody.write(body)
+                }
+            }
+            exchange.close()
+        }
+        server.start()
+        baseUrl = "http://127.0.0.1:${server.address.port}"
+    }
+
+    @After
+    fun tearDown() {
+        server.stop(0)
+    }
+
+    @Test
+    fun freshCopyIsServedWithoutNetwork() {
+        cacheControl = "max-age=3600"
+        serve("/img/a.png", 100)
+        val cache = ImageCache(folder.newFolder(), 1_000_000)
+
+        val file = cache.get("$baseUrl/img/a.png")
+        assertArrayEquals(images["/img/a.png"], file.readBytes())
+        cache.get("$baseUrl/img/a.png")
+        assertEquals(1, requests.get())
+    }
+
+    @Test
+    fun staleCopyIsRevalidatedWithEtag() {
+        serve("/img/a.png", 100)
+        val cache = ImageCache(folder.newFolder(), 1_000_000)
+        cache.get("$baseUrl/img/a.png")
+
+        cache.get("$baseUrl/img/a.png") // Содержимое не изменилось: 304 без тела
+        assertEquals(1, cache.notModifiedResponses)
+
+        val changed = serve("/img/a.png", 120)
+        assertArrayEquals(changed, cache.get("$baseUrl/img/a.png").readBytes())
+        assertEquals(3, requests.get())
+        assertEquals(120, cache.sizeBytes)
+    }
+
+    @Test
+    fun concurrentRequestsShareOneDownload() {
+        serve("/img/a.png", 100)
+        val cache = ImageCache(folder.newFolder(), 1_000_000)
+        gate = CountDownLatch(1)
+        val pool = Executors.newFixedThreadPool(8)
+        val results = (1..8).map { pool.submit<File> { cache.get("$baseUrl/img/a.png") } }
+        Thread.sleep(200) // Все потоки успевают запросить изображение, пока сервер держит ответ
+        gate!!.countDown()
+
+        val files = results.map { it.get(5, TimeUnit.SECONDS) }.toSet()
+        pool.shutdown()
+        assertEquals(1, files.size)
+        assertEquals(1, requests.get())
+    }
+
+    @Test
+    fun leastRecentlyUsedImagesAreEvicted() {
+        cacheControl = "max-age=3600"
+        val cache = ImageCache(folder.newFolder(), 250)
+        for (name in listOf("a", "b", "c")) serve("/img/$name.png", 100)
+        cache.get("$baseUrl/img/a.png")
+        cache.get("$baseUrl/img/b.png")
+        cache.get("$baseUrl/img/a.png") // a использовано позже b
+        cache.get("$baseUrl/img/c.png") // Превышение лимита вытесняет b
+
+        assertEquals(200, cache.sizeBytes)
+        cache.get("$baseUrl/img/a.png")
+        assertEquals(3, requests.get()) // a осталось в кэше
+        cache.get("$baseUrl/img/b.png")
+        assertEquals(4, requests.get()) // b пришлось загрузить заново
+    }
+
+    @Test
+    fun cacheSurvivesRestartAndServesStaleCopyOffline() {
+        serve("/img/a.png", 100)
+        val directory = folder.newFolder()
+        val first = ImageCache(directory, 1_000_000).get("$baseUrl/img/a.png")
+        server.stop(0)
+
+        val restarted = ImageCache(directory, 1_000_000)
+        assertEquals(100, restarted.sizeBytes)
+        val offline = restarted.get("$baseUrl/img/a.png")
+        assertEquals(first, offline)
+        assertTrue(offline.exists())
+    }
+
+    @Test
+    fun missingImageFailsWithoutCachingAnything() {
+        val cache = ImageCache(folder.newFolder(), 1_000_000)
+        try {
+            cache.get("$baseUrl/img/none.png")
+            fail("404 must fail")
+        } catch (expected: IOException) {
+        }
+        assertEquals(0, cache.sizeBytes)
+    }
+
+    // Публикует на сервере изображение заданного размера (содержимое зависит от размера)
+    private fun serve(path: String, size: Int): ByteArray {
+        val body = ByteArray(size) { (it * 31 + size).toByte() }
+        synchronized(images) { images[path] = body }
+        return body
+    }
+}
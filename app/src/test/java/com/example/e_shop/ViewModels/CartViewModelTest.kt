@@ -0,0 +1,58 @@
+package com.example.e_shop.ViewModels
+
+import android.app.Application
+import androidx.test.core.app.ApplicationProvider
+import com.example.e_shop.DB.DataBaseHandler
+import com.example.e_shop.DB.UserCartTableHandler
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+/**
+ * Запись изменений корзины: действия, сделанные подряд, попадают в базу и в отметки синхронизации в том же порядке
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class CartViewModelTest {
+
+    private val application = ApplicationProvider.getApplicationContext<Application>()
+    private val dbHandler = DataBaseHandler.getInstance(application) // Тот же обработчик, что у ViewModel
+
+    @Test
+    fun backToBackChangesAreWrittenInOrder() {
+        val cart = UserCartTableHandler(dbHandler)
+        cart.clearUserCart(USER_ID)
+        cart.addItemToCart(USER_ID, KEPT, 1)
+        cart.addItemToCart(USER_ID, REMOVED, 1)
+
+        val viewModel = CartViewModel(application)
+        viewModel.setUser(USER_ID)
+        for (quantity in 2..40) viewModel.updateQuantity(KEPT, quantity) // Каждое нажатие - отдельная запись
+        viewModel.updateQuantity(KEPT, 3) // Последнее выбранное количество меньше предыдущих
+        viewModel.updateQuantity(REMOVED, 5)
+        viewModel.remove(REMOVED) // Удаление после изменения количества не отменяется им
+        runBlocking { viewModel.awaitCartWrites() }
+
+        assertEquals(mapOf(KEPT to 3), cart.getCartItemList(USER_ID).associate { it.productId to it.quantity })
+        // Последнюю метку гибридных часов получило последнее действие с каждым продуктом
+        assertEquals(3L, entry("quantity", KEPT))
+        assertEquals(0L, entry("quantity", REMOVED)) // Надгробие
+        assertTrue(entry("hlc", REMOVED) > entry("hlc", KEPT))
+    }
+
+    // Значение колонки строки CartEntries продукта пользователя
+    private fun entry(column: String, productId: Int): Long =
+        dbHandler.queryFirst(
+            "SELECT $column FROM CartEntries WHERE user_id = ? AND product_id = ?",
+            arrayOf(USER_ID.toString(), productId.toString())) { it.getLong(0) }!!
+
+    companion object {
+        private const val USER_ID = 1
+        private const val KEPT = 1
+        private const val REMOVED = 2
+    }
+}
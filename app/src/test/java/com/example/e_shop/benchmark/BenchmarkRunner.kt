@@ -0,0 +1,121 @@
+package com.example.e_shop.benchmark
+
+import java.io.File
+import java.lang.management.ManagementFactory
+import java.util.Locale
+
+/**
+ * Простой исполнитель микробенчмарков в стиле JMH
+ * Каждый бенчмарк выполняется серией разогревочных итераций, затем серией измерительных итераций
+ * фиксированной длительности. Для каждой итерации считаются операции в секунду и байты,
+ * выделенные текущим потоком на одну операцию.
+ */
+class BenchmarkRunner(
+    private val warmupIterations: Int = Integer.getInteger("eshop.benchmark.warmup", 5), // Количество разогревочных итераций
+    private val measurementIterations: Int = Integer.getInteger("eshop.benchmark.iterations", 10), // Количество измерительных итераций
+    private val iterationMillis: Long = java.lang.Long.getLong("eshop.benchmark.iterationMillis", 500L) // Длительность одной итерации
+) {
+
+    /**
+     * Результат одного бенчмарка
+     */
+    data class Result(
+        val name: String, // Имя бенчмарка
+        val opsPerSecond: Double, // Среднее число операций в секунду по измерительным итерациям
+        val opsPerSecondError: Double, // Полуширина 99.9% доверительного интервала для opsPerSecond
+        val bytesPerOp: Double // Среднее число байтов, выделенных на одну операцию
+    ) {
+        override fun toString(): String =
+            String.format(Locale.US, "%-48s %14.1f ± %10.1f ops/s %12.1f B/op", name, opsPerSecond, opsPerSecondError, bytesPerOp)
+    }
+
+    private val results = mutableListOf<Result>() // Результаты всех выполненных бенчмарков
+
+    // Счетчик выделенной памяти потока (расширение HotSpot), null если JVM его не поддерживает
+    private val threadBean = (ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean)
+        ?.takeIf { it.isThreadAllocatedMemorySupported }
+        ?.also { it.isThreadAllocatedMemoryEnabled = true }
+
+    /**
+     * Выполняет бенчмарк и запоминает его результат
+     * @param name Имя бенчмарка
+     * @param operation Измеряемая операция; ее результат передается в Blackhole, чтобы JIT не удалил вызов
+     * @return Результат бенчмарка
+     */
+    fun run(name: String, operation: () -> Any?): Result {
+        repeat(warmupIterations) { iteration(operation) } // Разогрев: JIT-компиляция, кэш страниц SQLite, кэш запросов
+        val ops = DoubleArray(measurementIterations) // Операций в секунду для каждой итерации
+        var totalBytes = 0L // Всего выделено байтов за измерение
+        var totalOps = 0L // Всего выполнено операций за измерение
+        for (i in 0 until measurementIterations) {
+            val sample = iteration(operation)
+            ops[i] = sample.operations * 1_000_000_000.0 / sample.nanos
+            totalBytes += sample.bytes
+            totalOps += sample.operations
+        }
+        val mean = ops.average()
+        val result = Result(name, mean, confidenceHalfWidth(ops, mean), if (totalOps == 0L) 0.0 else totalBytes.toDouble() / totalOps)
+        results += result
+        println(result)
+        return result
+    }
+
+    /**
+     * Печатает сводку и сохраняет результаты в CSV, чтобы сравнивать их между коммитами
+     * @param file Файл отчета
+     */
+    fun writeReport(file: File) {
+        file.parentFile?.mkdirs()
+        file.printWriter().use { out ->
+            out.println("benchmark,ops_per_sec,ops_per_sec_error,bytes_per_op")
+            for (r in results) {
+                out.println(String.format(Locale.US, "%s,%.1f,%.1f,%.1f", r.name, r.opsPerSecond, r.opsPerSecondError, r.bytesPerOp))
+            }
+        }
+        println("Benchmark report: ${file.absolutePath}")
+    }
+
+    // Замер одной итерации
+    private class Sample(val operations: Long, val nanos: Long, val bytes: Long)
+
+    // Выполняет операцию в цикле заданное время
+    private fun iteration(operation: () -> Any?): Sample {
+        System.gc() // Сборка мусора между итерациями уменьшает разброс
+        val threadId = Thread.currentThread().id
+        val bytesBefore = threadBean?.getThreadAllocatedBytes(threadId) ?: 0L
+        val start = System.nanoTime()
+        val deadline = start + iterationMillis * 1_000_000L
+        var operations = 0L
+        var now: Long
+        do {
+            Blackhole.consume(operation())
+            operations++
+            now = System.nanoTime()
+        } while (now < deadline)
+        val bytesAfter = threadBean?.getThreadAllocatedBytes(threadId) ?: 0L
+        return Sample(operations, now - start, bytesAfter - bytesBefore)
+    }
+
+    // Полуширина 99.9% доверительного интервала (нормальное приближение, как оценка ошибки в JMH)
+    private fun confidenceHalfWidth(samples: DoubleArray, mean: Double): Double {
+        if (samples.size < 2) return Double.NaN
+        val variance = samples.sumOf { (it - mean) * (it - mean) } / (samples.size - 1)
+        return Z_999 * Math.sqrt(variance / samples.size)
+    }
+
+    /**
+     * Поглотитель результатов операций, не дающий JIT удалить «бесполезные» вызовы
+     */
+    object Blackhole {
+        @Volatile
+        private var sink: Any? = null
+
+        fun consume(value: Any?) {
+            sink = value
+        }
+    }
+
+    companion object {
+        private const val Z_999 = 3.291 // Квантиль нормального распределения для 99.9%
+    }
+}
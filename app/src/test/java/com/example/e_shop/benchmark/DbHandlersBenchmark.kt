@@ -0,0 +1,218 @@
+package com.example.e_shop.benchmark
+
+import android.database.Cursor
+import androidx.test.core.app.ApplicationProvider
+import com.example.e_shop.DB.CatalogImporter
+import com.example.e_shop.DB.DataBaseHandler
+import com.example.e_shop.DB.OrderDetailsTableHandler
+import com.example.e_shop.DB.OrdersTableHandler
+import com.example.e_shop.DB.ProductsTableHandler
+import com.example.e_shop.DB.SyntheticDataGenerator
+import com.example.e_shop.DB.UserCartTableHandler
+import com.example.e_shop.DB.UsersTableHandler
+import com.example.e_shop.DataClasses.CartProduct
+import com.example.e_shop.DataClasses.ProductFilter
+import com.example.e_shop.DataClasses.ProductSummary
+import org.junit.AfterClass
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.ByteArrayInputStream
+import java.io.File
+import java.util.Locale
+
+/**
+ * Микробенчмарки обработчиков таблиц на настоящем SQLite (Robolectric, нативный режим SQLite)
+ * По умолчанию пропускаются; запуск:
+ * ./gradlew :app:testDebugUnitTest --tests "*DbHandlersBenchmark" -Peshop.benchmark=true
+ * База дополняется синтетическими данными (SyntheticDataGenerator.Config.small()); с -Peshop.benchmark.full=true -
+ * объемами по умолчанию (100 тыс. продуктов, 1 млн строк заказов)
+ * Результаты печатаются в лог теста и сохраняются в app/build/reports/benchmarks/db-handlers.csv
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class DbHandlersBenchmark {
+
+    private lateinit var dbHandler: DataBaseHandler
+    private lateinit var productsTableHandler: ProductsTableHandler
+    private lateinit var userCartTableHandler: UserCartTableHandler
+    private lateinit var ordersTableHandler: OrdersTableHandler
+    private lateinit var orderDetailsTableHandler: OrderDetailsTableHandler
+    private lateinit var usersTableHandler: UsersTableHandler
+
+    @Before
+    fun setUp() {
+        assumeTrue("Benchmarks are disabled, pass -Peshop.benchmark=true", java.lang.Boolean.getBoolean("eshop.benchmark"))
+        dbHandler = DataBaseHandler(ApplicationProvider.getApplicationContext()) // Копирует e_shop.db из assets
+        val config = if (java.lang.Boolean.getBoolean("eshop.benchmark.full")) SyntheticDataGenerator.Config() else SyntheticDataGenerator.Config.small()
+        println(SyntheticDataGenerator(dbHandler, SEED).generate(config)) // Одинаковые данные при каждом запуске
+        productsTableHandler = ProductsTableHandler(dbHandler)
+        userCartTableHandler = UserCartTableHandler(dbHandler)
+        ordersTableHandler = OrdersTableHandler(dbHandler)
+        orderDetailsTableHandler = OrderDetailsTableHandler(dbHandler)
+        usersTableHandler = UsersTableHandler(dbHandler)
+
+        // Корзина пользователя, которую читают бенчмарки корзины
+        userCartTableHandler.clearUserCart(USER_ID)
+        for (productId in CART_PRODUCT_IDS) userCartTableHandler.addItemToCart(USER_ID, productId, 1)
+    }
+
+    @Test
+    fun products() {
+        runner.run("products.getAllProductSummaries") { productsTableHandler.allProductSummaries.drain() }
+        runner.run("products.searchProductSummaries") { productsTableHandler.searchProductSummaries("a", CATEGORY_ID).drain() }
+        runner.run("products.getProductById") { productsTableHandler.getProductById(PRODUCT_ID).drain() }
+        runner.run("products.getProductSummaryList.cached") { productsTableHandler.getProductSummaryList("", CATEGORY_ID) }
+        runner.run("products.getProductSummaryList.uncached") {
+            dbHandler.queryCache.invalidate(ProductsTableHandler.TABLE_PRODUCTS) // Каждая операция - промах кэша
+            productsTableHandler.getProductSummaryList("", CATEGORY_ID)
+        }
+        // Страница в середине категории по цене: keyset-пагинация читает из индекса только строки страницы
+        val filter = ProductFilter(categoryId = CATEGORY_ID, minPrice = 10.0, sort = ProductsTableHandler.SortOrder.PRICE_ASC)
+        var after: ProductSummary? = null
+        repeat(50) { after = productsTableHandler.getProductSummaryPage(filter, after, PAGE_SIZE).lastOrNull() ?: after }
+        runner.run("products.getProductSummaryPage.uncached") {
+            dbHandler.queryCache.invalidate(ProductsTableHandler.TABLE_PRODUCTS)
+            productsTableHandler.getProductSummaryPage(filter, after, PAGE_SIZE)
+        }
+        runner.run("products.getPriceHistogram.uncached") {
+            dbHandler.queryCache.invalidate(ProductsTableHandler.TABLE_PRODUCTS)
+            productsTableHandler.getPriceHistogram(CATEGORY_ID)
+        }
+    }
+
+    @Test
+    fun userCart() {
+        runner.run("cart.getItemsInCart") { userCartTableHandler.getItemsInCart(USER_ID).drain() }
+        runner.run("cart.getCartProductsForUser") { userCartTableHandler.getCartProductsForUser(USER_ID).drain() }
+        runner.run("cart.getCartProductList.cached") { userCartTableHandler.getCartProductList(USER_ID) }
+        runner.run("cart.addAndRemoveItem") {
+            userCartTableHandler.addItemToCart(USER_ID, PRODUCT_ID, 1)
+            userCartTableHandler.removeItemFromCart(USER_ID, PRODUCT_ID)
+        }
+        runner.run("cart.updateItemQuantity") { userCartTableHandler.updateItemQuantityInCart(USER_ID, CART_PRODUCT_IDS[0], 2) }
+    }
+
+    @Test
+    fun orders() {
+        runner.run("orders.getOrdersByUserId") { ordersTableHandler.getOrdersByUserId(USER_ID).drain() }
+        runner.run("orders.getOrderListByUserId.cached") { ordersTableHandler.getOrderListByUserId(USER_ID) }
+        runner.run("orders.addAndDeleteOrderWithDetails") {
+            val orderId = ordersTableHandler.addOrder(USER_ID, 10.0, "benchmark").toInt()
+            val detailId = orderDetailsTableHandler.addOrderDetail(orderId, PRODUCT_ID, 1, 10.0).toInt()
+            orderDetailsTableHandler.deleteOrderDetail(detailId) // Позиции не удаляются вместе с заказом
+            ordersTableHandler.deleteOrder(orderId)
+        }
+    }
+
+    @Test
+    fun usersAndCategories() {
+        runner.run("users.authenticateUser") { usersTableHandler.authenticateUser("admin", "admin").drain() }
+        runner.run("users.getUserData") { usersTableHandler.getUserData(USER_ID).drain() }
+        runner.run("categories.getAllCategories.cached") { dbHandler.allCategories }
+    }
+
+    @Test
+    fun catalogImport() {
+        // Файл на IMPORT_ROWS новых продуктов; повторный импорт того же файла обновляет их по названию
+        val csv = StringBuilder("name,description,price,quantity,image_url,category\n")
+        for (i in 0 until IMPORT_ROWS) {
+            csv.append(String.format(Locale.US, "\"Import %d, item\",Imported product %d,%.2f,%d,,Import %d\n", i, i, 10.0 + i % 1000, i % 50, i % 20))
+        }
+        val bytes = csv.toString().toByteArray()
+        val importer = CatalogImporter(dbHandler)
+        val inserted = importer.importCsv(ByteArrayInputStream(bytes), null)
+        println("catalog.importCsv.insert $inserted")
+        assertEquals(IMPORT_ROWS, inserted.inserted)
+        val updated = importer.importCsv(ByteArrayInputStream(bytes), null)
+        println("catalog.importCsv.update $updated")
+        assertEquals(IMPORT_ROWS, updated.updated)
+    }
+
+    @Test
+    fun bulkUpdates() {
+        val products = productsTableHandler.getProductSummaryList("", CATEGORY_ID)
+        var started = System.nanoTime()
+        for (product in products) { // Прежний способ: полная перезапись строки на каждый продукт
+            val full = productsTableHandler.findProductById(product.id)!!
+            productsTableHandler.updateProduct(full.id, full.name, full.description, full.price * 1.1, full.quantity, full.image_url, CATEGORY_ID)
+        }
+        println("products.updateProduct.category ${products.size} rows ${(System.nanoTime() - started) / 1_000_000} ms")
+        started = System.nanoTime()
+        assertEquals(products.size, productsTableHandler.adjustCategoryPrices(CATEGORY_ID, -10.0))
+        println("products.adjustCategoryPrices ${products.size} rows ${(System.nanoTime() - started) / 1_000_000} ms")
+
+        val csv = StringBuilder("product_id,delta\n")
+        for (product in products) csv.append(product.id).append(",-1\n")
+        val result = CatalogImporter(dbHandler).importStockDeltaCsv(ByteArrayInputStream(csv.toString().toByteArray()), null)
+        println("catalog.importStockDeltaCsv $result")
+        assertEquals(products.size, result.updated)
+    }
+
+    @Test
+    fun recommendations() {
+        val engine = dbHandler.recommendationEngine
+        val started = System.nanoTime()
+        engine.rebuild() // Полное построение матрицы по всей истории заказов
+        println("recommendations.rebuild ${(System.nanoTime() - started) / 1_000_000} ms")
+        runner.run("recommendations.getRelated") { engine.getRelated(PRODUCT_ID, 10) }
+
+        // Инкрементальное обновление при оформлении заказа дает тот же результат, что и построение заново
+        val products = productsTableHandler.getProductSummariesByIds(intArrayOf(PRODUCT_ID, 5, 6))
+        repeat(3) { ordersTableHandler.placeOrder(USER_ID, "benchmark", products.map { CartProduct(it, 1) }) }
+        val incremental = engine.getRelated(PRODUCT_ID, 10)
+        engine.rebuild()
+        assertArrayEquals(engine.getRelated(PRODUCT_ID, 10), incremental)
+    }
+
+    @Test
+    fun facets() {
+        val engine = dbHandler.facetEngine
+        val started = System.nanoTime()
+        val all = engine.query(ProductFilter()) // Первый запрос строит битовые карты
+        println("facets.build ${(System.nanoTime() - started) / 1_000_000} ms")
+        val brand = all.facets.first { it.name == "Бренд" }
+        val color = all.facets.first { it.name == "Цвет" }
+        val selection = mapOf(
+            brand.attributeId to brand.values.take(2).map { it.valueId }.toSet(), // Два бренда через ИЛИ
+            color.attributeId to setOf(color.values.first().valueId)) // И один цвет
+        runner.run("facets.queryCategory") { engine.query(ProductFilter(categoryId = CATEGORY_ID)) }
+        runner.run("facets.querySelection") { engine.query(ProductFilter(categoryId = CATEGORY_ID, attributes = selection)) }
+        runner.run("facets.queryPriceRange") { engine.query(ProductFilter(minPrice = 100.0, maxPrice = 900.0, attributes = selection)) }
+
+        // Количество по битовым картам совпадает с количеством строк, которые отдает SQL-фильтр каталога
+        val filter = ProductFilter(categoryId = CATEGORY_ID, minPrice = 100.0, attributes = selection)
+        assertEquals(productsTableHandler.getProductSummaryPage(filter, null, Int.MAX_VALUE).size, engine.query(filter).matchCount)
+    }
+
+    // Читает все строки курсора и закрывает его
+    private fun Cursor.drain(): Int = use {
+        var rows = 0
+        while (it.moveToNext()) rows++
+        rows
+    }
+
+    companion object {
+        private const val SEED = 42L // Seed генератора данных
+        private const val USER_ID = 1 // Пользователь admin из предзаполненной базы
+        private const val CATEGORY_ID = 1 // Первая категория
+        private const val PRODUCT_ID = 4 // Продукт, которого нет в корзине фикстуры
+        private val CART_PRODUCT_IDS = intArrayOf(1, 2, 3) // Продукты в корзине фикстуры
+        private const val IMPORT_ROWS = 100_000 // Размер импортируемого каталога
+        private const val PAGE_SIZE = 40 // Размер страницы каталога
+
+        private val runner = BenchmarkRunner() // Общий исполнитель, собирающий результаты всех тестов класса
+
+        @JvmStatic
+        @AfterClass
+        fun writeReport() {
+            if (!java.lang.Boolean.getBoolean("eshop.benchmark")) return
+            runner.writeReport(File("build/reports/benchmarks/db-handlers.csv"))
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.e_shop.benchmark
+
+import androidx.test.core.app.ApplicationProvider
+import com.example.e_shop.DB.DataBaseHandler
+import com.example.e_shop.DB.OrdersTableHandler
+import com.example.e_shop.DB.ProductsTableHandler
+import com.example.e_shop.DB.SyntheticDataGenerator
+import com.example.e_shop.DB.UserCartTableHandler
+import com.example.e_shop.DataClasses.Product
+import com.example.e_shop.DataClasses.ProductSummary
+import org.junit.Assert.assertTrue
+import org.junit.Assume.assumeTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.File
+import java.util.Locale
+import java.util.Random
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Нагрузочный прогон сценария покупки: много пользователей параллельно работают с одной базой
+ * Каждый шаг вызывает те же методы обработчиков, что и ViewModel соответствующего экрана,
+ * и все пользователи, как и все экраны приложения, работают через общий DataBaseHandler.getInstance.
+ * Запуск: ./gradlew :app:testDebugUnitTest --tests "*ShoppingScenarioLoadTest" -Peshop.benchmark=true
+ * Число пользователей и сессий на пользователя задается -Peshop.load.users и -Peshop.load.sessions (по умолчанию 8 и 50). Отчет: app/build/reports/benchmarks/shopping-scenario.csv
+ */
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [33])
+class ShoppingScenarioLoadTest {
+
+    /**
+     * Шаги сценария в порядке выполнения
+     */
+    enum class Step { BROWSE, SEARCH, OPEN_DETAIL, ADD_TO_CART, CHANGE_QUANTITY, CHECKOUT, VIEW_PROFILE }
+
+    // Замеры одного пользователя: задержки по шагам и количество ошибок
+    private class Recorder {
+        val latencies = Array(Step.values().size) { LongArray(64) } // Задержки в наносекундах
+        val counts = IntArray(Step.values().size) // Количество замеров по шагам
+        val errors = IntArray(Step.values().size) // Количество ошибок по шагам
+        var firstError: Throwable? = null // Первая ошибка для отчета
+
+        inline fun measure(step: Step, block: () -> Unit) {
+            val start = System.nanoTime()
+            try {
+                block()
+            } catch (e: RuntimeException) { // Ошибки SQLite (database is locked, closed object) считаются, а не прерывают прогон
+                errors[step.ordinal]++
+                if (firstError == null) firstError = e
+            }
+            val elapsed = System.nanoTime() - start
+            val i = step.ordinal
+            if (counts[i] == latencies[i].size) latencies[i] = latencies[i].copyOf(counts[i] * 2)
+            latencies[i][counts[i]++] = elapsed
+        }
+    }
+
+    @Test
+    fun shoppingScenario() {
+        assumeTrue("Benchmarks are disabled, pass -Peshop.benchmark=true", java.lang.Boolean.getBoolean("eshop.benchmark"))
+        val users = Integer.getInteger("eshop.load.users", 8)
+        val sessions = Integer.getInteger("eshop.load.sessions", 50)
+
+        val context = ApplicationProvider.getApplicationContext<android.app.Application>()
+        val config = SyntheticDataGenerator.Config.small().also { it.users = maxOf(it.users, users) }
+        val data = SyntheticDataGenerator(DataBaseHandler.getInstance(context), SEED).generate(config)
+
+        val recorders = Array(users) { Recorder() }
+        val pool = Executors.newFixedThreadPool(users)
+        val startGate = CountDownLatch(1) // Все пользователи стартуют одновременно
+        val done = CountDownLatch(users)
+        val failures = ConcurrentLinkedQueue<Throwable>() // Ошибки вне замеров шагов (создание сессии, прерывание потока)
+        for (u in 0 until users) {
+            pool.execute {
+                try {
+                    startGate.await()
+                    val session = Session(DataBaseHandler.getInstance(context), data.firstUserId + u, data, config.products, Random(SEED + u))
+                    repeat(sessions) { session.run(recorders[u]) }
+                } catch (e: Throwable) {
+                    failures += e
+                } finally {
+                    done.countDown()
+                }
+            }
+        }
+        val start = System.nanoTime()
+        startGate.countDown()
+        val finished = done.await(30, TimeUnit.MINUTES)
+        val wallNanos = System.nanoTime() - start
+        pool.shutdownNow()
+        assertTrue("Load test did not finish in 30 minutes", finished)
+        if (failures.isNotEmpty()) {
+            val error = AssertionError("${failures.size} of $users users failed", failures.first())
+            failures.drop(1).forEach { error.addSuppressed(it) }
+            throw error
+        }
+
+        report(recorders, users * sessions, wallNanos)
+    }
+
+    /**
+     * Сессия одного пользователя: повторяет вызовы, которые делают экраны приложения
+     */
+    private class Session(
+        private val dbHandler: DataBaseHandler,
+        private val userId: Int,
+        private val data: SyntheticDataGenerator.Result,
+        private val productCount: Int,
+        private val random: Random
+    ) {
+        private val productsTableHandler = ProductsTableHandler(dbHandler)
+        private val userCartTableHandler = UserCartTableHandler(dbHandler)
+        private val ordersTableHandler = OrdersTableHandler(dbHandler)
+
+        fun run(recorder: Recorder) {
+            var products = emptyList<ProductSummary>()
+            recorder.measure(Step.BROWSE) { // Главный экран: категории, каталог и корзина (CatalogViewModel)
+                dbHandler.allCategories
+                products = productsTableHandler.getProductSummaryList("", 0)
+                userCartTableHandler.getCartItemList(userId)
+            }
+            recorder.measure(Step.SEARCH) { // Ввод текста поиска с выбранной категорией
+                val categoryId = data.firstCategoryId + random.nextInt(CATEGORIES)
+                products = productsTableHandler.getProductSummaryList(SEARCH_TERMS[random.nextInt(SEARCH_TERMS.size)], categoryId)
+                    .ifEmpty { products }
+            }
+            val productId = if (products.isNotEmpty()) products[random.nextInt(products.size)].id
+            else data.firstProductId + random.nextInt(productCount)
+            recorder.measure(Step.OPEN_DETAIL) { // Экран деталей (ProductDetailViewModel)
+                productsTableHandler.getProductById(productId).use { if (it.moveToFirst()) Product.createFromCursor(it) else null }
+                userCartTableHandler.getCartItemList(userId).any { it.productId == productId }
+            }
+            recorder.measure(Step.ADD_TO_CART) {
+                userCartTableHandler.addItemToCart(userId, productId, 1)
+            }
+            recorder.measure(Step.CHANGE_QUANTITY) { // Экран корзины (CartViewModel)
+                val cart = userCartTableHandler.getCartProductList(userId)
+                cart.firstOrNull()?.let { userCartTableHandler.updateItemQuantityInCart(userId, it.product.id, it.cartQuantity + 1) }
+            }
+            recorder.measure(Step.CHECKOUT) { // Оформление заказа, как в CartViewModel.checkout
+                val cart = userCartTableHandler.getCartProductList(userId)
+                ordersTableHandler.placeOrder(userId, "load test", cart)
+            }
+            recorder.measure(Step.VIEW_PROFILE) { // Экран профиля (ProfileViewModel)
+                ordersTableHandler.getOrderListByUserId(userId)
+            }
+        }
+    }
+
+    // Сводит замеры всех пользователей, печатает таблицу и сохраняет CSV
+    private fun report(recorders: Array<Recorder>, sessions: Int, wallNanos: Long) {
+        val seconds = wallNanos / 1e9
+        val lines = mutableListOf("step,count,errors,p50_ms,p99_ms,max_ms")
+        println(String.format(Locale.US, "%-16s %8s %7s %10s %10s %10s", "step", "count", "errors", "p50 ms", "p99 ms", "max ms"))
+        for (step in Step.values()) {
+            val i = step.ordinal
+            val all = LongArray(recorders.sumOf { it.counts[i] })
+            var offset = 0
+            for (r in recorders) {
+                System.arraycopy(r.latencies[i], 0, all, offset, r.counts[i])
+                offset += r.counts[i]
+            }
+            all.sort()
+            val errors = recorders.sumOf { it.errors[i] }
+            val p50 = percentileMillis(all, 0.50)
+            val p99 = percentileMillis(all, 0.99)
+            val max = if (all.isEmpty()) 0.0 else all.last() / 1e6
+            println(String.format(Locale.US, "%-16s %8d %7d %10.3f %10.3f %10.3f", step, all.size, errors, p50, p99, max))
+            lines += String.format(Locale.US, "%s,%d,%d,%.3f,%.3f,%.3f", step, all.size, errors, p50, p99, max)
+        }
+        println(String.format(Locale.US, "Throughput: %.1f sessions/s (%d sessions in %.2f s)", sessions / seconds, sessions, seconds))
+        recorders.firstNotNullOfOrNull { it.firstError }?.let { println("First error: $it") }
+        lines += String.format(Locale.US, "THROUGHPUT_SESSIONS_PER_SEC,%d,0,%.1f,,", sessions, sessions / seconds)
+
+        val file = File("build/reports/benchmarks/shopping-scenario.csv")
+        file.parentFile?.mkdirs()
+        file.writeText(lines.joinToString("\n", postfix = "\n"))
+        println("Load report: ${file.absolutePath}")
+    }
+
+    // Перцентиль отсортированного массива наносекунд в миллисекундах (метод ближайшего ранга)
+    private fun percentileMillis(sorted: LongArray, p: Double): Double {
+        if (sorted.isEmpty()) return 0.0
+        val rank = Math.ceil(p * sorted.size).toInt().coerceIn(1, sorted.size)
+        return sorted[rank - 1] / 1e6
+    }
+
+    companion object {
+        private const val SEED = 7L // Seed данных и поведения пользователей
+        private const val CATEGORIES = 5 // Количество категорий в SyntheticDataGenerator.Config.small()
+        private val SEARCH_TERMS = arrayOf("Apple", "Pro", "Max", "Sony", "Lite", "1", "Xiaomi")
+    }
+}